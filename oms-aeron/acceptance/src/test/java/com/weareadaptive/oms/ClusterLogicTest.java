@@ -2,15 +2,24 @@ package com.weareadaptive.oms;
 
 import com.weareadaptive.oms.dsl.TestClientDsl;
 import com.weareadaptive.oms.util.TestOrder;
+import com.weareadaptive.oms.util.TestTrade;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.MarketDepth;
 import weareadaptive.com.cluster.services.oms.util.Order;
 import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.Status;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
+import weareadaptive.com.cluster.services.oms.util.TopOfBook;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -23,6 +32,7 @@ public class ClusterLogicTest
     @BeforeEach
     void setUp() throws InterruptedException
     {
+        System.setProperty("instrument.ids", "0,1,2");
         deployment.startCluster(maxNodes, true);
         deployment.startTestClientDsl(maxNodes);
         testClientDsl = deployment.getTestClientDsl();
@@ -37,7 +47,7 @@ public class ClusterLogicTest
     @Test
     public void placeAskOrder()
     {
-        final double price = 10;
+        final long price = 10;
         final long size = 5;
         TestOrder testOrder = testClientDsl.placeOrderAndAwaitResult(price, size, Side.ASK);
 
@@ -51,7 +61,7 @@ public class ClusterLogicTest
     @Test
     public void placeBidOrder()
     {
-        final double price = 10;
+        final long price = 10;
         final long size = 5;
         TestOrder testOrder = testClientDsl.placeOrderAndAwaitResult(price, size, Side.BID);
 
@@ -74,7 +84,7 @@ public class ClusterLogicTest
     @Test
     public void placeBidOrderAndCancelOrder()
     {
-        final double price = 10;
+        final long price = 10;
         final long size = 5;
         TestOrder testOrder = testClientDsl.placeOrderAndAwaitResult(price, size, Side.BID);
         List<Order> orders = testClientDsl.requestAndReceiveAllBids();
@@ -88,7 +98,7 @@ public class ClusterLogicTest
     @Test
     public void placeTwoAskOrdersAndCancelOneOrder()
     {
-        final double price = 10;
+        final long price = 10;
         final long size = 5;
         TestOrder testOrder = testClientDsl.placeOrderAndAwaitResult(price, size, Side.ASK);
         testClientDsl.placeOrderAndAwaitResult(price, size, Side.ASK);
@@ -103,7 +113,7 @@ public class ClusterLogicTest
     @Test
     public void placeTwoBidOrdersAndCancelOneOrder()
     {
-        final double price = 10;
+        final long price = 10;
         final long size = 5;
         TestOrder testOrder = testClientDsl.placeOrderAndAwaitResult(price, size, Side.BID);
         testClientDsl.placeOrderAndAwaitResult(price, size, Side.BID);
@@ -131,7 +141,7 @@ public class ClusterLogicTest
     @Test
     public void placeAskOrderAndCancelOrder()
     {
-        final double price = 10;
+        final long price = 10;
         final long size = 5;
         TestOrder testOrder = testClientDsl.placeOrderAndAwaitResult(price, size, Side.ASK);
 
@@ -144,7 +154,7 @@ public class ClusterLogicTest
     @Test
     public void placeOneOrderAndGetOrderId()
     {
-        final double price = 10;
+        final long price = 10;
         final long size = 5;
         TestOrder testOrder = testClientDsl.placeOrderAndAwaitResult(price, size, Side.ASK);
 
@@ -195,4 +205,249 @@ public class ClusterLogicTest
         assertEquals(0, testClientDsl.requestAndReceiveAllAsks().size());
         assertEquals(0, testClientDsl.requestAndReceiveAllBids().size());
     }
+
+    @Test
+    public void ordersOnDifferentInstrumentsDoNotMatch()
+    {
+        final int firstInstrument = 1;
+        final int secondInstrument = 2;
+        TestOrder ask = testClientDsl.placeOrderAndAwaitResult(firstInstrument, 10, 5, Side.ASK);
+        TestOrder bid = testClientDsl.placeOrderAndAwaitResult(secondInstrument, 10, 5, Side.BID);
+
+        assertEquals(0, ask.orderId());
+        assertEquals(0, bid.orderId());
+        assertEquals(List.of(new Order(ask.orderId(), 10, 5)), testClientDsl.requestAndReceiveAllAsks(firstInstrument));
+        assertEquals(List.of(new Order(bid.orderId(), 10, 5)), testClientDsl.requestAndReceiveAllBids(secondInstrument));
+        assertTrue(testClientDsl.requestAndReceiveAllAsks(secondInstrument).isEmpty());
+    }
+
+    @Test
+    public void orderOnUnconfiguredInstrumentIsRejected()
+    {
+        final int unconfiguredInstrument = 3;
+        final ExecutionResult result = testClientDsl.placeOrderAndAwaitExecutionResult(unconfiguredInstrument, 10, 5,
+                Side.ASK);
+
+        assertEquals(Status.NONE, result.getStatus());
+        assertTrue(testClientDsl.requestAndReceiveAllAsks(unconfiguredInstrument).isEmpty());
+    }
+
+    @Test
+    public void requestBestBidAndOffer()
+    {
+        testClientDsl.placeOrderAndAwaitResult(10, 100, Side.BID);
+        testClientDsl.placeOrderAndAwaitResult(10, 50, Side.BID);
+        testClientDsl.placeOrderAndAwaitResult(9, 100, Side.BID);
+        testClientDsl.placeOrderAndAwaitResult(12, 30, Side.ASK);
+        testClientDsl.placeOrderAndAwaitResult(11, 20, Side.ASK);
+
+        TopOfBook topOfBook = testClientDsl.requestAndReceiveTopOfBook();
+
+        assertEquals(10, topOfBook.getBidPrice());
+        assertEquals(150, topOfBook.getBidSize());
+        assertEquals(11, topOfBook.getAskPrice());
+        assertEquals(20, topOfBook.getAskSize());
+    }
+
+    @Test
+    public void requestTopLevelsOfDepth()
+    {
+        testClientDsl.placeOrderAndAwaitResult(10, 100, Side.BID);
+        testClientDsl.placeOrderAndAwaitResult(10, 50, Side.BID);
+        testClientDsl.placeOrderAndAwaitResult(9, 100, Side.BID);
+        testClientDsl.placeOrderAndAwaitResult(8, 100, Side.BID);
+        testClientDsl.placeOrderAndAwaitResult(11, 20, Side.ASK);
+
+        MarketDepth depth = testClientDsl.requestAndReceiveDepth(2);
+
+        assertEquals(2, depth.getLevelCount(Side.BID));
+        assertEquals(10, depth.getPrice(Side.BID, 0));
+        assertEquals(150, depth.getSize(Side.BID, 0));
+        assertEquals(2, depth.getOrderCount(Side.BID, 0));
+        assertEquals(9, depth.getPrice(Side.BID, 1));
+        assertEquals(1, depth.getLevelCount(Side.ASK));
+        assertEquals(11, depth.getPrice(Side.ASK, 0));
+    }
+
+    @Test
+    public void amendOrderPriceAndSize()
+    {
+        TestOrder first = testClientDsl.placeOrderAndAwaitResult(10, 100, Side.BID);
+        TestOrder second = testClientDsl.placeOrderAndAwaitResult(10, 100, Side.BID);
+
+        assertEquals(Status.AMENDED, testClientDsl.requestAmendOrderAndAwaitResult(second.orderId(), 10, 40).getStatus());
+        assertEquals(Status.AMENDED, testClientDsl.requestAmendOrderAndAwaitResult(first.orderId(), 9, 100).getStatus());
+
+        assertEquals(List.of(new Order(second.orderId(), 10, 40), new Order(first.orderId(), 9, 100)),
+                testClientDsl.requestAndReceiveAllBids());
+    }
+
+    @Test
+    public void massCancelBySideAndPriceRange()
+    {
+        testClientDsl.placeOrderAndAwaitResult(8, 100, Side.BID);
+        TestOrder keptBid = testClientDsl.placeOrderAndAwaitResult(7, 100, Side.BID);
+        testClientDsl.placeOrderAndAwaitResult(9, 100, Side.BID);
+        TestOrder ask = testClientDsl.placeOrderAndAwaitResult(10, 100, Side.ASK);
+
+        assertEquals(2, testClientDsl.requestMassCancelAndAwaitResult(Side.BID, 8, 9));
+
+        assertEquals(List.of(new Order(keptBid.orderId(), 7, 100)), testClientDsl.requestAndReceiveAllBids());
+        assertEquals(List.of(new Order(ask.orderId(), 10, 100)), testClientDsl.requestAndReceiveAllAsks());
+    }
+
+    @Test
+    public void bothSidesOfATradeAreToldOfTheFill()
+    {
+        final TestClientDsl passiveClient = new TestClientDsl(maxNodes);
+        passiveClient.startClient();
+        TestOrder ask = passiveClient.placeOrderAndAwaitResult(10, 100, Side.ASK);
+        final ExecutionResult bid = testClientDsl.placeOrderAndAwaitResult(10, 40, Side.BID, TimeInForce.GTC);
+        assertEquals(Status.FILLED, bid.getStatus());
+
+        final TestTrade trade = new TestTrade(bid.getOrderId(), ask.orderId(), 10, 40);
+        assertEquals(List.of(trade), passiveClient.awaitTrades(1));
+        assertEquals(List.of(trade), testClientDsl.awaitTrades(1));
+        passiveClient.close();
+    }
+
+    @Test
+    public void ordersAreCancelledWhenTheirSessionCloses()
+    {
+        final TestClientDsl disconnectingClient = new TestClientDsl(maxNodes, "gateway-a");
+        disconnectingClient.startClient();
+        TestOrder bid = disconnectingClient.placeOrderAndAwaitResult(9, 100, Side.BID);
+        TestOrder ask = disconnectingClient.placeOrderAndAwaitResult(11, 100, Side.ASK);
+        final long closedSessionId = disconnectingClient.getSessionId();
+        TestOrder keptBid = testClientDsl.placeOrderAndAwaitResult(8, 100, Side.BID);
+
+        disconnectingClient.close();
+
+        await().until(() -> testClientDsl.requestAndReceiveAllAsks().isEmpty());
+        assertEquals(List.of(new Order(keptBid.orderId(), 8, 100)), testClientDsl.requestAndReceiveAllBids());
+        assertEquals(List.of(), testClientDsl.requestAndReceiveAllAsks());
+
+        // the same client connecting again is told, as one batch, and no one else is
+        final TestClientDsl reconnectedClient = new TestClientDsl(maxNodes, "gateway-a");
+        reconnectedClient.startClient();
+        assertEquals(Set.of(bid.orderId(), ask.orderId()),
+                new HashSet<>(reconnectedClient.awaitCancelledOrdersOfSession(closedSessionId, 2)));
+        assertEquals(List.of(), testClientDsl.receivedCancelledOrdersOfSession(closedSessionId));
+        reconnectedClient.close();
+    }
+
+    @Test
+    public void cancelsOfAClosedSessionGoToTheSameClientWhenItIsAlreadyConnectedAgain()
+    {
+        final TestClientDsl disconnectingClient = new TestClientDsl(maxNodes, "gateway-b");
+        disconnectingClient.startClient();
+        TestOrder ask = disconnectingClient.placeOrderAndAwaitResult(11, 100, Side.ASK);
+        final long closedSessionId = disconnectingClient.getSessionId();
+        final TestClientDsl restartedClient = new TestClientDsl(maxNodes, "gateway-b");
+        restartedClient.startClient();
+
+        disconnectingClient.close();
+
+        assertEquals(List.of(ask.orderId()), restartedClient.awaitCancelledOrdersOfSession(closedSessionId, 1));
+        assertEquals(List.of(), testClientDsl.receivedCancelledOrdersOfSession(closedSessionId));
+        restartedClient.close();
+    }
+
+    @Test
+    public void immediateAndMarketOrdersNeverRest()
+    {
+        TestOrder ask = testClientDsl.placeOrderAndAwaitResult(10, 100, Side.ASK);
+
+        assertEquals(Status.CANCELLED, testClientDsl.placeOrderAndAwaitResult(10, 150, Side.BID, TimeInForce.FOK).getStatus());
+        assertEquals(List.of(new Order(ask.orderId(), 10, 100)), testClientDsl.requestAndReceiveAllAsks());
+
+        assertEquals(Status.PARTIAL, testClientDsl.placeOrderAndAwaitResult(10, 60, Side.BID, TimeInForce.IOC).getStatus());
+        assertEquals(Status.PARTIAL, testClientDsl.placeMarketOrderAndAwaitResult(50, Side.BID, TimeInForce.IOC).getStatus());
+
+        assertEquals(List.of(), testClientDsl.requestAndReceiveAllAsks());
+        assertEquals(List.of(), testClientDsl.requestAndReceiveAllBids());
+    }
+
+    @Test
+    public void icebergShowsOneSliceAtATime()
+    {
+        TestOrder iceberg = testClientDsl.placeIcebergOrderAndAwaitResult(10, 100, Side.ASK, 30);
+        TestOrder ask = testClientDsl.placeOrderAndAwaitResult(10, 20, Side.ASK);
+        assertEquals(List.of(new Order(iceberg.orderId(), 10, 30), new Order(ask.orderId(), 10, 20)),
+                testClientDsl.requestAndReceiveAllAsks());
+
+        testClientDsl.placeOrderAndAwaitResult(10, 40, Side.BID);
+
+        assertEquals(List.of(new Order(ask.orderId(), 10, 10), new Order(iceberg.orderId(), 10, 30)),
+                testClientDsl.requestAndReceiveAllAsks());
+    }
+
+    @Test
+    public void stopOrdersWaitForATradeAtTheirTriggerPrice()
+    {
+        testClientDsl.placeOrderAndAwaitResult(10, 50, Side.ASK);
+        testClientDsl.placeOrderAndAwaitResult(12, 50, Side.ASK);
+        assertEquals(Status.PENDING, testClientDsl.placeStopLimitOrderAndAwaitResult(10, 11, 20, Side.BID).getStatus());
+        assertEquals(Status.PENDING, testClientDsl.placeStopOrderAndAwaitResult(10, 40, Side.BID).getStatus());
+        assertEquals(50, testClientDsl.requestAndReceiveTopOfBook().getAskSize());
+
+        testClientDsl.placeOrderAndAwaitResult(10, 5, Side.BID);
+
+        TopOfBook topOfBook = testClientDsl.requestAndReceiveTopOfBook();
+        assertEquals(12, topOfBook.getAskPrice());
+        assertEquals(35, topOfBook.getAskSize());
+        assertEquals(0, topOfBook.getBidSize());
+    }
+
+    @Test
+    public void goodTillTimeOrdersAreCancelledAtTheirExpireTime()
+    {
+        final long now = System.currentTimeMillis();
+        TestOrder expiring = testClientDsl.placeGoodTillTimeOrderAndAwaitResult(10, 100, Side.ASK, now + 200);
+        TestOrder kept = testClientDsl.placeGoodTillTimeOrderAndAwaitResult(11, 100, Side.ASK, now + 3_600_000);
+
+        assertEquals(List.of(expiring.orderId()), testClientDsl.awaitExpiredOrders(1));
+        assertEquals(List.of(new Order(kept.orderId(), 11, 100)), testClientDsl.requestAndReceiveAllAsks());
+    }
+
+    @Test
+    public void expiriesAreOnlySentToTheSessionThatOwnsTheOrder()
+    {
+        final TestClientDsl otherClient = new TestClientDsl(maxNodes);
+        otherClient.startClient();
+        final long now = System.currentTimeMillis();
+        TestOrder own = testClientDsl.placeGoodTillTimeOrderAndAwaitResult(10, 100, Side.ASK, now + 200);
+        TestOrder other = otherClient.placeGoodTillTimeOrderAndAwaitResult(11, 100, Side.ASK, now + 200);
+
+        // both expire in the same batch, so an expiry sent to every session would arrive with the session's own
+        assertEquals(List.of(own.orderId()), testClientDsl.awaitExpiredOrders(1));
+        assertEquals(List.of(other.orderId()), otherClient.awaitExpiredOrders(1));
+        otherClient.close();
+    }
+
+    @Test
+    public void goodTillTimeOrderThatHasAlreadyExpiredIsRejected()
+    {
+        final long expireTime = System.currentTimeMillis() - 1_000;
+        final ExecutionResult result = testClientDsl.placeGoodTillTimeOrderAndAwaitExecutionResult(10, 100, Side.ASK,
+                expireTime);
+
+        assertEquals(Status.NONE, result.getStatus());
+        assertTrue(testClientDsl.requestAndReceiveAllAsks().isEmpty());
+    }
+
+    @Test
+    public void auctionOrdersRestUntilTheUncrossFillsThemAtOnePrice()
+    {
+        assertEquals(Status.SUCCESS, testClientDsl.startAuction());
+        TestOrder bid = testClientDsl.placeOrderAndAwaitResult(12, 10, Side.BID);
+        TestOrder ask = testClientDsl.placeOrderAndAwaitResult(10, 8, Side.ASK);
+        assertEquals(Status.CANCELLED, testClientDsl.placeOrderAndAwaitResult(10, 5, Side.ASK, TimeInForce.IOC).getStatus());
+
+        assertEquals(List.of(new TestOrder(bid.orderId(), 12, 8), new TestOrder(ask.orderId(), 12, 8)),
+                testClientDsl.uncrossAndAwaitFills(2));
+        assertEquals(List.of(new TestTrade(ask.orderId(), bid.orderId(), 12, 8)), testClientDsl.awaitTrades(1));
+        assertEquals(List.of(new Order(bid.orderId(), 12, 2)), testClientDsl.requestAndReceiveAllBids());
+        assertTrue(testClientDsl.requestAndReceiveAllAsks().isEmpty());
+    }
 }
@@ -0,0 +1,74 @@
+package com.weareadaptive.oms;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import weareadaptive.com.cluster.services.oms.IOrderbook;
+import weareadaptive.com.cluster.services.oms.OrderbookType;
+import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes allocated per order over the full lifecycle of resting, filling and cancelling, in a book that stays the same
+ * size. Run with the GC profiler and read gc.alloc.rate.norm, which should be 0 B/op for every book except
+ * TREE_SET once warm.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderbookAllocationBenchmark
+{
+    private static final long MID = 1000;
+    private static final int LEVELS = 100;
+    private static final int ORDERS_PER_SIDE = 10000;
+
+    @Param({"TREE_SET", "PRICE_LEVEL", "OFF_HEAP", "ARRAY", "BOUNDED"})
+    private OrderbookType orderbookType;
+
+    private IOrderbook orderbook;
+    private long step;
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(OrderbookAllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        orderbook = orderbookType.create();
+        for (int i = 0; i < ORDERS_PER_SIDE; i++)
+        {
+            orderbook.placeOrder(MID + 1 + (i % LEVELS), 10, Side.ASK);
+            orderbook.placeOrder(MID - 1 - (i % LEVELS), 10, Side.BID);
+        }
+    }
+
+    @Benchmark
+    public long restAndCancel()
+    {
+        final long price = MID + 1 + (step++ % LEVELS);
+        final long orderId = orderbook.placeOrder(price, 10, Side.ASK).getOrderId();
+        return orderbook.cancelOrder(orderId).getOrderId();
+    }
+
+    /**
+     * Each aggressive order fills one resting order, which is then replaced, so the book keeps its depth
+     */
+    @Benchmark
+    public ExecutionResult fillAndReplace()
+    {
+        final long price = MID + 1 + (step++ % LEVELS);
+        orderbook.placeOrder(price, 10, Side.ASK);
+        return orderbook.placeOrder(MID + 1 + LEVELS, 10, Side.BID);
+    }
+}
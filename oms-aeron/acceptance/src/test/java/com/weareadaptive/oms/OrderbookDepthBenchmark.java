@@ -0,0 +1,61 @@
+package com.weareadaptive.oms;
+
+import org.openjdk.jmh.annotations.*;
+import weareadaptive.com.cluster.services.oms.IOrderbook;
+import weareadaptive.com.cluster.services.oms.OrderbookType;
+import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of an aggressive order that only fills the top of the book, and of a cancel, as the number of resting
+ * orders grows. The top ask is large enough that it is never filled, so the book stays the same depth for the whole run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderbookDepthBenchmark
+{
+    private static final long TOP_OF_BOOK = 100;
+    private static final int LEVELS = 1000;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int depth;
+
+    @Param({"TREE_SET", "PRICE_LEVEL", "OFF_HEAP", "ARRAY", "BOUNDED"})
+    private OrderbookType orderbookType;
+
+    private IOrderbook orderbook;
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        orderbook = orderbookType.create();
+        orderbook.placeOrder(TOP_OF_BOOK, Long.MAX_VALUE / 2, Side.ASK);
+        for (int i = 1; i < depth; i++)
+        {
+            orderbook.placeOrder(TOP_OF_BOOK + 1 + (i % LEVELS), 10, Side.ASK);
+        }
+    }
+
+    @Benchmark
+    public ExecutionResult aggressiveBidFillingTopLevel()
+    {
+        return orderbook.placeOrder(TOP_OF_BOOK, 1, Side.BID);
+    }
+
+    @Benchmark
+    public ExecutionResult placeAndCancelBehindTopLevel()
+    {
+        final long orderId = orderbook.placeOrder(TOP_OF_BOOK + LEVELS / 2, 1, Side.ASK).getOrderId();
+        return orderbook.cancelOrder(orderId);
+    }
+}
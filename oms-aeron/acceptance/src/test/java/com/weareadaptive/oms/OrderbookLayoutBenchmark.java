@@ -0,0 +1,98 @@
+package com.weareadaptive.oms;
+
+import org.openjdk.jmh.annotations.*;
+import weareadaptive.com.cluster.services.oms.IOrderbook;
+import weareadaptive.com.cluster.services.oms.OrderbookType;
+import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching cost for each order storage layout in the two scenarios where it is dominated by walking resting orders:
+ * - sweepTheBook: one aggressive order that clears every order on the first {@link #SWEPT_LEVELS} ask levels
+ * - fillThroughDeepLevel: one aggressive order that fills {@link #FILLED_ORDERS} orders queued at a single deep level
+ * What an invocation consumes is put back before the next one, behind the orders still resting, so the shape of the
+ * book stays the same for the whole run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderbookLayoutBenchmark
+{
+    private static final long TOP_OF_BOOK = 1000;
+    private static final int LEVELS = 1000;
+    private static final int SWEPT_LEVELS = 100;
+    private static final int FILLED_ORDERS = 1000;
+    private static final long ORDER_SIZE = 10;
+
+    @Param({"10", "100"})
+    private int ordersPerLevel;
+
+    @Param({"TREE_SET", "PRICE_LEVEL", "OFF_HEAP", "ARRAY", "BOUNDED"})
+    private OrderbookType orderbookType;
+
+    private IOrderbook sweptOrderbook;
+    private IOrderbook deepOrderbook;
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        sweptOrderbook = orderbookType.create();
+        for (int i = 0; i < ordersPerLevel; i++)
+        {
+            for (int level = 0; level < LEVELS; level++)
+            {
+                sweptOrderbook.placeOrder(TOP_OF_BOOK + level, ORDER_SIZE, Side.ASK);
+            }
+        }
+
+        deepOrderbook = orderbookType.create();
+        for (int i = 0; i < FILLED_ORDERS * ordersPerLevel; i++)
+        {
+            deepOrderbook.placeOrder(TOP_OF_BOOK, ORDER_SIZE, Side.ASK);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void refill()
+    {
+        if (sweptOrderbook.getAsks().size() < LEVELS * ordersPerLevel)
+        {
+            for (int level = 0; level < SWEPT_LEVELS; level++)
+            {
+                for (int i = 0; i < ordersPerLevel; i++)
+                {
+                    sweptOrderbook.placeOrder(TOP_OF_BOOK + level, ORDER_SIZE, Side.ASK);
+                }
+            }
+        }
+        if (deepOrderbook.getAsks().size() < FILLED_ORDERS * ordersPerLevel)
+        {
+            for (int i = 0; i < FILLED_ORDERS; i++)
+            {
+                deepOrderbook.placeOrder(TOP_OF_BOOK, ORDER_SIZE, Side.ASK);
+            }
+        }
+    }
+
+    @Benchmark
+    public ExecutionResult sweepTheBook()
+    {
+        final long sweptSize = SWEPT_LEVELS * ordersPerLevel * ORDER_SIZE;
+        return sweptOrderbook.placeOrder(TOP_OF_BOOK + SWEPT_LEVELS - 1, sweptSize, Side.BID);
+    }
+
+    @Benchmark
+    public ExecutionResult fillThroughDeepLevel()
+    {
+        return deepOrderbook.placeOrder(TOP_OF_BOOK, FILLED_ORDERS * ORDER_SIZE, Side.BID);
+    }
+}
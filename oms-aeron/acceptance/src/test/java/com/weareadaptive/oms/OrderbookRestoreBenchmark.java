@@ -0,0 +1,105 @@
+package com.weareadaptive.oms;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.*;
+import weareadaptive.com.cluster.services.oms.IOrderbook;
+import weareadaptive.com.cluster.services.oms.OrderStore;
+import weareadaptive.com.cluster.services.oms.OrderbookType;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to restore a book from its snapshot records as the number of resting orders grows, which is most of the time a
+ * node takes to fail over. The records are read back in the order the book wrote them, ten orders to a level, and
+ * restored into a book reset before each restore.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderbookRestoreBenchmark
+{
+    private static final long MID_PRICE = 100_000;
+    private static final int ORDERS_PER_LEVEL = 10;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int depth;
+
+    @Param({"TREE_SET", "PRICE_LEVEL", "OFF_HEAP", "ARRAY", "BOUNDED"})
+    private OrderbookType orderbookType;
+
+    private IOrderbook orderbook;
+    private UnsafeBuffer askRecords;
+    private UnsafeBuffer bidRecords;
+    private int recordOffset;
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        orderbook = orderbookType.create();
+        for (int i = 0; i < depth; i++)
+        {
+            final long ticks = 1 + i / 2 / ORDERS_PER_LEVEL;
+            if (i % 2 == 0)
+            {
+                orderbook.placeOrder(MID_PRICE + ticks, 10, Side.ASK);
+            }
+            else
+            {
+                orderbook.placeOrder(MID_PRICE - ticks, 10, Side.BID);
+            }
+        }
+        askRecords = copyRecords(Side.ASK);
+        bidRecords = copyRecords(Side.BID);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetBook()
+    {
+        orderbook.reset();
+    }
+
+    @Benchmark
+    public IOrderbook restore()
+    {
+        restoreSide(askRecords, Side.ASK);
+        restoreSide(bidRecords, Side.BID);
+        orderbook.finishRestore();
+        return orderbook;
+    }
+
+    private UnsafeBuffer copyRecords(final Side side)
+    {
+        final UnsafeBuffer records = new UnsafeBuffer(
+                ByteBuffer.allocateDirect(orderbook.getOrderCount(side) * OrderStore.RECORD_LENGTH));
+        recordOffset = 0;
+        orderbook.forEachOrderRecord(side, (buffer, offset) ->
+        {
+            records.putBytes(recordOffset, buffer, offset, OrderStore.RECORD_LENGTH);
+            recordOffset += OrderStore.RECORD_LENGTH;
+        });
+        return records;
+    }
+
+    private void restoreSide(final UnsafeBuffer records, final Side side)
+    {
+        for (int offset = 0; offset < records.capacity(); offset += OrderStore.RECORD_LENGTH)
+        {
+            orderbook.restoreOrder(records.getLong(offset, ByteOrder.LITTLE_ENDIAN),
+                    records.getLong(offset + Long.BYTES, ByteOrder.LITTLE_ENDIAN),
+                    records.getLong(offset + 2 * Long.BYTES, ByteOrder.LITTLE_ENDIAN), side,
+                    records.getLong(offset + 3 * Long.BYTES, ByteOrder.LITTLE_ENDIAN),
+                    records.getLong(offset + 4 * Long.BYTES, ByteOrder.LITTLE_ENDIAN),
+                    records.getLong(offset + 5 * Long.BYTES, ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+}
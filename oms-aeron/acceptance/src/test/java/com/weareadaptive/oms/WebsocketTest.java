@@ -282,6 +282,30 @@ public class WebsocketTest
         assertTrue(testContext.awaitCompletion(20, TimeUnit.SECONDS));
     }
 
+    @Test
+    @DisplayName("Place order with an unknown order type and receive error response from server")
+    public void wsUnknownOrderTypeRequest(final VertxTestContext testContext) throws Throwable
+    {
+        /*
+         *   Sends websocket request to server to place an order of a type that does not exist
+         *   Should receive an error response rather than no response at all
+         */
+        vertxClient.webSocket(8080, "localhost", "/").onSuccess(websocket -> {
+            JsonObject orderRequest = new JsonObject();
+            orderRequest.put("method", "place");
+            orderRequest.put("order", JsonObject.of("price", 10.00, "size", 10, "side", "BID", "type", "NONSENSE"));
+            Buffer request = Buffer.buffer(orderRequest.encode());
+            websocket.write(request);
+
+            websocket.handler(data -> {
+                final var errorDTO = data.toJsonObject().mapTo(ErrorCommand.class);
+                assertEquals(400, errorDTO.code());
+                testContext.completeNow();
+            });
+        });
+        assertTrue(testContext.awaitCompletion(20, TimeUnit.SECONDS));
+    }
+
     @Test
     @DisplayName("Cancel Order request from client and receive response from server")
     public void wsCancelOrderRequest(final VertxTestContext testContext) throws Throwable
@@ -363,4 +387,56 @@ public class WebsocketTest
         assertTrue(testContext.awaitCompletion(20, TimeUnit.SECONDS));
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("A trade is pushed to the websockets of both the resting and the incoming order")
+    public void wsTradeIsPushedToBothSides(final VertxTestContext testContext) throws Throwable
+    {
+        /*
+         *   One websocket rests an ask and another crosses it with a bid
+         *   Both should receive the fill as a trades event after their execution results
+         */
+        final var bothSidesHeard = testContext.checkpoint(2);
+        vertxClient.webSocket(8080, "localhost", "/").onSuccess(passive -> {
+            passive.handler(data -> {
+                final JsonObject message = data.toJsonObject();
+                if (message.containsKey("event"))
+                {
+                    assertTrade(message, Side.BID, 5);
+                    bothSidesHeard.flag();
+                    return;
+                }
+                assertEquals(Status.RESTING.name(), message.getString("status"));
+                vertxClient.webSocket(8080, "localhost", "/").onSuccess(aggressor -> {
+                    aggressor.handler(aggressorData -> {
+                        final JsonObject aggressorMessage = aggressorData.toJsonObject();
+                        if (aggressorMessage.containsKey("event"))
+                        {
+                            assertTrade(aggressorMessage, Side.BID, 5);
+                            bothSidesHeard.flag();
+                            return;
+                        }
+                        assertEquals(Status.FILLED.name(), aggressorMessage.getString("status"));
+                    });
+                    aggressor.write(placeRequest(new OrderCommand(10, 5, Side.BID)));
+                });
+            });
+            passive.write(placeRequest(new OrderCommand(10, 15, Side.ASK)));
+        });
+        assertTrue(testContext.awaitCompletion(20, TimeUnit.SECONDS));
+        if (testContext.failed()) throw testContext.causeOfFailure();
+    }
+
+    private static Buffer placeRequest(final OrderCommand order)
+    {
+        return Buffer.buffer(JsonObject.of("method", "place", "order", JsonObject.mapFrom(order)).encode());
+    }
+
+    private static void assertTrade(final JsonObject trades, final Side aggressorSide, final long size)
+    {
+        assertEquals("trades", trades.getString("event"));
+        final JsonArray fills = trades.getJsonArray("fills");
+        assertEquals(1, fills.size());
+        assertEquals(aggressorSide.name(), fills.getJsonObject(0).getString("aggressorSide"));
+        assertEquals(size, fills.getJsonObject(0).getLong("size"));
+    }
+}
@@ -1,13 +1,30 @@
 package com.weareadaptive.oms.dsl;
 
+import com.weareadaptive.oms.util.TestOrder;
+import com.weareadaptive.oms.util.TestTrade;
+import com.weareadaptive.sbe.AuctionFillsDecoder;
+import com.weareadaptive.sbe.BboDecoder;
+import com.weareadaptive.sbe.DepthDecoder;
 import com.weareadaptive.sbe.ExecutionResultDecoder;
+import com.weareadaptive.sbe.MassCancelResultDecoder;
 import com.weareadaptive.sbe.OrderDecoder;
 import com.weareadaptive.sbe.OrderIdDecoder;
+import com.weareadaptive.sbe.OrdersExpiredDecoder;
+import com.weareadaptive.sbe.SessionOrdersCancelledDecoder;
 import com.weareadaptive.sbe.SuccessMessageDecoder;
+import com.weareadaptive.sbe.TradesDecoder;
 import org.agrona.DirectBuffer;
+import weareadaptive.com.cluster.services.oms.OMSService;
 import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.MarketDepth;
 import weareadaptive.com.cluster.services.oms.util.Order;
+import weareadaptive.com.cluster.services.oms.util.Side;
 import weareadaptive.com.cluster.services.oms.util.Status;
+import weareadaptive.com.cluster.services.oms.util.TopOfBook;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TestClientCodec
 {
@@ -15,6 +32,13 @@ public class TestClientCodec
     private final ExecutionResultDecoder executionResultDecoder = new ExecutionResultDecoder();
     private final SuccessMessageDecoder successMessageDecoder = new SuccessMessageDecoder();
     private final OrderDecoder orderDecoder = new OrderDecoder();
+    private final BboDecoder bboDecoder = new BboDecoder();
+    private final DepthDecoder depthDecoder = new DepthDecoder();
+    private final MassCancelResultDecoder massCancelResultDecoder = new MassCancelResultDecoder();
+    private final SessionOrdersCancelledDecoder sessionOrdersCancelledDecoder = new SessionOrdersCancelledDecoder();
+    private final OrdersExpiredDecoder ordersExpiredDecoder = new OrdersExpiredDecoder();
+    private final AuctionFillsDecoder auctionFillsDecoder = new AuctionFillsDecoder();
+    private final TradesDecoder tradesDecoder = new TradesDecoder();
 
     protected ExecutionResult getExecutionResult(final DirectBuffer buffer, final int offset, final int actingBlockLength,
                                                  final int actingVersion)
@@ -42,4 +66,83 @@ public class TestClientCodec
         orderDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
         return new Order(orderDecoder.orderId(), orderDecoder.price(), orderDecoder.size());
     }
+
+    protected TopOfBook getTopOfBook(final DirectBuffer buffer, final int offset, final int actingBlockLength, final int actingVersion)
+    {
+        bboDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final TopOfBook topOfBook = new TopOfBook();
+        topOfBook.setBid(bboDecoder.bidPrice(), bboDecoder.bidSize());
+        topOfBook.setAsk(bboDecoder.askPrice(), bboDecoder.askSize());
+        return topOfBook;
+    }
+
+    protected long getCancelledCount(final DirectBuffer buffer, final int offset, final int actingBlockLength, final int actingVersion)
+    {
+        massCancelResultDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        return massCancelResultDecoder.cancelledCount();
+    }
+
+    /**
+     * Add the orderIds of one sessionOrdersCancelled batch to the ones already received for the closed session
+     */
+    protected void addCancelledOrderIds(final DirectBuffer buffer, final int offset, final int actingBlockLength,
+                                        final int actingVersion, final Map<Long, List<Long>> cancelledOrderIdsBySession)
+    {
+        sessionOrdersCancelledDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final List<Long> orderIds = cancelledOrderIdsBySession.computeIfAbsent(
+                sessionOrdersCancelledDecoder.sessionId(), sessionId -> new CopyOnWriteArrayList<>());
+        for (SessionOrdersCancelledDecoder.OrdersDecoder order : sessionOrdersCancelledDecoder.orders())
+        {
+            orderIds.add(order.orderId());
+        }
+    }
+
+    protected void addExpiredOrderIds(final DirectBuffer buffer, final int offset, final int actingBlockLength,
+                                      final int actingVersion, final List<Long> expiredOrderIds)
+    {
+        ordersExpiredDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        for (OrdersExpiredDecoder.OrdersDecoder order : ordersExpiredDecoder.orders())
+        {
+            expiredOrderIds.add(order.orderId());
+        }
+    }
+
+    /**
+     * Each fill of an uncross as the order id with the size it traded at the auction price
+     */
+    protected void addAuctionFills(final DirectBuffer buffer, final int offset, final int actingBlockLength,
+                                   final int actingVersion, final List<TestOrder> auctionFills)
+    {
+        auctionFillsDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final long price = auctionFillsDecoder.price();
+        for (AuctionFillsDecoder.FillsDecoder fill : auctionFillsDecoder.fills())
+        {
+            auctionFills.add(new TestOrder(fill.orderId(), price, fill.size()));
+        }
+    }
+
+    protected void addTrades(final DirectBuffer buffer, final int offset, final int actingBlockLength,
+                             final int actingVersion, final List<TestTrade> trades)
+    {
+        tradesDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        for (TradesDecoder.FillsDecoder fill : tradesDecoder.fills())
+        {
+            trades.add(new TestTrade(fill.aggressorOrderId(), fill.passiveOrderId(), fill.price(), fill.size()));
+        }
+    }
+
+    protected MarketDepth getDepth(final DirectBuffer buffer, final int offset, final int actingBlockLength, final int actingVersion)
+    {
+        depthDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final MarketDepth depth = new MarketDepth(OMSService.MAX_DEPTH_LEVELS);
+        for (DepthDecoder.BidsDecoder level : depthDecoder.bids())
+        {
+            depth.addLevel(Side.BID, level.price(), level.size(), (int) level.orderCount());
+        }
+        for (DepthDecoder.AsksDecoder level : depthDecoder.asks())
+        {
+            depth.addLevel(Side.ASK, level.price(), level.size(), (int) level.orderCount());
+        }
+        return depth;
+    }
 }
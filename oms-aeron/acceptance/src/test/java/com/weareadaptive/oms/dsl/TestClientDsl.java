@@ -1,6 +1,7 @@
 package com.weareadaptive.oms.dsl;
 
 import com.weareadaptive.oms.util.TestOrder;
+import com.weareadaptive.oms.util.TestTrade;
 import org.agrona.CloseHelper;
 import org.agrona.concurrent.AgentRunner;
 import org.agrona.concurrent.BusySpinIdleStrategy;
@@ -10,6 +11,7 @@ import weareadaptive.com.cluster.services.oms.util.*;
 import java.util.List;
 
 import static org.awaitility.Awaitility.await;
+import static weareadaptive.com.cluster.services.oms.OrderbookRegistry.DEFAULT_INSTRUMENT_ID;
 
 public class TestClientDsl implements AutoCloseable
 {
@@ -17,16 +19,26 @@ public class TestClientDsl implements AutoCloseable
     private AgentRunner clientAgentRunner;
     private final IdleStrategy idleStrategy = new BusySpinIdleStrategy();
     private final int maxNodes;
+    private final String clientId;
 
 
     public TestClientDsl(final int maxNodes)
+    {
+        this(maxNodes, "");
+    }
+
+    /**
+     * A client that connects with clientId as its credentials, so the cluster knows it again when it reconnects
+     */
+    public TestClientDsl(final int maxNodes, final String clientId)
     {
         this.maxNodes = maxNodes;
+        this.clientId = clientId;
     }
 
     public void startClient()
     {
-        clientAgent = new TestGatewayAgent(maxNodes);
+        clientAgent = new TestGatewayAgent(maxNodes, clientId);
         clientAgentRunner = new AgentRunner(idleStrategy, Throwable::printStackTrace,
                 null, clientAgent);
         AgentRunner.startOnThread(clientAgentRunner);
@@ -34,41 +46,203 @@ public class TestClientDsl implements AutoCloseable
         await().until(() -> clientAgent.isActive());
     }
 
-    public TestOrder placeOrderAndAwaitResult(final double price, final long size, final Side side)
+    public TestOrder placeOrderAndAwaitResult(final long price, final long size, final Side side)
+    {
+        return placeOrderAndAwaitResult(DEFAULT_INSTRUMENT_ID, price, size, side);
+    }
+
+    public TestOrder placeOrderAndAwaitResult(final int instrumentId, final long price, final long size, final Side side)
+    {
+        final long correlationId = clientAgent.placeOrder(instrumentId, price, size, side);
+        final ExecutionResult executionResult = clientAgent.getReceivedExecutionResult(correlationId);
+        return new TestOrder(executionResult.getOrderId(), price, size);
+    }
+
+    public ExecutionResult placeOrderAndAwaitExecutionResult(final int instrumentId, final long price, final long size,
+                                                             final Side side)
     {
-        final long correlationId = clientAgent.placeOrder(price, size, side);
+        return clientAgent.getReceivedExecutionResult(clientAgent.placeOrder(instrumentId, price, size, side));
+    }
+
+    public ExecutionResult placeOrderAndAwaitResult(final long price, final long size, final Side side,
+                                                    final TimeInForce timeInForce)
+    {
+        return clientAgent.getReceivedExecutionResult(clientAgent.placeOrder(DEFAULT_INSTRUMENT_ID, price, size, side,
+                OrderType.LIMIT, timeInForce, 0));
+    }
+
+    public TestOrder placeIcebergOrderAndAwaitResult(final long price, final long size, final Side side,
+                                                     final long displaySize)
+    {
+        final long correlationId = clientAgent.placeOrder(DEFAULT_INSTRUMENT_ID, price, size, side, OrderType.LIMIT,
+                TimeInForce.GTC, displaySize);
         final ExecutionResult executionResult = clientAgent.getReceivedExecutionResult(correlationId);
         return new TestOrder(executionResult.getOrderId(), price, size);
     }
 
+    public ExecutionResult placeStopOrderAndAwaitResult(final long triggerPrice, final long size, final Side side)
+    {
+        return clientAgent.getReceivedExecutionResult(clientAgent.placeOrder(DEFAULT_INSTRUMENT_ID, 0, size, side,
+                OrderType.STOP, TimeInForce.GTC, 0, triggerPrice));
+    }
+
+    public ExecutionResult placeStopLimitOrderAndAwaitResult(final long triggerPrice, final long price, final long size,
+                                                             final Side side)
+    {
+        return clientAgent.getReceivedExecutionResult(clientAgent.placeOrder(DEFAULT_INSTRUMENT_ID, price, size, side,
+                OrderType.STOP_LIMIT, TimeInForce.GTC, 0, triggerPrice));
+    }
+
+    public TestOrder placeGoodTillTimeOrderAndAwaitResult(final long price, final long size, final Side side,
+                                                          final long expireTime)
+    {
+        final long correlationId = clientAgent.placeOrder(DEFAULT_INSTRUMENT_ID, price, size, side, OrderType.LIMIT,
+                TimeInForce.GTT, 0, 0, expireTime);
+        final ExecutionResult executionResult = clientAgent.getReceivedExecutionResult(correlationId);
+        return new TestOrder(executionResult.getOrderId(), price, size);
+    }
+
+    public ExecutionResult placeGoodTillTimeOrderAndAwaitExecutionResult(final long price, final long size,
+                                                                         final Side side, final long expireTime)
+    {
+        return clientAgent.getReceivedExecutionResult(clientAgent.placeOrder(DEFAULT_INSTRUMENT_ID, price, size, side,
+                OrderType.LIMIT, TimeInForce.GTT, 0, 0, expireTime));
+    }
+
+    public ExecutionResult placeMarketOrderAndAwaitResult(final long size, final Side side, final TimeInForce timeInForce)
+    {
+        return clientAgent.getReceivedExecutionResult(clientAgent.placeOrder(DEFAULT_INSTRUMENT_ID, 0, size, side,
+                OrderType.MARKET, timeInForce, 0));
+    }
+
     public Status clearOrderbook()
     {
-        return clientAgent.getReceivedStatus(clientAgent.sendHeaderMessage(Method.CLEAR));
+        return clientAgent.getReceivedStatus(clientAgent.sendHeaderMessage(Method.CLEAR, DEFAULT_INSTRUMENT_ID));
     }
 
     public long requestCurrentIdAndAwaitCurrentOrderId()
     {
-        return clientAgent.getReceivedOrderId(clientAgent.sendHeaderMessage(Method.CURRENT_ORDER_ID));
+        return clientAgent.getReceivedOrderId(clientAgent.sendHeaderMessage(Method.CURRENT_ORDER_ID, DEFAULT_INSTRUMENT_ID));
     }
 
     public ExecutionResult requestCancelOrderAndAwaitResult(final long orderId)
     {
-        return clientAgent.getReceivedExecutionResult(clientAgent.cancelOrder(orderId));
+        return requestCancelOrderAndAwaitResult(DEFAULT_INSTRUMENT_ID, orderId);
+    }
+
+    public ExecutionResult requestCancelOrderAndAwaitResult(final int instrumentId, final long orderId)
+    {
+        return clientAgent.getReceivedExecutionResult(clientAgent.cancelOrder(instrumentId, orderId));
+    }
+
+    public ExecutionResult requestAmendOrderAndAwaitResult(final long orderId, final long price, final long size)
+    {
+        return requestAmendOrderAndAwaitResult(DEFAULT_INSTRUMENT_ID, orderId, price, size);
+    }
+
+    public ExecutionResult requestAmendOrderAndAwaitResult(final int instrumentId, final long orderId, final long price,
+                                                           final long size)
+    {
+        return clientAgent.getReceivedExecutionResult(clientAgent.amendOrder(instrumentId, orderId, price, size));
+    }
+
+    /**
+     * Cancel this client's orders on one side, or both when side is null, priced from minPrice to maxPrice
+     */
+    public long requestMassCancelAndAwaitResult(final Side side, final long minPrice, final long maxPrice)
+    {
+        return clientAgent.getReceivedCancelledCount(
+                clientAgent.massCancel(DEFAULT_INSTRUMENT_ID, side, minPrice, maxPrice, false));
+    }
+
+    public long getSessionId()
+    {
+        return clientAgent.getSessionId();
+    }
+
+    /**
+     * Orders the cluster cancelled when an earlier session of this client closed, once count of them have arrived
+     */
+    public List<Long> awaitCancelledOrdersOfSession(final long sessionId, final int count)
+    {
+        return clientAgent.getCancelledOrderIds(sessionId, count);
+    }
+
+    public List<Long> receivedCancelledOrdersOfSession(final long sessionId)
+    {
+        return clientAgent.getReceivedCancelledOrderIds(sessionId);
+    }
+
+    public List<Long> awaitExpiredOrders(final int count)
+    {
+        return clientAgent.getExpiredOrderIds(count);
+    }
+
+    /**
+     * Trades this client's orders took part in, as aggressor or as the resting order, once count of them have arrived
+     */
+    public List<TestTrade> awaitTrades(final int count)
+    {
+        return clientAgent.getTrades(count);
+    }
+
+    public Status startAuction()
+    {
+        return clientAgent.getReceivedStatus(clientAgent.sendHeaderMessage(Method.START_AUCTION, DEFAULT_INSTRUMENT_ID));
+    }
+
+    /**
+     * Uncross the auction and collect the fills broadcast for it, once count of them have arrived
+     */
+    public List<TestOrder> uncrossAndAwaitFills(final int count)
+    {
+        clientAgent.getReceivedStatus(clientAgent.sendHeaderMessage(Method.UNCROSS, DEFAULT_INSTRUMENT_ID));
+        return clientAgent.getAuctionFills(count);
     }
 
     public Status resetOrderbook()
     {
-        return clientAgent.getReceivedStatus(clientAgent.sendHeaderMessage(Method.RESET));
+        return clientAgent.getReceivedStatus(clientAgent.sendHeaderMessage(Method.RESET, DEFAULT_INSTRUMENT_ID));
     }
 
     public List<Order> requestAndReceiveAllAsks()
     {
-        return clientAgent.getReceivedOrders(clientAgent.sendHeaderMessage(Method.ASKS));
+        return requestAndReceiveAllAsks(DEFAULT_INSTRUMENT_ID);
+    }
+
+    public List<Order> requestAndReceiveAllAsks(final int instrumentId)
+    {
+        return clientAgent.getReceivedOrders(clientAgent.sendHeaderMessage(Method.ASKS, instrumentId));
     }
 
     public List<Order> requestAndReceiveAllBids()
     {
-        return clientAgent.getReceivedOrders(clientAgent.sendHeaderMessage(Method.BIDS));
+        return requestAndReceiveAllBids(DEFAULT_INSTRUMENT_ID);
+    }
+
+    public List<Order> requestAndReceiveAllBids(final int instrumentId)
+    {
+        return clientAgent.getReceivedOrders(clientAgent.sendHeaderMessage(Method.BIDS, instrumentId));
+    }
+
+    public TopOfBook requestAndReceiveTopOfBook()
+    {
+        return requestAndReceiveTopOfBook(DEFAULT_INSTRUMENT_ID);
+    }
+
+    public TopOfBook requestAndReceiveTopOfBook(final int instrumentId)
+    {
+        return clientAgent.getReceivedTopOfBook(clientAgent.sendHeaderMessage(Method.BBO, instrumentId));
+    }
+
+    public MarketDepth requestAndReceiveDepth(final int levels)
+    {
+        return requestAndReceiveDepth(DEFAULT_INSTRUMENT_ID, levels);
+    }
+
+    public MarketDepth requestAndReceiveDepth(final int instrumentId, final int levels)
+    {
+        return clientAgent.getReceivedDepth(clientAgent.requestDepth(instrumentId, levels));
     }
 
     @Override
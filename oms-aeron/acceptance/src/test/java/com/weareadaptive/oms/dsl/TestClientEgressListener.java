@@ -1,12 +1,16 @@
 package com.weareadaptive.oms.dsl;
 
+import com.weareadaptive.oms.util.TestOrder;
+import com.weareadaptive.oms.util.TestTrade;
 import com.weareadaptive.sbe.*;
 import io.aeron.cluster.client.EgressListener;
 import io.aeron.logbuffer.Header;
 import org.agrona.DirectBuffer;
 import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.MarketDepth;
 import weareadaptive.com.cluster.services.oms.util.Order;
 import weareadaptive.com.cluster.services.oms.util.Status;
+import weareadaptive.com.cluster.services.oms.util.TopOfBook;
 import weareadaptive.com.gateway.exception.BadFieldException;
 
 import java.util.ArrayList;
@@ -14,6 +18,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TestClientEgressListener implements EgressListener
 {
@@ -24,6 +29,13 @@ public class TestClientEgressListener implements EgressListener
     private final HashMap<Long, ExecutionResult> receivedExecutionResults = new HashMap<>();
     private final HashMap<Long, Status> receivedStatus = new HashMap<>();
     private final HashMap<Long, Long> receivedOrderId = new HashMap<>();
+    private final HashMap<Long, TopOfBook> receivedTopOfBook = new HashMap<>();
+    private final HashMap<Long, MarketDepth> receivedDepth = new HashMap<>();
+    private final HashMap<Long, Long> receivedCancelledCount = new HashMap<>();
+    private final Map<Long, List<Long>> cancelledOrderIdsBySession = new ConcurrentHashMap<>();
+    private final List<Long> expiredOrderIds = new CopyOnWriteArrayList<>();
+    private final List<TestOrder> auctionFills = new CopyOnWriteArrayList<>();
+    private final List<TestTrade> trades = new CopyOnWriteArrayList<>();
 
     @Override
     public void onMessage(long clusterSessionId, long timestamp, DirectBuffer buffer, int offset, int length, Header header)
@@ -55,6 +67,20 @@ public class TestClientEgressListener implements EgressListener
             case OrderIdDecoder.TEMPLATE_ID ->
                     receivedOrderId.put(correlationId, codec.getOrderId(buffer, bufferOffset, actingBlockLength, actingVersion));
             case EndOfOrdersDecoder.TEMPLATE_ID -> receivedOrders.put(correlationId, getOrdersResponse(correlationId));
+            case BboDecoder.TEMPLATE_ID ->
+                    receivedTopOfBook.put(correlationId, codec.getTopOfBook(buffer, bufferOffset, actingBlockLength, actingVersion));
+            case MassCancelResultDecoder.TEMPLATE_ID -> receivedCancelledCount.put(correlationId,
+                    codec.getCancelledCount(buffer, bufferOffset, actingBlockLength, actingVersion));
+            case SessionOrdersCancelledDecoder.TEMPLATE_ID -> codec.addCancelledOrderIds(buffer, bufferOffset,
+                    actingBlockLength, actingVersion, cancelledOrderIdsBySession);
+            case OrdersExpiredDecoder.TEMPLATE_ID -> codec.addExpiredOrderIds(buffer, bufferOffset,
+                    actingBlockLength, actingVersion, expiredOrderIds);
+            case AuctionFillsDecoder.TEMPLATE_ID -> codec.addAuctionFills(buffer, bufferOffset,
+                    actingBlockLength, actingVersion, auctionFills);
+            case TradesDecoder.TEMPLATE_ID -> codec.addTrades(buffer, bufferOffset,
+                    actingBlockLength, actingVersion, trades);
+            case DepthDecoder.TEMPLATE_ID ->
+                    receivedDepth.put(correlationId, codec.getDepth(buffer, bufferOffset, actingBlockLength, actingVersion));
             default -> throw new BadFieldException("method not supported");
         }
     }
@@ -108,6 +134,56 @@ public class TestClientEgressListener implements EgressListener
         return receivedOrderId.get(correlationId);
     }
 
+    public boolean receivedTopOfBook(final long currentCorrelationId)
+    {
+        return receivedTopOfBook.containsKey(currentCorrelationId);
+    }
+
+    public TopOfBook getReceivedTopOfBook(final long correlationId)
+    {
+        return receivedTopOfBook.get(correlationId);
+    }
+
+    public boolean receivedCancelledCount(final long currentCorrelationId)
+    {
+        return receivedCancelledCount.containsKey(currentCorrelationId);
+    }
+
+    public long getReceivedCancelledCount(final long correlationId)
+    {
+        return receivedCancelledCount.get(correlationId);
+    }
+
+    public List<Long> getCancelledOrderIds(final long sessionId)
+    {
+        return cancelledOrderIdsBySession.getOrDefault(sessionId, List.of());
+    }
+
+    public List<Long> getExpiredOrderIds()
+    {
+        return expiredOrderIds;
+    }
+
+    public List<TestOrder> getAuctionFills()
+    {
+        return auctionFills;
+    }
+
+    public List<TestTrade> getTrades()
+    {
+        return trades;
+    }
+
+    public boolean receivedDepth(final long currentCorrelationId)
+    {
+        return receivedDepth.containsKey(currentCorrelationId);
+    }
+
+    public MarketDepth getReceivedDepth(final long correlationId)
+    {
+        return receivedDepth.get(correlationId);
+    }
+
     public boolean receivedOrders(final long currentCorrelationId)
     {
         return receivedOrders.containsKey(currentCorrelationId);
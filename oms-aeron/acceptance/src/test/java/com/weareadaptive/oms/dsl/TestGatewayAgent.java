@@ -1,5 +1,7 @@
 package com.weareadaptive.oms.dsl;
 
+import com.weareadaptive.oms.util.TestOrder;
+import com.weareadaptive.oms.util.TestTrade;
 import io.aeron.cluster.client.AeronCluster;
 import io.aeron.driver.MediaDriver;
 import io.aeron.driver.ThreadingMode;
@@ -7,6 +9,7 @@ import org.agrona.concurrent.Agent;
 import org.agrona.concurrent.SystemEpochClock;
 import weareadaptive.com.cluster.services.oms.util.*;
 import weareadaptive.com.gateway.client.ClientIngressSender;
+import weareadaptive.com.gateway.client.GatewayCredentials;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -18,6 +21,7 @@ import static weareadaptive.com.gateway.util.ConfigUtils.ingressEndpoints;
 public class TestGatewayAgent implements Agent
 {
     private final int maxNodes;
+    private final String clientId;
     private TestClientEgressListener clientEgressListener;
     private ClientIngressSender clientIngressSender;
     private AeronCluster aeronCluster;
@@ -27,9 +31,10 @@ public class TestGatewayAgent implements Agent
     private boolean isActive;
     private long currentCorrelationId = 0;
 
-    public TestGatewayAgent(final int maxNodes)
+    public TestGatewayAgent(final int maxNodes, final String clientId)
     {
         this.maxNodes = maxNodes;
+        this.clientId = clientId;
     }
 
     @Override
@@ -44,6 +49,7 @@ public class TestGatewayAgent implements Agent
         aeronCluster = AeronCluster.connect(
                 new AeronCluster.Context()
                         .egressListener(clientEgressListener)
+                        .credentialsSupplier(new GatewayCredentials(clientId))
                         .egressChannel(egressChannel())
                         .aeronDirectoryName(mediaDriver.aeronDirectoryName())
                         .ingressChannel("aeron:udp")
@@ -93,10 +99,33 @@ public class TestGatewayAgent implements Agent
         return "test-gateway-agent";
     }
 
-    protected long placeOrder(final double price, final long size, final Side side)
+    protected long placeOrder(final int instrumentId, final long price, final long size, final Side side)
     {
         currentCorrelationId += 1;
-        clientIngressSender.sendOrderRequestToCluster(currentCorrelationId, price, size, side);
+        clientIngressSender.sendOrderRequestToCluster(currentCorrelationId, instrumentId, price, size, side);
+        return currentCorrelationId;
+    }
+
+    protected long placeOrder(final int instrumentId, final long price, final long size, final Side side,
+                              final OrderType orderType, final TimeInForce timeInForce, final long displaySize)
+    {
+        return placeOrder(instrumentId, price, size, side, orderType, timeInForce, displaySize, 0);
+    }
+
+    protected long placeOrder(final int instrumentId, final long price, final long size, final Side side,
+                              final OrderType orderType, final TimeInForce timeInForce, final long displaySize,
+                              final long triggerPrice)
+    {
+        return placeOrder(instrumentId, price, size, side, orderType, timeInForce, displaySize, triggerPrice, 0);
+    }
+
+    protected long placeOrder(final int instrumentId, final long price, final long size, final Side side,
+                              final OrderType orderType, final TimeInForce timeInForce, final long displaySize,
+                              final long triggerPrice, final long expireTime)
+    {
+        currentCorrelationId += 1;
+        clientIngressSender.sendOrderRequestToCluster(currentCorrelationId, instrumentId, price, size, side, orderType,
+                timeInForce, displaySize, triggerPrice, expireTime);
         return currentCorrelationId;
     }
 
@@ -107,17 +136,39 @@ public class TestGatewayAgent implements Agent
         return clientEgressListener.getReceivedExecutionResult(correlationId);
     }
 
-    protected long cancelOrder(final long orderId)
+    protected long cancelOrder(final int instrumentId, final long orderId)
+    {
+        currentCorrelationId += 1;
+        clientIngressSender.sendCancelOrderToCluster(currentCorrelationId, instrumentId, orderId);
+        return currentCorrelationId;
+    }
+
+    protected long amendOrder(final int instrumentId, final long orderId, final long price, final long size)
+    {
+        currentCorrelationId += 1;
+        clientIngressSender.sendAmendOrderToCluster(currentCorrelationId, instrumentId, orderId, price, size);
+        return currentCorrelationId;
+    }
+
+    protected long sendHeaderMessage(final Method method, final int instrumentId)
     {
         currentCorrelationId += 1;
-        clientIngressSender.sendCancelOrderToCluster(currentCorrelationId, orderId);
+        clientIngressSender.sendHeaderMessageToCluster(currentCorrelationId, method, instrumentId);
         return currentCorrelationId;
     }
 
-    protected long sendHeaderMessage(final Method method)
+    protected long massCancel(final int instrumentId, final Side side, final long minPrice, final long maxPrice,
+                              final boolean allSessions)
     {
         currentCorrelationId += 1;
-        clientIngressSender.sendHeaderMessageToCluster(currentCorrelationId, method);
+        clientIngressSender.sendMassCancelToCluster(currentCorrelationId, instrumentId, side, minPrice, maxPrice, allSessions);
+        return currentCorrelationId;
+    }
+
+    protected long requestDepth(final int instrumentId, final int levels)
+    {
+        currentCorrelationId += 1;
+        clientIngressSender.sendDepthRequestToCluster(currentCorrelationId, instrumentId, levels);
         return currentCorrelationId;
     }
 
@@ -135,6 +186,65 @@ public class TestGatewayAgent implements Agent
         return clientEgressListener.getReceivedOrderId(correlationId);
     }
 
+    protected TopOfBook getReceivedTopOfBook(final long correlationId)
+    {
+        await().until(() -> clientEgressListener.receivedTopOfBook(correlationId));
+
+        return clientEgressListener.getReceivedTopOfBook(correlationId);
+    }
+
+    protected long getReceivedCancelledCount(final long correlationId)
+    {
+        await().until(() -> clientEgressListener.receivedCancelledCount(correlationId));
+
+        return clientEgressListener.getReceivedCancelledCount(correlationId);
+    }
+
+    protected long getSessionId()
+    {
+        return aeronCluster.clusterSessionId();
+    }
+
+    protected List<Long> getCancelledOrderIds(final long sessionId, final int count)
+    {
+        await().until(() -> clientEgressListener.getCancelledOrderIds(sessionId).size() >= count);
+
+        return clientEgressListener.getCancelledOrderIds(sessionId);
+    }
+
+    protected List<Long> getReceivedCancelledOrderIds(final long sessionId)
+    {
+        return clientEgressListener.getCancelledOrderIds(sessionId);
+    }
+
+    protected List<Long> getExpiredOrderIds(final int count)
+    {
+        await().until(() -> clientEgressListener.getExpiredOrderIds().size() >= count);
+
+        return clientEgressListener.getExpiredOrderIds();
+    }
+
+    protected List<TestOrder> getAuctionFills(final int count)
+    {
+        await().until(() -> clientEgressListener.getAuctionFills().size() >= count);
+
+        return clientEgressListener.getAuctionFills();
+    }
+
+    protected List<TestTrade> getTrades(final int count)
+    {
+        await().until(() -> clientEgressListener.getTrades().size() >= count);
+
+        return clientEgressListener.getTrades();
+    }
+
+    protected MarketDepth getReceivedDepth(final long correlationId)
+    {
+        await().until(() -> clientEgressListener.receivedDepth(correlationId));
+
+        return clientEgressListener.getReceivedDepth(correlationId);
+    }
+
     protected List<Order> getReceivedOrders(final long correlationId)
     {
         await().until(() -> clientEgressListener.receivedOrders(correlationId));
@@ -0,0 +1,4 @@
+package com.weareadaptive.oms.util;
+
+public record TestTrade(long aggressorOrderId, long passiveOrderId, long price, long size)
+{}
@@ -8,6 +8,7 @@ import org.agrona.CloseHelper;
 import org.agrona.concurrent.ShutdownSignalBarrier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import weareadaptive.com.cluster.services.infra.PrincipalAuthenticator;
 
 import java.io.File;
 import java.util.List;
@@ -57,12 +58,14 @@ public class ClusterNode implements AutoCloseable
         clusterConfig.archiveContext().archiveDir(new File(baseDir, "archive"));
         clusterDir = new File(baseDir, "cluster");
         clusterConfig.clusteredServiceContext().clusterDir(clusterDir);
+        clusterConfig.clusteredServiceContext().snapshotChannel(getSnapshotChannel());
         clusterConfig.consensusModuleContext().clusterDir(clusterDir);
         clusterConfig.consensusModuleContext().deleteDirOnStart(test);
         clusterConfig.mediaDriverContext().aeronDirectoryName(aeronDirName);
         clusterConfig.archiveContext().aeronDirectoryName(aeronDirName);
         clusterConfig.aeronArchiveContext().aeronDirectoryName(aeronDirName);
         clusterConfig.consensusModuleContext().egressChannel(egressChannel());
+        clusterConfig.consensusModuleContext().authenticatorSupplier(PrincipalAuthenticator::new);
         //This may need tuning for your environment.
         clusterConfig.consensusModuleContext().leaderHeartbeatTimeoutNs(TimeUnit.SECONDS.toNanos(1));
 
@@ -9,7 +9,6 @@ import io.aeron.cluster.service.Cluster;
 import io.aeron.cluster.service.ClusteredService;
 import io.aeron.logbuffer.Header;
 import org.agrona.DirectBuffer;
-import org.agrona.concurrent.IdleStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import weareadaptive.com.cluster.services.infra.ClusterClientResponder;
@@ -23,6 +22,7 @@ public class ClusterService implements ClusteredService
     private static final Logger LOGGER = LoggerFactory.getLogger(ClusteredService.class);
     private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
     private OMSService omsService;
+    private Cluster cluster;
     private final ClusterClientResponder clusterClientResponder = new ClusterClientResponderImpl();
     private int currentLeader = -1;
 
@@ -34,7 +34,8 @@ public class ClusterService implements ClusteredService
     @Override
     public void onStart(final Cluster cluster, final Image snapshotImage)
     {
-        registerOMSService(cluster.idleStrategy());
+        this.cluster = cluster;
+        registerOMSService(cluster);
         if (snapshotImage != null)
         {
             restoreSnapshot(snapshotImage);
@@ -43,20 +44,24 @@ public class ClusterService implements ClusteredService
 
     /**
      * * When a cluster client has connected to the cluster
+     * - Tell the client of the orders cancelled when its previous session closed
      */
     @Override
     public void onSessionOpen(final ClientSession session, final long timestamp)
     {
         LOGGER.info("Client ID: " + session.id() + " Connected");
+        omsService.onSessionOpen(session);
     }
 
     /**
      * * When a cluster client has disconnected to the cluster
+     * - Cancel every order the client left resting, and tell the client when it connects again
      */
     @Override
     public void onSessionClose(final ClientSession session, final long timestamp, final CloseReason closeReason)
     {
-        LOGGER.info("Client ID: " + session.id() + " Disconnected");
+        LOGGER.info("Client ID: " + session.id() + " Disconnected, " + closeReason);
+        omsService.onSessionClose(session);
     }
 
     /**
@@ -67,7 +72,10 @@ public class ClusterService implements ClusteredService
                                  final int offset, final int length,
                                  final Header header)
     {
-        LOGGER.info("Client ID: " + session.id() + " Ingress");
+        if (LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Client ID: " + session.id() + " Ingress");
+        }
 
         int bufferOffset = offset;
         headerDecoder.wrap(buffer, bufferOffset);
@@ -81,7 +89,7 @@ public class ClusterService implements ClusteredService
         final var correlationId = headerDecoder.correlationId();
         if (schemaId == MessageHeaderDecoder.SCHEMA_ID)
         {
-            omsService.messageHandler(session, correlationId, templateId, buffer, bufferOffset, actingBlockLength, actingVersion);
+            omsService.messageHandler(session, timestamp, correlationId, templateId, buffer, bufferOffset, actingBlockLength, actingVersion);
         } else
         {
             LOGGER.error("Bad service name");
@@ -109,10 +117,14 @@ public class ClusterService implements ClusteredService
         omsService.onRestoreSnapshot(snapshotImage);
     }
 
+    /**
+     * * When a timer scheduled by a service fires
+     * - Expire the GTT orders that are due
+     */
     @Override
     public void onTimerEvent(final long correlationId, final long timestamp)
     {
-
+        omsService.onTimerEvent(correlationId, timestamp);
     }
 
     /**
@@ -151,9 +163,9 @@ public class ClusterService implements ClusteredService
         LOGGER.info("Cluster node is terminating");
     }
 
-    private void registerOMSService(IdleStrategy idleStrategy)
+    private void registerOMSService(Cluster cluster)
     {
-        omsService = new OMSService(clusterClientResponder, idleStrategy);
+        omsService = new OMSService(clusterClientResponder, cluster);
     }
 
     public int getCurrentLeader()
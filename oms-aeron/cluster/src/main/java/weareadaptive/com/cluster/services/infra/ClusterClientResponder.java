@@ -17,11 +17,18 @@
 package weareadaptive.com.cluster.services.infra;
 
 import io.aeron.cluster.service.ClientSession;
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.LongArrayList;
 import org.agrona.concurrent.IdleStrategy;
+import weareadaptive.com.cluster.services.oms.AuctionUncross;
+import weareadaptive.com.cluster.services.oms.FillBuffer;
 import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.MarketDepth;
 import weareadaptive.com.cluster.services.oms.util.Order;
+import weareadaptive.com.cluster.services.oms.util.Status;
+import weareadaptive.com.cluster.services.oms.util.TopOfBook;
 
-import java.util.TreeSet;
+import java.util.Collection;
 
 /**
  * Interface for responding to orderbook requests, encapsulating the SBE encoding and Aeron interactions
@@ -30,7 +37,16 @@ public interface ClusterClientResponder
 {
     void onExecutionResult(ClientSession session, long correlationId, ExecutionResult executionResult);
     void onSuccessMessage(ClientSession session, long correlationId);
-    void onOrders(ClientSession session, long messageId, TreeSet<Order> orders);
+    void onStatusMessage(ClientSession session, long correlationId, Status status);
+    void onOrders(ClientSession session, long messageId, Collection<Order> orders);
     void onOrderId(ClientSession session, long messageId, long currentOrderId);
+    void onTopOfBook(ClientSession session, long correlationId, TopOfBook topOfBook);
+    void onDepth(ClientSession session, long correlationId, MarketDepth depth);
+    void onMassCancel(ClientSession session, long correlationId, int cancelledCount);
+    void onSessionOrdersCancelled(ClientSession session, int instrumentId, long sessionId,
+                                  LongArrayList cancelledOrderIds);
+    void onOrdersExpired(ClientSession session, IntArrayList instrumentIds, LongArrayList orderIds);
+    void onAuctionFills(ClientSession session, int instrumentId, AuctionUncross uncross);
+    void onTrades(Collection<ClientSession> sessions, int instrumentId, FillBuffer fills);
     void setIdleStrategy(IdleStrategy idleStrategy);
 }
@@ -5,20 +5,37 @@ import io.aeron.Publication;
 import io.aeron.cluster.service.ClientSession;
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.LongArrayList;
 import org.agrona.concurrent.IdleStrategy;
 import org.agrona.concurrent.SleepingIdleStrategy;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import weareadaptive.com.cluster.services.oms.AuctionUncross;
+import weareadaptive.com.cluster.services.oms.FillBuffer;
 import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.MarketDepth;
 import weareadaptive.com.cluster.services.oms.util.Order;
+import weareadaptive.com.cluster.services.oms.util.Side;
 import weareadaptive.com.cluster.services.oms.util.Status;
+import weareadaptive.com.cluster.services.oms.util.TopOfBook;
 
 import java.nio.ByteBuffer;
-import java.util.TreeSet;
+import java.util.Collection;
+
+import static weareadaptive.com.cluster.util.ConfigUtils.getEgressOfferAttempts;
 
 public class ClusterClientResponderImpl implements ClusterClientResponder
 {
+    // large enough for a depth message holding OMSService.MAX_DEPTH_LEVELS levels on each side
+    private static final int BUFFER_LENGTH = 4096;
+    // order ids carried by one sessionOrdersCancelled message, so a batch always fits in the buffer
+    private static final int CANCELLED_ORDERS_PER_MESSAGE = 256;
+    // fills carried by one auctionFills message, so a batch always fits in the buffer
+    private static final int AUCTION_FILLS_PER_MESSAGE = 200;
+    // fills carried by one trades message, so a batch always fits in the buffer
+    private static final int TRADES_PER_MESSAGE = 90;
     private final Logger LOGGER = LoggerFactory.getLogger(ClusterClientResponderImpl.class);
     private final MessageHeaderEncoder messageHeaderEncoder = new MessageHeaderEncoder();
     private final ExecutionResultEncoder executionResultEncoder = new ExecutionResultEncoder();
@@ -26,12 +43,21 @@ public class ClusterClientResponderImpl implements ClusterClientResponder
     private final OrderIdEncoder orderIdEncoder = new OrderIdEncoder();
     private final OrderEncoder orderEncoder = new OrderEncoder();
     private final EndOfOrdersEncoder endOfOrdersEncoder = new EndOfOrdersEncoder();
+    private final BboEncoder bboEncoder = new BboEncoder();
+    private final DepthEncoder depthEncoder = new DepthEncoder();
+    private final MassCancelResultEncoder massCancelResultEncoder = new MassCancelResultEncoder();
+    private final SessionOrdersCancelledEncoder sessionOrdersCancelledEncoder = new SessionOrdersCancelledEncoder();
+    private final OrdersExpiredEncoder ordersExpiredEncoder = new OrdersExpiredEncoder();
+    private final AuctionFillsEncoder auctionFillsEncoder = new AuctionFillsEncoder();
+    private final TradesEncoder tradesEncoder = new TradesEncoder();
+    // one buffer reused for every egress message, so responding does not allocate
+    private final MutableDirectBuffer directBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(BUFFER_LENGTH));
     private IdleStrategy idleStrategy = new SleepingIdleStrategy();
+    private final long offerAttempts = getEgressOfferAttempts();
     @Override
     public void onExecutionResult(ClientSession session, long correlationId, ExecutionResult executionResult)
     {
         int encodedLength = MessageHeaderEncoder.ENCODED_LENGTH + ExecutionResultEncoder.BLOCK_LENGTH;
-        MutableDirectBuffer directBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(encodedLength));
 
         executionResultEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
 
@@ -43,21 +69,28 @@ public class ClusterClientResponderImpl implements ClusterClientResponder
 
     @Override
     public void onSuccessMessage(ClientSession session, long correlationId)
+    {
+        onStatusMessage(session, correlationId, Status.SUCCESS);
+    }
+
+    /**
+     * Status of a request that has no result of its own, SUCCESS or NONE when there was nothing to apply it to
+     */
+    @Override
+    public void onStatusMessage(ClientSession session, long correlationId, Status status)
     {
         final int encodedLength = MessageHeaderEncoder.ENCODED_LENGTH + SuccessMessageEncoder.BLOCK_LENGTH;
-        MutableDirectBuffer directBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(encodedLength));
 
         successMessageEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
         messageHeaderEncoder.correlationId(correlationId);
-        successMessageEncoder.status(Status.SUCCESS.getByte());
+        successMessageEncoder.status(status.getByte());
         sendMessageToSession(session, directBuffer, encodedLength);
     }
 
     @Override
-    public void onOrders(ClientSession session, long correlationId, TreeSet<Order> orders)
+    public void onOrders(ClientSession session, long correlationId, Collection<Order> orders)
     {
         int encodedLength = MessageHeaderEncoder.ENCODED_LENGTH + OrderEncoder.BLOCK_LENGTH;
-        MutableDirectBuffer directBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(encodedLength));
         orderEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
         messageHeaderEncoder.correlationId(correlationId);
 
@@ -69,18 +102,15 @@ public class ClusterClientResponderImpl implements ClusterClientResponder
             sendMessageToSession(session, directBuffer, encodedLength);
         }
 
-        MutableDirectBuffer endOfOrdersBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(MessageHeaderEncoder.ENCODED_LENGTH));
-
-        endOfOrdersEncoder.wrapAndApplyHeader(endOfOrdersBuffer, 0, messageHeaderEncoder);
+        endOfOrdersEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
         messageHeaderEncoder.correlationId(correlationId);
-        sendMessageToSession(session, endOfOrdersBuffer, MessageHeaderEncoder.ENCODED_LENGTH);
+        sendMessageToSession(session, directBuffer, MessageHeaderEncoder.ENCODED_LENGTH);
     }
 
     @Override
     public void onOrderId(ClientSession session, long correlationId, long currentOrderId)
     {
         int encodedLength = MessageHeaderEncoder.ENCODED_LENGTH + OrderIdEncoder.BLOCK_LENGTH;
-        MutableDirectBuffer directBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(encodedLength));
 
         orderIdEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
         messageHeaderEncoder.correlationId(correlationId);
@@ -88,39 +118,216 @@ public class ClusterClientResponderImpl implements ClusterClientResponder
         sendMessageToSession(session, directBuffer, encodedLength);
     }
 
+    @Override
+    public void onTopOfBook(ClientSession session, long correlationId, TopOfBook topOfBook)
+    {
+        final int encodedLength = MessageHeaderEncoder.ENCODED_LENGTH + BboEncoder.BLOCK_LENGTH;
+
+        bboEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
+        messageHeaderEncoder.correlationId(correlationId);
+        bboEncoder.bidPrice(topOfBook.getBidPrice());
+        bboEncoder.bidSize(topOfBook.getBidSize());
+        bboEncoder.askPrice(topOfBook.getAskPrice());
+        bboEncoder.askSize(topOfBook.getAskSize());
+        sendMessageToSession(session, directBuffer, encodedLength);
+    }
+
+    @Override
+    public void onDepth(ClientSession session, long correlationId, MarketDepth depth)
+    {
+        depthEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
+        messageHeaderEncoder.correlationId(correlationId);
+
+        final DepthEncoder.BidsEncoder bidsEncoder = depthEncoder.bidsCount(depth.getLevelCount(Side.BID));
+        for (int i = 0; i < depth.getLevelCount(Side.BID); i++)
+        {
+            bidsEncoder.next()
+                    .price(depth.getPrice(Side.BID, i))
+                    .size(depth.getSize(Side.BID, i))
+                    .orderCount(depth.getOrderCount(Side.BID, i));
+        }
+        final DepthEncoder.AsksEncoder asksEncoder = depthEncoder.asksCount(depth.getLevelCount(Side.ASK));
+        for (int i = 0; i < depth.getLevelCount(Side.ASK); i++)
+        {
+            asksEncoder.next()
+                    .price(depth.getPrice(Side.ASK, i))
+                    .size(depth.getSize(Side.ASK, i))
+                    .orderCount(depth.getOrderCount(Side.ASK, i));
+        }
+        sendMessageToSession(session, directBuffer, MessageHeaderEncoder.ENCODED_LENGTH + depthEncoder.encodedLength());
+    }
+
+    @Override
+    public void onMassCancel(ClientSession session, long correlationId, int cancelledCount)
+    {
+        final int encodedLength = MessageHeaderEncoder.ENCODED_LENGTH + MassCancelResultEncoder.BLOCK_LENGTH;
+
+        massCancelResultEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
+        messageHeaderEncoder.correlationId(correlationId);
+        massCancelResultEncoder.cancelledCount(cancelledCount);
+        sendMessageToSession(session, directBuffer, encodedLength);
+    }
+
+    /**
+     * Orders cancelled for a closed session, sent to a session of the same client in batches of
+     * {@link #CANCELLED_ORDERS_PER_MESSAGE} order ids
+     */
+    @Override
+    public void onSessionOrdersCancelled(ClientSession session, int instrumentId, long sessionId,
+                                         LongArrayList cancelledOrderIds)
+    {
+        final int totalCount = cancelledOrderIds.size();
+        int sent = 0;
+        while (sent < totalCount)
+        {
+            final int batchCount = Math.min(CANCELLED_ORDERS_PER_MESSAGE, totalCount - sent);
+            sessionOrdersCancelledEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
+            messageHeaderEncoder.correlationId(0);
+            sessionOrdersCancelledEncoder.instrumentId(instrumentId);
+            sessionOrdersCancelledEncoder.sessionId(sessionId);
+            sessionOrdersCancelledEncoder.totalCount(totalCount);
+            final SessionOrdersCancelledEncoder.OrdersEncoder ordersEncoder = sessionOrdersCancelledEncoder.ordersCount(batchCount);
+            for (int i = 0; i < batchCount; i++)
+            {
+                ordersEncoder.next().orderId(cancelledOrderIds.getLong(sent + i));
+            }
+            final int encodedLength = MessageHeaderEncoder.ENCODED_LENGTH + sessionOrdersCancelledEncoder.encodedLength();
+            sendMessageToSession(session, directBuffer, encodedLength);
+            sent += batchCount;
+        }
+    }
+
+    /**
+     * One message for the session's orders of a batch, which OMSService keeps to OMSService.EXPIRED_ORDERS_PER_BATCH
+     * orders so it always fits in the buffer
+     */
+    @Override
+    public void onOrdersExpired(ClientSession session, IntArrayList instrumentIds, LongArrayList orderIds)
+    {
+        ordersExpiredEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
+        messageHeaderEncoder.correlationId(0);
+        final OrdersExpiredEncoder.OrdersEncoder ordersEncoder = ordersExpiredEncoder.ordersCount(orderIds.size());
+        for (int i = 0; i < orderIds.size(); i++)
+        {
+            ordersEncoder.next().instrumentId(instrumentIds.getInt(i)).orderId(orderIds.getLong(i));
+        }
+        final int encodedLength = MessageHeaderEncoder.ENCODED_LENGTH + ordersExpiredEncoder.encodedLength();
+        sendMessageToSession(session, directBuffer, encodedLength);
+    }
+
+    /**
+     * Fills of an uncross, sent to the session in batches of {@link #AUCTION_FILLS_PER_MESSAGE}
+     * - An uncross that traded nothing is still sent as one message with no fills, so the session sees the auction end
+     */
+    @Override
+    public void onAuctionFills(ClientSession session, int instrumentId, AuctionUncross uncross)
+    {
+        final int totalCount = uncross.getFillCount();
+        int sent = 0;
+        do
+        {
+            final int batchCount = Math.min(AUCTION_FILLS_PER_MESSAGE, totalCount - sent);
+            auctionFillsEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
+            messageHeaderEncoder.correlationId(0);
+            auctionFillsEncoder.instrumentId(instrumentId);
+            auctionFillsEncoder.price(uncross.getPrice());
+            auctionFillsEncoder.volume(uncross.getVolume());
+            auctionFillsEncoder.totalCount(totalCount);
+            final AuctionFillsEncoder.FillsEncoder fillsEncoder = auctionFillsEncoder.fillsCount(batchCount);
+            for (int i = sent; i < sent + batchCount; i++)
+            {
+                fillsEncoder.next()
+                        .orderId(uncross.getFillOrderId(i))
+                        .side(uncross.getFillSide(i).getByte())
+                        .size(uncross.getFillSize(i));
+            }
+            final int encodedLength = MessageHeaderEncoder.ENCODED_LENGTH + auctionFillsEncoder.encodedLength();
+            sendMessageToSession(session, directBuffer, encodedLength);
+            sent += batchCount;
+        }
+        while (sent < totalCount);
+    }
+
+    /**
+     * Fills of one incoming order or uncross, sent to every given session in batches of {@link #TRADES_PER_MESSAGE},
+     * each batch encoded once however many sessions receive it
+     */
+    @Override
+    public void onTrades(Collection<ClientSession> sessions, int instrumentId, FillBuffer fills)
+    {
+        final int totalCount = fills.getFillCount();
+        int sent = 0;
+        while (sent < totalCount)
+        {
+            final int batchCount = Math.min(TRADES_PER_MESSAGE, totalCount - sent);
+            tradesEncoder.wrapAndApplyHeader(directBuffer, 0, messageHeaderEncoder);
+            messageHeaderEncoder.correlationId(0);
+            tradesEncoder.instrumentId(instrumentId);
+            tradesEncoder.totalCount(totalCount);
+            final TradesEncoder.FillsEncoder fillsEncoder = tradesEncoder.fillsCount(batchCount);
+            for (int i = sent; i < sent + batchCount; i++)
+            {
+                fillsEncoder.next()
+                        .matchId(fills.getMatchId(i))
+                        .aggressorOrderId(fills.getAggressorOrderId(i))
+                        .aggressorSide(fills.getAggressorSide(i).getByte())
+                        .passiveOrderId(fills.getPassiveOrderId(i))
+                        .price(fills.getPrice(i))
+                        .size(fills.getSize(i));
+            }
+            final int encodedLength = MessageHeaderEncoder.ENCODED_LENGTH + tradesEncoder.encodedLength();
+            for (ClientSession session : sessions)
+            {
+                sendMessageToSession(session, directBuffer, encodedLength);
+            }
+            sent += batchCount;
+        }
+    }
+
     @Override
     public void setIdleStrategy(IdleStrategy idleStrategy)
     {
         this.idleStrategy = idleStrategy;
     }
 
+    /**
+     * Offer a message to the session, retrying a few times, idling with the cluster's idle strategy in between, while
+     * its egress is back pressured or behind an admin action
+     * - A session that still cannot take the message after {@link #offerAttempts} offers, or whose egress is not
+     *   connected or closed, is closed rather than left to miss it, as fills and expiries are sent once and never
+     *   again. Its client hears of the close, and reconnects and asks for its orders instead of trading on a stream
+     *   with a gap in it
+     * - Nothing more is offered to a session once it is closing
+     * - The attempts are counted rather than timed, so a slow session holds up matching for a few idles at most
+     */
     public void sendMessageToSession(ClientSession session, DirectBuffer directBuffer, int encodedLength) {
-        // todo: adjust according to wehther or not backpressure?? idk
-        final int offset = 0;
-        int retries = 0;
-        int RETRY_COUNT = 3;
-        do
+        if (session.isClosing())
         {
-            idleStrategy.reset();
-            final long result = session.offer(directBuffer, offset, encodedLength);
+            return;
+        }
+        idleStrategy.reset();
+        for (int attempt = 1; ; attempt++)
+        {
+            final long result = session.offer(directBuffer, 0, encodedLength);
             if (result >= 0L)
             {
                 return;
             }
-            else if (result == Publication.ADMIN_ACTION || result == Publication.BACK_PRESSURED)
+            if (result != Publication.BACK_PRESSURED && result != Publication.ADMIN_ACTION)
             {
-                LOGGER.warn("backpressure or admin action on snapshot");
+                LOGGER.error("Closing session {}, its egress failed with {} offering a message of {} bytes",
+                        session.id(), result, encodedLength);
+                session.close();
+                return;
             }
-            else if (result == Publication.NOT_CONNECTED || result == Publication.MAX_POSITION_EXCEEDED)
+            if (attempt >= offerAttempts)
             {
-                LOGGER.error("unexpected publication state on snapshot: {}", result);
+                LOGGER.error("Closing session {}, its egress was still back pressured after {} offers of a message of "
+                        + "{} bytes", session.id(), offerAttempts, encodedLength);
+                session.close();
                 return;
             }
             idleStrategy.idle();
-            retries += 1;
         }
-        while (retries < RETRY_COUNT);
-
-        LOGGER.error("failed to offer snapshot within {} retries", RETRY_COUNT);
     }
 }
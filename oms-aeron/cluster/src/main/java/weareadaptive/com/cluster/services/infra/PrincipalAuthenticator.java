@@ -0,0 +1,42 @@
+package weareadaptive.com.cluster.services.infra;
+
+import io.aeron.security.Authenticator;
+import io.aeron.security.SessionProxy;
+import org.agrona.collections.Long2ObjectHashMap;
+
+/**
+ * Accepts every client, keeping the credentials it connected with as the principal of its session
+ * - A client that connects again with the same credentials is known to be the same client, whatever its session ID,
+ *   so the cluster can tell it what happened to the orders of its previous session
+ * - There is no check of the credentials, a client that sends none has an empty principal
+ * - Called on the consensus module thread only
+ */
+public class PrincipalAuthenticator implements Authenticator
+{
+    private final Long2ObjectHashMap<byte[]> credentialsBySessionId = new Long2ObjectHashMap<>();
+
+    @Override
+    public void onConnectRequest(final long sessionId, final byte[] encodedCredentials, final long nowMs)
+    {
+        credentialsBySessionId.put(sessionId, encodedCredentials);
+    }
+
+    @Override
+    public void onChallengeResponse(final long sessionId, final byte[] encodedCredentials, final long nowMs)
+    {
+    }
+
+    @Override
+    public void onConnectedSession(final SessionProxy sessionProxy, final long nowMs)
+    {
+        final byte[] encodedCredentials = credentialsBySessionId.remove(sessionProxy.sessionId());
+        sessionProxy.authenticate(encodedCredentials == null ? new byte[0] : encodedCredentials);
+    }
+
+    @Override
+    public void onChallengedSession(final SessionProxy sessionProxy, final long nowMs)
+    {
+        credentialsBySessionId.remove(sessionProxy.sessionId());
+        sessionProxy.reject();
+    }
+}
@@ -0,0 +1,54 @@
+package weareadaptive.com.cluster.services.oms;
+
+import java.math.BigInteger;
+
+/**
+ * How an incoming order's size is shared among the resting orders of a price level it does not fully take out,
+ * selected by configuration
+ * - A level the incoming order takes out completely fills every order in it, whatever the policy
+ * - Allocation is by shown size, the hidden reserve of an iceberg order gets no share
+ * - Call auction uncrosses always fill in time priority
+ */
+public enum AllocationPolicy
+{
+    /**
+     * Orders fill in time priority, each one completely before the next
+     */
+    FIFO,
+    /**
+     * Each order gets a share of the incoming size in proportion to its shown size
+     */
+    PRO_RATA,
+    /**
+     * The oldest order at the level, the top order, fills first, and what is left is shared pro-rata among the others
+     */
+    TOP_ORDER_PRO_RATA;
+
+    /**
+     * Share of quantity for an order of the given size, out of orders totalling total with sizeBefore of them queued
+     * ahead of it
+     * - Each order gets floor(quantity * cumulative size / total) less what the orders ahead of it got, so the shares
+     *   add up to exactly quantity in one pass and the lots lost to rounding go to the orders they fall in
+     * - A share is never more than the order's size when quantity is less than total
+     */
+    static long proRataShare(long quantity, long sizeBefore, long size, long total)
+    {
+        return scale(quantity, sizeBefore + size, total) - scale(quantity, sizeBefore, total);
+    }
+
+    /**
+     * floor(quantity * cumulative / total) for cumulative no more than total, so the result fits in a long even when
+     * the product does not
+     * - The product is checked with Math.multiplyHigh and only one that overflows is divided as a BigInteger
+     */
+    private static long scale(long quantity, long cumulative, long total)
+    {
+        final long product = quantity * cumulative;
+        if (Math.multiplyHigh(quantity, cumulative) == 0 && product >= 0)
+        {
+            return product / total;
+        }
+        return BigInteger.valueOf(quantity).multiply(BigInteger.valueOf(cumulative))
+                .divide(BigInteger.valueOf(total)).longValueExact();
+    }
+}
@@ -0,0 +1,240 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * {@link OrderStore} keeping each order field in its own primitive array, indexed by handle.
+ * - Walking a price level reads sizes and next links from two contiguous arrays, with no object headers or
+ *   references to chase
+ * - Freed slots are kept on a free list chained through the next array, and the arrays double when full
+ */
+public class ArrayOrderStore implements OrderStore
+{
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final MutableDirectBuffer recordBuffer = new UnsafeBuffer(new byte[RECORD_LENGTH]);
+    private long[] orderIds;
+    private long[] prices;
+    private long[] sizes;
+    private long[] sessionIds;
+    private long[] reserves;
+    private long[] displaySizes;
+    private int[] previous;
+    private int[] next;
+    private int[] sessionPrevious;
+    private int[] sessionNext;
+    private byte[] sides;
+    private int allocated = 0;
+    private int freeHead = NULL_HANDLE;
+
+    public ArrayOrderStore()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ArrayOrderStore(int initialCapacity)
+    {
+        final int capacity = Math.max(initialCapacity, 1);
+        orderIds = new long[capacity];
+        prices = new long[capacity];
+        sizes = new long[capacity];
+        sessionIds = new long[capacity];
+        reserves = new long[capacity];
+        displaySizes = new long[capacity];
+        previous = new int[capacity];
+        next = new int[capacity];
+        sessionPrevious = new int[capacity];
+        sessionNext = new int[capacity];
+        sides = new byte[capacity];
+    }
+
+    @Override
+    public int allocate(long orderId, long price, long size, Side side, long sessionId)
+    {
+        final int handle;
+        if (freeHead != NULL_HANDLE)
+        {
+            handle = freeHead;
+            freeHead = next[handle];
+        }
+        else
+        {
+            if (allocated == orderIds.length)
+            {
+                grow(allocated * 2);
+            }
+            handle = allocated++;
+        }
+        orderIds[handle] = orderId;
+        prices[handle] = price;
+        sizes[handle] = size;
+        sessionIds[handle] = sessionId;
+        reserves[handle] = 0;
+        displaySizes[handle] = 0;
+        previous[handle] = NULL_HANDLE;
+        next[handle] = NULL_HANDLE;
+        sessionPrevious[handle] = NULL_HANDLE;
+        sessionNext[handle] = NULL_HANDLE;
+        sides[handle] = side.getByte();
+        return handle;
+    }
+
+    @Override
+    public void free(int handle)
+    {
+        previous[handle] = NULL_HANDLE;
+        next[handle] = freeHead;
+        freeHead = handle;
+    }
+
+    @Override
+    public long getOrderId(int handle)
+    {
+        return orderIds[handle];
+    }
+
+    @Override
+    public long getPrice(int handle)
+    {
+        return prices[handle];
+    }
+
+    @Override
+    public void setPrice(int handle, long price)
+    {
+        prices[handle] = price;
+    }
+
+    @Override
+    public long getSize(int handle)
+    {
+        return sizes[handle];
+    }
+
+    @Override
+    public void setSize(int handle, long size)
+    {
+        sizes[handle] = size;
+    }
+
+    @Override
+    public Side getSide(int handle)
+    {
+        return sides[handle] == Side.ASK.getByte() ? Side.ASK : Side.BID;
+    }
+
+    @Override
+    public long getSessionId(int handle)
+    {
+        return sessionIds[handle];
+    }
+
+    @Override
+    public long getReserve(int handle)
+    {
+        return reserves[handle];
+    }
+
+    @Override
+    public void setReserve(int handle, long reserve)
+    {
+        reserves[handle] = reserve;
+    }
+
+    @Override
+    public long getDisplaySize(int handle)
+    {
+        return displaySizes[handle];
+    }
+
+    @Override
+    public void setDisplaySize(int handle, long displaySize)
+    {
+        displaySizes[handle] = displaySize;
+    }
+
+    @Override
+    public int getPrevious(int handle)
+    {
+        return previous[handle];
+    }
+
+    @Override
+    public void setPrevious(int handle, int previous)
+    {
+        this.previous[handle] = previous;
+    }
+
+    @Override
+    public int getNext(int handle)
+    {
+        return next[handle];
+    }
+
+    @Override
+    public void setNext(int handle, int next)
+    {
+        this.next[handle] = next;
+    }
+
+    @Override
+    public int getSessionPrevious(int handle)
+    {
+        return sessionPrevious[handle];
+    }
+
+    @Override
+    public void setSessionPrevious(int handle, int previous)
+    {
+        sessionPrevious[handle] = previous;
+    }
+
+    @Override
+    public int getSessionNext(int handle)
+    {
+        return sessionNext[handle];
+    }
+
+    @Override
+    public void setSessionNext(int handle, int next)
+    {
+        sessionNext[handle] = next;
+    }
+
+    @Override
+    public void readRecord(int handle, OrderRecordHandler handler)
+    {
+        recordBuffer.putLong(0, orderIds[handle], ByteOrder.LITTLE_ENDIAN);
+        recordBuffer.putLong(Long.BYTES, prices[handle], ByteOrder.LITTLE_ENDIAN);
+        recordBuffer.putLong(2 * Long.BYTES, sizes[handle], ByteOrder.LITTLE_ENDIAN);
+        recordBuffer.putLong(3 * Long.BYTES, sessionIds[handle], ByteOrder.LITTLE_ENDIAN);
+        recordBuffer.putLong(4 * Long.BYTES, reserves[handle], ByteOrder.LITTLE_ENDIAN);
+        recordBuffer.putLong(5 * Long.BYTES, displaySizes[handle], ByteOrder.LITTLE_ENDIAN);
+        handler.onOrderRecord(recordBuffer, 0);
+    }
+
+    public int getCapacity()
+    {
+        return orderIds.length;
+    }
+
+    private void grow(int capacity)
+    {
+        orderIds = Arrays.copyOf(orderIds, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        sessionIds = Arrays.copyOf(sessionIds, capacity);
+        reserves = Arrays.copyOf(reserves, capacity);
+        displaySizes = Arrays.copyOf(displaySizes, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+        next = Arrays.copyOf(next, capacity);
+        sessionPrevious = Arrays.copyOf(sessionPrevious, capacity);
+        sessionNext = Arrays.copyOf(sessionNext, capacity);
+        sides = Arrays.copyOf(sides, capacity);
+    }
+}
@@ -0,0 +1,188 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.collections.LongArrayList;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+/**
+ * Uncross of a call auction, held by each orderbook and reused for every uncross.
+ * - The book hands over the levels where the two sides cross, each with its cumulative quantity, best price first
+ * - The equilibrium price is the one that trades the most, with the smallest imbalance between buy and sell interest
+ *   and then the lowest price breaking ties, found in one pass over the crossing levels
+ * - The book then fills both sides at that price and records each fill here, bid fills before ask fills, to be sent
+ *   out as one batched stream
+ * - The fills are also paired into trades in the book's {@link FillBuffer}, so the owners of the orders hear of them
+ *   through the trade stream like any other match
+ */
+public class AuctionUncross
+{
+    private final LongArrayList bidPrices = new LongArrayList();
+    private final LongArrayList bidSizes = new LongArrayList();
+    private final LongArrayList askPrices = new LongArrayList();
+    private final LongArrayList askSizes = new LongArrayList();
+    private long totalBidSize;
+    private long price;
+    private long volume;
+    private final LongArrayList fillOrderIds = new LongArrayList();
+    private final LongArrayList fillSessionIds = new LongArrayList();
+    private final LongArrayList fillSizes = new LongArrayList();
+    private int bidFillCount;
+
+    public void clear()
+    {
+        bidPrices.clear();
+        bidSizes.clear();
+        askPrices.clear();
+        askSizes.clear();
+        totalBidSize = 0;
+        price = 0;
+        volume = 0;
+        fillOrderIds.clear();
+        fillSessionIds.clear();
+        fillSizes.clear();
+        bidFillCount = 0;
+    }
+
+    /**
+     * Add the size resting at one crossing price, shown and hidden, best price first on each side
+     */
+    public void addLevel(Side side, long levelPrice, long levelSize)
+    {
+        if (side == Side.BID)
+        {
+            bidPrices.addLong(levelPrice);
+            bidSizes.addLong(levelSize);
+            totalBidSize += levelSize;
+        }
+        else
+        {
+            askPrices.addLong(levelPrice);
+            askSizes.addLong(levelSize);
+        }
+    }
+
+    /**
+     * Find the equilibrium price from the levels added, walking every crossing price once from the lowest up
+     * - The sell size at a price is the asks at or below it, summed on the way up, and the buy size is the bids at or
+     *   above it, which is every crossing bid less those already passed
+     * - Returns false when the sides do not cross and nothing trades
+     */
+    public boolean computePrice()
+    {
+        long askSizeAtOrBelow = 0;
+        long bidSizeBelow = 0;
+        long bestImbalance = Long.MAX_VALUE;
+        int ask = 0;
+        int bid = bidPrices.size() - 1;
+        while (ask < askPrices.size() || bid >= 0)
+        {
+            final long candidate = Math.min(ask < askPrices.size() ? askPrices.getLong(ask) : Long.MAX_VALUE,
+                    bid >= 0 ? bidPrices.getLong(bid) : Long.MAX_VALUE);
+            if (ask < askPrices.size() && askPrices.getLong(ask) == candidate)
+            {
+                askSizeAtOrBelow += askSizes.getLong(ask++);
+            }
+            final long bidSizeAtOrAbove = totalBidSize - bidSizeBelow;
+            final long candidateVolume = Math.min(askSizeAtOrBelow, bidSizeAtOrAbove);
+            final long imbalance = Math.abs(bidSizeAtOrAbove - askSizeAtOrBelow);
+            if (candidateVolume > volume || (candidateVolume == volume && candidateVolume > 0 && imbalance < bestImbalance))
+            {
+                price = candidate;
+                volume = candidateVolume;
+                bestImbalance = imbalance;
+            }
+            if (bid >= 0 && bidPrices.getLong(bid) == candidate)
+            {
+                bidSizeBelow += bidSizes.getLong(bid--);
+            }
+        }
+        return volume > 0;
+    }
+
+    /**
+     * Record a fill at the equilibrium price, every bid fill before the first ask fill
+     */
+    public void addFill(long orderId, long sessionId, Side side, long size)
+    {
+        fillOrderIds.addLong(orderId);
+        fillSessionIds.addLong(sessionId);
+        fillSizes.addLong(size);
+        if (side == Side.BID)
+        {
+            bidFillCount++;
+        }
+    }
+
+    /**
+     * Pair the bid fills with the ask fills in the order they were filled, and record each pair as a trade at the
+     * equilibrium price, each with the next match id of the book
+     * - An auction has no aggressor, so the order placed later is recorded as the aggressor, as it would have been had
+     *   the book been matching when it arrived
+     */
+    public void addTrades(FillBuffer fills)
+    {
+        final int fillCount = fillOrderIds.size();
+        int bid = 0;
+        int ask = bidFillCount;
+        long bidLeft = bid < bidFillCount ? fillSizes.getLong(bid) : 0;
+        long askLeft = ask < fillCount ? fillSizes.getLong(ask) : 0;
+        while (bid < bidFillCount && ask < fillCount)
+        {
+            final long size = Math.min(bidLeft, askLeft);
+            final long bidOrderId = fillOrderIds.getLong(bid);
+            final long askOrderId = fillOrderIds.getLong(ask);
+            if (askOrderId > bidOrderId)
+            {
+                fills.add(askOrderId, fillSessionIds.getLong(ask), Side.ASK, bidOrderId, fillSessionIds.getLong(bid),
+                        price, size);
+            }
+            else
+            {
+                fills.add(bidOrderId, fillSessionIds.getLong(bid), Side.BID, askOrderId, fillSessionIds.getLong(ask),
+                        price, size);
+            }
+            bidLeft -= size;
+            askLeft -= size;
+            if (bidLeft == 0 && ++bid < bidFillCount)
+            {
+                bidLeft = fillSizes.getLong(bid);
+            }
+            if (askLeft == 0 && ++ask < fillCount)
+            {
+                askLeft = fillSizes.getLong(ask);
+            }
+        }
+    }
+
+    public long getPrice()
+    {
+        return price;
+    }
+
+    /**
+     * Size traded on each side, 0 when the sides did not cross
+     */
+    public long getVolume()
+    {
+        return volume;
+    }
+
+    public int getFillCount()
+    {
+        return fillOrderIds.size();
+    }
+
+    public long getFillOrderId(int index)
+    {
+        return fillOrderIds.getLong(index);
+    }
+
+    public long getFillSize(int index)
+    {
+        return fillSizes.getLong(index);
+    }
+
+    public Side getFillSide(int index)
+    {
+        return index < bidFillCount ? Side.BID : Side.ASK;
+    }
+}
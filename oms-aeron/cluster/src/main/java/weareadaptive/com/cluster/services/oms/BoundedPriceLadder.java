@@ -0,0 +1,242 @@
+package weareadaptive.com.cluster.services.oms;
+
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+import java.util.Arrays;
+
+/**
+ * {@link PriceLadder} for an instrument that trades within a known {@link PriceBand}.
+ * - Levels inside the band are held in an array indexed by {@code (price - min) / tick}, so finding the level for an
+ *   order is one array read with no hashing or searching
+ * - A bitmap of occupied levels is kept alongside, and when the best level empties the next best is found by scanning
+ *   the bitmap a word (64 levels) at a time
+ * - Prices outside the band, or between its ticks, fall back to a {@link SortedPriceLadder}, and the best level is
+ *   the better of the two
+ */
+public class BoundedPriceLadder extends PriceLadder
+{
+    private final PriceBand band;
+    private final PriceLevel[] bandLevels;
+    private final long[] occupied;
+    private final SortedPriceLadder outsideBand;
+    private int bestIndex = -1;
+    private int bandLevelCount = 0;
+    private int bandOrderCount = 0;
+
+    public BoundedPriceLadder(Side side, OrderStore store, PriceBand band)
+    {
+        super(side, store);
+        this.band = band;
+        this.bandLevels = new PriceLevel[band.levelCount()];
+        this.occupied = new long[(band.levelCount() + 63) >>> 6];
+        this.outsideBand = new SortedPriceLadder(side, store);
+    }
+
+    @Override
+    public PriceLevel best()
+    {
+        final PriceLevel bandBest = bestIndex < 0 ? null : bandLevels[bestIndex];
+        final PriceLevel outsideBest = outsideBand.best();
+        return isBetter(outsideBest, bandBest) ? outsideBest : bandBest;
+    }
+
+    @Override
+    public void add(int order)
+    {
+        final long price = store.getPrice(order);
+        if (!band.contains(price))
+        {
+            outsideBand.add(order);
+            return;
+        }
+        final int index = band.indexOf(price);
+        PriceLevel level = bandLevels[index];
+        if (level == null)
+        {
+            level = acquireLevel(price);
+            bandLevels[index] = level;
+            occupied[index >>> 6] |= 1L << index;
+            bandLevelCount++;
+            if (bestIndex < 0 || (side == Side.BID ? index > bestIndex : index < bestIndex))
+            {
+                bestIndex = index;
+            }
+        }
+        level.append(order);
+        bandOrderCount++;
+    }
+
+    /**
+     * Levels inside the band are found by index whatever order they come in, so only orders outside it are restored
+     * through the fallback ladder's sorted path
+     */
+    @Override
+    public void restore(int order)
+    {
+        if (band.contains(store.getPrice(order)))
+        {
+            add(order);
+        }
+        else
+        {
+            outsideBand.restore(order);
+        }
+    }
+
+    @Override
+    public void finishRestore()
+    {
+        outsideBand.finishRestore();
+    }
+
+    @Override
+    public void remove(int order)
+    {
+        final long price = store.getPrice(order);
+        if (band.contains(price))
+        {
+            remove(bandLevels[band.indexOf(price)], order);
+        }
+        else
+        {
+            outsideBand.remove(order);
+        }
+    }
+
+    @Override
+    public void remove(PriceLevel level, int order)
+    {
+        if (!band.contains(level.getPrice()))
+        {
+            outsideBand.remove(level, order);
+            return;
+        }
+        level.remove(order);
+        bandOrderCount--;
+        if (level.isEmpty())
+        {
+            final int index = band.indexOf(level.getPrice());
+            bandLevels[index] = null;
+            occupied[index >>> 6] &= ~(1L << index);
+            bandLevelCount--;
+            releaseLevel(level);
+            if (index == bestIndex)
+            {
+                bestIndex = side == Side.BID ? previousOccupied(index - 1) : nextOccupied(index + 1);
+            }
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        for (int index = nextOccupied(0); index >= 0; index = nextOccupied(index + 1))
+        {
+            freeLevel(bandLevels[index]);
+            bandLevels[index] = null;
+        }
+        Arrays.fill(occupied, 0);
+        outsideBand.clear();
+        bestIndex = -1;
+        bandLevelCount = 0;
+        bandOrderCount = 0;
+    }
+
+    @Override
+    public int getLevelCount()
+    {
+        return bandLevelCount + outsideBand.getLevelCount();
+    }
+
+    @Override
+    public int getOrderCount()
+    {
+        return bandOrderCount + outsideBand.getOrderCount();
+    }
+
+    @Override
+    public PriceLevel levelAt(long price)
+    {
+        return band.contains(price) ? bandLevels[band.indexOf(price)] : outsideBand.levelAt(price);
+    }
+
+    @Override
+    public PriceLevel levelBelow(long price)
+    {
+        PriceLevel bandLevel = null;
+        if (price > band.minPrice())
+        {
+            // the highest band index strictly below the price, rounding up for prices between ticks
+            final long below = Math.min(price - 1, band.maxPrice());
+            final int index = previousOccupied(band.indexOf(below));
+            bandLevel = index < 0 ? null : bandLevels[index];
+        }
+        final PriceLevel outsideLevel = outsideBand.levelBelow(price);
+        if (bandLevel == null || outsideLevel == null)
+        {
+            return bandLevel == null ? outsideLevel : bandLevel;
+        }
+        return bandLevel.getPrice() > outsideLevel.getPrice() ? bandLevel : outsideLevel;
+    }
+
+    @Override
+    public PriceLevel levelAbove(long price)
+    {
+        PriceLevel bandLevel = null;
+        if (price < band.maxPrice())
+        {
+            final int index = price < band.minPrice() ? nextOccupied(0) : nextOccupied(band.indexOf(price) + 1);
+            bandLevel = index < 0 ? null : bandLevels[index];
+        }
+        final PriceLevel outsideLevel = outsideBand.levelAbove(price);
+        if (bandLevel == null || outsideLevel == null)
+        {
+            return bandLevel == null ? outsideLevel : bandLevel;
+        }
+        return bandLevel.getPrice() < outsideLevel.getPrice() ? bandLevel : outsideLevel;
+    }
+
+    /**
+     * Lowest occupied index at or above from, or -1
+     */
+    private int nextOccupied(int from)
+    {
+        if (from >= bandLevels.length)
+        {
+            return -1;
+        }
+        int word = from >>> 6;
+        long bits = occupied[word] & (-1L << from);
+        while (bits == 0)
+        {
+            if (++word == occupied.length)
+            {
+                return -1;
+            }
+            bits = occupied[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Highest occupied index at or below from, or -1
+     */
+    private int previousOccupied(int from)
+    {
+        if (from < 0)
+        {
+            return -1;
+        }
+        int word = from >>> 6;
+        long bits = occupied[word] & (-1L >>> (63 - (from & 63)));
+        while (bits == 0)
+        {
+            if (--word < 0)
+            {
+                return -1;
+            }
+            bits = occupied[word];
+        }
+        return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+    }
+}
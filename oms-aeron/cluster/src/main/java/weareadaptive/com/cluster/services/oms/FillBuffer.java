@@ -0,0 +1,124 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.LongArrayList;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+/**
+ * Fills of the last incoming order, held by each orderbook and reused for every order.
+ * - The book records a fill each time the matching loop trades, the incoming order being the aggressor and the resting
+ *   order the passive side, including the fills of stop orders the incoming order triggered
+ * - An uncross records its fills here too, paired into trades at the auction price
+ * - Size taken away by self-trade prevention is not a trade and is not recorded
+ * - Every fill gets the next match id of its book, which carries on across snapshots
+ * - Held as columns of primitives sized up front, so recording a fill does not allocate until a sweep outgrows them
+ */
+public class FillBuffer
+{
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final LongArrayList matchIds = new LongArrayList(INITIAL_CAPACITY, 0);
+    private final LongArrayList aggressorOrderIds = new LongArrayList(INITIAL_CAPACITY, 0);
+    private final LongArrayList aggressorSessionIds = new LongArrayList(INITIAL_CAPACITY, 0);
+    private final IntArrayList aggressorSides = new IntArrayList(INITIAL_CAPACITY, 0);
+    private final LongArrayList passiveOrderIds = new LongArrayList(INITIAL_CAPACITY, 0);
+    private final LongArrayList passiveSessionIds = new LongArrayList(INITIAL_CAPACITY, 0);
+    private final LongArrayList prices = new LongArrayList(INITIAL_CAPACITY, 0);
+    private final LongArrayList sizes = new LongArrayList(INITIAL_CAPACITY, 0);
+    private long nextMatchId = 0;
+
+    /**
+     * Forget the fills of the previous order, keeping the match id sequence
+     */
+    public void clear()
+    {
+        matchIds.clear();
+        aggressorOrderIds.clear();
+        aggressorSessionIds.clear();
+        aggressorSides.clear();
+        passiveOrderIds.clear();
+        passiveSessionIds.clear();
+        prices.clear();
+        sizes.clear();
+    }
+
+    /**
+     * Forget the fills and start the match ids again from 0, as when the book is reset
+     */
+    public void reset()
+    {
+        clear();
+        nextMatchId = 0;
+    }
+
+    public void add(long aggressorOrderId, long aggressorSessionId, Side aggressorSide, long passiveOrderId,
+                    long passiveSessionId, long price, long size)
+    {
+        matchIds.addLong(nextMatchId++);
+        aggressorOrderIds.addLong(aggressorOrderId);
+        aggressorSessionIds.addLong(aggressorSessionId);
+        aggressorSides.addInt(aggressorSide.getByte());
+        passiveOrderIds.addLong(passiveOrderId);
+        passiveSessionIds.addLong(passiveSessionId);
+        prices.addLong(price);
+        sizes.addLong(size);
+    }
+
+    public int getFillCount()
+    {
+        return matchIds.size();
+    }
+
+    public long getMatchId(int index)
+    {
+        return matchIds.getLong(index);
+    }
+
+    public long getAggressorOrderId(int index)
+    {
+        return aggressorOrderIds.getLong(index);
+    }
+
+    public long getAggressorSessionId(int index)
+    {
+        return aggressorSessionIds.getLong(index);
+    }
+
+    public Side getAggressorSide(int index)
+    {
+        return Side.fromByteValue((byte) aggressorSides.getInt(index));
+    }
+
+    public long getPassiveOrderId(int index)
+    {
+        return passiveOrderIds.getLong(index);
+    }
+
+    public long getPassiveSessionId(int index)
+    {
+        return passiveSessionIds.getLong(index);
+    }
+
+    public long getPrice(int index)
+    {
+        return prices.getLong(index);
+    }
+
+    public long getSize(int index)
+    {
+        return sizes.getLong(index);
+    }
+
+    /**
+     * Match id the next fill will get, kept in the snapshot so ids are never reused after a restore
+     */
+    public long getNextMatchId()
+    {
+        return nextMatchId;
+    }
+
+    public void setNextMatchId(long nextMatchId)
+    {
+        this.nextMatchId = nextMatchId;
+    }
+}
@@ -1,11 +1,232 @@
 package weareadaptive.com.cluster.services.oms;
 
+import org.agrona.collections.LongArrayList;
 import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.MarketDepth;
+import weareadaptive.com.cluster.services.oms.util.Order;
 import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
+import weareadaptive.com.cluster.services.oms.util.TopOfBook;
 
+import java.util.Collection;
+
+/**
+ * - An implementation may return the same {@link ExecutionResult} instance from every call, so read it before calling
+ *   into the orderbook again
+ */
 public interface IOrderbook {
-    ExecutionResult placeOrder(double price, long size, Side side);
+    /**
+     * Owner of orders placed outside of any client session
+     */
+    long NO_SESSION = 0;
+
+    /**
+     * Passed to {@link #massCancel} to cancel the orders of every session
+     */
+    long ANY_SESSION = -1;
+
+    /**
+     * Display size of an order that shows its whole size
+     */
+    long FULLY_DISPLAYED = 0;
+
+    default ExecutionResult placeOrder(long price, long size, Side side)
+    {
+        return placeOrder(NO_SESSION, price, size, side);
+    }
+
+    /**
+     * Place a GTC limit order owned by the given client session, which is kept with the order while it rests
+     */
+    default ExecutionResult placeOrder(long sessionId, long price, long size, Side side)
+    {
+        return placeOrder(sessionId, price, size, side, TimeInForce.GTC);
+    }
+
+    /**
+     * Place a limit order with the given time in force
+     * - IOC returns PARTIAL when part of it traded and the rest was cancelled, and CANCELLED when nothing traded
+     * - FOK is checked against the size resting at crossing prices before anything trades, and returns FILLED or
+     *   CANCELLED, leaving the book untouched when it is cancelled
+     * - An IOC or FOK order still takes an orderId, whether it trades or not
+     */
+    default ExecutionResult placeOrder(long sessionId, long price, long size, Side side, TimeInForce timeInForce)
+    {
+        return placeOrder(sessionId, price, size, side, timeInForce, FULLY_DISPLAYED);
+    }
+
+    /**
+     * Place an iceberg order, which shows at most displaySize of what rests and keeps the rest as a hidden reserve
+     * - Each time the shown slice trades away the next slice is shown from the reserve, and the order moves to the back
+     *   of its price level like a new order would
+     * - The sizes in {@link #getAsks()}, {@link #getBids()}, the top of book and the depth are the shown sizes only
+     * - A displaySize of {@link #FULLY_DISPLAYED}, or one not smaller than the size, shows the whole order
+     */
+    ExecutionResult placeOrder(long sessionId, long price, long size, Side side, TimeInForce timeInForce,
+                               long displaySize);
+
+    /**
+     * Set what happens when an order would trade against a resting order of its own session, {@link
+     * SelfTradePrevention#NONE} until set
+     * - Size cancelled by the policy does not count as traded, so an order that rests untraded is RESTING, one that
+     *   traded part of its size and no longer rests is PARTIAL, and one that neither traded nor rests is CANCELLED
+     * - A FOK order only counts the size it can trade before the policy would cancel it, so it still either fills
+     *   completely or leaves the book untouched
+     */
+    void setSelfTradePrevention(SelfTradePrevention selfTradePrevention);
+
+    /**
+     * Set how an incoming order is shared among the orders of a price level it does not take out completely, {@link
+     * AllocationPolicy#FIFO} until set
+     * - Levels are still matched best price first, the policy only decides who trades within a level
+     */
+    void setAllocationPolicy(AllocationPolicy allocationPolicy);
+
+    /**
+     * Place a market order, which trades against the other side at any price and never rests
+     * - It is IOC unless FOK is asked for
+     */
+    default ExecutionResult placeMarketOrder(long sessionId, long size, Side side, TimeInForce timeInForce)
+    {
+        return placeOrder(sessionId, side == Side.BID ? Long.MAX_VALUE : Long.MIN_VALUE, size, side,
+                timeInForce == TimeInForce.FOK ? TimeInForce.FOK : TimeInForce.IOC);
+    }
+
+    /**
+     * Place a stop limit order, which waits off the book until the last trade price reaches triggerPrice and is then
+     * placed as a limit order at price with the given time in force, under the orderId returned here
+     * - A buy stop triggers when a trade is at or above its trigger price, and a sell stop at or below
+     * - Returns PENDING while it waits, and CANCELLED when the last trade price has already reached the trigger price
+     * - Stops triggered by a trade are placed before the call that traded returns, in the order
+     *   {@link StopOrderBook} releases them, and a trade they make can trigger further stops
+     */
+    ExecutionResult placeStopOrder(long sessionId, long triggerPrice, long price, long size, Side side,
+                                   TimeInForce timeInForce);
+
+    /**
+     * Place a stop order that is placed as a market order once triggered
+     */
+    default ExecutionResult placeStopMarketOrder(long sessionId, long triggerPrice, long size, Side side)
+    {
+        return placeStopOrder(sessionId, triggerPrice, side == Side.BID ? Long.MAX_VALUE : Long.MIN_VALUE, size, side,
+                TimeInForce.IOC);
+    }
+
+    /**
+     * Cancel a resting order, or a stop order that has not triggered yet
+     */
     ExecutionResult cancelOrder(long orderId);
+
+    /**
+     * Change the price and size of a resting order, keeping its orderId
+     * - A smaller size at the same price keeps the order's place in the queue
+     * - Any other change moves it behind the orders resting at its new price, and a new price that crosses the other
+     *   side trades first like a new order would
+     * - Returns AMENDED when the order rests untraded, PARTIAL or FILLED when it traded, CANCELLED for a size of 0,
+     *   and NONE when the order is not resting
+     * - For an iceberg order the size is the shown size and reserve together, and the order keeps its display size
+     */
+    ExecutionResult amendOrder(long orderId, long price, long size);
+
+    /**
+     * Put back an order read from a snapshot, with its shown size and the reserve and display size of an iceberg order
+     * - A side's orders come in the order forEachOrderRecord handed them over, so a book that writes them in price
+     *   order can build its levels by appending rather than searching
+     * - The order id, session and every other index are rebuilt as the order is put back
+     */
+    void restoreOrder(long orderId, long price, long size, Side side, long sessionId, long reserve, long displaySize);
+
+    /**
+     * Finish restoring once every order of the snapshot has been put back, before the book is used for anything else
+     */
+    void finishRestore();
+
+    /**
+     * Session that owns a resting order or a waiting stop order, or {@link #NO_SESSION} when the book holds no order
+     * with the orderId
+     */
+    long getSessionId(long orderId);
+
+    /**
+     * Cancel the resting orders of a session, or of every session with {@link #ANY_SESSION}, on one side or on both
+     * when side is null, and priced from minPrice to maxPrice inclusive
+     * - Waiting stop orders are cancelled too, filtered on their trigger price
+     * - Returns how many orders were cancelled
+     */
+    int massCancel(long sessionId, Side side, long minPrice, long maxPrice);
+
+    /**
+     * Cancel every resting order and waiting stop order of a session, appending the orderId of each to
+     * cancelledOrderIds unless it is null
+     * - Returns how many orders were cancelled
+     */
+    int cancelSession(long sessionId, LongArrayList cancelledOrderIds);
+
+    /**
+     * Put the book into a call auction, where orders accumulate without matching until {@link #uncross}
+     * - GTC orders and stop orders are accepted and rest, and an amend moves an order without matching it
+     * - IOC, FOK and market orders cannot wait for the uncross and are cancelled
+     * - The top of book and depth may show the sides crossed while the auction runs
+     */
+    void startAuction();
+
+    boolean isInAuction();
+
+    /**
+     * End the auction, trading everything that crosses at the single price that trades the most, and go back to
+     * continuous matching
+     * - Both sides are filled in price-time priority in one bulk pass per side, iceberg reserves included, rather than
+     *   matching each order in turn
+     * - Stop orders triggered by the uncross price are placed once the book is continuous again
+     * - Returns the price, volume and fills, in an instance reused by the next uncross
+     */
+    AuctionUncross uncross();
+
+    /**
+     * Hand each resting order on one side to the handler as an {@link OrderStore#RECORD_LENGTH} byte record, in the
+     * order it should be restored
+     */
+    void forEachOrderRecord(Side side, OrderRecordHandler handler);
+
+    /**
+     * Number of orders resting on one side, the records forEachOrderRecord hands over
+     */
+    int getOrderCount(Side side);
+
+    /**
+     * Stop orders waiting to trigger and the last trade price, read and restored directly by the snapshot
+     */
+    StopOrderBook getStopOrders();
+
+    /**
+     * Tell the listener of each order, resting or waiting stop, that leaves the book for good, {@link
+     * OrderRemovedListener#NONE} until set
+     */
+    void setOrderRemovedListener(OrderRemovedListener listener);
+
+    /**
+     * Fills of the last placeOrder, placeStopOrder, amendOrder or uncross call, the stops it triggered included, and
+     * the match id sequence restored by the snapshot
+     * - The same buffer is cleared and refilled by every one of those calls, so it must be read before the next one
+     * - An uncross records its fills paired into trades, as {@link AuctionUncross#addTrades} describes, ahead of the
+     *   trades of the stops it triggered
+     */
+    FillBuffer getFills();
+
+    /**
+     * Best bid and offer with the size resting at each, which may be the same instance on every call, updated in place
+     */
+    TopOfBook getTopOfBook();
+
+    /**
+     * Fill the depth with up to the given number of levels on each side, best price first
+     */
+    void readDepth(int levels, MarketDepth depth);
+
     void clear();
     void reset();
+    Collection<Order> getAsks();
+    Collection<Order> getBids();
+    long getCurrentOrderId();
+    void setCurrentOrderId(long currentOrderId);
 }
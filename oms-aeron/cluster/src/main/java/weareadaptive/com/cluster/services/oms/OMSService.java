@@ -4,53 +4,198 @@ import com.weareadaptive.sbe.*;
 import io.aeron.ExclusivePublication;
 import io.aeron.Image;
 import io.aeron.cluster.service.ClientSession;
+import io.aeron.cluster.service.Cluster;
 import org.agrona.DirectBuffer;
-import org.agrona.concurrent.IdleStrategy;
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.LongArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import weareadaptive.com.cluster.ClusterNode;
 import weareadaptive.com.cluster.services.infra.ClusterClientResponder;
 import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.MarketDepth;
 import weareadaptive.com.cluster.services.oms.util.Method;
+import weareadaptive.com.cluster.services.oms.util.OrderType;
 import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.Status;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
+import weareadaptive.com.cluster.services.oms.util.TopOfBook;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static weareadaptive.com.cluster.util.ConfigUtils.getAllocationPolicy;
+import static weareadaptive.com.cluster.util.ConfigUtils.getInstrumentIds;
+import static weareadaptive.com.cluster.util.ConfigUtils.getOrderExpiryInterval;
+import static weareadaptive.com.cluster.util.ConfigUtils.getOrderbookType;
+import static weareadaptive.com.cluster.util.ConfigUtils.getSelfTradePrevention;
 
 public class OMSService
 {
+    /**
+     * Most levels returned on each side by a depth request, so the reply always fits in a single egress message
+     */
+    public static final int MAX_DEPTH_LEVELS = 100;
+    /**
+     * Correlation ID of the one recurring cluster timer that expires GTT orders
+     */
+    public static final long ORDER_EXPIRY_TIMER_ID = 1;
+    /**
+     * Most GTT orders expired between two egress messages, so each batch fits in a single message
+     */
+    public static final int EXPIRED_ORDERS_PER_BATCH = 256;
+    private static final long EXPIRY_SENT = Long.MIN_VALUE;
     private final SnapshotManager snapshotManager = new SnapshotManager();
-    private OrderbookImpl orderbook = new OrderbookImpl();
+    private final OrderExpiryWheel orderExpiries = new OrderExpiryWheel();
+    private final OrderbookRegistry orderbooks = new OrderbookRegistry(getOrderbookType(), getSelfTradePrevention(),
+            getAllocationPolicy(), getInstrumentIds(), orderExpiries::cancel);
     private static final Logger LOGGER = LoggerFactory.getLogger(ClusterNode.class);
     private final OrderRequestDecoder orderRequestDecoder = new OrderRequestDecoder();
     private final CancelRequestDecoder cancelRequestDecoder = new CancelRequestDecoder();
+    private final AmendRequestDecoder amendRequestDecoder = new AmendRequestDecoder();
+    private final MassCancelRequestDecoder massCancelRequestDecoder = new MassCancelRequestDecoder();
+    private final ClearRequestDecoder clearRequestDecoder = new ClearRequestDecoder();
+    private final ResetRequestDecoder resetRequestDecoder = new ResetRequestDecoder();
+    private final AsksRequestDecoder asksRequestDecoder = new AsksRequestDecoder();
+    private final BidsRequestDecoder bidsRequestDecoder = new BidsRequestDecoder();
+    private final CurrentIdRequestDecoder currentIdRequestDecoder = new CurrentIdRequestDecoder();
+    private final BboRequestDecoder bboRequestDecoder = new BboRequestDecoder();
+    private final DepthRequestDecoder depthRequestDecoder = new DepthRequestDecoder();
+    private final StartAuctionRequestDecoder startAuctionRequestDecoder = new StartAuctionRequestDecoder();
+    private final UncrossRequestDecoder uncrossRequestDecoder = new UncrossRequestDecoder();
+    private final ExecutionResult rejectedResult = new ExecutionResult();
+    private final TopOfBook emptyTopOfBook = new TopOfBook();
+    private final MarketDepth depth = new MarketDepth(MAX_DEPTH_LEVELS);
+    private final OrderExpiryWheel.ExpiryHandler expiryHandler = this::expireOrder;
+    private final IntArrayList expiredInstrumentIds = new IntArrayList();
+    private final LongArrayList expiredOrderIds = new LongArrayList();
+    private final LongArrayList expiredSessionIds = new LongArrayList();
+    private final IntArrayList sessionExpiredInstrumentIds = new IntArrayList();
+    private final LongArrayList sessionExpiredOrderIds = new LongArrayList();
+    private final ArrayList<ClientSession> tradeSessions = new ArrayList<>();
+    private final LongArrayList cancelledOrderIds = new LongArrayList();
+    private final Map<String, List<SessionCancels>> pendingSessionCancels = new HashMap<>();
+    private final long orderExpiryInterval = getOrderExpiryInterval();
+    private boolean orderExpiryTimerScheduled = false;
     private final ClusterClientResponder clusterClientResponder;
+    private final Cluster cluster;
 
 
-    public OMSService(ClusterClientResponder clusterClientResponder, IdleStrategy idleStrategy)
+    public OMSService(ClusterClientResponder clusterClientResponder, Cluster cluster)
     {
-        snapshotManager.setIdleStrategy(idleStrategy);
+        snapshotManager.setIdleStrategy(cluster.idleStrategy());
+        clusterClientResponder.setIdleStrategy(cluster.idleStrategy());
         this.clusterClientResponder = clusterClientResponder;
+        this.cluster = cluster;
     }
 
-    public void messageHandler(final ClientSession session, final long correlationId, final int templateId, final DirectBuffer buffer, final int offset,
-                               int actingBlockLength, int actingVersion) {
+    /**
+     * Every field the cluster reads is required, so only requests encoded with this build's schema version are read
+     * - A request from an older or newer client would have fields missing or laid out differently, so it is rejected
+     *   with an executionResult of NONE, a layout unchanged since version 1 that any client can read
+     */
+    public void messageHandler(final ClientSession session, final long timestamp, final long correlationId, final int templateId,
+                               final DirectBuffer buffer, final int offset, int actingBlockLength, int actingVersion) {
+        if (actingVersion != MessageHeaderDecoder.SCHEMA_VERSION)
+        {
+            LOGGER.warn("Rejecting request {} from session {} encoded with schema version {}, expected {}",
+                    templateId, session.id(), actingVersion, MessageHeaderDecoder.SCHEMA_VERSION);
+            rejectedResult.setOrderId(0);
+            rejectedResult.setStatus(Status.NONE);
+            clusterClientResponder.onExecutionResult(session, correlationId, rejectedResult);
+            return;
+        }
         switch(templateId) {
             case CancelRequestDecoder.TEMPLATE_ID -> cancelOrder(session, correlationId, buffer, offset, actingBlockLength, actingVersion);
-            case OrderRequestDecoder.TEMPLATE_ID -> placeOrder(session, correlationId, buffer, offset, actingBlockLength, actingVersion);
-            case ResetRequestDecoder.TEMPLATE_ID -> resetOrderbook(session, correlationId);
-            case ClearRequestDecoder.TEMPLATE_ID -> clearOrderbook(session, correlationId);
-            case AsksRequestDecoder.TEMPLATE_ID  -> getOrders(session, correlationId, Method.ASKS);
-            case BidsRequestDecoder.TEMPLATE_ID  -> getOrders(session, correlationId, Method.BIDS);
-            case CurrentIdRequestDecoder.TEMPLATE_ID -> getCurrentOrderId(session, correlationId);
+            case OrderRequestDecoder.TEMPLATE_ID -> placeOrder(session, timestamp, correlationId, buffer, offset, actingBlockLength, actingVersion);
+            case AmendRequestDecoder.TEMPLATE_ID -> amendOrder(session, correlationId, buffer, offset, actingBlockLength, actingVersion);
+            case MassCancelRequestDecoder.TEMPLATE_ID -> massCancel(session, correlationId, buffer, offset, actingBlockLength, actingVersion);
+            case ResetRequestDecoder.TEMPLATE_ID -> {
+                resetRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+                resetOrderbook(session, correlationId, resetRequestDecoder.instrumentId());
+            }
+            case ClearRequestDecoder.TEMPLATE_ID -> {
+                clearRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+                clearOrderbook(session, correlationId, clearRequestDecoder.instrumentId());
+            }
+            case AsksRequestDecoder.TEMPLATE_ID -> {
+                asksRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+                getOrders(session, correlationId, Method.ASKS, asksRequestDecoder.instrumentId());
+            }
+            case BidsRequestDecoder.TEMPLATE_ID -> {
+                bidsRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+                getOrders(session, correlationId, Method.BIDS, bidsRequestDecoder.instrumentId());
+            }
+            case CurrentIdRequestDecoder.TEMPLATE_ID -> {
+                currentIdRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+                getCurrentOrderId(session, correlationId, currentIdRequestDecoder.instrumentId());
+            }
+            case BboRequestDecoder.TEMPLATE_ID -> {
+                bboRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+                getTopOfBook(session, correlationId, bboRequestDecoder.instrumentId());
+            }
+            case DepthRequestDecoder.TEMPLATE_ID -> {
+                depthRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+                getDepth(session, correlationId, depthRequestDecoder.instrumentId(), depthRequestDecoder.levels());
+            }
+            case StartAuctionRequestDecoder.TEMPLATE_ID -> {
+                startAuctionRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+                startAuction(session, correlationId, startAuctionRequestDecoder.instrumentId());
+            }
+            case UncrossRequestDecoder.TEMPLATE_ID -> {
+                uncrossRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+                uncross(session, correlationId, uncrossRequestDecoder.instrumentId());
+            }
         }
     }
 
-    private void getCurrentOrderId(ClientSession session, long messageId) {
-        final long currentOrderId = orderbook.getCurrentOrderId();
+    private void getCurrentOrderId(ClientSession session, long messageId, int instrumentId) {
+        final IOrderbook orderbook = orderbooks.get(instrumentId);
+        final long currentOrderId = orderbook == null ? 0 : orderbook.getCurrentOrderId();
         clusterClientResponder.onOrderId(session, messageId, currentOrderId);
     }
 
-    private void getOrders(ClientSession session, long messageId, Method method)
+    /**
+     * Best bid and offer in one fixed-size egress message, read from the book without walking its orders
+     */
+    private void getTopOfBook(ClientSession session, long messageId, int instrumentId)
     {
-        LOGGER.info("List of %s orders is being requested".formatted(method.name()));
+        final IOrderbook orderbook = orderbooks.get(instrumentId);
+        clusterClientResponder.onTopOfBook(session, messageId,
+                orderbook == null ? emptyTopOfBook : orderbook.getTopOfBook());
+    }
+
+    /**
+     * Top levels of each side in one egress message, read from the size and order count each level keeps, so the cost
+     * depends on the levels asked for and not on the orders resting on them
+     */
+    private void getDepth(ClientSession session, long messageId, int instrumentId, int levels)
+    {
+        final IOrderbook orderbook = orderbooks.get(instrumentId);
+        if (orderbook == null)
+        {
+            depth.clear();
+        }
+        else
+        {
+            orderbook.readDepth(Math.min(levels, MAX_DEPTH_LEVELS), depth);
+        }
+        clusterClientResponder.onDepth(session, messageId, depth);
+    }
+
+    private void getOrders(ClientSession session, long messageId, Method method, int instrumentId)
+    {
+        LOGGER.info("List of %s orders is being requested for instrument %d".formatted(method.name(), instrumentId));
+        final IOrderbook orderbook = orderbooks.get(instrumentId);
+        if (orderbook == null)
+        {
+            clusterClientResponder.onOrders(session, messageId, Collections.emptyList());
+            return;
+        }
         switch(method) {
             case ASKS -> clusterClientResponder.onOrders(session, messageId, orderbook.getAsks());
             case BIDS -> clusterClientResponder.onOrders(session, messageId, orderbook.getBids());
@@ -58,8 +203,8 @@ public class OMSService
         }
     }
 
-    private void placeOrder(final ClientSession session, final long messageId, final DirectBuffer buffer, final int offset,
-                            int actingBlockLength, int actingVersion)
+    private void placeOrder(final ClientSession session, final long timestamp, final long messageId, final DirectBuffer buffer,
+                            final int offset, int actingBlockLength, int actingVersion)
     {
         /*
          * * Receive Ingress binary encoding and place order in Orderbook
@@ -69,17 +214,198 @@ public class OMSService
          *      - Offer Egress back to cluster client
          */
         orderRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
-        final double orderPrice = orderRequestDecoder.price();
+        final long orderPrice = orderRequestDecoder.price();
         final long orderSize = orderRequestDecoder.size();
         final Side orderSide = Side.fromByteValue((byte) orderRequestDecoder.side());
+        final int instrumentId = orderRequestDecoder.instrumentId();
+        final OrderType orderType = OrderType.fromByteValue((byte) orderRequestDecoder.orderType());
+        final TimeInForce timeInForce = TimeInForce.fromByteValue((byte) orderRequestDecoder.timeInForce());
+        final long displaySize = orderRequestDecoder.displaySize();
+        final long triggerPrice = orderRequestDecoder.triggerPrice();
+        // the books only know GTC, a GTT order rests the same way and is cancelled from the expiry wheel
+        final TimeInForce bookTimeInForce = timeInForce == TimeInForce.GTT ? TimeInForce.GTC : timeInForce;
 
-        LOGGER.info(String.format("%s order is being placed for %d at %f", orderSide, orderSize, orderPrice));
-        final ExecutionResult executionResult = orderbook.placeOrder(orderPrice, orderSize, orderSide);
+        if (LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug(String.format("%s %s %s order is being placed for %d at %d on instrument %d",
+                    timeInForce, orderType, orderSide, orderSize, orderPrice, instrumentId));
+        }
+        final IOrderbook orderbook = orderbooks.getOrCreateConfigured(instrumentId);
+        if (orderbook == null)
+        {
+            LOGGER.warn("Rejecting order from session {} for unknown instrument {}", session.id(), instrumentId);
+            rejectedResult.setOrderId(0);
+            rejectedResult.setStatus(Status.NONE);
+            clusterClientResponder.onExecutionResult(session, messageId, rejectedResult);
+            return;
+        }
+        if (timeInForce == TimeInForce.GTT && orderRequestDecoder.expireTime() <= timestamp)
+        {
+            // it would rest past its expiry until the next poll of the wheel, and trade there when it should not
+            LOGGER.warn("Rejecting GTT order from session {} that expired at {}, before cluster time {}", session.id(),
+                    orderRequestDecoder.expireTime(), timestamp);
+            rejectedResult.setOrderId(0);
+            rejectedResult.setStatus(Status.NONE);
+            clusterClientResponder.onExecutionResult(session, messageId, rejectedResult);
+            return;
+        }
+        final ExecutionResult executionResult = switch (orderType)
+        {
+            case MARKET -> orderbook.placeMarketOrder(session.id(), orderSize, orderSide, timeInForce);
+            case STOP -> orderbook.placeStopMarketOrder(session.id(), triggerPrice, orderSize, orderSide);
+            case STOP_LIMIT -> orderbook.placeStopOrder(session.id(), triggerPrice, orderPrice, orderSize, orderSide,
+                    bookTimeInForce);
+            case LIMIT -> orderbook.placeOrder(session.id(), orderPrice, orderSize, orderSide, bookTimeInForce,
+                    displaySize);
+        };
+        if (timeInForce == TimeInForce.GTT && orderType != OrderType.MARKET && isLeftWaiting(executionResult.getStatus()))
+        {
+            orderExpiries.schedule(timestamp, instrumentId, executionResult.getOrderId(), orderRequestDecoder.expireTime());
+            scheduleOrderExpiryTimer(timestamp);
+        }
 
+        sendTrades(instrumentId, orderbook.getFills());
         clusterClientResponder.onExecutionResult(session, messageId, executionResult);
     }
 
 
+    /**
+     * Send the fills of the last order to the open sessions on either side of them, so a resting order's owner hears
+     * of its fill without asking for the book
+     * - The fills are encoded once and the same messages go to every session involved, each session once
+     * - Sent before the aggressor's own response, so it has its fills by the time it learns the order's status
+     */
+    private void sendTrades(final int instrumentId, final FillBuffer fills)
+    {
+        if (fills.getFillCount() == 0)
+        {
+            return;
+        }
+        tradeSessions.clear();
+        for (int i = 0; i < fills.getFillCount(); i++)
+        {
+            addTradeSession(fills.getAggressorSessionId(i));
+            addTradeSession(fills.getPassiveSessionId(i));
+        }
+        clusterClientResponder.onTrades(tradeSessions, instrumentId, fills);
+    }
+
+    /**
+     * Sessions are few next to fills, so checking the ones already added is cheaper than a set
+     */
+    private void addTradeSession(final long sessionId)
+    {
+        for (int i = 0; i < tradeSessions.size(); i++)
+        {
+            if (tradeSessions.get(i).id() == sessionId)
+            {
+                return;
+            }
+        }
+        final ClientSession session = cluster.getClientSession(sessionId);
+        if (session != null)
+        {
+            tradeSessions.add(session);
+        }
+    }
+
+    private static boolean isLeftWaiting(final Status status)
+    {
+        return status == Status.RESTING || status == Status.PARTIAL || status == Status.PENDING;
+    }
+
+    private void scheduleOrderExpiryTimer(final long now)
+    {
+        if (!orderExpiryTimerScheduled)
+        {
+            orderExpiryTimerScheduled = cluster.scheduleTimer(ORDER_EXPIRY_TIMER_ID, now + orderExpiryInterval);
+        }
+    }
+
+    /**
+     * Cancel every GTT order whose expire time has passed, on every instrument
+     * - Expiries are read from the wheel a batch at a time, and the orders of each batch go to the session that owns
+     *   them, one message per session, as other sessions have no business knowing them
+     * - The timer is only scheduled again while some GTT order is still waiting
+     */
+    public void onTimerEvent(final long correlationId, final long timestamp)
+    {
+        if (correlationId != ORDER_EXPIRY_TIMER_ID)
+        {
+            return;
+        }
+        orderExpiryTimerScheduled = false;
+        int expired;
+        do
+        {
+            expiredInstrumentIds.clear();
+            expiredOrderIds.clear();
+            expiredSessionIds.clear();
+            expired = orderExpiries.poll(timestamp, expiryHandler, EXPIRED_ORDERS_PER_BATCH);
+            sendExpiries();
+        }
+        while (expired == EXPIRED_ORDERS_PER_BATCH);
+
+        if (orderExpiries.getExpiryCount() > 0)
+        {
+            scheduleOrderExpiryTimer(timestamp);
+        }
+    }
+
+    /**
+     * An order that has already filled or been cancelled is no longer in its book and is skipped
+     * - The owning session is read from the book before the cancel takes the order out
+     */
+    private void expireOrder(final int instrumentId, final long orderId)
+    {
+        final IOrderbook orderbook = orderbooks.get(instrumentId);
+        if (orderbook == null)
+        {
+            return;
+        }
+        final long sessionId = orderbook.getSessionId(orderId);
+        if (orderbook.cancelOrder(orderId).getStatus() == Status.CANCELLED)
+        {
+            expiredInstrumentIds.addInt(instrumentId);
+            expiredOrderIds.addLong(orderId);
+            expiredSessionIds.addLong(sessionId);
+        }
+    }
+
+    /**
+     * Send each session the expired orders of the batch that it owns
+     * - Sessions are few next to expiries, so each one's orders are gathered in a pass over the rest of the batch,
+     *   marking them sent, rather than sorting the batch
+     * - The orders of a session that has since closed are dropped, no one is left to tell
+     */
+    private void sendExpiries()
+    {
+        for (int i = 0; i < expiredSessionIds.size(); i++)
+        {
+            final long sessionId = expiredSessionIds.getLong(i);
+            if (sessionId == EXPIRY_SENT)
+            {
+                continue;
+            }
+            sessionExpiredInstrumentIds.clear();
+            sessionExpiredOrderIds.clear();
+            for (int j = i; j < expiredSessionIds.size(); j++)
+            {
+                if (expiredSessionIds.getLong(j) == sessionId)
+                {
+                    sessionExpiredInstrumentIds.addInt(expiredInstrumentIds.getInt(j));
+                    sessionExpiredOrderIds.addLong(expiredOrderIds.getLong(j));
+                    expiredSessionIds.setLong(j, EXPIRY_SENT);
+                }
+            }
+            final ClientSession session = cluster.getClientSession(sessionId);
+            if (session != null)
+            {
+                clusterClientResponder.onOrdersExpired(session, sessionExpiredInstrumentIds, sessionExpiredOrderIds);
+            }
+        }
+    }
+
     private void cancelOrder(final ClientSession session, final long correlationId, final DirectBuffer buffer, final int offset,
                              int actingBlockLength, int actingVersion)
     {
@@ -92,14 +418,212 @@ public class OMSService
          */
         cancelRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
         final long orderId = cancelRequestDecoder.orderId();
+        final int instrumentId = cancelRequestDecoder.instrumentId();
+
+        if (LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Cancelling order " + orderId + " on instrument " + instrumentId);
+        }
+        final IOrderbook orderbook = orderbooks.get(instrumentId);
+        final ExecutionResult executionResult;
+        if (orderbook == null)
+        {
+            rejectedResult.setOrderId(orderId);
+            rejectedResult.setStatus(Status.NONE);
+            executionResult = rejectedResult;
+        }
+        else
+        {
+            executionResult = orderbook.cancelOrder(orderId);
+        }
 
-        LOGGER.info("Cancelling order " + orderId);
-        final ExecutionResult executionResult = orderbook.cancelOrder(orderId);
+        clusterClientResponder.onExecutionResult(session, correlationId, executionResult);
+    }
+
+    /**
+     * Amend a resting order in one log entry and one egress message, instead of a cancel followed by a new order
+     */
+    private void amendOrder(final ClientSession session, final long correlationId, final DirectBuffer buffer, final int offset,
+                            int actingBlockLength, int actingVersion)
+    {
+        amendRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final long orderId = amendRequestDecoder.orderId();
+        final long price = amendRequestDecoder.price();
+        final long size = amendRequestDecoder.size();
+        final int instrumentId = amendRequestDecoder.instrumentId();
+
+        if (LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug(String.format("Amending order %d to %d at %d on instrument %d", orderId, size, price, instrumentId));
+        }
+        final IOrderbook orderbook = orderbooks.get(instrumentId);
+        final ExecutionResult executionResult;
+        if (orderbook == null)
+        {
+            rejectedResult.setOrderId(orderId);
+            rejectedResult.setStatus(Status.NONE);
+            executionResult = rejectedResult;
+        }
+        else
+        {
+            executionResult = orderbook.amendOrder(orderId, price, size);
+            sendTrades(instrumentId, orderbook.getFills());
+        }
 
         clusterClientResponder.onExecutionResult(session, correlationId, executionResult);
     }
 
-    private void clearOrderbook(final ClientSession session, final long correlationId)
+    /**
+     * Cancel a whole set of orders in one log entry, answered with a single summary of how many were cancelled
+     * - The requesting session's orders are found through the book's session index, so only they are walked
+     */
+    private void massCancel(final ClientSession session, final long correlationId, final DirectBuffer buffer, final int offset,
+                            int actingBlockLength, int actingVersion)
+    {
+        massCancelRequestDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final int instrumentId = massCancelRequestDecoder.instrumentId();
+        final short sideFilter = massCancelRequestDecoder.side();
+        final Side side = sideFilter == Side.BID.getByte() || sideFilter == Side.ASK.getByte()
+                ? Side.fromByteValue((byte) sideFilter) : null;
+        final long sessionId = massCancelRequestDecoder.scope() == 0 ? session.id() : IOrderbook.ANY_SESSION;
+
+        final IOrderbook orderbook = orderbooks.get(instrumentId);
+        final int cancelled = orderbook == null ? 0 : orderbook.massCancel(sessionId, side,
+                massCancelRequestDecoder.minPrice(), massCancelRequestDecoder.maxPrice());
+        LOGGER.info("Mass cancel of {} orders on instrument {}", cancelled, instrumentId);
+
+        clusterClientResponder.onMassCancel(session, correlationId, cancelled);
+    }
+
+    /**
+     * Cancel every resting order of a session that has closed, on every instrument
+     * - Each book walks only that session's orders through its session index
+     * - The closed session can no longer be sent to, and other clients have no business knowing its orders, so the
+     *   cancelled orderIds go to a session of the same client, known by its principal, as one batched stream per
+     *   instrument. An open session of the client is told at once, otherwise the next one to open is
+     * - A client that connected without credentials cannot be recognised again, so its cancels are only logged
+     */
+    public void onSessionClose(final ClientSession closedSession)
+    {
+        final long sessionId = closedSession.id();
+        final String principal = principalOf(closedSession);
+        final ClientSession owner = principal.isEmpty() ? null : findSession(principal, sessionId);
+        for (int i = 0; i < orderbooks.getInstrumentCount(); i++)
+        {
+            final int instrumentId = orderbooks.getInstrumentId(i);
+            cancelledOrderIds.clear();
+            final int cancelled = orderbooks.get(instrumentId).cancelSession(sessionId, cancelledOrderIds);
+            if (cancelled == 0)
+            {
+                continue;
+            }
+            LOGGER.info("Cancelled {} orders of closed session {} on instrument {}", cancelled, sessionId, instrumentId);
+            if (owner != null)
+            {
+                clusterClientResponder.onSessionOrdersCancelled(owner, instrumentId, sessionId, cancelledOrderIds);
+            }
+            else if (!principal.isEmpty())
+            {
+                final LongArrayList orderIds = new LongArrayList(cancelled, LongArrayList.DEFAULT_NULL_VALUE);
+                orderIds.addAll(cancelledOrderIds);
+                pendingSessionCancels.computeIfAbsent(principal, ignored -> new ArrayList<>())
+                        .add(new SessionCancels(instrumentId, sessionId, orderIds));
+            }
+        }
+    }
+
+    /**
+     * Tell a newly opened session of the orders cancelled when an earlier session of the same client closed
+     * - Pending cancels are not snapshotted, so they are lost if the cluster restarts from a snapshot before the
+     *   client reconnects
+     */
+    public void onSessionOpen(final ClientSession session)
+    {
+        final String principal = principalOf(session);
+        if (principal.isEmpty())
+        {
+            return;
+        }
+        final List<SessionCancels> sessionCancels = pendingSessionCancels.remove(principal);
+        if (sessionCancels != null)
+        {
+            for (SessionCancels cancels : sessionCancels)
+            {
+                clusterClientResponder.onSessionOrdersCancelled(session, cancels.instrumentId(), cancels.sessionId(),
+                        cancels.orderIds());
+            }
+        }
+    }
+
+    private static String principalOf(final ClientSession session)
+    {
+        final byte[] encodedPrincipal = session.encodedPrincipal();
+        return encodedPrincipal == null ? "" : new String(encodedPrincipal, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An open session, other than the one closing, of the client with the given principal, or null if it has none
+     */
+    private ClientSession findSession(final String principal, final long closedSessionId)
+    {
+        for (ClientSession session : cluster.clientSessions())
+        {
+            if (session.id() != closedSessionId && principal.equals(principalOf(session)))
+            {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Orders of one instrument cancelled when a session closed, waiting for a session of the same client to open
+     */
+    private record SessionCancels(int instrumentId, long sessionId, LongArrayList orderIds)
+    {
+    }
+
+    /**
+     * Answered with NONE for an instrument that is not configured
+     */
+    private void startAuction(final ClientSession session, final long correlationId, final int instrumentId)
+    {
+        final IOrderbook orderbook = orderbooks.getOrCreateConfigured(instrumentId);
+        if (orderbook == null)
+        {
+            clusterClientResponder.onStatusMessage(session, correlationId, Status.NONE);
+            return;
+        }
+        LOGGER.info("Starting auction for instrument {}", instrumentId);
+        orderbook.startAuction();
+
+        clusterClientResponder.onSuccessMessage(session, correlationId);
+    }
+
+    /**
+     * Uncross an auction in one pass over the book, then answer the request
+     * - The owners of the orders hear of their fills through the trade stream, followed by the trades of any stops the
+     *   uncross triggered
+     * - The price, volume and every fill go to the session that asked for the uncross only, as the other sessions have
+     *   no business knowing whose orders filled
+     */
+    private void uncross(final ClientSession session, final long correlationId, final int instrumentId)
+    {
+        final IOrderbook orderbook = orderbooks.get(instrumentId);
+        if (orderbook == null)
+        {
+            clusterClientResponder.onStatusMessage(session, correlationId, Status.NONE);
+            return;
+        }
+        final AuctionUncross uncross = orderbook.uncross();
+        LOGGER.info("Uncrossed {} at {} on instrument {}", uncross.getVolume(), uncross.getPrice(), instrumentId);
+        sendTrades(instrumentId, orderbook.getFills());
+        clusterClientResponder.onAuctionFills(session, instrumentId, uncross);
+
+        clusterClientResponder.onSuccessMessage(session, correlationId);
+    }
+
+    private void clearOrderbook(final ClientSession session, final long correlationId, final int instrumentId)
     {
         /*
          * * Receive Ingress binary encoding and clear Orderbook
@@ -108,13 +632,18 @@ public class OMSService
          *      - Encode a response
          *      - Offer Egress back to cluster client
          */
-        LOGGER.info("Clearing orderbook...");
-        orderbook.clear();
+        LOGGER.info("Clearing orderbook for instrument {}...", instrumentId);
+        final IOrderbook orderbook = orderbooks.get(instrumentId);
+        if (orderbook != null)
+        {
+            orderbook.clear();
+            orderExpiries.cancelInstrument(instrumentId);
+        }
 
         clusterClientResponder.onSuccessMessage(session, correlationId);
     }
 
-    private void resetOrderbook(final ClientSession session, final long correlationId)
+    private void resetOrderbook(final ClientSession session, final long correlationId, final int instrumentId)
     {
         /*
          * * Receive Ingress binary encoding and reset Orderbook
@@ -123,8 +652,13 @@ public class OMSService
          *      - Encode a response
          *      - Offer Egress back to cluster client
          */
-        LOGGER.info("Resetting orderbook...");
-        orderbook.reset();
+        LOGGER.info("Resetting orderbook for instrument {}...", instrumentId);
+        final IOrderbook orderbook = orderbooks.get(instrumentId);
+        if (orderbook != null)
+        {
+            orderbook.reset();
+            orderExpiries.cancelInstrument(instrumentId);
+        }
 
         clusterClientResponder.onSuccessMessage(session, correlationId);
     }
@@ -137,7 +671,7 @@ public class OMSService
          *      - Encode Orderbook state
          *      - Offer to SnapshotPublication
          */
-        snapshotManager.encodeOrderbookState(snapshotPublication, orderbook.getAsks(), orderbook.getBids(), orderbook.getCurrentOrderId());
+        snapshotManager.encodeOrderbookState(snapshotPublication, orderbooks, orderExpiries);
     }
 
     public void onRestoreSnapshot(Image snapshotImage)
@@ -147,6 +681,8 @@ public class OMSService
          *      - Decode Snapshot Image encoding into appropriate data structures
          *      - Restore into Orderbook state
          */
-        orderbook = snapshotManager.loadSnapshot(snapshotImage);
+        snapshotManager.loadSnapshot(snapshotImage, orderbooks, orderExpiries);
+        // the cluster timer is snapshotted by the consensus module, so it is still due whenever expiries were restored
+        orderExpiryTimerScheduled = orderExpiries.getExpiryCount() > 0;
     }
 }
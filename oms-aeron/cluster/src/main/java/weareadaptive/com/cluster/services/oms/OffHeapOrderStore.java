@@ -0,0 +1,244 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.BufferUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * {@link OrderStore} keeping each order as a fixed-size record in direct-memory slabs, so resting orders add nothing
+ * to the heap or to GC marking however deep the book gets.
+ * - A handle is split into a slab index and a record index within that slab, and slabs are added as the book grows
+ * - Freed records are kept on a free list chained through their next link
+ * - The record starts with orderId, price, size, sessionId, reserve and displaySize in the block layout of the
+ *   snapshot order messages, so a snapshot copies that region of the record as it is
+ */
+public class OffHeapOrderStore implements OrderStore
+{
+    private static final int ORDER_ID_OFFSET = 0;
+    private static final int PRICE_OFFSET = ORDER_ID_OFFSET + Long.BYTES;
+    private static final int SIZE_OFFSET = PRICE_OFFSET + Long.BYTES;
+    private static final int SESSION_ID_OFFSET = SIZE_OFFSET + Long.BYTES;
+    private static final int RESERVE_OFFSET = SESSION_ID_OFFSET + Long.BYTES;
+    private static final int DISPLAY_SIZE_OFFSET = RESERVE_OFFSET + Long.BYTES;
+    private static final int PREVIOUS_OFFSET = DISPLAY_SIZE_OFFSET + Long.BYTES;
+    private static final int NEXT_OFFSET = PREVIOUS_OFFSET + Integer.BYTES;
+    private static final int SESSION_PREVIOUS_OFFSET = NEXT_OFFSET + Integer.BYTES;
+    private static final int SESSION_NEXT_OFFSET = SESSION_PREVIOUS_OFFSET + Integer.BYTES;
+    private static final int SIDE_OFFSET = SESSION_NEXT_OFFSET + Integer.BYTES;
+    private static final int ORDER_LENGTH = 72;
+
+    private static final int DEFAULT_SLAB_SHIFT = 16;
+    private static final int CACHE_LINE_LENGTH = 64;
+
+    private final int slabShift;
+    private final int slabMask;
+    private UnsafeBuffer[] slabs = new UnsafeBuffer[8];
+    private int slabCount = 0;
+    private int allocated = 0;
+    private int freeHead = NULL_HANDLE;
+
+    public OffHeapOrderStore()
+    {
+        this(DEFAULT_SLAB_SHIFT);
+    }
+
+    /**
+     * @param slabShift each slab holds 2^slabShift orders
+     */
+    public OffHeapOrderStore(int slabShift)
+    {
+        this.slabShift = slabShift;
+        this.slabMask = (1 << slabShift) - 1;
+    }
+
+    @Override
+    public int allocate(long orderId, long price, long size, Side side, long sessionId)
+    {
+        final int handle;
+        if (freeHead != NULL_HANDLE)
+        {
+            handle = freeHead;
+            freeHead = getNext(handle);
+        }
+        else
+        {
+            if (allocated == slabCount << slabShift)
+            {
+                addSlab();
+            }
+            handle = allocated++;
+        }
+        final UnsafeBuffer slab = slab(handle);
+        final int offset = offset(handle);
+        slab.putLong(offset + ORDER_ID_OFFSET, orderId, ByteOrder.LITTLE_ENDIAN);
+        slab.putLong(offset + PRICE_OFFSET, price, ByteOrder.LITTLE_ENDIAN);
+        slab.putLong(offset + SIZE_OFFSET, size, ByteOrder.LITTLE_ENDIAN);
+        slab.putLong(offset + SESSION_ID_OFFSET, sessionId, ByteOrder.LITTLE_ENDIAN);
+        slab.putLong(offset + RESERVE_OFFSET, 0, ByteOrder.LITTLE_ENDIAN);
+        slab.putLong(offset + DISPLAY_SIZE_OFFSET, 0, ByteOrder.LITTLE_ENDIAN);
+        slab.putInt(offset + PREVIOUS_OFFSET, NULL_HANDLE);
+        slab.putInt(offset + NEXT_OFFSET, NULL_HANDLE);
+        slab.putInt(offset + SESSION_PREVIOUS_OFFSET, NULL_HANDLE);
+        slab.putInt(offset + SESSION_NEXT_OFFSET, NULL_HANDLE);
+        slab.putByte(offset + SIDE_OFFSET, side.getByte());
+        return handle;
+    }
+
+    @Override
+    public void free(int handle)
+    {
+        setPrevious(handle, NULL_HANDLE);
+        setNext(handle, freeHead);
+        freeHead = handle;
+    }
+
+    @Override
+    public long getOrderId(int handle)
+    {
+        return slab(handle).getLong(offset(handle) + ORDER_ID_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public long getPrice(int handle)
+    {
+        return slab(handle).getLong(offset(handle) + PRICE_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void setPrice(int handle, long price)
+    {
+        slab(handle).putLong(offset(handle) + PRICE_OFFSET, price, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public long getSize(int handle)
+    {
+        return slab(handle).getLong(offset(handle) + SIZE_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void setSize(int handle, long size)
+    {
+        slab(handle).putLong(offset(handle) + SIZE_OFFSET, size, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public Side getSide(int handle)
+    {
+        return slab(handle).getByte(offset(handle) + SIDE_OFFSET) == Side.ASK.getByte() ? Side.ASK : Side.BID;
+    }
+
+    @Override
+    public long getSessionId(int handle)
+    {
+        return slab(handle).getLong(offset(handle) + SESSION_ID_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public long getReserve(int handle)
+    {
+        return slab(handle).getLong(offset(handle) + RESERVE_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void setReserve(int handle, long reserve)
+    {
+        slab(handle).putLong(offset(handle) + RESERVE_OFFSET, reserve, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public long getDisplaySize(int handle)
+    {
+        return slab(handle).getLong(offset(handle) + DISPLAY_SIZE_OFFSET, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void setDisplaySize(int handle, long displaySize)
+    {
+        slab(handle).putLong(offset(handle) + DISPLAY_SIZE_OFFSET, displaySize, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public int getPrevious(int handle)
+    {
+        return slab(handle).getInt(offset(handle) + PREVIOUS_OFFSET);
+    }
+
+    @Override
+    public void setPrevious(int handle, int previous)
+    {
+        slab(handle).putInt(offset(handle) + PREVIOUS_OFFSET, previous);
+    }
+
+    @Override
+    public int getNext(int handle)
+    {
+        return slab(handle).getInt(offset(handle) + NEXT_OFFSET);
+    }
+
+    @Override
+    public void setNext(int handle, int next)
+    {
+        slab(handle).putInt(offset(handle) + NEXT_OFFSET, next);
+    }
+
+    @Override
+    public int getSessionPrevious(int handle)
+    {
+        return slab(handle).getInt(offset(handle) + SESSION_PREVIOUS_OFFSET);
+    }
+
+    @Override
+    public void setSessionPrevious(int handle, int previous)
+    {
+        slab(handle).putInt(offset(handle) + SESSION_PREVIOUS_OFFSET, previous);
+    }
+
+    @Override
+    public int getSessionNext(int handle)
+    {
+        return slab(handle).getInt(offset(handle) + SESSION_NEXT_OFFSET);
+    }
+
+    @Override
+    public void setSessionNext(int handle, int next)
+    {
+        slab(handle).putInt(offset(handle) + SESSION_NEXT_OFFSET, next);
+    }
+
+    @Override
+    public void readRecord(int handle, OrderRecordHandler handler)
+    {
+        handler.onOrderRecord(slab(handle), offset(handle) + ORDER_ID_OFFSET);
+    }
+
+    /**
+     * Direct memory held by the store, which only grows
+     */
+    public long getCapacityBytes()
+    {
+        return ((long)slabCount << slabShift) * ORDER_LENGTH;
+    }
+
+    private UnsafeBuffer slab(int handle)
+    {
+        return slabs[handle >>> slabShift];
+    }
+
+    private int offset(int handle)
+    {
+        return (handle & slabMask) * ORDER_LENGTH;
+    }
+
+    private void addSlab()
+    {
+        if (slabCount == slabs.length)
+        {
+            slabs = Arrays.copyOf(slabs, slabCount * 2);
+        }
+        slabs[slabCount++] = new UnsafeBuffer(BufferUtil.allocateDirectAligned(ORDER_LENGTH << slabShift, CACHE_LINE_LENGTH));
+    }
+}
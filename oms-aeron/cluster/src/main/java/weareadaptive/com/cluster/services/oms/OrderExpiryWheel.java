@@ -0,0 +1,165 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.DeadlineTimerWheel;
+import org.agrona.collections.Int2ObjectHashMap;
+import org.agrona.collections.Long2LongHashMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expiry times of the good-till-time orders of every orderbook, held in a {@link DeadlineTimerWheel} driven by cluster
+ * time, so thousands of orders share a single recurring cluster timer instead of scheduling one each.
+ * - Scheduling and cancelling an expiry are O(1), and a poll only looks at the ticks that have passed
+ * - Each timer maps back to the instrument and orderId it expires, and each order to its timer, so the timer of an
+ *   order that fills or is cancelled is cancelled with it rather than left in the wheel and in every snapshot until
+ *   its expire time
+ * - Times are cluster timestamps in milliseconds
+ */
+public class OrderExpiryWheel
+{
+    private static final long TICK_RESOLUTION_MS = 16;
+    private static final int TICKS_PER_WHEEL = 1024;
+    private static final long NO_TIMER = -1;
+
+    @FunctionalInterface
+    public interface ExpiryHandler
+    {
+        void onOrderExpired(int instrumentId, long orderId);
+    }
+
+    /**
+     * Called with each order still waiting to expire
+     */
+    @FunctionalInterface
+    public interface ExpiryConsumer
+    {
+        void accept(int instrumentId, long orderId, long expireTime);
+    }
+
+    private final DeadlineTimerWheel wheel =
+            new DeadlineTimerWheel(TimeUnit.MILLISECONDS, 0, TICK_RESOLUTION_MS, TICKS_PER_WHEEL);
+    private final Long2LongHashMap orderIdByTimer = new Long2LongHashMap(NO_TIMER);
+    private final Long2LongHashMap instrumentIdByTimer = new Long2LongHashMap(NO_TIMER);
+    private final Int2ObjectHashMap<Long2LongHashMap> timerByOrderIdByInstrument = new Int2ObjectHashMap<>();
+    private ExpiryHandler expiryHandler;
+    private ExpiryConsumer expiryConsumer;
+    private final DeadlineTimerWheel.TimerHandler timerHandler = this::onTimerExpiry;
+    private final DeadlineTimerWheel.TimerConsumer timerConsumer = this::onTimer;
+
+    public void schedule(long now, int instrumentId, long orderId, long expireTime)
+    {
+        if (wheel.timerCount() == 0)
+        {
+            // the wheel only moves one tick per poll, so an empty wheel is moved straight to the present
+            wheel.resetStartTime(now);
+        }
+        final long timerId = wheel.scheduleTimer(expireTime);
+        orderIdByTimer.put(timerId, orderId);
+        instrumentIdByTimer.put(timerId, instrumentId);
+        Long2LongHashMap timerByOrderId = timerByOrderIdByInstrument.get(instrumentId);
+        if (timerByOrderId == null)
+        {
+            timerByOrderId = new Long2LongHashMap(NO_TIMER);
+            timerByOrderIdByInstrument.put(instrumentId, timerByOrderId);
+        }
+        timerByOrderId.put(orderId, timerId);
+    }
+
+    /**
+     * Drop the expiry of an order that has left its book, a no-op for an order that has none
+     */
+    public void cancel(int instrumentId, long orderId)
+    {
+        final Long2LongHashMap timerByOrderId = timerByOrderIdByInstrument.get(instrumentId);
+        if (timerByOrderId == null)
+        {
+            return;
+        }
+        final long timerId = timerByOrderId.remove(orderId);
+        if (timerId != NO_TIMER)
+        {
+            wheel.cancelTimer(timerId);
+            orderIdByTimer.remove(timerId);
+            instrumentIdByTimer.remove(timerId);
+        }
+    }
+
+    /**
+     * Hand every order that has expired by now to the handler, at most expiryLimit per call
+     * - Returns how many orders were handed over, so a call that returns expiryLimit should be followed by another
+     */
+    public int poll(long now, ExpiryHandler handler, int expiryLimit)
+    {
+        if (wheel.timerCount() == 0)
+        {
+            wheel.resetStartTime(now);
+            return 0;
+        }
+        expiryHandler = handler;
+        int expired = 0;
+        do
+        {
+            expired += wheel.poll(now, timerHandler, expiryLimit - expired);
+        }
+        while (expired < expiryLimit && wheel.timerCount() > 0 && now >= wheel.currentTickTime());
+        return expired;
+    }
+
+    /**
+     * Drop every expiry of one instrument, used when its orderIds start again from 0
+     */
+    public void cancelInstrument(int instrumentId)
+    {
+        timerByOrderIdByInstrument.remove(instrumentId);
+        final Long2LongHashMap.KeyIterator timers = instrumentIdByTimer.keySet().iterator();
+        while (timers.hasNext())
+        {
+            final long timerId = timers.nextValue();
+            if (instrumentIdByTimer.get(timerId) == instrumentId)
+            {
+                wheel.cancelTimer(timerId);
+                orderIdByTimer.remove(timerId);
+                timers.remove();
+            }
+        }
+    }
+
+    public int getExpiryCount()
+    {
+        return (int)wheel.timerCount();
+    }
+
+    /**
+     * Start of the tick the wheel is on, which a restored wheel is started from so its ticks line up with this one
+     */
+    public long getTickTime()
+    {
+        return wheel.currentTickTime() - TICK_RESOLUTION_MS;
+    }
+
+    /**
+     * Hand each order still waiting to expire to the consumer, used to write the wheel to a snapshot
+     */
+    public void forEach(ExpiryConsumer consumer)
+    {
+        expiryConsumer = consumer;
+        wheel.forEach(timerConsumer);
+    }
+
+    /**
+     * The order's mapping is dropped before the handler cancels it, so the cancel finds no timer to cancel again
+     */
+    private boolean onTimerExpiry(TimeUnit timeUnit, long now, long timerId)
+    {
+        final int instrumentId = (int)instrumentIdByTimer.remove(timerId);
+        final long orderId = orderIdByTimer.remove(timerId);
+        timerByOrderIdByInstrument.get(instrumentId).remove(orderId);
+        expiryHandler.onOrderExpired(instrumentId, orderId);
+        return true;
+    }
+
+    private void onTimer(long deadline, long timerId)
+    {
+        expiryConsumer.accept((int)instrumentIdByTimer.get(timerId), orderIdByTimer.get(timerId), deadline);
+    }
+}
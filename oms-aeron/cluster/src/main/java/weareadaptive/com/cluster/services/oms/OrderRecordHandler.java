@@ -0,0 +1,12 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.DirectBuffer;
+
+/**
+ * Receives an {@link OrderStore#RECORD_LENGTH} byte order record, which is only valid for the duration of the call
+ */
+@FunctionalInterface
+public interface OrderRecordHandler
+{
+    void onOrderRecord(DirectBuffer buffer, int offset);
+}
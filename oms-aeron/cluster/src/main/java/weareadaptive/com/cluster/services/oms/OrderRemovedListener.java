@@ -0,0 +1,14 @@
+package weareadaptive.com.cluster.services.oms;
+
+/**
+ * Told of each order that leaves its book for good, filled, cancelled or expired, so whatever is kept for it outside
+ * the book can be dropped with it
+ * - Not told of a stop order that triggers and goes on under the same orderId, nor of the orders a clear or reset drops
+ */
+@FunctionalInterface
+public interface OrderRemovedListener
+{
+    OrderRemovedListener NONE = orderId -> { };
+
+    void onOrderRemoved(long orderId);
+}
@@ -0,0 +1,55 @@
+package weareadaptive.com.cluster.services.oms;
+
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+/**
+ * Storage for the resting orders of a {@link PriceLevelOrderbook}, addressed by int handles instead of references.
+ * - Handles are reused once freed, so a handle must not be kept after its order leaves the book
+ * - previous/next link the orders of one price level into a FIFO queue, ended by {@link #NULL_HANDLE}
+ * - sessionPrevious/sessionNext link the orders of one client session, so a session's orders are found without
+ *   walking the book
+ * - size is the part of an order shown in the book, an iceberg order also has a hidden reserve that refills it a
+ *   displaySize slice at a time, and both are 0 for an order shown in full
+ * - Not thread safe, stores are only used from the clustered service thread
+ */
+public interface OrderStore
+{
+    int NULL_HANDLE = -1;
+
+    /**
+     * Length of the record handed to {@link #readRecord}: orderId, price, size, sessionId, reserve and displaySize as
+     * little-endian int64s, the same layout as an order in the group of the snapshot askOrders and bidOrders messages
+     */
+    int RECORD_LENGTH = 6 * Long.BYTES;
+
+    /**
+     * Allocate an order shown in full, with no reserve
+     */
+
+    int allocate(long orderId, long price, long size, Side side, long sessionId);
+    void free(int handle);
+    long getOrderId(int handle);
+    long getPrice(int handle);
+    void setPrice(int handle, long price);
+    long getSize(int handle);
+    void setSize(int handle, long size);
+    Side getSide(int handle);
+    long getSessionId(int handle);
+    long getReserve(int handle);
+    void setReserve(int handle, long reserve);
+    long getDisplaySize(int handle);
+    void setDisplaySize(int handle, long displaySize);
+    int getPrevious(int handle);
+    void setPrevious(int handle, int previous);
+    int getNext(int handle);
+    void setNext(int handle, int next);
+    int getSessionPrevious(int handle);
+    void setSessionPrevious(int handle, int previous);
+    int getSessionNext(int handle);
+    void setSessionNext(int handle, int next);
+
+    /**
+     * Hand the handler the {@link #RECORD_LENGTH} byte record of an order
+     */
+    void readRecord(int handle, OrderRecordHandler handler);
+}
@@ -1,36 +1,192 @@
 package weareadaptive.com.cluster.services.oms;
 
 import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.MarketDepth;
 import weareadaptive.com.cluster.services.oms.util.Order;
 import weareadaptive.com.cluster.services.oms.util.Side;
 import weareadaptive.com.cluster.services.oms.util.Status;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
+import weareadaptive.com.cluster.services.oms.util.TopOfBook;
 
-import java.util.HashSet;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.collections.LongArrayList;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.NavigableSet;
+import java.util.Set;
 import java.util.TreeSet;
 
 public class OrderbookImpl implements IOrderbook
 {
     private long currentOrderId = 0;
-    private final HashSet<Long> activeAsks = new HashSet<>();
-    private final HashSet<Long> activeBids = new HashSet<>();
+    private final Long2ObjectHashMap<Order> activeAsks = new Long2ObjectHashMap<>();
+    private final Long2ObjectHashMap<Order> activeBids = new Long2ObjectHashMap<>();
     private final TreeSet<Order> asks = new TreeSet<>();
     private final TreeSet<Order> bids = new TreeSet<>();
+    // hidden reserve and display size of each resting iceberg order
+    private final Long2LongHashMap reserves = new Long2LongHashMap(0);
+    private final Long2LongHashMap displaySizes = new Long2LongHashMap(FULLY_DISPLAYED);
+    // time priority handed to the next order to rest, so a refilled iceberg slice queues behind every order before it
+    private long nextPriority = 0;
+    private final StopOrderBook stops = new StopOrderBook();
+    private SelfTradePrevention selfTradePrevention = SelfTradePrevention.NONE;
+    private AllocationPolicy allocationPolicy = AllocationPolicy.FIFO;
+    // icebergs whose shown slice traded away during the level being matched, queued again once the level is walked
+    private final ArrayList<Order> replenishing = new ArrayList<>();
+    private boolean inAuction = false;
+    private final AuctionUncross auctionUncross = new AuctionUncross();
+    private final FillBuffer fills = new FillBuffer();
+    private final MutableDirectBuffer recordBuffer = new UnsafeBuffer(new byte[OrderStore.RECORD_LENGTH]);
+    private final TopOfBook topOfBook = new TopOfBook();
+    private boolean topOfBookStale = false;
+    private OrderRemovedListener orderRemovedListener = OrderRemovedListener.NONE;
 
     /**
      * * Implement Place Order logic
      * - Resting orders if prices do not cross
      * - Matching orders if prices do cross
      * - Returns orderId and status (RESTING, PARTIAL, FILLED)
+     * - IOC and FOK orders never rest, and a FOK order that cannot fill completely is cancelled before it trades
+     * - An iceberg order rests showing a slice of displaySize, and its reserve is kept by orderId
+     * - Stop orders triggered by the trades are placed before this returns
+     * - An order meeting a resting order of its own session is handled by the {@link SelfTradePrevention} policy
      */
     @Override
-    public ExecutionResult placeOrder(double price, long size, Side side) {
+    public ExecutionResult placeOrder(long sessionId, long price, long size, Side side, TimeInForce timeInForce,
+                                      long displaySize) {
+        fills.clear();
+        final var executionResult = place(currentOrderId++, sessionId, price, size, side, timeInForce, displaySize);
+        releaseStops();
+        return executionResult;
+    }
+
+    private ExecutionResult place(long id, long sessionId, long price, long size, Side side, TimeInForce timeInForce,
+                                  long displaySize) {
+        if (inAuction && timeInForce != TimeInForce.GTC)
+        {
+            return new ExecutionResult(id, Status.CANCELLED);
+        }
+        if (timeInForce == TimeInForce.FOK &&
+                crossingSize(side == Side.ASK ? bids : asks, sessionId, price, size) < size)
+        {
+            return new ExecutionResult(id, Status.CANCELLED);
+        }
+        return fillOutOrder(side, id, sessionId, price, size, timeInForce == TimeInForce.GTC, displaySize);
+    }
+
+    @Override
+    public void setSelfTradePrevention(SelfTradePrevention selfTradePrevention) {
+        this.selfTradePrevention = selfTradePrevention;
+    }
+
+    @Override
+    public void setAllocationPolicy(AllocationPolicy allocationPolicy) {
+        this.allocationPolicy = allocationPolicy;
+    }
+
+    @Override
+    public ExecutionResult placeStopOrder(long sessionId, long triggerPrice, long price, long size, Side side,
+                                          TimeInForce timeInForce) {
+        fills.clear();
         final var id = currentOrderId++;
-        return fillOutOrder(side, id, price, size);
+        if (stops.isTriggered(side, triggerPrice))
+        {
+            return new ExecutionResult(id, Status.CANCELLED);
+        }
+        stops.add(id, sessionId, side, triggerPrice, price, size, timeInForce);
+        return new ExecutionResult(id, Status.PENDING);
+    }
+
+    /**
+     * Place every stop triggered by the last trade price, which the trades of each placed stop may move on further
+     */
+    private void releaseStops() {
+        StopOrder stop;
+        while ((stop = stops.pollTriggered()) != null)
+        {
+            place(stop.getOrderId(), stop.getSessionId(), stop.getPrice(), stop.getSize(), stop.getSide(),
+                    stop.getTimeInForce(), FULLY_DISPLAYED);
+            if (!isResting(stop.getOrderId()))
+            {
+                // filled or cancelled as soon as it was placed, so it is gone without ever resting
+                orderRemovedListener.onOrderRemoved(stop.getOrderId());
+            }
+            stops.release(stop);
+        }
     }
 
-    private ExecutionResult fillOutOrder(Side side, long id, double price, long size) {
+    /**
+     * Size of the other side's orders that an order at the given price would trade against, counted until it
+     * reaches limit
+     * - Each level is walked oldest order first, as it would be matched
+     * - Orders of the same session are skipped when the policy cancels them, and end the count when it cancels or
+     *   decrements the incoming order instead
+     */
+    private long crossingSize(TreeSet<Order> otherSideList, long sessionId, long price, long limit) {
+        final boolean preventSelfTrade = preventsSelfTrade(sessionId);
+        long size = 0;
+        Order levelOrder = otherSideList.isEmpty() ? null : otherSideList == asks ? asks.last() : bids.first();
+        while (size < limit && levelOrder != null)
+        {
+            final long levelPrice = levelOrder.getPrice();
+            if (otherSideList == asks ? levelPrice > price : levelPrice < price)
+            {
+                break;
+            }
+            final Order levelStart = new Order(Long.MIN_VALUE, levelPrice, 0);
+            for (Order order : otherSideList.tailSet(levelStart, true))
+            {
+                if (order.getPrice() != levelPrice || size >= limit)
+                {
+                    break;
+                }
+                if (preventSelfTrade && order.getSessionId() == sessionId)
+                {
+                    if (selfTradePrevention == SelfTradePrevention.CANCEL_RESTING)
+                    {
+                        continue;
+                    }
+                    return size;
+                }
+                size += order.getSize() + reserves.get(order.getOrderId());
+            }
+            // asks are held highest price first, so the next worse ask level is the one before this level
+            levelOrder = otherSideList == asks ? asks.lower(levelStart)
+                    : bids.higher(new Order(Long.MAX_VALUE, levelPrice, 0));
+        }
+        return size;
+    }
+
+    /**
+     * Shown size of the orders at the price of levelStart
+     */
+    private long levelSize(TreeSet<Order> otherSideList, Order levelStart) {
+        long size = 0;
+        for (Order order : otherSideList.tailSet(levelStart, true))
+        {
+            if (order.getPrice() != levelStart.getPrice())
+            {
+                break;
+            }
+            size += order.getSize();
+        }
+        return size;
+    }
+
+    private boolean preventsSelfTrade(long sessionId) {
+        return selfTradePrevention != SelfTradePrevention.NONE && sessionId != NO_SESSION;
+    }
+
+    private ExecutionResult fillOutOrder(Side side, long id, long sessionId, long price, long size,
+                                         boolean restRemainder, long displaySize) {
+        topOfBookStale = true;
         final var newOrder = new Order(id, price, size);
+        newOrder.setSessionId(sessionId);
         TreeSet<Order> orderList;
         TreeSet<Order> otherSideList;
 
@@ -49,66 +205,149 @@ public class OrderbookImpl implements IOrderbook
             default -> throw new IllegalArgumentException();
         }
 
-        if ((orderList.isEmpty() || orderList.first().getPrice() < newOrder.getPrice())) {
-            return findMatchingOrders(newOrder, orderList, otherSideList);
-        }
-        else {
-            orderList.add(newOrder);
-            if (side == Side.ASK)
-            {
-                activeAsks.add(newOrder.getOrderId());
-            } else
-            {
-                activeBids.add(newOrder.getOrderId());
-            }
-            return new ExecutionResult(newOrder.getOrderId(), Status.RESTING);
-        }
+        return findMatchingOrders(newOrder, orderList, otherSideList, restRemainder, displaySize);
     }
 
-    private ExecutionResult findMatchingOrders(Order newOrder, TreeSet<Order> orderList, TreeSet<Order> otherSideList)
+    /**
+     * Fill the new order against the other side in price-time priority, one price level at a time.
+     * - The best level is the lowest ask (the end of the set) or the highest bid (the start of the set)
+     * - Matching stops at the first level that does not cross, so the cost depends on the levels filled
+     *   and not on how deep the other side is
+     * - An iceberg order whose shown slice fills is refilled from its reserve and queued again behind its level once
+     *   the level has been walked
+     * - The session of each resting order is compared as it is reached, and a self trade is handled there by the
+     *   policy, with a decrement taking the same path as a fill apart from the trade itself
+     * - A level the order does not take out is shared by the {@link AllocationPolicy}, which needs the level's size
+     *   summed first as the set keeps no per-level totals
+     * - Every trade is recorded in {@link #fills}
+     */
+    private ExecutionResult findMatchingOrders(Order newOrder, TreeSet<Order> orderList, TreeSet<Order> otherSideList,
+                                               boolean restRemainder, long displaySize)
     {
-        long totalSize = newOrder.getSize();
-        final var iter = otherSideList.iterator();
-        while (iter.hasNext())
+        final long originalSize = newOrder.getSize();
+        final Long2ObjectHashMap<Order> otherSideActive = otherSideList == asks ? activeAsks : activeBids;
+        final long sessionId = newOrder.getSessionId();
+        final boolean preventSelfTrade = preventsSelfTrade(sessionId);
+        long totalSize = originalSize;
+        long selfTradeSize = 0;
+        while (!inAuction && totalSize > 0 && !otherSideList.isEmpty())
         {
-            var orderFromIterator = iter.next();
-            if (orderList == asks)
+            final long levelPrice = otherSideList == asks ? asks.last().getPrice() : bids.first().getPrice();
+            if (otherSideList == asks ? levelPrice > newOrder.getPrice() : levelPrice < newOrder.getPrice())
             {
-                if (orderFromIterator.getPrice() < newOrder.getPrice()) continue;
+                break;
             }
-            else if (orderFromIterator.getPrice() > newOrder.getPrice()) continue;
-            long sizeFulfilled;
-            var orderSize = orderFromIterator.getSize();
-            if (orderSize > totalSize)
+
+            // orders at the same price are sorted by priority, so start from the one first in time at this level
+            final Order levelStart = new Order(Long.MIN_VALUE, levelPrice, 0);
+            long total = allocationPolicy == AllocationPolicy.FIFO ? 0 : levelSize(otherSideList, levelStart);
+            final boolean proRata = total > totalSize;
+            boolean topOrder = allocationPolicy == AllocationPolicy.TOP_ORDER_PRO_RATA;
+            long quantity = totalSize;
+            long sizeBefore = 0;
+            final var iter = otherSideList.tailSet(levelStart, true).iterator();
+            while (totalSize > 0 && iter.hasNext())
             {
-                sizeFulfilled = totalSize;
-                orderFromIterator.setSize(orderSize - sizeFulfilled);
-            } else {
-                activeAsks.remove(orderFromIterator.getOrderId());
-                iter.remove();
-                sizeFulfilled = orderSize;
+                var orderFromIterator = iter.next();
+                if (orderFromIterator.getPrice() != levelPrice)
+                {
+                    break;
+                }
+                var orderSize = orderFromIterator.getSize();
+                final long sizeFulfilled;
+                if (!proRata || topOrder)
+                {
+                    sizeFulfilled = Math.min(orderSize, totalSize);
+                    if (topOrder)
+                    {
+                        quantity = totalSize - sizeFulfilled;
+                        total -= orderSize;
+                        topOrder = false;
+                    }
+                }
+                else
+                {
+                    sizeFulfilled = AllocationPolicy.proRataShare(quantity, sizeBefore, orderSize, total);
+                    sizeBefore += orderSize;
+                }
+                if (sizeFulfilled == 0)
+                {
+                    continue;
+                }
+                final boolean selfTrade = preventSelfTrade && orderFromIterator.getSessionId() == sessionId;
+                if (selfTrade && selfTradePrevention == SelfTradePrevention.CANCEL_AGGRESSOR)
+                {
+                    selfTradeSize += totalSize;
+                    totalSize = 0;
+                    break;
+                }
+                if (selfTrade && selfTradePrevention == SelfTradePrevention.CANCEL_RESTING)
+                {
+                    iter.remove();
+                    otherSideActive.remove(orderFromIterator.getOrderId());
+                    forget(orderFromIterator.getOrderId());
+                    continue;
+                }
+                if (selfTrade)
+                {
+                    selfTradeSize += sizeFulfilled;
+                }
+                else
+                {
+                    stops.onTrade(levelPrice);
+                    fills.add(newOrder.getOrderId(), sessionId, orderList == asks ? Side.ASK : Side.BID,
+                            orderFromIterator.getOrderId(), orderFromIterator.getSessionId(), levelPrice, sizeFulfilled);
+                }
+                totalSize -= sizeFulfilled;
+                if (orderSize > sizeFulfilled)
+                {
+                    orderFromIterator.setSize(orderSize - sizeFulfilled);
+                } else {
+                    iter.remove();
+                    if (reserves.get(orderFromIterator.getOrderId()) > 0)
+                    {
+                        // adding to the set would break the iterator, so the refill waits for the end of the level
+                        replenishing.add(orderFromIterator);
+                        continue;
+                    }
+                    otherSideActive.remove(orderFromIterator.getOrderId());
+                    forget(orderFromIterator.getOrderId());
+                }
             }
-            totalSize -= sizeFulfilled;
-            if (totalSize == 0)
+            for (int i = 0; i < replenishing.size(); i++)
             {
-                break;
+                final Order order = replenishing.get(i);
+                replenish(order, reserves.get(order.getOrderId()), otherSideList);
             }
+            replenishing.clear();
         }
 
+        final long tradedSize = originalSize - totalSize - selfTradeSize;
         if (totalSize == 0)
         {
-            return new ExecutionResult(newOrder.getOrderId(), Status.FILLED);
+            return new ExecutionResult(newOrder.getOrderId(),
+                    tradedSize == originalSize ? Status.FILLED : tradedSize == 0 ? Status.CANCELLED : Status.PARTIAL);
+        }
+        if (!restRemainder)
+        {
+            return new ExecutionResult(newOrder.getOrderId(), tradedSize == 0 ? Status.CANCELLED : Status.PARTIAL);
         }
 
+        if (displaySize != FULLY_DISPLAYED)
+        {
+            displaySizes.put(newOrder.getOrderId(), displaySize);
+        }
+        setShownSize(newOrder, totalSize);
+        newOrder.setPriority(nextPriority++);
         orderList.add(newOrder);
         if (orderList == asks)
         {
-            activeAsks.add(newOrder.getOrderId());
+            activeAsks.put(newOrder.getOrderId(), newOrder);
         } else
         {
-            activeBids.add(newOrder.getOrderId());
+            activeBids.put(newOrder.getOrderId(), newOrder);
         }
-        if (totalSize == newOrder.getSize())
+        if (tradedSize == 0)
         {
             return new ExecutionResult(newOrder.getOrderId(), Status.RESTING);
         } else
@@ -117,28 +356,338 @@ public class OrderbookImpl implements IOrderbook
         }
     }
 
+    @Override
+    public void startAuction() {
+        inAuction = true;
+    }
+
+    @Override
+    public boolean isInAuction() {
+        return inAuction;
+    }
+
+    /**
+     * Each crossing level's quantity is summed as the sets are walked from the best price of each side to the best
+     * price of the other
+     */
+    @Override
+    public AuctionUncross uncross() {
+        inAuction = false;
+        auctionUncross.clear();
+        fills.clear();
+        if (bids.isEmpty() || asks.isEmpty() || bids.first().getPrice() < asks.last().getPrice())
+        {
+            return auctionUncross;
+        }
+        addAuctionLevels(Side.BID, bids.iterator(), asks.last().getPrice());
+        addAuctionLevels(Side.ASK, asks.descendingIterator(), bids.first().getPrice());
+        if (auctionUncross.computePrice())
+        {
+            topOfBookStale = true;
+            fillAtAuctionPrice(bids, Side.BID);
+            fillAtAuctionPrice(asks, Side.ASK);
+            auctionUncross.addTrades(fills);
+            stops.onTrade(auctionUncross.getPrice());
+            releaseStops();
+        }
+        return auctionUncross;
+    }
+
+    /**
+     * Add the levels of one side, walked best price first, down to the best price of the other side
+     */
+    private void addAuctionLevels(Side side, Iterator<Order> fromBest, long otherSideBestPrice) {
+        long levelPrice = 0;
+        long levelSize = 0;
+        while (fromBest.hasNext())
+        {
+            final Order order = fromBest.next();
+            if (side == Side.BID ? order.getPrice() < otherSideBestPrice : order.getPrice() > otherSideBestPrice)
+            {
+                break;
+            }
+            if (levelSize > 0 && order.getPrice() != levelPrice)
+            {
+                auctionUncross.addLevel(side, levelPrice, levelSize);
+                levelSize = 0;
+            }
+            levelPrice = order.getPrice();
+            levelSize += order.getSize() + reserves.get(order.getOrderId());
+        }
+        if (levelSize > 0)
+        {
+            auctionUncross.addLevel(side, levelPrice, levelSize);
+        }
+    }
+
+    /**
+     * Fill the auction volume from one side, best price first and oldest first within a level, refilling icebergs as
+     * matching does
+     */
+    private void fillAtAuctionPrice(TreeSet<Order> orders, Side side) {
+        final Long2ObjectHashMap<Order> active = orders == asks ? activeAsks : activeBids;
+        long remainingSize = auctionUncross.getVolume();
+        while (remainingSize > 0 && !orders.isEmpty())
+        {
+            final long levelPrice = orders == asks ? asks.last().getPrice() : bids.first().getPrice();
+            final var iter = orders.tailSet(new Order(Long.MIN_VALUE, levelPrice, 0), true).iterator();
+            while (remainingSize > 0 && iter.hasNext())
+            {
+                final Order order = iter.next();
+                if (order.getPrice() != levelPrice)
+                {
+                    break;
+                }
+                final long orderSize = order.getSize();
+                final long sizeFilled = Math.min(orderSize, remainingSize);
+                auctionUncross.addFill(order.getOrderId(), order.getSessionId(), side, sizeFilled);
+                remainingSize -= sizeFilled;
+                if (orderSize > sizeFilled)
+                {
+                    order.setSize(orderSize - sizeFilled);
+                }
+                else
+                {
+                    iter.remove();
+                    final long reserve = reserves.get(order.getOrderId());
+                    if (reserve > 0)
+                    {
+                        replenish(order, reserve, orders);
+                        break;
+                    }
+                    active.remove(order.getOrderId());
+                    forget(order.getOrderId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Show the next slice of an iceberg order whose shown size has traded away, and queue it behind the orders
+     * resting at its price
+     */
+    private void replenish(Order order, long reserve, TreeSet<Order> orders)
+    {
+        final long slice = Math.min(displaySizes.get(order.getOrderId()), reserve);
+        order.setSize(slice);
+        setReserve(order.getOrderId(), reserve - slice);
+        order.setPriority(nextPriority++);
+        orders.add(order);
+    }
+
+    /**
+     * Set the size of an order that is about to rest, showing no more than its display size and keeping the rest in
+     * reserve
+     */
+    private void setShownSize(Order order, long size)
+    {
+        final long displaySize = displaySizes.get(order.getOrderId());
+        final long shownSize = displaySize > 0 && displaySize < size ? displaySize : size;
+        order.setSize(shownSize);
+        setReserve(order.getOrderId(), size - shownSize);
+    }
+
+    private void setReserve(long orderId, long reserve)
+    {
+        if (reserve > 0)
+        {
+            reserves.put(orderId, reserve);
+        }
+        else
+        {
+            reserves.remove(orderId);
+        }
+    }
+
+    /**
+     * Drop everything kept by orderId for an order that has left the book, and tell the listener it is gone
+     */
+    private void forget(long orderId)
+    {
+        reserves.remove(orderId);
+        displaySizes.remove(orderId);
+        orderRemovedListener.onOrderRemoved(orderId);
+    }
+
+    private boolean isResting(long orderId)
+    {
+        return activeAsks.containsKey(orderId) || activeBids.containsKey(orderId);
+    }
+
     /**
      * * Implement Cancel Order logic
      *  - Cancels order provided the orderId
      *  - Returns orderId and status (CANCELLED)
+     *  - The live order is found through the orderId index, so removing it is a single tree lookup
      */
     @Override
     public ExecutionResult cancelOrder(long orderId) {
-        final boolean removedFromAsks = activeAsks.remove(orderId);
-        final boolean removedFromBids = activeBids.remove(orderId);
-        if (!removedFromBids && !removedFromAsks)
+        if (!unlink(orderId))
+        {
+            return new ExecutionResult(orderId, stops.cancel(orderId) ? Status.CANCELLED : Status.NONE);
+        }
+        forget(orderId);
+        return new ExecutionResult(orderId, Status.CANCELLED);
+    }
+
+    @Override
+    public long getSessionId(long orderId) {
+        Order order = activeAsks.get(orderId);
+        if (order == null)
+        {
+            order = activeBids.get(orderId);
+        }
+        return order == null ? stops.getSessionId(orderId) : order.getSessionId();
+    }
+
+    /**
+     * Take a resting order off its side and out of the orderId index, returning false when it is not resting
+     */
+    private boolean unlink(long orderId) {
+        final Order removedFromAsks = activeAsks.remove(orderId);
+        final Order removedFromBids = removedFromAsks == null ? activeBids.remove(orderId) : null;
+        if (removedFromBids == null && removedFromAsks == null)
+        {
+            return false;
+        }
+        topOfBookStale = true;
+        if (removedFromAsks != null)
+        {
+            asks.remove(removedFromAsks);
+        }
+        else
+        {
+            bids.remove(removedFromBids);
+        }
+        return true;
+    }
+
+    /**
+     * * Amend a resting order
+     *  - A smaller size at the same price is updated in place
+     *  - Any other change takes the order out of the book and places it again under the same orderId, behind the
+     *    orders resting at its new price
+     */
+    @Override
+    public ExecutionResult amendOrder(long orderId, long price, long size) {
+        fills.clear();
+        final Side side = activeAsks.containsKey(orderId) ? Side.ASK : Side.BID;
+        final Order order = side == Side.ASK ? activeAsks.get(orderId) : activeBids.get(orderId);
+        if (order == null)
         {
             return new ExecutionResult(orderId, Status.NONE);
         }
-        if (removedFromAsks)
+        if (size <= 0)
         {
-            asks.removeIf(x -> x.getOrderId() == orderId);
+            return cancelOrder(orderId);
         }
-        if (removedFromBids)
+        topOfBookStale = true;
+        if (price == order.getPrice() && size <= order.getSize() + reserves.get(orderId))
         {
-            bids.removeIf(x -> x.getOrderId() == orderId);
+            final long shownSize = Math.min(size, order.getSize());
+            order.setSize(shownSize);
+            setReserve(orderId, size - shownSize);
+            return new ExecutionResult(orderId, Status.AMENDED);
         }
-        return new ExecutionResult(orderId, Status.CANCELLED);
+        final long sessionId = order.getSessionId();
+        final long displaySize = displaySizes.get(orderId);
+        // the order goes on under the same orderId, so the listener is only told if it does not rest again
+        unlink(orderId);
+        reserves.remove(orderId);
+        displaySizes.remove(orderId);
+        final ExecutionResult executionResult = fillOutOrder(side, orderId, sessionId, price, size, true, displaySize);
+        if (executionResult.getStatus() == Status.RESTING)
+        {
+            executionResult.setStatus(Status.AMENDED);
+        }
+        if (!isResting(orderId))
+        {
+            orderRemovedListener.onOrderRemoved(orderId);
+        }
+        releaseStops();
+        return executionResult;
+    }
+
+    /**
+     * Walks every resting order on the sides being cancelled, as this book has no index of orders by session
+     */
+    @Override
+    public int massCancel(long sessionId, Side side, long minPrice, long maxPrice) {
+        int cancelled = stops.cancel(sessionId, side, minPrice, maxPrice, null);
+        if (side != Side.ASK)
+        {
+            cancelled += massCancel(bids, activeBids, sessionId, minPrice, maxPrice, null);
+        }
+        if (side != Side.BID)
+        {
+            cancelled += massCancel(asks, activeAsks, sessionId, minPrice, maxPrice, null);
+        }
+        return cancelled;
+    }
+
+    @Override
+    public int cancelSession(long sessionId, LongArrayList cancelledOrderIds) {
+        return stops.cancel(sessionId, null, Long.MIN_VALUE, Long.MAX_VALUE, cancelledOrderIds)
+                + massCancel(bids, activeBids, sessionId, Long.MIN_VALUE, Long.MAX_VALUE, cancelledOrderIds)
+                + massCancel(asks, activeAsks, sessionId, Long.MIN_VALUE, Long.MAX_VALUE, cancelledOrderIds);
+    }
+
+    private int massCancel(TreeSet<Order> orders, Long2ObjectHashMap<Order> active, long sessionId, long minPrice,
+                           long maxPrice, LongArrayList cancelledOrderIds) {
+        int cancelled = 0;
+        final var iter = orders.iterator();
+        while (iter.hasNext())
+        {
+            final Order order = iter.next();
+            if (order.getPrice() >= minPrice && order.getPrice() <= maxPrice &&
+                    (sessionId == ANY_SESSION || order.getSessionId() == sessionId))
+            {
+                iter.remove();
+                active.remove(order.getOrderId());
+                forget(order.getOrderId());
+                if (cancelledOrderIds != null)
+                {
+                    cancelledOrderIds.addLong(order.getOrderId());
+                }
+                cancelled++;
+            }
+        }
+        if (cancelled > 0)
+        {
+            topOfBookStale = true;
+        }
+        return cancelled;
+    }
+
+    @Override
+    public void restoreOrder(long orderId, long price, long size, Side side, long sessionId, long reserve,
+                             long displaySize) {
+        topOfBookStale = true;
+        setReserve(orderId, reserve);
+        if (displaySize != FULLY_DISPLAYED)
+        {
+            displaySizes.put(orderId, displaySize);
+        }
+        final Order order = new Order(orderId, price, size);
+        order.setSessionId(sessionId);
+        order.setPriority(nextPriority++);
+        if (side == Side.ASK)
+        {
+            asks.add(order);
+            activeAsks.put(orderId, order);
+        } else
+        {
+            bids.add(order);
+            activeBids.put(orderId, order);
+        }
+    }
+
+    /**
+     * Each order is added to its TreeSet as it is restored, so there is nothing left to build
+     */
+    @Override
+    public void finishRestore()
+    {
     }
 
     /**
@@ -152,6 +701,10 @@ public class OrderbookImpl implements IOrderbook
         bids.clear();
         activeAsks.clear();
         activeBids.clear();
+        reserves.clear();
+        displaySizes.clear();
+        stops.clear();
+        topOfBookStale = true;
     }
 
     /**
@@ -164,32 +717,158 @@ public class OrderbookImpl implements IOrderbook
     public void reset() {
         clear();
         currentOrderId = 0;
+        inAuction = false;
+        fills.reset();
+        stops.setLastTradePrice(StopOrderBook.NO_TRADE);
+    }
+
+    /**
+     * Best bid and offer, recomputed from the orders at the best price of each side only when the book has changed
+     * since the last read
+     */
+    @Override
+    public TopOfBook getTopOfBook()
+    {
+        if (topOfBookStale)
+        {
+            topOfBook.setBid(bids.isEmpty() ? 0 : bids.first().getPrice(), sizeAtBestPrice(bids.iterator()));
+            topOfBook.setAsk(asks.isEmpty() ? 0 : asks.last().getPrice(), sizeAtBestPrice(asks.descendingIterator()));
+            topOfBookStale = false;
+        }
+        return topOfBook;
+    }
+
+    private static long sizeAtBestPrice(Iterator<Order> fromBest)
+    {
+        long size = 0;
+        long bestPrice = 0;
+        boolean first = true;
+        while (fromBest.hasNext())
+        {
+            final Order order = fromBest.next();
+            if (first)
+            {
+                bestPrice = order.getPrice();
+                first = false;
+            }
+            else if (order.getPrice() != bestPrice)
+            {
+                break;
+            }
+            size += order.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * Levels are aggregated from the orders as the set is walked, best price first, stopping after the last level
+     * asked for
+     */
+    @Override
+    public void readDepth(int levels, MarketDepth depth)
+    {
+        depth.clear();
+        readDepth(Side.BID, bids.iterator(), levels, depth);
+        readDepth(Side.ASK, asks.descendingIterator(), levels, depth);
+    }
+
+    private static void readDepth(Side side, Iterator<Order> fromBest, int levels, MarketDepth depth)
+    {
+        int remaining = levels;
+        long levelPrice = 0;
+        long levelSize = 0;
+        int levelOrders = 0;
+        while (fromBest.hasNext() && remaining > 0)
+        {
+            final Order order = fromBest.next();
+            if (levelOrders > 0 && order.getPrice() != levelPrice)
+            {
+                if (!depth.addLevel(side, levelPrice, levelSize, levelOrders))
+                {
+                    return;
+                }
+                remaining--;
+                levelSize = 0;
+                levelOrders = 0;
+            }
+            levelPrice = order.getPrice();
+            levelSize += order.getSize();
+            levelOrders++;
+        }
+        if (levelOrders > 0 && remaining > 0)
+        {
+            depth.addLevel(side, levelPrice, levelSize, levelOrders);
+        }
+    }
+
+    @Override
+    public void forEachOrderRecord(Side side, OrderRecordHandler handler)
+    {
+        for (Order order : side == Side.ASK ? asks : bids)
+        {
+            recordBuffer.putLong(0, order.getOrderId(), ByteOrder.LITTLE_ENDIAN);
+            recordBuffer.putLong(Long.BYTES, order.getPrice(), ByteOrder.LITTLE_ENDIAN);
+            recordBuffer.putLong(2 * Long.BYTES, order.getSize(), ByteOrder.LITTLE_ENDIAN);
+            recordBuffer.putLong(3 * Long.BYTES, order.getSessionId(), ByteOrder.LITTLE_ENDIAN);
+            recordBuffer.putLong(4 * Long.BYTES, reserves.get(order.getOrderId()), ByteOrder.LITTLE_ENDIAN);
+            recordBuffer.putLong(5 * Long.BYTES, displaySizes.get(order.getOrderId()), ByteOrder.LITTLE_ENDIAN);
+            handler.onOrderRecord(recordBuffer, 0);
+        }
+    }
+
+    @Override
+    public int getOrderCount(Side side)
+    {
+        return (side == Side.ASK ? asks : bids).size();
+    }
+
+    @Override
+    public void setOrderRemovedListener(OrderRemovedListener listener)
+    {
+        orderRemovedListener = listener;
+        stops.setOrderRemovedListener(listener);
+    }
+
+    @Override
+    public StopOrderBook getStopOrders()
+    {
+        return stops;
+    }
+
+    @Override
+    public FillBuffer getFills()
+    {
+        return fills;
     }
 
     public NavigableSet<Order> getAsksPriceAscending() {
         return asks.descendingSet();
     }
 
-    public HashSet<Long> getActiveAsks()
+    public Set<Long> getActiveAsks()
     {
-        return activeAsks;
+        return activeAsks.keySet();
     }
 
+    @Override
     public long getCurrentOrderId()
     {
         return currentOrderId;
     }
 
+    @Override
     public TreeSet<Order> getAsks()
     {
         return asks;
     }
 
+    @Override
     public TreeSet<Order> getBids()
     {
         return bids;
     }
 
+    @Override
     public void setCurrentOrderId(long currentOrderId)
     {
         this.currentOrderId = currentOrderId;
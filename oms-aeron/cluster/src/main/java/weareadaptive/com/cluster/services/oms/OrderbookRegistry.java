@@ -0,0 +1,103 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.collections.Int2ObjectHashMap;
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.IntHashSet;
+
+/**
+ * The orderbooks hosted by one cluster, one per instrument.
+ * - Books are looked up by instrument id in a primitive map, so routing a request costs the same with one instrument
+ *   or thousands
+ * - Only configured instruments can have a book, so a client cannot create books for ids it makes up
+ * - A book is created the first time an order or snapshot arrives for its instrument, from the configured
+ *   {@link OrderbookType} and with the configured {@link SelfTradePrevention} and {@link AllocationPolicy}
+ * - Instrument ids are also kept in the order their books were created, so iterating the books is deterministic on
+ *   every cluster member
+ * - Every book tells the registry's {@link OrderRemovedHandler} of the orders that leave it, along with its instrument
+ */
+public class OrderbookRegistry
+{
+    public static final int DEFAULT_INSTRUMENT_ID = 0;
+
+    @FunctionalInterface
+    public interface OrderRemovedHandler
+    {
+        void onOrderRemoved(int instrumentId, long orderId);
+    }
+
+    private final OrderbookType orderbookType;
+    private final SelfTradePrevention selfTradePrevention;
+    private final AllocationPolicy allocationPolicy;
+    private final Int2ObjectHashMap<IOrderbook> orderbooks = new Int2ObjectHashMap<>();
+    private final IntArrayList instrumentIds = new IntArrayList();
+    private final IntHashSet configuredInstrumentIds = new IntHashSet();
+    private final OrderRemovedHandler orderRemovedHandler;
+
+    public OrderbookRegistry(OrderbookType orderbookType, SelfTradePrevention selfTradePrevention,
+                             AllocationPolicy allocationPolicy, int[] configuredInstrumentIds,
+                             OrderRemovedHandler orderRemovedHandler)
+    {
+        this.orderbookType = orderbookType;
+        this.selfTradePrevention = selfTradePrevention;
+        this.allocationPolicy = allocationPolicy;
+        this.orderRemovedHandler = orderRemovedHandler;
+        for (int instrumentId : configuredInstrumentIds)
+        {
+            this.configuredInstrumentIds.add(instrumentId);
+        }
+    }
+
+    public boolean isConfigured(int instrumentId)
+    {
+        return configuredInstrumentIds.contains(instrumentId);
+    }
+
+    /**
+     * Orderbook for a configured instrument, created the first time it is asked for, or null when the instrument is not
+     * configured
+     */
+    public IOrderbook getOrCreateConfigured(int instrumentId)
+    {
+        return isConfigured(instrumentId) ? getOrCreate(instrumentId) : null;
+    }
+
+    /**
+     * Orderbook for an instrument, or null if nothing has been placed for it yet
+     */
+    public IOrderbook get(int instrumentId)
+    {
+        return orderbooks.get(instrumentId);
+    }
+
+    /**
+     * Orderbook for any instrument, for the snapshot to restore a book even when its instrument is no longer configured,
+     * so the orders resting in it can still be cancelled
+     */
+    public IOrderbook getOrCreate(int instrumentId)
+    {
+        IOrderbook orderbook = orderbooks.get(instrumentId);
+        if (orderbook == null)
+        {
+            orderbook = orderbookType.create();
+            orderbook.setSelfTradePrevention(selfTradePrevention);
+            orderbook.setAllocationPolicy(allocationPolicy);
+            orderbook.setOrderRemovedListener(orderId -> orderRemovedHandler.onOrderRemoved(instrumentId, orderId));
+            orderbooks.put(instrumentId, orderbook);
+            instrumentIds.addInt(instrumentId);
+        }
+        return orderbook;
+    }
+
+    public int getInstrumentCount()
+    {
+        return instrumentIds.size();
+    }
+
+    /**
+     * Instrument id of the book at the given position in creation order
+     */
+    public int getInstrumentId(int index)
+    {
+        return instrumentIds.getInt(index);
+    }
+}
@@ -0,0 +1,52 @@
+package weareadaptive.com.cluster.services.oms;
+
+import weareadaptive.com.cluster.util.ConfigUtils;
+
+/**
+ * Orderbook implementations the cluster can be started with, selected by configuration
+ */
+public enum OrderbookType
+{
+    TREE_SET
+    {
+        @Override
+        public IOrderbook create()
+        {
+            return new OrderbookImpl();
+        }
+    },
+    PRICE_LEVEL
+    {
+        @Override
+        public IOrderbook create()
+        {
+            return new PriceLevelOrderbook();
+        }
+    },
+    OFF_HEAP
+    {
+        @Override
+        public IOrderbook create()
+        {
+            return new PriceLevelOrderbook(new OffHeapOrderStore());
+        }
+    },
+    ARRAY
+    {
+        @Override
+        public IOrderbook create()
+        {
+            return new PriceLevelOrderbook(new ArrayOrderStore());
+        }
+    },
+    BOUNDED
+    {
+        @Override
+        public IOrderbook create()
+        {
+            return new PriceLevelOrderbook(new ArrayOrderStore(), ConfigUtils.getPriceBand());
+        }
+    };
+
+    public abstract IOrderbook create();
+}
@@ -0,0 +1,210 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * {@link OrderStore} of on-heap {@link RestingOrder} objects, where a handle is the index of the object in the pool.
+ * - Freed slots are kept on a free list chained through their next link, so once the pool has grown to the largest
+ *   number of orders resting at the same time, resting and removing orders no longer allocates
+ */
+public class PooledOrderStore implements OrderStore
+{
+    private final MutableDirectBuffer recordBuffer = new UnsafeBuffer(new byte[RECORD_LENGTH]);
+    private RestingOrder[] orders;
+    private int allocated = 0;
+    private int freeHead = NULL_HANDLE;
+    private int available = 0;
+
+    public PooledOrderStore(int initialSize)
+    {
+        orders = new RestingOrder[Math.max(initialSize, 1)];
+        for (int i = 0; i < initialSize; i++)
+        {
+            orders[i] = new RestingOrder();
+        }
+    }
+
+    @Override
+    public int allocate(long orderId, long price, long size, Side side, long sessionId)
+    {
+        final int handle;
+        if (freeHead != NULL_HANDLE)
+        {
+            handle = freeHead;
+            freeHead = orders[handle].next;
+            available--;
+        }
+        else
+        {
+            if (allocated == orders.length)
+            {
+                orders = Arrays.copyOf(orders, allocated * 2);
+            }
+            handle = allocated++;
+            if (orders[handle] == null)
+            {
+                orders[handle] = new RestingOrder();
+            }
+        }
+        orders[handle].init(orderId, price, size, side, sessionId);
+        return handle;
+    }
+
+    @Override
+    public void free(int handle)
+    {
+        final RestingOrder order = orders[handle];
+        order.previous = NULL_HANDLE;
+        order.next = freeHead;
+        freeHead = handle;
+        available++;
+    }
+
+    @Override
+    public long getOrderId(int handle)
+    {
+        return orders[handle].getOrderId();
+    }
+
+    @Override
+    public long getPrice(int handle)
+    {
+        return orders[handle].getPrice();
+    }
+
+    @Override
+    public void setPrice(int handle, long price)
+    {
+        orders[handle].setPrice(price);
+    }
+
+    @Override
+    public long getSize(int handle)
+    {
+        return orders[handle].getSize();
+    }
+
+    @Override
+    public void setSize(int handle, long size)
+    {
+        orders[handle].setSize(size);
+    }
+
+    @Override
+    public Side getSide(int handle)
+    {
+        return orders[handle].side;
+    }
+
+    @Override
+    public long getSessionId(int handle)
+    {
+        return orders[handle].getSessionId();
+    }
+
+    @Override
+    public long getReserve(int handle)
+    {
+        return orders[handle].reserve;
+    }
+
+    @Override
+    public void setReserve(int handle, long reserve)
+    {
+        orders[handle].reserve = reserve;
+    }
+
+    @Override
+    public long getDisplaySize(int handle)
+    {
+        return orders[handle].displaySize;
+    }
+
+    @Override
+    public void setDisplaySize(int handle, long displaySize)
+    {
+        orders[handle].displaySize = displaySize;
+    }
+
+    @Override
+    public int getPrevious(int handle)
+    {
+        return orders[handle].previous;
+    }
+
+    @Override
+    public void setPrevious(int handle, int previous)
+    {
+        orders[handle].previous = previous;
+    }
+
+    @Override
+    public int getNext(int handle)
+    {
+        return orders[handle].next;
+    }
+
+    @Override
+    public void setNext(int handle, int next)
+    {
+        orders[handle].next = next;
+    }
+
+    @Override
+    public int getSessionPrevious(int handle)
+    {
+        return orders[handle].sessionPrevious;
+    }
+
+    @Override
+    public void setSessionPrevious(int handle, int previous)
+    {
+        orders[handle].sessionPrevious = previous;
+    }
+
+    @Override
+    public int getSessionNext(int handle)
+    {
+        return orders[handle].sessionNext;
+    }
+
+    @Override
+    public void setSessionNext(int handle, int next)
+    {
+        orders[handle].sessionNext = next;
+    }
+
+    @Override
+    public void readRecord(int handle, OrderRecordHandler handler)
+    {
+        final RestingOrder order = orders[handle];
+        recordBuffer.putLong(0, order.getOrderId(), ByteOrder.LITTLE_ENDIAN);
+        recordBuffer.putLong(Long.BYTES, order.getPrice(), ByteOrder.LITTLE_ENDIAN);
+        recordBuffer.putLong(2 * Long.BYTES, order.getSize(), ByteOrder.LITTLE_ENDIAN);
+        recordBuffer.putLong(3 * Long.BYTES, order.getSessionId(), ByteOrder.LITTLE_ENDIAN);
+        recordBuffer.putLong(4 * Long.BYTES, order.reserve, ByteOrder.LITTLE_ENDIAN);
+        recordBuffer.putLong(5 * Long.BYTES, order.displaySize, ByteOrder.LITTLE_ENDIAN);
+        handler.onOrderRecord(recordBuffer, 0);
+    }
+
+    /**
+     * Slots that have been freed and are waiting to be reused
+     */
+    public int getAvailable()
+    {
+        return available;
+    }
+
+    /**
+     * The pooled order behind a handle
+     */
+    public RestingOrder getOrder(int handle)
+    {
+        return orders[handle];
+    }
+}
@@ -0,0 +1,43 @@
+package weareadaptive.com.cluster.services.oms;
+
+/**
+ * Range of tick prices an instrument is expected to trade in, and the price increment between its levels
+ */
+public record PriceBand(long minPrice, long maxPrice, long tickSize)
+{
+    public PriceBand
+    {
+        if (tickSize <= 0)
+        {
+            throw new IllegalArgumentException("Tick size must be positive: " + tickSize);
+        }
+        if (maxPrice < minPrice)
+        {
+            throw new IllegalArgumentException("Price band max " + maxPrice + " is below min " + minPrice);
+        }
+        if ((maxPrice - minPrice) / tickSize >= Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Price band has too many levels to index: " + minPrice + " to " + maxPrice);
+        }
+    }
+
+    public boolean contains(long price)
+    {
+        return price >= minPrice && price <= maxPrice && (price - minPrice) % tickSize == 0;
+    }
+
+    public int indexOf(long price)
+    {
+        return (int)((price - minPrice) / tickSize);
+    }
+
+    public long priceAt(int index)
+    {
+        return minPrice + index * tickSize;
+    }
+
+    public int levelCount()
+    {
+        return indexOf(maxPrice) + 1;
+    }
+}
@@ -0,0 +1,262 @@
+package weareadaptive.com.cluster.services.oms;
+
+import weareadaptive.com.cluster.services.oms.util.MarketDepth;
+import weareadaptive.com.cluster.services.oms.util.Order;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static weareadaptive.com.cluster.services.oms.OrderStore.NULL_HANDLE;
+
+/**
+ * One side of a {@link PriceLevelOrderbook}: the price levels holding that side's resting orders.
+ * - Subclasses decide how levels are indexed and ordered, everything that only needs to walk levels lives here
+ * - Emptied levels are kept on a free list and reused for the next new price, so levels coming and going does not
+ *   allocate
+ */
+public abstract class PriceLadder
+{
+    protected final Side side;
+    protected final OrderStore store;
+    private final OrderView orderView = new OrderView();
+    private PriceLevel freeLevels;
+
+    protected PriceLadder(Side side, OrderStore store)
+    {
+        this.side = side;
+        this.store = store;
+    }
+
+    /**
+     * Best level on this side, or null when the side is empty
+     */
+    public abstract PriceLevel best();
+
+    public abstract void add(int order);
+
+    /**
+     * Add an order read from a snapshot, where a side's orders come best price first and in time priority within a
+     * price, as {@link #forEachRecord} hands them over, and are followed by {@link #finishRestore()}
+     * - Ladders that can build faster from sorted orders override this, by default each order is simply added
+     */
+    public void restore(int order)
+    {
+        add(order);
+    }
+
+    /**
+     * Called once every order of the side has been restored, before the ladder is used for anything else
+     */
+    public void finishRestore()
+    {
+    }
+
+    public abstract void remove(int order);
+
+    /**
+     * Remove an order from a level already looked up by the caller, removing the level as well once it is empty
+     */
+    public abstract void remove(PriceLevel level, int order);
+
+    /**
+     * Remove every level, freeing the resting orders in the store
+     */
+    public abstract void clear();
+
+    public abstract int getLevelCount();
+
+    public abstract int getOrderCount();
+
+    /**
+     * Level at exactly the given price, or null when nothing rests there
+     */
+    public abstract PriceLevel levelAt(long price);
+
+    /**
+     * Level with the highest price strictly below the given price, or null when there is none
+     */
+    public abstract PriceLevel levelBelow(long price);
+
+    /**
+     * Level with the lowest price strictly above the given price, or null when there is none
+     */
+    public abstract PriceLevel levelAbove(long price);
+
+    /**
+     * Reduce the size of a resting order in place, keeping its place in the queue of its level
+     */
+    public void reduce(int order, long reduceBy)
+    {
+        levelAt(store.getPrice(order)).reduce(order, reduceBy);
+    }
+
+    /**
+     * Change the hidden reserve of a resting iceberg order in place, keeping its place in the queue of its level
+     */
+    public void setReserve(int order, long reserve)
+    {
+        levelAt(store.getPrice(order)).setReserve(order, reserve);
+    }
+
+    /**
+     * Whether an order on the other side at the given price would trade against the given level of this side
+     */
+    public boolean crosses(PriceLevel level, long price)
+    {
+        return side == Side.ASK ? level.getPrice() <= price : level.getPrice() >= price;
+    }
+
+    /**
+     * Size resting on the levels an order on the other side at the given price would trade against, hidden reserve
+     * included, added up from the best level from each level's totals and only until it reaches limit, so nothing in
+     * the book is touched
+     */
+    public long crossingSize(long price, long limit)
+    {
+        long size = 0;
+        for (PriceLevel level = best(); level != null && size < limit && crosses(level, price); level = nextWorse(level))
+        {
+            size += level.getTotalSize() + level.getReserveSize();
+        }
+        return size;
+    }
+
+    /**
+     * The next level after the given one in priority order, moving away from the best price
+     */
+    public PriceLevel nextWorse(PriceLevel level)
+    {
+        return side == Side.BID ? levelBelow(level.getPrice()) : levelAbove(level.getPrice());
+    }
+
+    /**
+     * Resting orders from highest to lowest price, and in time priority within a price, copied out of the store as
+     * they are iterated
+     */
+    public Collection<Order> orders()
+    {
+        return orderView;
+    }
+
+    /**
+     * Hand each resting order's record to the handler, best price first and in time priority within a price
+     */
+    public void forEachRecord(OrderRecordHandler handler)
+    {
+        for (PriceLevel level = best(); level != null; level = nextWorse(level))
+        {
+            for (int order = level.getHead(); order != NULL_HANDLE; order = store.getNext(order))
+            {
+                store.readRecord(order, handler);
+            }
+        }
+    }
+
+    /**
+     * Add up to the given number of levels to the depth, best price first, from the size and order count each level
+     * already keeps, so the cost depends on the levels read and not on how many orders rest on them
+     */
+    public void readDepth(int levels, MarketDepth depth)
+    {
+        int remaining = levels;
+        for (PriceLevel level = best(); level != null && remaining > 0; level = nextWorse(level))
+        {
+            if (!depth.addLevel(side, level.getPrice(), level.getTotalSize(), level.getOrderCount()))
+            {
+                return;
+            }
+            remaining--;
+        }
+    }
+
+    protected PriceLevel acquireLevel(long price)
+    {
+        final PriceLevel level = freeLevels;
+        if (level == null)
+        {
+            return new PriceLevel(store, price);
+        }
+        freeLevels = level.nextFree;
+        level.init(price);
+        return level;
+    }
+
+    protected void releaseLevel(PriceLevel level)
+    {
+        level.init(0);
+        level.nextFree = freeLevels;
+        freeLevels = level;
+    }
+
+    /**
+     * Free every order of a level in the store and return the level to the free list
+     */
+    protected void freeLevel(PriceLevel level)
+    {
+        int order = level.getHead();
+        while (order != NULL_HANDLE)
+        {
+            final int next = store.getNext(order);
+            store.free(order);
+            order = next;
+        }
+        releaseLevel(level);
+    }
+
+    /**
+     * Whether level a has a better price than level b for this side, where a missing level is never better
+     */
+    protected boolean isBetter(PriceLevel a, PriceLevel b)
+    {
+        if (a == null || b == null)
+        {
+            return b == null && a != null;
+        }
+        return side == Side.BID ? a.getPrice() > b.getPrice() : a.getPrice() < b.getPrice();
+    }
+
+    private class OrderView extends AbstractCollection<Order>
+    {
+        @Override
+        public Iterator<Order> iterator()
+        {
+            return new Iterator<>()
+            {
+                private PriceLevel level = levelBelow(Long.MAX_VALUE);
+                private int nextOrder = level == null ? NULL_HANDLE : level.getHead();
+
+                @Override
+                public boolean hasNext()
+                {
+                    return nextOrder != NULL_HANDLE;
+                }
+
+                @Override
+                public Order next()
+                {
+                    if (nextOrder == NULL_HANDLE)
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    final int order = nextOrder;
+                    nextOrder = store.getNext(order);
+                    if (nextOrder == NULL_HANDLE)
+                    {
+                        level = levelBelow(level.getPrice());
+                        nextOrder = level == null ? NULL_HANDLE : level.getHead();
+                    }
+                    return new Order(store.getOrderId(order), store.getPrice(order), store.getSize(order));
+                }
+            };
+        }
+
+        @Override
+        public int size()
+        {
+            return getOrderCount();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package weareadaptive.com.cluster.services.oms;
+
+import static weareadaptive.com.cluster.services.oms.OrderStore.NULL_HANDLE;
+
+/**
+ * All resting orders at a single price, held as an intrusive FIFO queue of {@link OrderStore} handles so that time
+ * priority is the order of insertion and appending or unlinking an order is O(1).
+ * - Levels are pooled by their {@link PriceLadder}, so a level is reused for a different price once it empties
+ */
+public class PriceLevel
+{
+    private final OrderStore store;
+    private long price;
+    private int head = NULL_HANDLE;
+    private int tail = NULL_HANDLE;
+    private long totalSize;
+    private long reserveSize;
+    private int orderCount;
+    PriceLevel nextFree;
+
+    public PriceLevel(OrderStore store, long price)
+    {
+        this.store = store;
+        this.price = price;
+    }
+
+    void init(long price)
+    {
+        this.price = price;
+        head = NULL_HANDLE;
+        tail = NULL_HANDLE;
+        totalSize = 0;
+        reserveSize = 0;
+        orderCount = 0;
+        nextFree = null;
+    }
+
+    public void append(int order)
+    {
+        store.setPrevious(order, tail);
+        store.setNext(order, NULL_HANDLE);
+        if (tail == NULL_HANDLE)
+        {
+            head = order;
+        }
+        else
+        {
+            store.setNext(tail, order);
+        }
+        tail = order;
+        totalSize += store.getSize(order);
+        reserveSize += store.getReserve(order);
+        orderCount++;
+    }
+
+    public void remove(int order)
+    {
+        final int previous = store.getPrevious(order);
+        final int next = store.getNext(order);
+        if (previous == NULL_HANDLE)
+        {
+            head = next;
+        }
+        else
+        {
+            store.setNext(previous, next);
+        }
+        if (next == NULL_HANDLE)
+        {
+            tail = previous;
+        }
+        else
+        {
+            store.setPrevious(next, previous);
+        }
+        totalSize -= store.getSize(order);
+        reserveSize -= store.getReserve(order);
+        orderCount--;
+        store.setPrevious(order, NULL_HANDLE);
+        store.setNext(order, NULL_HANDLE);
+    }
+
+    /**
+     * Reduce the size of an order in this level, keeping its place in the queue
+     */
+    public void reduce(int order, long sizeFilled)
+    {
+        store.setSize(order, store.getSize(order) - sizeFilled);
+        totalSize -= sizeFilled;
+    }
+
+    /**
+     * Change the hidden reserve of an iceberg order in this level, keeping its place in the queue
+     */
+    public void setReserve(int order, long reserve)
+    {
+        reserveSize += reserve - store.getReserve(order);
+        store.setReserve(order, reserve);
+    }
+
+    /**
+     * Show the next slice of an iceberg order whose shown size has just traded away, taken from its reserve, and
+     * move the order to the back of the queue as a new order of that size would be
+     */
+    public void replenish(int order)
+    {
+        final long reserve = store.getReserve(order);
+        final long slice = Math.min(store.getDisplaySize(order), reserve);
+        remove(order);
+        store.setSize(order, slice);
+        store.setReserve(order, reserve - slice);
+        append(order);
+    }
+
+    public long getPrice()
+    {
+        return price;
+    }
+
+    /**
+     * Handle of the oldest order at this price, or {@link OrderStore#NULL_HANDLE} when the level is empty
+     */
+    public int getHead()
+    {
+        return head;
+    }
+
+    /**
+     * Size shown at this price, the hidden reserve of iceberg orders is not included
+     */
+    public long getTotalSize()
+    {
+        return totalSize;
+    }
+
+    /**
+     * Hidden reserve of the iceberg orders at this price
+     */
+    public long getReserveSize()
+    {
+        return reserveSize;
+    }
+
+    public int getOrderCount()
+    {
+        return orderCount;
+    }
+
+    public boolean isEmpty()
+    {
+        return head == NULL_HANDLE;
+    }
+}
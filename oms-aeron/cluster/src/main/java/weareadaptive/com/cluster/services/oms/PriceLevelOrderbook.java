@@ -0,0 +1,690 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.collections.LongArrayList;
+import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
+import weareadaptive.com.cluster.services.oms.util.MarketDepth;
+import weareadaptive.com.cluster.services.oms.util.Order;
+import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.Status;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
+import weareadaptive.com.cluster.services.oms.util.TopOfBook;
+
+import java.util.Collection;
+
+import static weareadaptive.com.cluster.services.oms.OrderStore.NULL_HANDLE;
+
+/**
+ * Orderbook holding each side as a ladder of price levels, with a FIFO queue of orders per level.
+ * - Resting an order at an existing price is O(1)
+ * - The best price on each side is read in O(1) from the top of its ladder, and each level keeps its total size up
+ *   to date as orders rest, fill and cancel, so the best bid and offer are read without walking any orders
+ * - Matching walks levels from the best price and stops at the first level that no longer crosses
+ * - Orders are indexed by orderId, so a cancel unlinks the order from its level directly
+ * - An iceberg order rests with only a slice of its size shown, and is refilled from its reserve and moved to the
+ *   back of its level inside the matching loop each time the shown slice trades away
+ * - Orders are also linked per client session, so a session's orders are mass cancelled without walking the book
+ * - Stop orders wait in a {@link StopOrderBook} and are placed once a match has traded through their trigger price
+ * - Self trades are caught by comparing the session kept with each resting order as the match reaches it, and handled
+ *   by the configured {@link SelfTradePrevention}
+ * - In a call auction orders only rest, and the uncross fills each side in one pass down its ladder
+ * - Order fields live in an {@link OrderStore} and are addressed by handle, so the storage layout can be chosen
+ *   without touching the matching logic
+ * - Order slots, levels and the returned {@link ExecutionResult} are all reused, so the order lifecycle does not
+ *   allocate once the book has grown to its working size
+ */
+public class PriceLevelOrderbook implements IOrderbook
+{
+    private static final int DEFAULT_POOL_SIZE = 1024;
+
+    private long currentOrderId = 0;
+    private final OrderStore store;
+    private final PriceLadder asks;
+    private final PriceLadder bids;
+    private final Long2LongHashMap ordersById = new Long2LongHashMap(NULL_HANDLE);
+    private final SessionOrderIndex sessions;
+    private final StopOrderBook stops = new StopOrderBook();
+    private final ExecutionResult executionResult = new ExecutionResult();
+    private final TopOfBook topOfBook = new TopOfBook();
+    private SelfTradePrevention selfTradePrevention = SelfTradePrevention.NONE;
+    private AllocationPolicy allocationPolicy = AllocationPolicy.FIFO;
+    // size of the incoming order taken away by self-trade prevention during the last match
+    private long selfTradeSize;
+    private boolean inAuction = false;
+    private final AuctionUncross auctionUncross = new AuctionUncross();
+    private final FillBuffer fills = new FillBuffer();
+    private OrderRemovedListener orderRemovedListener = OrderRemovedListener.NONE;
+
+    public PriceLevelOrderbook()
+    {
+        this(new PooledOrderStore(DEFAULT_POOL_SIZE));
+    }
+
+    public PriceLevelOrderbook(OrderStore store)
+    {
+        this.store = store;
+        this.sessions = new SessionOrderIndex(store);
+        this.asks = new SortedPriceLadder(Side.ASK, store);
+        this.bids = new SortedPriceLadder(Side.BID, store);
+    }
+
+    /**
+     * Orderbook for an instrument trading within a known band, with levels inside the band indexed directly
+     */
+    public PriceLevelOrderbook(OrderStore store, PriceBand band)
+    {
+        this.store = store;
+        this.sessions = new SessionOrderIndex(store);
+        this.asks = new BoundedPriceLadder(Side.ASK, store, band);
+        this.bids = new BoundedPriceLadder(Side.BID, store, band);
+    }
+
+    @Override
+    public ExecutionResult placeOrder(long sessionId, long price, long size, Side side, TimeInForce timeInForce,
+                                      long displaySize)
+    {
+        fills.clear();
+        final long orderId = currentOrderId++;
+        final Status status = place(orderId, sessionId, price, size, side, timeInForce, displaySize);
+        releaseStops();
+        return result(orderId, status);
+    }
+
+    private Status place(long orderId, long sessionId, long price, long size, Side side, TimeInForce timeInForce,
+                         long displaySize)
+    {
+        final PriceLadder sameSide = side == Side.ASK ? asks : bids;
+        final PriceLadder otherSide = side == Side.ASK ? bids : asks;
+
+        if (inAuction && timeInForce != TimeInForce.GTC)
+        {
+            return Status.CANCELLED;
+        }
+        if (timeInForce == TimeInForce.FOK && crossingSize(otherSide, sessionId, price, size) < size)
+        {
+            return Status.CANCELLED;
+        }
+        final long remainingSize = match(otherSide, orderId, sessionId, price, size);
+        final long tradedSize = size - remainingSize - selfTradeSize;
+        if (remainingSize == 0)
+        {
+            return tradedSize == size ? Status.FILLED : tradedSize == 0 ? Status.CANCELLED : Status.PARTIAL;
+        }
+        if (timeInForce != TimeInForce.GTC)
+        {
+            return tradedSize == 0 ? Status.CANCELLED : Status.PARTIAL;
+        }
+
+        final int order = store.allocate(orderId, price, remainingSize, side, sessionId);
+        store.setDisplaySize(order, displaySize);
+        setShownSize(order, remainingSize);
+        sameSide.add(order);
+        ordersById.put(orderId, order);
+        sessions.link(order);
+        return tradedSize == 0 ? Status.RESTING : Status.PARTIAL;
+    }
+
+    @Override
+    public void setSelfTradePrevention(SelfTradePrevention selfTradePrevention)
+    {
+        this.selfTradePrevention = selfTradePrevention;
+    }
+
+    @Override
+    public void setAllocationPolicy(AllocationPolicy allocationPolicy)
+    {
+        this.allocationPolicy = allocationPolicy;
+    }
+
+    private boolean preventsSelfTrade(long sessionId)
+    {
+        return selfTradePrevention != SelfTradePrevention.NONE && sessionId != NO_SESSION;
+    }
+
+    /**
+     * Size an order at the given price would trade against, counted until it reaches limit
+     * - Without self-trade prevention this is read from the level totals, with it the orders are walked so those of
+     *   the same session are skipped when the policy cancels them, and end the count when it would cancel or
+     *   decrement the incoming order instead
+     */
+    private long crossingSize(PriceLadder otherSide, long sessionId, long price, long limit)
+    {
+        if (!preventsSelfTrade(sessionId))
+        {
+            return otherSide.crossingSize(price, limit);
+        }
+        long size = 0;
+        for (PriceLevel level = otherSide.best(); level != null && size < limit && otherSide.crosses(level, price);
+             level = otherSide.nextWorse(level))
+        {
+            for (int order = level.getHead(); order != NULL_HANDLE && size < limit; order = store.getNext(order))
+            {
+                if (store.getSessionId(order) == sessionId)
+                {
+                    if (selfTradePrevention == SelfTradePrevention.CANCEL_RESTING)
+                    {
+                        continue;
+                    }
+                    return size;
+                }
+                size += store.getSize(order) + store.getReserve(order);
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public ExecutionResult placeStopOrder(long sessionId, long triggerPrice, long price, long size, Side side,
+                                          TimeInForce timeInForce)
+    {
+        fills.clear();
+        final long orderId = currentOrderId++;
+        if (stops.isTriggered(side, triggerPrice))
+        {
+            return result(orderId, Status.CANCELLED);
+        }
+        stops.add(orderId, sessionId, side, triggerPrice, price, size, timeInForce);
+        return result(orderId, Status.PENDING);
+    }
+
+    /**
+     * Place every stop the last match has triggered, including those triggered by the trades of the stops placed
+     * before them
+     */
+    private void releaseStops()
+    {
+        StopOrder stop;
+        while ((stop = stops.pollTriggered()) != null)
+        {
+            place(stop.getOrderId(), stop.getSessionId(), stop.getPrice(), stop.getSize(), stop.getSide(),
+                    stop.getTimeInForce(), FULLY_DISPLAYED);
+            if (!ordersById.containsKey(stop.getOrderId()))
+            {
+                // filled or cancelled as soon as it was placed, so it is gone without ever resting
+                orderRemovedListener.onOrderRemoved(stop.getOrderId());
+            }
+            stops.release(stop);
+        }
+    }
+
+    /**
+     * Fill an incoming order of the given session against the other side, returning the size left unfilled
+     * - Every trade is recorded in {@link #fills} before the resting order it took out is released
+     * - The size self-trade prevention took away is left in {@link #selfTradeSize}, and counts as neither traded nor
+     *   left
+     * - A decrement takes the same path as a fill apart from the trade itself
+     * - A level the order does not take out is shared by the {@link AllocationPolicy}, in one walk of the orders
+     *   counted when the level is reached, so an iceberg refilled to the back of the queue is not given a second
+     *   share
+     */
+    private long match(PriceLadder otherSide, long orderId, long sessionId, long price, long size)
+    {
+        final Side side = otherSide == asks ? Side.BID : Side.ASK;
+        final boolean preventSelfTrade = preventsSelfTrade(sessionId);
+        long remainingSize = size;
+        selfTradeSize = 0;
+        PriceLevel level = inAuction ? null : otherSide.best();
+        while (remainingSize > 0 && level != null && otherSide.crosses(level, price))
+        {
+            final boolean proRata = allocationPolicy != AllocationPolicy.FIFO && level.getTotalSize() > remainingSize;
+            boolean topOrder = allocationPolicy == AllocationPolicy.TOP_ORDER_PRO_RATA;
+            long quantity = remainingSize;
+            long total = level.getTotalSize();
+            long sizeBefore = 0;
+            int ordersLeft = level.getOrderCount();
+            int order = level.getHead();
+            while (remainingSize > 0 && ordersLeft-- > 0)
+            {
+                final int next = store.getNext(order);
+                final long orderSize = store.getSize(order);
+                final long sizeFilled;
+                if (!proRata || topOrder)
+                {
+                    sizeFilled = Math.min(orderSize, remainingSize);
+                    if (topOrder)
+                    {
+                        quantity = remainingSize - sizeFilled;
+                        total -= orderSize;
+                        topOrder = false;
+                    }
+                }
+                else
+                {
+                    sizeFilled = AllocationPolicy.proRataShare(quantity, sizeBefore, orderSize, total);
+                    sizeBefore += orderSize;
+                }
+                if (sizeFilled == 0)
+                {
+                    order = next;
+                    continue;
+                }
+                final boolean selfTrade = preventSelfTrade && store.getSessionId(order) == sessionId;
+                if (selfTrade && selfTradePrevention == SelfTradePrevention.CANCEL_AGGRESSOR)
+                {
+                    selfTradeSize += remainingSize;
+                    return 0;
+                }
+                if (selfTrade && selfTradePrevention == SelfTradePrevention.CANCEL_RESTING)
+                {
+                    otherSide.remove(level, order);
+                    release(order);
+                    order = next;
+                    continue;
+                }
+                if (selfTrade)
+                {
+                    selfTradeSize += sizeFilled;
+                }
+                else
+                {
+                    stops.onTrade(level.getPrice());
+                    fills.add(orderId, sessionId, side, store.getOrderId(order), store.getSessionId(order),
+                            level.getPrice(), sizeFilled);
+                }
+                remainingSize -= sizeFilled;
+                if (orderSize > sizeFilled)
+                {
+                    level.reduce(order, sizeFilled);
+                }
+                else if (store.getReserve(order) > 0)
+                {
+                    level.replenish(order);
+                }
+                else
+                {
+                    otherSide.remove(level, order);
+                    release(order);
+                }
+                order = next;
+            }
+            level = otherSide.best();
+        }
+        return remainingSize;
+    }
+
+    @Override
+    public void startAuction()
+    {
+        inAuction = true;
+    }
+
+    @Override
+    public boolean isInAuction()
+    {
+        return inAuction;
+    }
+
+    /**
+     * The crossing levels are read from the level totals, from the best price on each side to the best price of the
+     * other, so finding the price does not walk any orders
+     */
+    @Override
+    public AuctionUncross uncross()
+    {
+        inAuction = false;
+        auctionUncross.clear();
+        fills.clear();
+        final PriceLevel bestBid = bids.best();
+        final PriceLevel bestAsk = asks.best();
+        if (bestBid == null || bestAsk == null || bestBid.getPrice() < bestAsk.getPrice())
+        {
+            return auctionUncross;
+        }
+        for (PriceLevel level = bestBid; level != null && level.getPrice() >= bestAsk.getPrice(); level = bids.nextWorse(level))
+        {
+            auctionUncross.addLevel(Side.BID, level.getPrice(), level.getTotalSize() + level.getReserveSize());
+        }
+        for (PriceLevel level = bestAsk; level != null && level.getPrice() <= bestBid.getPrice(); level = asks.nextWorse(level))
+        {
+            auctionUncross.addLevel(Side.ASK, level.getPrice(), level.getTotalSize() + level.getReserveSize());
+        }
+        if (auctionUncross.computePrice())
+        {
+            fillAtAuctionPrice(bids, Side.BID);
+            fillAtAuctionPrice(asks, Side.ASK);
+            auctionUncross.addTrades(fills);
+            stops.onTrade(auctionUncross.getPrice());
+            releaseStops();
+        }
+        return auctionUncross;
+    }
+
+    /**
+     * Fill the auction volume from one side, best price first and in time priority within a level
+     * - The equilibrium price leaves at least the volume at or better than it, so no level is checked against it
+     * - An iceberg is refilled from its reserve and queued again as it would be when matching
+     */
+    private void fillAtAuctionPrice(PriceLadder ladder, Side side)
+    {
+        long remainingSize = auctionUncross.getVolume();
+        PriceLevel level = ladder.best();
+        while (remainingSize > 0 && level != null)
+        {
+            int order = level.getHead();
+            while (remainingSize > 0 && order != NULL_HANDLE)
+            {
+                final int next = store.getNext(order);
+                final long orderSize = store.getSize(order);
+                final long sizeFilled = Math.min(orderSize, remainingSize);
+                auctionUncross.addFill(store.getOrderId(order), store.getSessionId(order), side, sizeFilled);
+                if (orderSize > sizeFilled)
+                {
+                    level.reduce(order, sizeFilled);
+                }
+                else if (store.getReserve(order) > 0)
+                {
+                    level.replenish(order);
+                }
+                else
+                {
+                    ladder.remove(level, order);
+                    release(order);
+                }
+                remainingSize -= sizeFilled;
+                order = next;
+            }
+            level = ladder.best();
+        }
+    }
+
+    @Override
+    public ExecutionResult cancelOrder(long orderId)
+    {
+        final int order = (int)ordersById.remove(orderId);
+        if (order == NULL_HANDLE)
+        {
+            return result(orderId, stops.cancel(orderId) ? Status.CANCELLED : Status.NONE);
+        }
+        (store.getSide(order) == Side.ASK ? asks : bids).remove(order);
+        sessions.unlink(order);
+        store.free(order);
+        orderRemovedListener.onOrderRemoved(orderId);
+        return result(orderId, Status.CANCELLED);
+    }
+
+    @Override
+    public long getSessionId(long orderId)
+    {
+        final int order = (int)ordersById.get(orderId);
+        return order == NULL_HANDLE ? stops.getSessionId(orderId) : store.getSessionId(order);
+    }
+
+    @Override
+    public int massCancel(long sessionId, Side side, long minPrice, long maxPrice)
+    {
+        final int cancelledStops = stops.cancel(sessionId, side, minPrice, maxPrice, null);
+        if (sessionId == ANY_SESSION)
+        {
+            return cancelledStops + (side == Side.ASK ? 0 : cancelLevels(bids, minPrice, maxPrice))
+                    + (side == Side.BID ? 0 : cancelLevels(asks, minPrice, maxPrice));
+        }
+
+        int cancelled = cancelledStops;
+        int order = sessions.head(sessionId);
+        while (order != NULL_HANDLE)
+        {
+            final int next = store.getSessionNext(order);
+            final Side orderSide = store.getSide(order);
+            final long price = store.getPrice(order);
+            if ((side == null || side == orderSide) && price >= minPrice && price <= maxPrice)
+            {
+                (orderSide == Side.ASK ? asks : bids).remove(order);
+                release(order);
+                cancelled++;
+            }
+            order = next;
+        }
+        return cancelled;
+    }
+
+    @Override
+    public int cancelSession(long sessionId, LongArrayList cancelledOrderIds)
+    {
+        int cancelled = stops.cancel(sessionId, null, Long.MIN_VALUE, Long.MAX_VALUE, cancelledOrderIds);
+        int order = sessions.head(sessionId);
+        while (order != NULL_HANDLE)
+        {
+            final int next = store.getSessionNext(order);
+            if (cancelledOrderIds != null)
+            {
+                cancelledOrderIds.addLong(store.getOrderId(order));
+            }
+            (store.getSide(order) == Side.ASK ? asks : bids).remove(order);
+            release(order);
+            cancelled++;
+            order = next;
+        }
+        return cancelled;
+    }
+
+    /**
+     * Cancel every order on the levels of one side within the price range, walking down from the highest price
+     */
+    private int cancelLevels(PriceLadder ladder, long minPrice, long maxPrice)
+    {
+        int cancelled = 0;
+        PriceLevel level = ladder.levelAt(maxPrice);
+        if (level == null)
+        {
+            level = ladder.levelBelow(maxPrice);
+        }
+        while (level != null && level.getPrice() >= minPrice)
+        {
+            final long price = level.getPrice();
+            int order = level.getHead();
+            while (order != NULL_HANDLE)
+            {
+                final int next = store.getNext(order);
+                ladder.remove(level, order);
+                release(order);
+                cancelled++;
+                order = next;
+            }
+            level = ladder.levelBelow(price);
+        }
+        return cancelled;
+    }
+
+    /**
+     * Take an order that has already left its level out of the indexes, return its slot to the store and tell the
+     * listener it is gone
+     */
+    private void release(int order)
+    {
+        final long orderId = store.getOrderId(order);
+        ordersById.remove(orderId);
+        sessions.unlink(order);
+        store.free(order);
+        orderRemovedListener.onOrderRemoved(orderId);
+    }
+
+    @Override
+    public ExecutionResult amendOrder(long orderId, long price, long size)
+    {
+        fills.clear();
+        final int order = (int)ordersById.get(orderId);
+        if (order == NULL_HANDLE)
+        {
+            return result(orderId, Status.NONE);
+        }
+        if (size <= 0)
+        {
+            return cancelOrder(orderId);
+        }
+        final Side side = store.getSide(order);
+        final PriceLadder sameSide = side == Side.ASK ? asks : bids;
+        final long currentSize = store.getSize(order);
+        if (price == store.getPrice(order) && size <= currentSize + store.getReserve(order))
+        {
+            final long shownSize = Math.min(size, currentSize);
+            sameSide.reduce(order, currentSize - shownSize);
+            sameSide.setReserve(order, size - shownSize);
+            return result(orderId, Status.AMENDED);
+        }
+
+        // the order keeps its slot and orderId and is only relinked, at the back of the level for its new price
+        sameSide.remove(order);
+        final long remainingSize = match(side == Side.ASK ? bids : asks, orderId, store.getSessionId(order), price,
+                size);
+        final long tradedSize = size - remainingSize - selfTradeSize;
+        final Status status;
+        if (remainingSize == 0)
+        {
+            release(order);
+            status = tradedSize == size ? Status.FILLED : tradedSize == 0 ? Status.CANCELLED : Status.PARTIAL;
+        }
+        else
+        {
+            store.setPrice(order, price);
+            setShownSize(order, remainingSize);
+            sameSide.add(order);
+            status = tradedSize == 0 ? Status.AMENDED : Status.PARTIAL;
+        }
+        releaseStops();
+        return result(orderId, status);
+    }
+
+    /**
+     * Set the size of an order about to be added to its level, showing no more than its display size and keeping the
+     * rest in reserve
+     */
+    private void setShownSize(int order, long size)
+    {
+        final long displaySize = store.getDisplaySize(order);
+        final long shownSize = displaySize > 0 && displaySize < size ? displaySize : size;
+        store.setSize(order, shownSize);
+        store.setReserve(order, size - shownSize);
+    }
+
+    /**
+     * The same holder is returned by every call, so callers must read it before the next call into the orderbook
+     */
+    private ExecutionResult result(long orderId, Status status)
+    {
+        executionResult.setOrderId(orderId);
+        executionResult.setStatus(status);
+        return executionResult;
+    }
+
+    @Override
+    public void restoreOrder(long orderId, long price, long size, Side side, long sessionId, long reserve,
+                             long displaySize)
+    {
+        final int order = store.allocate(orderId, price, size, side, sessionId);
+        store.setReserve(order, reserve);
+        store.setDisplaySize(order, displaySize);
+        (side == Side.ASK ? asks : bids).restore(order);
+        ordersById.put(orderId, order);
+        sessions.link(order);
+    }
+
+    @Override
+    public void finishRestore()
+    {
+        asks.finishRestore();
+        bids.finishRestore();
+    }
+
+    @Override
+    public void forEachOrderRecord(Side side, OrderRecordHandler handler)
+    {
+        (side == Side.ASK ? asks : bids).forEachRecord(handler);
+    }
+
+    @Override
+    public int getOrderCount(Side side)
+    {
+        return (side == Side.ASK ? asks : bids).getOrderCount();
+    }
+
+    @Override
+    public FillBuffer getFills()
+    {
+        return fills;
+    }
+
+    @Override
+    public void setOrderRemovedListener(OrderRemovedListener listener)
+    {
+        orderRemovedListener = listener;
+        stops.setOrderRemovedListener(listener);
+    }
+
+    @Override
+    public StopOrderBook getStopOrders()
+    {
+        return stops;
+    }
+
+    @Override
+    public TopOfBook getTopOfBook()
+    {
+        final PriceLevel bestBid = bids.best();
+        final PriceLevel bestAsk = asks.best();
+        topOfBook.setBid(bestBid == null ? 0 : bestBid.getPrice(), bestBid == null ? 0 : bestBid.getTotalSize());
+        topOfBook.setAsk(bestAsk == null ? 0 : bestAsk.getPrice(), bestAsk == null ? 0 : bestAsk.getTotalSize());
+        return topOfBook;
+    }
+
+    @Override
+    public void readDepth(int levels, MarketDepth depth)
+    {
+        depth.clear();
+        bids.readDepth(levels, depth);
+        asks.readDepth(levels, depth);
+    }
+
+    @Override
+    public void clear()
+    {
+        asks.clear();
+        bids.clear();
+        ordersById.clear();
+        sessions.clear();
+        stops.clear();
+    }
+
+    @Override
+    public void reset()
+    {
+        clear();
+        currentOrderId = 0;
+        inAuction = false;
+        fills.reset();
+        stops.setLastTradePrice(StopOrderBook.NO_TRADE);
+    }
+
+    @Override
+    public Collection<Order> getAsks()
+    {
+        return asks.orders();
+    }
+
+    @Override
+    public Collection<Order> getBids()
+    {
+        return bids.orders();
+    }
+
+    @Override
+    public long getCurrentOrderId()
+    {
+        return currentOrderId;
+    }
+
+    @Override
+    public void setCurrentOrderId(long currentOrderId)
+    {
+        this.currentOrderId = currentOrderId;
+    }
+
+    public PriceLevel getBestAsk()
+    {
+        return asks.best();
+    }
+
+    public PriceLevel getBestBid()
+    {
+        return bids.best();
+    }
+}
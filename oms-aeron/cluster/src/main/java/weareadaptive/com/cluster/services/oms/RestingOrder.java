@@ -0,0 +1,36 @@
+package weareadaptive.com.cluster.services.oms;
+
+import weareadaptive.com.cluster.services.oms.util.Order;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+/**
+ * A pooled order slot of a {@link PooledOrderStore}, linked to its neighbours in the level by handle.
+ */
+public class RestingOrder extends Order
+{
+    Side side;
+    long reserve;
+    long displaySize;
+    int previous = OrderStore.NULL_HANDLE;
+    int next = OrderStore.NULL_HANDLE;
+    int sessionPrevious = OrderStore.NULL_HANDLE;
+    int sessionNext = OrderStore.NULL_HANDLE;
+
+    RestingOrder()
+    {
+        super(0, 0, 0);
+    }
+
+    void init(long orderId, long price, long size, Side side, long sessionId)
+    {
+        init(orderId, price, size);
+        this.side = side;
+        setSessionId(sessionId);
+        this.reserve = 0;
+        this.displaySize = 0;
+        this.previous = OrderStore.NULL_HANDLE;
+        this.next = OrderStore.NULL_HANDLE;
+        this.sessionPrevious = OrderStore.NULL_HANDLE;
+        this.sessionNext = OrderStore.NULL_HANDLE;
+    }
+}
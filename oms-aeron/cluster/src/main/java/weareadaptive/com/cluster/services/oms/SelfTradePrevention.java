@@ -0,0 +1,28 @@
+package weareadaptive.com.cluster.services.oms;
+
+/**
+ * What an orderbook does when an incoming order would trade against a resting order of the same client session,
+ * selected by configuration
+ * - Orders placed outside of any client session never count as self trades
+ * - The quantity a policy takes away is cancelled and never reported as traded
+ */
+public enum SelfTradePrevention
+{
+    /**
+     * Orders of the same session trade with each other like any other orders
+     */
+    NONE,
+    /**
+     * The resting order is cancelled, reserve included, and matching carries on with the next resting order
+     */
+    CANCEL_RESTING,
+    /**
+     * What is left of the incoming order is cancelled, and what it traded before reaching its own order stands
+     */
+    CANCEL_AGGRESSOR,
+    /**
+     * Both orders are reduced by the smaller of the incoming order's remaining size and the resting order's shown
+     * size, as if they had traded but without a trade, and matching carries on
+     */
+    DECREMENT_BOTH
+}
@@ -0,0 +1,81 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.collections.Long2LongHashMap;
+
+import static weareadaptive.com.cluster.services.oms.OrderStore.NULL_HANDLE;
+
+/**
+ * The resting orders of each client session, held as an intrusive list through the session links of the
+ * {@link OrderStore}, so finding a session's orders walks only those orders and never the book.
+ * - Only the head of each session's list is kept in a map, linking or unlinking an order is O(1)
+ * - An order is linked at the head, so a session's orders are walked newest first
+ */
+public class SessionOrderIndex
+{
+    private final OrderStore store;
+    private final Long2LongHashMap heads = new Long2LongHashMap(NULL_HANDLE);
+
+    public SessionOrderIndex(OrderStore store)
+    {
+        this.store = store;
+    }
+
+    public void link(int order)
+    {
+        final long sessionId = store.getSessionId(order);
+        final int head = (int)heads.get(sessionId);
+        store.setSessionPrevious(order, NULL_HANDLE);
+        store.setSessionNext(order, head);
+        if (head != NULL_HANDLE)
+        {
+            store.setSessionPrevious(head, order);
+        }
+        heads.put(sessionId, order);
+    }
+
+    public void unlink(int order)
+    {
+        final int previous = store.getSessionPrevious(order);
+        final int next = store.getSessionNext(order);
+        if (previous == NULL_HANDLE)
+        {
+            final long sessionId = store.getSessionId(order);
+            if (next == NULL_HANDLE)
+            {
+                heads.remove(sessionId);
+            }
+            else
+            {
+                heads.put(sessionId, next);
+            }
+        }
+        else
+        {
+            store.setSessionNext(previous, next);
+        }
+        if (next != NULL_HANDLE)
+        {
+            store.setSessionPrevious(next, previous);
+        }
+        store.setSessionPrevious(order, NULL_HANDLE);
+        store.setSessionNext(order, NULL_HANDLE);
+    }
+
+    /**
+     * Newest resting order of a session, or {@link OrderStore#NULL_HANDLE} when it has none
+     */
+    public int head(long sessionId)
+    {
+        return (int)heads.get(sessionId);
+    }
+
+    public int getSessionCount()
+    {
+        return heads.size();
+    }
+
+    public void clear()
+    {
+        heads.clear();
+    }
+}
@@ -4,95 +4,254 @@ import com.weareadaptive.sbe.snapshotting.*;
 import io.aeron.ExclusivePublication;
 import io.aeron.Image;
 import io.aeron.Publication;
+import io.aeron.cluster.client.ClusterException;
+import io.aeron.logbuffer.BufferClaim;
 import io.aeron.logbuffer.FragmentHandler;
 import io.aeron.logbuffer.Header;
 import org.agrona.DirectBuffer;
-import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.IdleStrategy;
-import org.agrona.concurrent.UnsafeBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import weareadaptive.com.cluster.services.oms.util.Order;
+import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
 
-import java.nio.ByteBuffer;
 import java.util.Objects;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 public class SnapshotManager implements FragmentHandler
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotManager.class);
-    private static final int RETRY_COUNT = 3;
     private boolean snapshotFullyLoaded = false;
     private IdleStrategy idleStrategy;
-    public OrderbookImpl orderbook = new OrderbookImpl();
+    private OrderbookRegistry orderbooks;
+    private IOrderbook orderbook;
+    private OrderExpiryWheel orderExpiries;
+    private long expiryTickTime;
 
     private final MessageHeaderEncoder messageHeaderEncoder = new MessageHeaderEncoder();
     private final MessageHeaderDecoder messageHeaderDecoder = new MessageHeaderDecoder();
     private final OrderIdEncoder orderIdEncoder = new OrderIdEncoder();
     private final OrderIdDecoder orderIdDecoder = new OrderIdDecoder();
     private final EndOfSnapshotEncoder endOfSnapshotEncoder = new EndOfSnapshotEncoder();
-    private final AskOrderEncoder askOrderEncoder = new AskOrderEncoder();
-    private final AskOrderDecoder askOrderDecoder = new AskOrderDecoder();
-    private final BidOrderEncoder bidOrderEncoder = new BidOrderEncoder();
-    private final BidOrderDecoder bidOrderDecoder = new BidOrderDecoder();
-    private final int askBufferLength = MessageHeaderEncoder.ENCODED_LENGTH + AskOrderEncoder.BLOCK_LENGTH;
-    private final int bidBufferLength = MessageHeaderEncoder.ENCODED_LENGTH + BidOrderEncoder.BLOCK_LENGTH;
+    private final OrderbookEncoder orderbookEncoder = new OrderbookEncoder();
+    private final OrderbookDecoder orderbookDecoder = new OrderbookDecoder();
+    private final AskOrdersEncoder askOrdersEncoder = new AskOrdersEncoder();
+    private final AskOrdersDecoder askOrdersDecoder = new AskOrdersDecoder();
+    private final BidOrdersEncoder bidOrdersEncoder = new BidOrdersEncoder();
+    private final BidOrdersDecoder bidOrdersDecoder = new BidOrdersDecoder();
+    private final StopOrderEncoder stopOrderEncoder = new StopOrderEncoder();
+    private final StopOrderDecoder stopOrderDecoder = new StopOrderDecoder();
+    private final ExpiryWheelEncoder expiryWheelEncoder = new ExpiryWheelEncoder();
+    private final ExpiryWheelDecoder expiryWheelDecoder = new ExpiryWheelDecoder();
+    private final OrderExpiryEncoder orderExpiryEncoder = new OrderExpiryEncoder();
+    private final OrderExpiryDecoder orderExpiryDecoder = new OrderExpiryDecoder();
     private final int currentIdLength = MessageHeaderEncoder.ENCODED_LENGTH + OrderIdEncoder.BLOCK_LENGTH;
-
-    private final MutableDirectBuffer askOrderBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(askBufferLength));
-    private final MutableDirectBuffer bidOrderBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(bidBufferLength));
-    private final MutableDirectBuffer currentIdBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(currentIdLength));
     private final int endOfSnapshotLength = MessageHeaderEncoder.ENCODED_LENGTH + EndOfSnapshotEncoder.BLOCK_LENGTH;
-    private final MutableDirectBuffer endOfSnapshotBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(endOfSnapshotLength));
+    private final int orderbookLength = MessageHeaderEncoder.ENCODED_LENGTH + OrderbookEncoder.BLOCK_LENGTH;
+    private final int stopOrderLength = MessageHeaderEncoder.ENCODED_LENGTH + StopOrderEncoder.BLOCK_LENGTH;
+    private final int expiryWheelLength = MessageHeaderEncoder.ENCODED_LENGTH + ExpiryWheelEncoder.BLOCK_LENGTH;
+    private final int orderExpiryLength = MessageHeaderEncoder.ENCODED_LENGTH + OrderExpiryEncoder.BLOCK_LENGTH;
+
+    // orders are copied into the group of an askOrders or bidOrders message, the two sharing one layout
+    private static final int ORDERS_OFFSET = MessageHeaderEncoder.ENCODED_LENGTH + AskOrdersEncoder.BLOCK_LENGTH +
+            AskOrdersEncoder.OrdersEncoder.sbeHeaderSize();
+    private int ordersPerMessage;
+    private int ordersLeft;
+    private int claimedOrderCount;
+    private int batchedOrderCount;
+    private int batchedOrdersOffset;
+    private Side batchedSide;
+
+    private SnapshotPublication snapshotPublication;
+    private final BufferClaim bufferClaim = new BufferClaim();
+    private final SnapshotProgress progress = new SnapshotProgress();
+    private final OrderRecordHandler orderRecordHandler = this::batchOrder;
+    private final OrderExpiryWheel.ExpiryConsumer orderExpiryConsumer = this::offerOrderExpiry;
+
+    /**
+     * Each orderbook is written as an orderbook message naming its instrument, its last trade price and whether it is
+     * in an auction, followed by its orders, its waiting stop orders and its orderId
+     * - Resting orders are packed into askOrders and bidOrders messages of as many orders as fit in the publication's
+     *   max payload, so a book takes one claim per fragment rather than one per order and the cost follows the bytes
+     *   written
+     * - The GTT order expiries of every book follow the last book, as they share one wheel
+     * - Every message is claimed on the publication and encoded in place, and waits out back pressure rather than being
+     *   dropped, so a snapshot that completes holds the whole state
+     */
+    public void encodeOrderbookState(ExclusivePublication snapshotPublication, OrderbookRegistry orderbooks,
+                                     OrderExpiryWheel orderExpiries)
+    {
+        encodeOrderbookState(SnapshotPublication.of(snapshotPublication), orderbooks, orderExpiries);
+    }
+
+    void encodeOrderbookState(SnapshotPublication snapshotPublication, OrderbookRegistry orderbooks,
+                              OrderExpiryWheel orderExpiries)
+    {
+        LOGGER.info("Starting snapshot of {} orderbooks...", orderbooks.getInstrumentCount());
+        Objects.requireNonNull(idleStrategy, "Idle strategy must be set before taking a snapshot");
+        this.snapshotPublication = snapshotPublication;
+        progress.start(System.nanoTime());
+        ordersPerMessage = Math.min((snapshotPublication.maxPayloadLength() - ORDERS_OFFSET) / OrderStore.RECORD_LENGTH,
+                AskOrdersEncoder.OrdersEncoder.countMaxValue());
+        for (int i = 0; i < orderbooks.getInstrumentCount(); i++)
+        {
+            final int instrumentId = orderbooks.getInstrumentId(i);
+            final IOrderbook orderbook = orderbooks.get(instrumentId);
+            final StopOrderBook stopOrders = orderbook.getStopOrders();
+            offerOrderbook(instrumentId, stopOrders.getLastTradePrice(), orderbook.isInAuction(),
+                    orderbook.getFills().getNextMatchId());
+            offerOrders(orderbook, Side.ASK);
+            offerOrders(orderbook, Side.BID);
+            for (Side side : Side.values())
+            {
+                for (int stop = 0; stop < stopOrders.getOrderCount(side); stop++)
+                {
+                    offerStopOrder(stopOrders.get(side, stop));
+                }
+            }
+            offerCurrentId(orderbook.getCurrentOrderId());
+        }
+        offerExpiryWheel(orderExpiries.getTickTime());
+        orderExpiries.forEach(orderExpiryConsumer);
+        offerEndOfSnapshot();
+        progress.complete(System.nanoTime());
+        LOGGER.info("Snapshot complete: {} messages, {} bytes in {}us, back pressured {} times over {} attempts for {}us",
+                progress.getMessageCount(), progress.getByteCount(), progress.getDurationNs() / 1000,
+                progress.getBackPressuredCount(), progress.getBackPressuredAttempts(),
+                progress.getBackPressuredNs() / 1000);
+    }
+
+    /**
+     * Progress of the snapshot being written, or of the last one written
+     */
+    public SnapshotProgress getProgress()
+    {
+        return progress;
+    }
+
+    private void offerOrderbook(final int instrumentId, final long lastTradePrice, final boolean inAuction,
+                                final long nextMatchId)
+    {
+        final int offset = claim(orderbookLength);
+        orderbookEncoder.wrapAndApplyHeader(bufferClaim.buffer(), offset, messageHeaderEncoder);
+        orderbookEncoder.instrumentId(instrumentId);
+        orderbookEncoder.lastTradePrice(lastTradePrice);
+        orderbookEncoder.inAuction((short) (inAuction ? 1 : 0));
+        orderbookEncoder.nextMatchId(nextMatchId);
+
+        bufferClaim.commit();
+    }
 
-    public void encodeOrderbookState(ExclusivePublication snapshotPublication, TreeSet<Order> asks, TreeSet<Order> bids, long currentOrderId)
+    private void offerStopOrder(final StopOrder stop)
     {
-        LOGGER.info("Starting snapshot...");
-        offerAskOrders(snapshotPublication, asks);
-        offerBidOrders(snapshotPublication, bids);
-        offerCurrentId(snapshotPublication, currentOrderId);
-        offerEndOfSnapshot(snapshotPublication);
-        LOGGER.info("Snapshot complete");
+        final int offset = claim(stopOrderLength);
+        stopOrderEncoder.wrapAndApplyHeader(bufferClaim.buffer(), offset, messageHeaderEncoder);
+        stopOrderEncoder.orderId(stop.getOrderId());
+        stopOrderEncoder.sessionId(stop.getSessionId());
+        stopOrderEncoder.side(stop.getSide().getByte());
+        stopOrderEncoder.triggerPrice(stop.getTriggerPrice());
+        stopOrderEncoder.price(stop.getPrice());
+        stopOrderEncoder.size(stop.getSize());
+        stopOrderEncoder.timeInForce(stop.getTimeInForce().getByte());
+
+        bufferClaim.commit();
     }
 
-    private void offerEndOfSnapshot(ExclusivePublication publication)
+    private void offerEndOfSnapshot()
     {
-        endOfSnapshotEncoder.wrapAndApplyHeader(endOfSnapshotBuffer, 0, messageHeaderEncoder);
+        final int offset = claim(endOfSnapshotLength);
+        endOfSnapshotEncoder.wrapAndApplyHeader(bufferClaim.buffer(), offset, messageHeaderEncoder);
 
-        retryingOffer(publication, endOfSnapshotBuffer, endOfSnapshotLength);
+        bufferClaim.commit();
     }
 
-    private void offerCurrentId(final ExclusivePublication publication, final long currentOrderId)
+    private void offerCurrentId(final long currentOrderId)
     {
-        orderIdEncoder.wrapAndApplyHeader(currentIdBuffer, 0, messageHeaderEncoder);
+        final int offset = claim(currentIdLength);
+        orderIdEncoder.wrapAndApplyHeader(bufferClaim.buffer(), offset, messageHeaderEncoder);
         orderIdEncoder.orderId(currentOrderId);
 
-        retryingOffer(publication, currentIdBuffer, currentIdLength);
+        bufferClaim.commit();
     }
 
-    private void offerAskOrders(ExclusivePublication publication, SortedSet<Order> orders)
+    private void offerExpiryWheel(final long tickTime)
     {
-        for (Order order : orders) {
-            askOrderEncoder.wrapAndApplyHeader(askOrderBuffer, 0, messageHeaderEncoder);
+        final int offset = claim(expiryWheelLength);
+        expiryWheelEncoder.wrapAndApplyHeader(bufferClaim.buffer(), offset, messageHeaderEncoder);
+        expiryWheelEncoder.tickTime(tickTime);
 
-            askOrderEncoder.orderId(order.getOrderId());
-            askOrderEncoder.price(order.getPrice());
-            askOrderEncoder.size(order.getSize());
-            retryingOffer(publication, askOrderBuffer, askBufferLength);
-        }
+        bufferClaim.commit();
     }
-    private void offerBidOrders(ExclusivePublication publication, SortedSet<Order> orders)
+
+    private void offerOrderExpiry(final int instrumentId, final long orderId, final long expireTime)
     {
-        for (Order order : orders) {
-            bidOrderEncoder.wrapAndApplyHeader(bidOrderBuffer, 0, messageHeaderEncoder);
+        final int offset = claim(orderExpiryLength);
+        orderExpiryEncoder.wrapAndApplyHeader(bufferClaim.buffer(), offset, messageHeaderEncoder);
+        orderExpiryEncoder.instrumentId(instrumentId);
+        orderExpiryEncoder.orderId(orderId);
+        orderExpiryEncoder.expireTime(expireTime);
+
+        bufferClaim.commit();
+    }
 
-            bidOrderEncoder.orderId(order.getOrderId());
-            bidOrderEncoder.price(order.getPrice());
-            bidOrderEncoder.size(order.getSize());
+    /**
+     * The book's order count for the side sizes each claim exactly, so the group count is written up front and the
+     * orders are copied straight into the claimed fragment as the book hands them over
+     */
+    private void offerOrders(final IOrderbook orderbook, final Side side)
+    {
+        batchedSide = side;
+        ordersLeft = orderbook.getOrderCount(side);
+        claimedOrderCount = 0;
+        batchedOrderCount = 0;
+        orderbook.forEachOrderRecord(side, orderRecordHandler);
+        if (batchedOrderCount < claimedOrderCount || ordersLeft > 0)
+        {
+            if (batchedOrderCount < claimedOrderCount)
+            {
+                bufferClaim.abort();
+            }
+            throw new IllegalStateException("Orderbook handed over fewer " + side + " orders than it counted");
+        }
+    }
+
+    /**
+     * The order record has the same layout as a group entry, so it is copied in as it is rather than field by field
+     */
+    private void batchOrder(DirectBuffer record, int offset)
+    {
+        if (batchedOrderCount == claimedOrderCount)
+        {
+            claimOrders();
+        }
+        bufferClaim.buffer().putBytes(batchedOrdersOffset + batchedOrderCount * OrderStore.RECORD_LENGTH, record, offset,
+                OrderStore.RECORD_LENGTH);
+        if (++batchedOrderCount == claimedOrderCount)
+        {
+            bufferClaim.commit();
+        }
+    }
 
-            retryingOffer(publication, bidOrderBuffer, bidBufferLength);
+    private void claimOrders()
+    {
+        if (ordersLeft == 0)
+        {
+            throw new IllegalStateException("Orderbook handed over more " + batchedSide + " orders than it counted");
+        }
+        claimedOrderCount = Math.min(ordersLeft, ordersPerMessage);
+        ordersLeft -= claimedOrderCount;
+        batchedOrderCount = 0;
+        final int offset = claim(ORDERS_OFFSET + claimedOrderCount * OrderStore.RECORD_LENGTH);
+        if (batchedSide == Side.ASK)
+        {
+            askOrdersEncoder.wrapAndApplyHeader(bufferClaim.buffer(), offset, messageHeaderEncoder)
+                    .ordersCount(claimedOrderCount);
         }
+        else
+        {
+            bidOrdersEncoder.wrapAndApplyHeader(bufferClaim.buffer(), offset, messageHeaderEncoder)
+                    .ordersCount(claimedOrderCount);
+        }
+        batchedOrdersOffset = offset + ORDERS_OFFSET;
     }
 
     @Override
@@ -103,54 +262,129 @@ public class SnapshotManager implements FragmentHandler
         }
 
         messageHeaderDecoder.wrap(buffer, offset);
+        if (messageHeaderDecoder.schemaId() != MessageHeaderDecoder.SCHEMA_ID ||
+                messageHeaderDecoder.version() != MessageHeaderDecoder.SCHEMA_VERSION)
+        {
+            throw new ClusterException("Snapshot written with schema " + messageHeaderDecoder.schemaId() + " version " +
+                    messageHeaderDecoder.version() + " cannot be loaded, expected schema " +
+                    MessageHeaderDecoder.SCHEMA_ID + " version " + MessageHeaderDecoder.SCHEMA_VERSION);
+        }
         final int templateId = messageHeaderDecoder.templateId();
         final int actingBlockLength = messageHeaderDecoder.blockLength();
         final int actingVersion = messageHeaderDecoder.version();
 
         final int updatedOffset = offset + messageHeaderDecoder.encodedLength();
         switch (templateId) {
-            case AskOrderDecoder.TEMPLATE_ID -> {
-                askOrderDecoder.wrap(buffer, updatedOffset, actingBlockLength, actingVersion);
-                final long orderId = askOrderDecoder.orderId();
-                final double price = askOrderDecoder.price();
-                final long size = askOrderDecoder.size();
-                orderbook.getAsks().add(new Order(orderId, price, size));
+            case OrderbookDecoder.TEMPLATE_ID -> {
+                finishOrderbook();
+                orderbookDecoder.wrap(buffer, updatedOffset, actingBlockLength, actingVersion);
+                orderbook = orderbooks.getOrCreate(orderbookDecoder.instrumentId());
+                orderbook.getStopOrders().setLastTradePrice(orderbookDecoder.lastTradePrice());
+                orderbook.getFills().setNextMatchId(orderbookDecoder.nextMatchId());
+                if (orderbookDecoder.inAuction() == 1)
+                {
+                    orderbook.startAuction();
+                }
+            }
+            case StopOrderDecoder.TEMPLATE_ID -> {
+                stopOrderDecoder.wrap(buffer, updatedOffset, actingBlockLength, actingVersion);
+                orderbook.getStopOrders().add(stopOrderDecoder.orderId(), stopOrderDecoder.sessionId(),
+                        Side.fromByteValue((byte) stopOrderDecoder.side()), stopOrderDecoder.triggerPrice(),
+                        stopOrderDecoder.price(), stopOrderDecoder.size(),
+                        TimeInForce.fromByteValue((byte) stopOrderDecoder.timeInForce()));
             }
-            case BidOrderDecoder.TEMPLATE_ID -> {
-                bidOrderDecoder.wrap(buffer, updatedOffset, actingBlockLength, actingVersion);
-                final long orderId = bidOrderDecoder.orderId();
-                final double price = bidOrderDecoder.price();
-                final long size = bidOrderDecoder.size();
-                orderbook.getBids().add(new Order(orderId, price, size));
+            case AskOrdersDecoder.TEMPLATE_ID -> {
+                askOrdersDecoder.wrap(buffer, updatedOffset, actingBlockLength, actingVersion);
+                for (AskOrdersDecoder.OrdersDecoder order : askOrdersDecoder.orders())
+                {
+                    orderbook.restoreOrder(order.orderId(), order.price(), order.size(), Side.ASK, order.sessionId(),
+                            order.reserve(), order.displaySize());
+                }
+            }
+            case BidOrdersDecoder.TEMPLATE_ID -> {
+                bidOrdersDecoder.wrap(buffer, updatedOffset, actingBlockLength, actingVersion);
+                for (BidOrdersDecoder.OrdersDecoder order : bidOrdersDecoder.orders())
+                {
+                    orderbook.restoreOrder(order.orderId(), order.price(), order.size(), Side.BID, order.sessionId(),
+                            order.reserve(), order.displaySize());
+                }
             }
             case OrderIdDecoder.TEMPLATE_ID -> {
                 orderIdDecoder.wrap(buffer, updatedOffset, actingBlockLength, actingVersion);
                 final long orderId = orderIdDecoder.orderId();
                 orderbook.setCurrentOrderId(orderId);
             }
+            case ExpiryWheelDecoder.TEMPLATE_ID -> {
+                expiryWheelDecoder.wrap(buffer, updatedOffset, actingBlockLength, actingVersion);
+                expiryTickTime = expiryWheelDecoder.tickTime();
+            }
+            case OrderExpiryDecoder.TEMPLATE_ID -> {
+                orderExpiryDecoder.wrap(buffer, updatedOffset, actingBlockLength, actingVersion);
+                orderExpiries.schedule(expiryTickTime, orderExpiryDecoder.instrumentId(), orderExpiryDecoder.orderId(),
+                        orderExpiryDecoder.expireTime());
+            }
             case EndOfSnapshotDecoder.TEMPLATE_ID -> snapshotFullyLoaded = true;
             default -> LOGGER.warn("Unknown snapshot message template id: {}", templateId);
         }
     }
 
-    public OrderbookImpl loadSnapshot(final Image snapshotImage)
+    /**
+     * Restore every orderbook and the GTT order expiries from a snapshot written by this build
+     * - A message from another schema or schema version fails the load rather than being misread, as the layout of
+     *   prices and of the orders has changed between versions
+     */
+    public void loadSnapshot(final Image snapshotImage, final OrderbookRegistry orderbooks,
+                             final OrderExpiryWheel orderExpiries)
     {
         LOGGER.info("Loading snapshot...");
-        snapshotFullyLoaded = false;
+        startLoad(orderbooks, orderExpiries);
         Objects.requireNonNull(idleStrategy, "Idle strategy must be set before loading snapshot");
         idleStrategy.reset();
         while (!snapshotImage.isEndOfStream())
         {
             idleStrategy.idle(snapshotImage.poll(this, 20));
         }
+        finishLoad();
+        LOGGER.info("Snapshot load complete.");
+    }
 
+    /**
+     * Restore into the given registry and wheel the messages handed to {@link #onFragment} from here on
+     */
+    void startLoad(final OrderbookRegistry orderbooks, final OrderExpiryWheel orderExpiries)
+    {
+        this.orderbooks = orderbooks;
+        this.orderExpiries = orderExpiries;
+        this.orderbook = null;
+        snapshotFullyLoaded = false;
+    }
+
+    /**
+     * Finish the book read last, once every message of the snapshot has been handed over
+     *
+     * @return whether the end of snapshot marker was read
+     */
+    boolean finishLoad()
+    {
+        finishOrderbook();
         if (!snapshotFullyLoaded)
         {
             LOGGER.warn("Snapshot load not completed; no end of snapshot marker found");
         }
-        LOGGER.info("Snapshot load complete.");
+        return snapshotFullyLoaded;
+    }
 
-        return orderbook;
+    /**
+     * The orders of a book all come before the next book's orderbook message, so the book read last is finished once
+     * the next one starts and the last book once the image ends
+     */
+    private void finishOrderbook()
+    {
+        if (orderbook != null)
+        {
+            orderbook.finishRestore();
+            orderbook = null;
+        }
     }
 
     public void setIdleStrategy(final IdleStrategy idleStrategy)
@@ -158,32 +392,34 @@ public class SnapshotManager implements FragmentHandler
         this.idleStrategy = idleStrategy;
     }
 
-    private void retryingOffer(final ExclusivePublication publication, final DirectBuffer buffer, final int length)
+    /**
+     * Claim the given length on the snapshot publication, returning the offset of the claim in its buffer
+     * - Back pressure and admin actions are waited out for as long as they last, the cluster's idle strategy bounding
+     *   each wait and keeping the service's duty cycle going, so the snapshot is never left with messages missing
+     * - A publication that can take no more messages fails the snapshot, rather than it completing without them
+     */
+    private int claim(final int length)
     {
-        final int offset = 0;
-        int retries = 0;
-        do
+        long result = snapshotPublication.tryClaim(length, bufferClaim);
+        if (result < 0)
         {
+            final long backPressuredStartNs = System.nanoTime();
+            int attempts = 0;
             idleStrategy.reset();
-            final long result = publication.offer(buffer, offset, length);
-            if (result >= 0L)
-            {
-                return;
-            }
-            else if (result == Publication.ADMIN_ACTION || result == Publication.BACK_PRESSURED)
-            {
-                LOGGER.warn("backpressure or admin action on snapshot");
-            }
-            else if (result == Publication.NOT_CONNECTED || result == Publication.MAX_POSITION_EXCEEDED)
+            while (result < 0)
             {
-                LOGGER.error("unexpected publication state on snapshot: {}", result);
-                return;
+                if (result != Publication.BACK_PRESSURED && result != Publication.ADMIN_ACTION)
+                {
+                    throw new ClusterException("Snapshot publication failed after " + progress.getMessageCount() +
+                            " messages: " + Publication.errorString(result));
+                }
+                attempts++;
+                idleStrategy.idle();
+                result = snapshotPublication.tryClaim(length, bufferClaim);
             }
-            idleStrategy.idle();
-            retries += 1;
+            progress.onBackPressured(attempts, System.nanoTime() - backPressuredStartNs);
         }
-        while (retries < RETRY_COUNT);
-
-        LOGGER.error("failed to offer snapshot within {} retries", RETRY_COUNT);
+        progress.onMessage(length);
+        return bufferClaim.offset();
     }
-}
\ No newline at end of file
+}
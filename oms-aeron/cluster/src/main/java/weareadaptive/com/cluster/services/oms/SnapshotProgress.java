@@ -0,0 +1,81 @@
+package weareadaptive.com.cluster.services.oms;
+
+/**
+ * Progress of the snapshot being written, or of the last one once it completes, held by the snapshot manager and
+ * reset at the start of every snapshot.
+ * - Counts the messages and bytes written, and for the claims that found the publication back pressured or behind an
+ *   admin action, how many there were, how many attempts they took and how long they waited
+ * - Times are in nanoseconds from System.nanoTime, they describe the snapshot and are never part of the cluster state
+ */
+public class SnapshotProgress
+{
+    private long startTimeNs;
+    private long durationNs;
+    private long messageCount;
+    private long byteCount;
+    private long backPressuredCount;
+    private long backPressuredAttempts;
+    private long backPressuredNs;
+
+    public void start(final long nowNs)
+    {
+        startTimeNs = nowNs;
+        durationNs = 0;
+        messageCount = 0;
+        byteCount = 0;
+        backPressuredCount = 0;
+        backPressuredAttempts = 0;
+        backPressuredNs = 0;
+    }
+
+    public void complete(final long nowNs)
+    {
+        durationNs = nowNs - startTimeNs;
+    }
+
+    public void onMessage(final int length)
+    {
+        messageCount++;
+        byteCount += length;
+    }
+
+    /**
+     * A claim that only went through after the given number of failed attempts spread over the given time
+     */
+    public void onBackPressured(final int attempts, final long waitedNs)
+    {
+        backPressuredCount++;
+        backPressuredAttempts += attempts;
+        backPressuredNs += waitedNs;
+    }
+
+    public long getDurationNs()
+    {
+        return durationNs;
+    }
+
+    public long getMessageCount()
+    {
+        return messageCount;
+    }
+
+    public long getByteCount()
+    {
+        return byteCount;
+    }
+
+    public long getBackPressuredCount()
+    {
+        return backPressuredCount;
+    }
+
+    public long getBackPressuredAttempts()
+    {
+        return backPressuredAttempts;
+    }
+
+    public long getBackPressuredNs()
+    {
+        return backPressuredNs;
+    }
+}
@@ -0,0 +1,34 @@
+package weareadaptive.com.cluster.services.oms;
+
+import io.aeron.ExclusivePublication;
+import io.aeron.logbuffer.BufferClaim;
+
+/**
+ * Where the snapshot manager claims the messages of a snapshot, the cluster's snapshot publication or a stand-in
+ * - tryClaim answers as {@link ExclusivePublication#tryClaim} does, with the new position or a negative Publication
+ *   code
+ */
+interface SnapshotPublication
+{
+    int maxPayloadLength();
+
+    long tryClaim(int length, BufferClaim bufferClaim);
+
+    static SnapshotPublication of(final ExclusivePublication publication)
+    {
+        return new SnapshotPublication()
+        {
+            @Override
+            public int maxPayloadLength()
+            {
+                return publication.maxPayloadLength();
+            }
+
+            @Override
+            public long tryClaim(final int length, final BufferClaim bufferClaim)
+            {
+                return publication.tryClaim(length, bufferClaim);
+            }
+        };
+    }
+}
@@ -0,0 +1,244 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.collections.Long2ObjectHashMap;
+import weareadaptive.com.cluster.services.oms.util.Side;
+
+import java.util.Arrays;
+
+/**
+ * {@link PriceLadder} for any price range.
+ * - Levels are looked up by their tick price, so adding to an existing level does not touch the ordering at all
+ * - Levels are kept in an array sorted from worst to best price, so the best level is always the last element and
+ *   new or removed levels near the top of the book only shift a handful of entries
+ * - A restore into an empty ladder appends the levels as the snapshot hands them over, best first, and reverses the
+ *   array once at the end, so it is one pass over the orders rather than every new level shifting all the others
+ */
+public class SortedPriceLadder extends PriceLadder
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Long2ObjectHashMap<PriceLevel> levelsByPrice = new Long2ObjectHashMap<>();
+    private PriceLevel[] levels = new PriceLevel[INITIAL_CAPACITY];
+    private int levelCount = 0;
+    private int orderCount = 0;
+    private boolean restoring = false;
+
+    public SortedPriceLadder(Side side, OrderStore store)
+    {
+        super(side, store);
+    }
+
+    @Override
+    public PriceLevel best()
+    {
+        return levelCount == 0 ? null : levels[levelCount - 1];
+    }
+
+    @Override
+    public void add(int order)
+    {
+        final long price = store.getPrice(order);
+        PriceLevel level = levelsByPrice.get(price);
+        if (level == null)
+        {
+            level = acquireLevel(price);
+            levelsByPrice.put(price, level);
+            insertLevel(level);
+        }
+        level.append(order);
+        orderCount++;
+    }
+
+    /**
+     * While the orders keep coming best level first, an order at the price of the last level appended goes straight
+     * onto it with no lookup and a worse price appends a new level, and an order out of that sequence finishes the
+     * restore early and is added as usual
+     */
+    @Override
+    public void restore(int order)
+    {
+        if (levelCount == 0)
+        {
+            restoring = true;
+        }
+        if (restoring)
+        {
+            final long price = store.getPrice(order);
+            final PriceLevel last = levelCount == 0 ? null : levels[levelCount - 1];
+            if (last != null && last.getPrice() == price)
+            {
+                last.append(order);
+                orderCount++;
+                return;
+            }
+            if (last == null || priority(price) < priority(last.getPrice()))
+            {
+                final PriceLevel level = acquireLevel(price);
+                levelsByPrice.put(price, level);
+                if (levelCount == levels.length)
+                {
+                    levels = Arrays.copyOf(levels, levelCount * 2);
+                }
+                levels[levelCount++] = level;
+                level.append(order);
+                orderCount++;
+                return;
+            }
+            finishRestore();
+        }
+        add(order);
+    }
+
+    @Override
+    public void finishRestore()
+    {
+        if (!restoring)
+        {
+            return;
+        }
+        for (int low = 0, high = levelCount - 1; low < high; low++, high--)
+        {
+            final PriceLevel level = levels[low];
+            levels[low] = levels[high];
+            levels[high] = level;
+        }
+        restoring = false;
+    }
+
+    @Override
+    public void remove(int order)
+    {
+        remove(levelsByPrice.get(store.getPrice(order)), order);
+    }
+
+    @Override
+    public void remove(PriceLevel level, int order)
+    {
+        level.remove(order);
+        orderCount--;
+        if (level.isEmpty())
+        {
+            removeLevel(level);
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        for (int i = 0; i < levelCount; i++)
+        {
+            freeLevel(levels[i]);
+            levels[i] = null;
+        }
+        levelsByPrice.clear();
+        levelCount = 0;
+        orderCount = 0;
+        restoring = false;
+    }
+
+    @Override
+    public int getLevelCount()
+    {
+        return levelCount;
+    }
+
+    @Override
+    public int getOrderCount()
+    {
+        return orderCount;
+    }
+
+    @Override
+    public PriceLevel levelAt(long price)
+    {
+        return levelsByPrice.get(price);
+    }
+
+    @Override
+    public PriceLevel levelBelow(long price)
+    {
+        // bids are sorted ascending by price and asks descending
+        final int index = side == Side.BID ? lowerBound(priority(price)) - 1 : upperBound(priority(price));
+        return index >= 0 && index < levelCount ? levels[index] : null;
+    }
+
+    @Override
+    public PriceLevel levelAbove(long price)
+    {
+        final int index = side == Side.BID ? upperBound(priority(price)) : lowerBound(priority(price)) - 1;
+        return index >= 0 && index < levelCount ? levels[index] : null;
+    }
+
+    private void insertLevel(PriceLevel level)
+    {
+        if (levelCount == levels.length)
+        {
+            levels = Arrays.copyOf(levels, levelCount * 2);
+        }
+        final int index = lowerBound(priority(level.getPrice()));
+        System.arraycopy(levels, index, levels, index + 1, levelCount - index);
+        levels[index] = level;
+        levelCount++;
+    }
+
+    private void removeLevel(PriceLevel level)
+    {
+        final int index = lowerBound(priority(level.getPrice()));
+        System.arraycopy(levels, index + 1, levels, index, levelCount - index - 1);
+        levels[--levelCount] = null;
+        levelsByPrice.remove(level.getPrice());
+        releaseLevel(level);
+    }
+
+    /**
+     * Index of the first level whose priority is not below the given priority
+     */
+    private int lowerBound(long priority)
+    {
+        int low = 0;
+        int high = levelCount;
+        while (low < high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (priority(levels[mid].getPrice()) < priority)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Index of the first level whose priority is above the given priority
+     */
+    private int upperBound(long priority)
+    {
+        int low = 0;
+        int high = levelCount;
+        while (low < high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (priority(levels[mid].getPrice()) <= priority)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Levels are sorted ascending by priority, bids by price and asks by negated price, so the best is always last
+     */
+    private long priority(long price)
+    {
+        return side == Side.BID ? price : -price;
+    }
+}
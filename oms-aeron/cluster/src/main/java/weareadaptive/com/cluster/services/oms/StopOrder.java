@@ -0,0 +1,43 @@
+package weareadaptive.com.cluster.services.oms;
+
+import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
+
+/**
+ * A stop order waiting in a {@link StopOrderBook} for the last trade price to reach its trigger price, holding the
+ * order it is placed as once triggered.
+ * - A stop market order is held with the price of a market order and IOC, so it is placed like any other order
+ * - Instances are pooled by the book that holds them and reused once released
+ */
+public class StopOrder
+{
+    private long orderId;
+    private long sessionId;
+    private Side side;
+    private long triggerPrice;
+    private long price;
+    private long size;
+    private TimeInForce timeInForce;
+    StopOrder nextFree;
+
+    void init(long orderId, long sessionId, Side side, long triggerPrice, long price, long size,
+              TimeInForce timeInForce)
+    {
+        this.orderId = orderId;
+        this.sessionId = sessionId;
+        this.side = side;
+        this.triggerPrice = triggerPrice;
+        this.price = price;
+        this.size = size;
+        this.timeInForce = timeInForce;
+        this.nextFree = null;
+    }
+
+    public long getOrderId() { return orderId; }
+    public long getSessionId() { return sessionId; }
+    public Side getSide() { return side; }
+    public long getTriggerPrice() { return triggerPrice; }
+    public long getPrice() { return price; }
+    public long getSize() { return size; }
+    public TimeInForce getTimeInForce() { return timeInForce; }
+}
@@ -0,0 +1,310 @@
+package weareadaptive.com.cluster.services.oms;
+
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.collections.LongArrayList;
+import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
+
+import java.util.Arrays;
+
+/**
+ * The stop orders of one orderbook waiting for the last trade price to reach their trigger price, kept apart from the
+ * resting orders so they never take part in matching.
+ * - A buy stop triggers once the last trade price is at or above its trigger price, and a sell stop once it is at or
+ *   below
+ * - Each side is an array sorted by trigger price with the next stop to trigger last, so releasing the k triggered
+ *   stops after a match costs O(k), each taken off the end
+ * - Adding or cancelling a stop finds its place with a binary search but then shifts every stop behind it with one
+ *   System.arraycopy, so both are O(n) in the stops waiting on that side
+ * - Stops with the same trigger price are released in the order they were placed, buys before sells, so every
+ *   cluster member places them again in the same order
+ * - The last trade price is kept here, as it is only ever read to release stops
+ * - Cancelled stops are handed to the {@link OrderRemovedListener} of the book, triggered ones are not as they go on
+ *   under the same orderId
+ */
+public class StopOrderBook
+{
+    /**
+     * Last trade price of a book that has not traded yet, which triggers nothing
+     */
+    public static final long NO_TRADE = Long.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Long2ObjectHashMap<StopOrder> stopsById = new Long2ObjectHashMap<>();
+    private StopOrder[] buys = new StopOrder[INITIAL_CAPACITY];
+    private StopOrder[] sells = new StopOrder[INITIAL_CAPACITY];
+    private int buyCount = 0;
+    private int sellCount = 0;
+    private long lastTradePrice = NO_TRADE;
+    private StopOrder freeStops;
+    private OrderRemovedListener orderRemovedListener = OrderRemovedListener.NONE;
+
+    public void setOrderRemovedListener(OrderRemovedListener orderRemovedListener)
+    {
+        this.orderRemovedListener = orderRemovedListener;
+    }
+
+    public void onTrade(long price)
+    {
+        lastTradePrice = price;
+    }
+
+    public long getLastTradePrice()
+    {
+        return lastTradePrice;
+    }
+
+    public void setLastTradePrice(long lastTradePrice)
+    {
+        this.lastTradePrice = lastTradePrice;
+    }
+
+    /**
+     * Whether the last trade price has already reached a trigger price, in which case a stop placed there would never
+     * wait
+     */
+    public boolean isTriggered(Side side, long triggerPrice)
+    {
+        return lastTradePrice != NO_TRADE && (side == Side.BID ? triggerPrice <= lastTradePrice
+                : triggerPrice >= lastTradePrice);
+    }
+
+    public void add(long orderId, long sessionId, Side side, long triggerPrice, long price, long size,
+                    TimeInForce timeInForce)
+    {
+        final StopOrder stop = acquire();
+        stop.init(orderId, sessionId, side, triggerPrice, price, size, timeInForce);
+        stopsById.put(orderId, stop);
+        if (side == Side.BID)
+        {
+            if (buyCount == buys.length)
+            {
+                buys = Arrays.copyOf(buys, buyCount * 2);
+            }
+            insert(buys, buyCount++, stop);
+        }
+        else
+        {
+            if (sellCount == sells.length)
+            {
+                sells = Arrays.copyOf(sells, sellCount * 2);
+            }
+            insert(sells, sellCount++, stop);
+        }
+    }
+
+    /**
+     * Take out the next stop the last trade price has triggered, or return null when there is none
+     * - The stop stays valid until it is handed back with {@link #release}
+     */
+    public StopOrder pollTriggered()
+    {
+        if (buyCount > 0 && isTriggered(Side.BID, buys[buyCount - 1].getTriggerPrice()))
+        {
+            final StopOrder stop = buys[--buyCount];
+            buys[buyCount] = null;
+            stopsById.remove(stop.getOrderId());
+            return stop;
+        }
+        if (sellCount > 0 && isTriggered(Side.ASK, sells[sellCount - 1].getTriggerPrice()))
+        {
+            final StopOrder stop = sells[--sellCount];
+            sells[sellCount] = null;
+            stopsById.remove(stop.getOrderId());
+            return stop;
+        }
+        return null;
+    }
+
+    public void release(StopOrder stop)
+    {
+        stop.nextFree = freeStops;
+        freeStops = stop;
+    }
+
+    /**
+     * Session of the stop with the orderId, or {@link IOrderbook#NO_SESSION} when none is waiting
+     */
+    public long getSessionId(long orderId)
+    {
+        final StopOrder stop = stopsById.get(orderId);
+        return stop == null ? IOrderbook.NO_SESSION : stop.getSessionId();
+    }
+
+    /**
+     * Returns false when no stop with the orderId is waiting
+     */
+    public boolean cancel(long orderId)
+    {
+        final StopOrder stop = stopsById.remove(orderId);
+        if (stop == null)
+        {
+            return false;
+        }
+        if (stop.getSide() == Side.BID)
+        {
+            remove(buys, buyCount--, stop);
+        }
+        else
+        {
+            remove(sells, sellCount--, stop);
+        }
+        release(stop);
+        orderRemovedListener.onOrderRemoved(orderId);
+        return true;
+    }
+
+    /**
+     * Cancel the stops of a session, or of every session with {@link IOrderbook#ANY_SESSION}, on one side or on both
+     * when side is null, and with a trigger price from minPrice to maxPrice inclusive
+     * - The orderId of each is appended to cancelledOrderIds unless it is null
+     * - Returns how many stops were cancelled
+     */
+    public int cancel(long sessionId, Side side, long minPrice, long maxPrice, LongArrayList cancelledOrderIds)
+    {
+        int cancelled = 0;
+        if (side != Side.ASK)
+        {
+            final int kept = retain(buys, buyCount, sessionId, minPrice, maxPrice, cancelledOrderIds);
+            cancelled += buyCount - kept;
+            buyCount = kept;
+        }
+        if (side != Side.BID)
+        {
+            final int kept = retain(sells, sellCount, sessionId, minPrice, maxPrice, cancelledOrderIds);
+            cancelled += sellCount - kept;
+            sellCount = kept;
+        }
+        return cancelled;
+    }
+
+    public void clear()
+    {
+        for (int i = 0; i < buyCount; i++)
+        {
+            release(buys[i]);
+            buys[i] = null;
+        }
+        for (int i = 0; i < sellCount; i++)
+        {
+            release(sells[i]);
+            sells[i] = null;
+        }
+        stopsById.clear();
+        buyCount = 0;
+        sellCount = 0;
+    }
+
+    public int getOrderCount(Side side)
+    {
+        return side == Side.BID ? buyCount : sellCount;
+    }
+
+    /**
+     * Stop at the given position on one side, in the order the stops would trigger, which is also the order they are
+     * added back in when restored
+     */
+    public StopOrder get(Side side, int index)
+    {
+        return side == Side.BID ? buys[buyCount - 1 - index] : sells[sellCount - 1 - index];
+    }
+
+    /**
+     * Keep the stops that do not match the filters at the front of the array, in the same order, and release the rest
+     */
+    private int retain(StopOrder[] stops, int count, long sessionId, long minPrice, long maxPrice,
+                       LongArrayList cancelledOrderIds)
+    {
+        int kept = 0;
+        for (int i = 0; i < count; i++)
+        {
+            final StopOrder stop = stops[i];
+            if ((sessionId == IOrderbook.ANY_SESSION || stop.getSessionId() == sessionId) &&
+                    stop.getTriggerPrice() >= minPrice && stop.getTriggerPrice() <= maxPrice)
+            {
+                stopsById.remove(stop.getOrderId());
+                if (cancelledOrderIds != null)
+                {
+                    cancelledOrderIds.addLong(stop.getOrderId());
+                }
+                orderRemovedListener.onOrderRemoved(stop.getOrderId());
+                release(stop);
+            }
+            else
+            {
+                stops[kept++] = stop;
+            }
+        }
+        for (int i = kept; i < count; i++)
+        {
+            stops[i] = null;
+        }
+        return kept;
+    }
+
+    /**
+     * Insert in front of the stops with the same trigger price, so the oldest of them stays nearest the end and is
+     * released first
+     * - O(n), the stops from the insertion point to the end move up one
+     */
+    private static void insert(StopOrder[] stops, int count, StopOrder stop)
+    {
+        final int index = lowerBound(stops, count, priority(stop));
+        System.arraycopy(stops, index, stops, index + 1, count - index);
+        stops[index] = stop;
+    }
+
+    /**
+     * O(n), the stops with the same trigger price are walked to find this one and the stops after it move down one
+     */
+    private static void remove(StopOrder[] stops, int count, StopOrder stop)
+    {
+        int index = lowerBound(stops, count, priority(stop));
+        while (stops[index] != stop)
+        {
+            index++;
+        }
+        System.arraycopy(stops, index + 1, stops, index, count - index - 1);
+        stops[count - 1] = null;
+    }
+
+    private static int lowerBound(StopOrder[] stops, int count, long priority)
+    {
+        int low = 0;
+        int high = count;
+        while (low < high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (priority(stops[mid]) < priority)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Stops are sorted ascending by priority, sells by trigger price and buys by negated trigger price, so the next to
+     * trigger is always last
+     */
+    private static long priority(StopOrder stop)
+    {
+        return stop.getSide() == Side.BID ? -stop.getTriggerPrice() : stop.getTriggerPrice();
+    }
+
+    private StopOrder acquire()
+    {
+        final StopOrder stop = freeStops;
+        if (stop == null)
+        {
+            return new StopOrder();
+        }
+        freeStops = stop.nextFree;
+        return stop;
+    }
+}
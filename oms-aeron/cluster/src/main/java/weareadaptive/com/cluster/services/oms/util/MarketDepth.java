@@ -0,0 +1,56 @@
+package weareadaptive.com.cluster.services.oms.util;
+
+/**
+ * Aggregated price levels of one orderbook, best price first on each side, with the total size and number of orders
+ * resting at each.
+ * - Sized once for the most levels it can hold and refilled in place, so reading the depth of a book does not allocate
+ */
+public class MarketDepth
+{
+    private final int maxLevels;
+    private final long[][] prices = new long[2][];
+    private final long[][] sizes = new long[2][];
+    private final int[][] orderCounts = new int[2][];
+    private final int[] levelCounts = new int[2];
+
+    public MarketDepth(int maxLevels)
+    {
+        this.maxLevels = maxLevels;
+        for (int side = 0; side < 2; side++)
+        {
+            prices[side] = new long[maxLevels];
+            sizes[side] = new long[maxLevels];
+            orderCounts[side] = new int[maxLevels];
+        }
+    }
+
+    public void clear()
+    {
+        levelCounts[0] = 0;
+        levelCounts[1] = 0;
+    }
+
+    /**
+     * Append the next worse level of a side, returning false once the side already holds the most levels it can
+     */
+    public boolean addLevel(Side side, long price, long size, int orderCount)
+    {
+        final int s = side.ordinal();
+        final int index = levelCounts[s];
+        if (index == maxLevels)
+        {
+            return false;
+        }
+        prices[s][index] = price;
+        sizes[s][index] = size;
+        orderCounts[s][index] = orderCount;
+        levelCounts[s] = index + 1;
+        return true;
+    }
+
+    public int getMaxLevels() { return maxLevels; }
+    public int getLevelCount(Side side) { return levelCounts[side.ordinal()]; }
+    public long getPrice(Side side, int level) { return prices[side.ordinal()][level]; }
+    public long getSize(Side side, int level) { return sizes[side.ordinal()][level]; }
+    public int getOrderCount(Side side, int level) { return orderCounts[side.ordinal()][level]; }
+}
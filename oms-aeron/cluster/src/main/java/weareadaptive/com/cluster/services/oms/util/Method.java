@@ -2,5 +2,5 @@ package weareadaptive.com.cluster.services.oms.util;
 
 public enum Method
 {
-    PLACE, CANCEL, CLEAR, RESET, ASKS, BIDS, CURRENT_ORDER_ID
+    PLACE, CANCEL, CLEAR, RESET, ASKS, BIDS, CURRENT_ORDER_ID, BBO, START_AUCTION, UNCROSS
 }
@@ -2,28 +2,49 @@ package weareadaptive.com.cluster.services.oms.util;
 
 public class Order implements Comparable<Order>
 {
-    private final long orderId;
-    private final double price;
+    private long orderId;
+    private long price;
     private long size;
+    // time priority among orders at the same price, the orderId unless the book holding the order re-queues it
+    private long priority;
+    // client session the order belongs to, compared while matching to prevent self trades
+    private long sessionId;
 
-    public Order(long orderId, double price, long size)
+    public Order(long orderId, long price, long size)
     {
         this.orderId = orderId;
         this.price = price;
         this.size = size;
+        this.priority = orderId;
     }
 
-    public double getPrice() { return price; }
+    /**
+     * Reuse this instance for a different order, for subclasses that are pooled rather than allocated per order
+     */
+    protected void init(long orderId, long price, long size)
+    {
+        this.orderId = orderId;
+        this.price = price;
+        this.size = size;
+        this.priority = orderId;
+    }
+
+    public long getPrice() { return price; }
     public long getSize() { return size; }
     public void setSize(long newSize) { size = newSize; }
+    public void setPrice(long newPrice) { price = newPrice; }
     public long getOrderId() { return orderId; }
+    public long getPriority() { return priority; }
+    public void setPriority(long newPriority) { priority = newPriority; }
+    public long getSessionId() { return sessionId; }
+    public void setSessionId(long newSessionId) { sessionId = newSessionId; }
 
     @Override
     public int compareTo(Order order)
     {
-        var comparePrices = Double.compare(order.getPrice(), price);
+        var comparePrices = Long.compare(order.getPrice(), price);
         if (comparePrices == 0) {
-            return -1 * Double.compare(order.getOrderId(), orderId);
+            return -1 * Long.compare(order.getPriority(), priority);
         }
         return comparePrices;
     }
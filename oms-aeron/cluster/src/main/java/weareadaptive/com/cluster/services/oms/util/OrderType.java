@@ -0,0 +1,37 @@
+package weareadaptive.com.cluster.services.oms.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * - LIMIT: trades at its price or better
+ * - MARKET: trades at any price and never rests, its price is ignored
+ * - STOP: waits until a trade reaches its trigger price, then is placed as a market order
+ * - STOP_LIMIT: waits until a trade reaches its trigger price, then is placed as a limit order
+ */
+public enum OrderType {
+    LIMIT((byte) 0),MARKET((byte) 1),STOP((byte) 2),STOP_LIMIT((byte) 3);
+    private final int value;
+    private static final Map<Byte, OrderType> BYTE_TO_ENUM = new HashMap<>();
+
+    static {
+        for (OrderType orderType : OrderType.values()) {
+            BYTE_TO_ENUM.put(orderType.getByte(), orderType);
+        }
+    }
+    OrderType(byte value) {
+        this.value = value;
+    }
+    public byte getByte() {
+        return (byte) value;
+    }
+    public static OrderType fromByteValue(byte byteValue)
+    {
+        OrderType orderType = BYTE_TO_ENUM.get(byteValue);
+        if (orderType == null)
+        {
+            throw new IllegalArgumentException("Invalid byte value for OrderType: " + byteValue);
+        }
+        return orderType;
+    }
+}
@@ -4,7 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 public enum Status {
-    RESTING((byte) 0),PARTIAL((byte) 1),FILLED((byte) 2),CANCELLED((byte) 3),NONE((byte) 4),SUCCESS((byte)5);
+    RESTING((byte) 0),PARTIAL((byte) 1),FILLED((byte) 2),CANCELLED((byte) 3),NONE((byte) 4),SUCCESS((byte)5),AMENDED((byte) 6),PENDING((byte) 7);
     private final int value;
     private static final Map<Byte, Status> BYTE_TO_ENUM = new HashMap<>();
 
@@ -0,0 +1,38 @@
+package weareadaptive.com.cluster.services.oms.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How long the part of an order that does not trade on arrival may stay in the book
+ * - GTC: rests until filled or cancelled
+ * - IOC: trades what it can on arrival and the rest is cancelled
+ * - FOK: trades its whole size on arrival or is cancelled without trading at all
+ * - GTT: rests like GTC until its expire time, when the cluster cancels it
+ */
+public enum TimeInForce {
+    GTC((byte) 0),IOC((byte) 1),FOK((byte) 2),GTT((byte) 3);
+    private final int value;
+    private static final Map<Byte, TimeInForce> BYTE_TO_ENUM = new HashMap<>();
+
+    static {
+        for (TimeInForce timeInForce : TimeInForce.values()) {
+            BYTE_TO_ENUM.put(timeInForce.getByte(), timeInForce);
+        }
+    }
+    TimeInForce(byte value) {
+        this.value = value;
+    }
+    public byte getByte() {
+        return (byte) value;
+    }
+    public static TimeInForce fromByteValue(byte byteValue)
+    {
+        TimeInForce timeInForce = BYTE_TO_ENUM.get(byteValue);
+        if (timeInForce == null)
+        {
+            throw new IllegalArgumentException("Invalid byte value for TimeInForce: " + byteValue);
+        }
+        return timeInForce;
+    }
+}
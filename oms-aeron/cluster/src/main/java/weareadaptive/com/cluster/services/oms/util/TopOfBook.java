@@ -0,0 +1,46 @@
+package weareadaptive.com.cluster.services.oms.util;
+
+/**
+ * Best bid and offer of one orderbook: the best price on each side and the total size resting at that price.
+ * - A side with no resting orders has a size of 0, and its price should be ignored
+ */
+public class TopOfBook
+{
+    private long bidPrice;
+    private long bidSize;
+    private long askPrice;
+    private long askSize;
+
+    public void setBid(long price, long size)
+    {
+        this.bidPrice = price;
+        this.bidSize = size;
+    }
+
+    public void setAsk(long price, long size)
+    {
+        this.askPrice = price;
+        this.askSize = size;
+    }
+
+    public void clear()
+    {
+        setBid(0, 0);
+        setAsk(0, 0);
+    }
+
+    public long getBidPrice() { return bidPrice; }
+    public long getBidSize() { return bidSize; }
+    public long getAskPrice() { return askPrice; }
+    public long getAskSize() { return askSize; }
+
+    public boolean hasBid()
+    {
+        return bidSize > 0;
+    }
+
+    public boolean hasAsk()
+    {
+        return askSize > 0;
+    }
+}
@@ -3,6 +3,10 @@ package weareadaptive.com.cluster.util;
 import org.agrona.concurrent.SystemEpochClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import weareadaptive.com.cluster.services.oms.AllocationPolicy;
+import weareadaptive.com.cluster.services.oms.OrderbookType;
+import weareadaptive.com.cluster.services.oms.PriceBand;
+import weareadaptive.com.cluster.services.oms.SelfTradePrevention;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -161,4 +165,137 @@ public class ConfigUtils
         }
         return clusterAddresses;
     }
+
+    /**
+     * Read the orderbook implementation from the environment variable ORDERBOOK_TYPE or the
+     * system property orderbook.type
+     *
+     * @return orderbook type, default TREE_SET
+     */
+    public static OrderbookType getOrderbookType()
+    {
+        String orderbookType = System.getenv("ORDERBOOK_TYPE");
+        if (null == orderbookType || orderbookType.isEmpty())
+        {
+            orderbookType = System.getProperty("orderbook.type", OrderbookType.TREE_SET.name());
+        }
+        return OrderbookType.valueOf(orderbookType.toUpperCase());
+    }
+
+    /**
+     * Read the price band of the BOUNDED orderbook from the environment variables PRICE_BAND_MIN, PRICE_BAND_MAX and
+     * PRICE_BAND_TICK, or the system properties price.band.min, price.band.max and price.band.tick, all in ticks
+     *
+     * @return price band, default 0 to 65535 with a tick of 1
+     */
+    public static PriceBand getPriceBand()
+    {
+        return new PriceBand(
+                getLong("PRICE_BAND_MIN", "price.band.min", 0),
+                getLong("PRICE_BAND_MAX", "price.band.max", 65535),
+                getLong("PRICE_BAND_TICK", "price.band.tick", 1));
+    }
+
+    /**
+     * Read how often GTT orders are expired from the environment variable ORDER_EXPIRY_INTERVAL_MS or the system
+     * property order.expiry.interval.ms
+     *
+     * @return interval of the recurring expiry timer in milliseconds, default 1000
+     */
+    public static long getOrderExpiryInterval()
+    {
+        return getLong("ORDER_EXPIRY_INTERVAL_MS", "order.expiry.interval.ms", 1000);
+    }
+
+    /**
+     * Read how many times a message is offered to a back pressured session before the session is closed, from the
+     * environment variable EGRESS_OFFER_ATTEMPTS or the system property egress.offer.attempts
+     *
+     * @return offer attempts, default 3
+     */
+    public static long getEgressOfferAttempts()
+    {
+        return getLong("EGRESS_OFFER_ATTEMPTS", "egress.offer.attempts", 3);
+    }
+
+    /**
+     * Read the self-trade prevention policy of every orderbook from the environment variable SELF_TRADE_PREVENTION or
+     * the system property self.trade.prevention
+     *
+     * @return self-trade prevention policy, default NONE
+     */
+    public static SelfTradePrevention getSelfTradePrevention()
+    {
+        String selfTradePrevention = System.getenv("SELF_TRADE_PREVENTION");
+        if (null == selfTradePrevention || selfTradePrevention.isEmpty())
+        {
+            selfTradePrevention = System.getProperty("self.trade.prevention", SelfTradePrevention.NONE.name());
+        }
+        return SelfTradePrevention.valueOf(selfTradePrevention.toUpperCase());
+    }
+
+    /**
+     * Read how every orderbook shares an incoming order among the orders of a price level from the environment variable
+     * ALLOCATION_POLICY or the system property allocation.policy
+     *
+     * @return allocation policy, default FIFO
+     */
+    public static AllocationPolicy getAllocationPolicy()
+    {
+        String allocationPolicy = System.getenv("ALLOCATION_POLICY");
+        if (null == allocationPolicy || allocationPolicy.isEmpty())
+        {
+            allocationPolicy = System.getProperty("allocation.policy", AllocationPolicy.FIFO.name());
+        }
+        return AllocationPolicy.valueOf(allocationPolicy.toUpperCase());
+    }
+
+    /**
+     * Read the channel the service writes its snapshots to from the environment variable SNAPSHOT_CHANNEL or the system
+     * property snapshot.channel
+     * - The default raises the MTU to its largest, so each snapshot fragment carries over a thousand resting orders
+     *
+     * @return snapshot channel, default aeron:ipc?alias=snapshot|mtu=65504
+     */
+    public static String getSnapshotChannel()
+    {
+        String snapshotChannel = System.getenv("SNAPSHOT_CHANNEL");
+        if (null == snapshotChannel || snapshotChannel.isEmpty())
+        {
+            snapshotChannel = System.getProperty("snapshot.channel", "aeron:ipc?alias=snapshot|mtu=65504");
+        }
+        return snapshotChannel;
+    }
+
+    /**
+     * Read the instruments the cluster hosts an orderbook for from the environment variable INSTRUMENT_IDS or the
+     * system property instrument.ids, as a comma separated list
+     *
+     * @return instrument ids, default 0 alone
+     */
+    public static int[] getInstrumentIds()
+    {
+        String instrumentIds = System.getenv("INSTRUMENT_IDS");
+        if (null == instrumentIds || instrumentIds.isEmpty())
+        {
+            instrumentIds = System.getProperty("instrument.ids", "0");
+        }
+        final String[] ids = instrumentIds.split(",");
+        final int[] parsed = new int[ids.length];
+        for (int i = 0; i < ids.length; i++)
+        {
+            parsed[i] = parseInt(ids[i].trim());
+        }
+        return parsed;
+    }
+
+    private static long getLong(final String envName, final String propertyName, final long defaultValue)
+    {
+        String value = System.getenv(envName);
+        if (null == value || value.isEmpty())
+        {
+            value = System.getProperty(propertyName, Long.toString(defaultValue));
+        }
+        return Long.parseLong(value);
+    }
 }
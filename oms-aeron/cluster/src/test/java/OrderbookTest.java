@@ -318,7 +318,7 @@ public class OrderbookTest {
         orderbook.placeOrder(1, 30, Side.ASK);
         orderbook.placeOrder(5, 30, Side.ASK);
         orderbook.placeOrder(6, 30, Side.ASK);
-        Assertions.assertArrayEquals(new Object[]{6d, 5d, 3d, 1d}, orderbook.getAsks().stream().map(Order::getPrice).toArray());
-        Assertions.assertArrayEquals(new Object[]{1d, 3d, 5d, 6d}, orderbook.getAsksPriceAscending().stream().map(Order::getPrice).toArray());
+        Assertions.assertArrayEquals(new Object[]{6L, 5L, 3L, 1L}, orderbook.getAsks().stream().map(Order::getPrice).toArray());
+        Assertions.assertArrayEquals(new Object[]{1L, 3L, 5L, 6L}, orderbook.getAsksPriceAscending().stream().map(Order::getPrice).toArray());
     }
 }
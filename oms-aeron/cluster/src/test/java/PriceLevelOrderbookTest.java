@@ -0,0 +1,773 @@
+import org.agrona.collections.LongArrayList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import weareadaptive.com.cluster.services.oms.AllocationPolicy;
+import weareadaptive.com.cluster.services.oms.ArrayOrderStore;
+import weareadaptive.com.cluster.services.oms.AuctionUncross;
+import weareadaptive.com.cluster.services.oms.FillBuffer;
+import weareadaptive.com.cluster.services.oms.IOrderbook;
+import weareadaptive.com.cluster.services.oms.OffHeapOrderStore;
+import weareadaptive.com.cluster.services.oms.OrderbookType;
+import weareadaptive.com.cluster.services.oms.PooledOrderStore;
+import weareadaptive.com.cluster.services.oms.PriceBand;
+import weareadaptive.com.cluster.services.oms.PriceLevelOrderbook;
+import weareadaptive.com.cluster.services.oms.RestingOrder;
+import weareadaptive.com.cluster.services.oms.SelfTradePrevention;
+import weareadaptive.com.cluster.services.oms.util.MarketDepth;
+import weareadaptive.com.cluster.services.oms.util.Order;
+import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.Status;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
+import weareadaptive.com.cluster.services.oms.util.TopOfBook;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class PriceLevelOrderbookTest
+{
+    private PriceLevelOrderbook orderbook;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.orderbook = new PriceLevelOrderbook();
+    }
+
+    @Test
+    @DisplayName("Orders at the same price share one level, and the best level is the top of each side")
+    public void ordersAtSamePriceShareALevel()
+    {
+        orderbook.placeOrder(10, 5, Side.BID);
+        orderbook.placeOrder(10, 7, Side.BID);
+        orderbook.placeOrder(9, 1, Side.BID);
+        orderbook.placeOrder(12, 3, Side.ASK);
+        orderbook.placeOrder(11, 4, Side.ASK);
+
+        assertEquals(10, orderbook.getBestBid().getPrice());
+        assertEquals(12, orderbook.getBestBid().getTotalSize());
+        assertEquals(2, orderbook.getBestBid().getOrderCount());
+        assertEquals(11, orderbook.getBestAsk().getPrice());
+        assertEquals(4, orderbook.getBestAsk().getTotalSize());
+    }
+
+    @Test
+    @DisplayName("Crossing BID fills against the lowest ASK first, and stops at the first level that does not cross")
+    public void bidMatchesInPricePriority()
+    {
+        orderbook.placeOrder(12, 5, Side.ASK);
+        orderbook.placeOrder(10, 5, Side.ASK);
+        orderbook.placeOrder(11, 5, Side.ASK);
+
+        final var result = orderbook.placeOrder(11, 8, Side.BID);
+
+        assertEquals(Status.FILLED, result.getStatus());
+        assertEquals(11, orderbook.getBestAsk().getPrice());
+        assertEquals(2, orderbook.getBestAsk().getTotalSize());
+        assertEquals(2, orderbook.getAsks().size());
+    }
+
+    @Test
+    @DisplayName("Crossing ASK fills against the highest BID first, and rests the remainder")
+    public void askMatchesInPricePriorityAndRestsRemainder()
+    {
+        orderbook.placeOrder(9, 5, Side.BID);
+        orderbook.placeOrder(10, 5, Side.BID);
+        orderbook.placeOrder(8, 5, Side.BID);
+
+        final var result = orderbook.placeOrder(9, 12, Side.ASK);
+
+        assertEquals(Status.PARTIAL, result.getStatus());
+        assertEquals(8, orderbook.getBestBid().getPrice());
+        assertEquals(9, orderbook.getBestAsk().getPrice());
+        assertEquals(2, orderbook.getBestAsk().getTotalSize());
+    }
+
+    @Test
+    @DisplayName("Orders at the same price are filled in the order they were placed")
+    public void ordersAtSamePriceFillInTimePriority()
+    {
+        final long firstAsk = orderbook.placeOrder(10, 5, Side.ASK).getOrderId();
+        final long secondAsk = orderbook.placeOrder(10, 5, Side.ASK).getOrderId();
+
+        orderbook.placeOrder(10, 7, Side.BID);
+
+        assertEquals(Status.NONE, orderbook.cancelOrder(firstAsk).getStatus());
+        assertEquals(secondAsk, orderbook.getAsks().iterator().next().getOrderId());
+        assertEquals(3, orderbook.getAsks().iterator().next().getSize());
+    }
+
+    @Test
+    @DisplayName("Cancelling the last order at a price removes the level")
+    public void cancellingLastOrderRemovesLevel()
+    {
+        final long bestBid = orderbook.placeOrder(10, 5, Side.BID).getOrderId();
+        orderbook.placeOrder(9, 5, Side.BID);
+
+        assertEquals(Status.CANCELLED, orderbook.cancelOrder(bestBid).getStatus());
+
+        assertEquals(9, orderbook.getBestBid().getPrice());
+        assertEquals(Status.NONE, orderbook.cancelOrder(bestBid).getStatus());
+    }
+
+    @Test
+    @DisplayName("Orders are listed from highest to lowest price on both sides, like the TreeSet orderbook")
+    public void ordersAreListedHighestPriceFirst()
+    {
+        orderbook.placeOrder(30, 30, Side.ASK);
+        orderbook.placeOrder(10, 30, Side.ASK);
+        orderbook.placeOrder(50, 30, Side.ASK);
+        orderbook.placeOrder(5, 30, Side.BID);
+        orderbook.placeOrder(2, 30, Side.BID);
+        orderbook.placeOrder(7, 30, Side.BID);
+
+        assertArrayEquals(new Object[]{50L, 30L, 10L}, orderbook.getAsks().stream().map(Order::getPrice).toArray());
+        assertArrayEquals(new Object[]{7L, 5L, 2L}, orderbook.getBids().stream().map(Order::getPrice).toArray());
+    }
+
+    @Test
+    @DisplayName("Reset clears every level and the orderId state")
+    public void resetOrderbook()
+    {
+        orderbook.placeOrder(10, 5, Side.BID);
+        orderbook.placeOrder(11, 5, Side.ASK);
+
+        orderbook.reset();
+
+        assertNull(orderbook.getBestBid());
+        assertNull(orderbook.getBestAsk());
+        assertEquals(0, orderbook.getAsks().size());
+        assertEquals(0, orderbook.getCurrentOrderId());
+    }
+
+    @Test
+    @DisplayName("Every call returns the same ExecutionResult holder, updated in place")
+    public void executionResultIsReused()
+    {
+        final var placed = orderbook.placeOrder(10, 5, Side.BID);
+        assertEquals(Status.RESTING, placed.getStatus());
+
+        final var cancelled = orderbook.cancelOrder(placed.getOrderId());
+
+        assertSame(placed, cancelled);
+        assertEquals(Status.CANCELLED, cancelled.getStatus());
+    }
+
+    @Test
+    @DisplayName("Freed order slots are handed out again instead of allocating new ones")
+    public void pooledOrderStoreReusesFreedSlots()
+    {
+        final PooledOrderStore store = new PooledOrderStore(1);
+        final int first = store.allocate(1, 10, 5, Side.BID, 7);
+        final RestingOrder order = store.getOrder(first);
+
+        store.free(first);
+        final int second = store.allocate(2, 11, 6, Side.ASK, 8);
+
+        assertEquals(first, second);
+        assertSame(order, store.getOrder(second));
+        assertEquals(2, store.getOrderId(second));
+        assertEquals(11, store.getPrice(second));
+        assertEquals(6, store.getSize(second));
+        assertEquals(Side.ASK, store.getSide(second));
+        assertEquals(8, store.getSessionId(second));
+    }
+
+    @Test
+    @DisplayName("The off-heap store grows across slabs and reuses freed records")
+    public void offHeapOrderStoreGrowsAcrossSlabs()
+    {
+        final OffHeapOrderStore store = new OffHeapOrderStore(2);
+        final int[] handles = new int[9];
+        for (int i = 0; i < handles.length; i++)
+        {
+            handles[i] = store.allocate(i, 100 + i, 10 * i, i % 2 == 0 ? Side.BID : Side.ASK, i);
+        }
+        for (int i = 0; i < handles.length; i++)
+        {
+            assertEquals(i, store.getOrderId(handles[i]));
+            assertEquals(100 + i, store.getPrice(handles[i]));
+            assertEquals(10L * i, store.getSize(handles[i]));
+            assertEquals(i % 2 == 0 ? Side.BID : Side.ASK, store.getSide(handles[i]));
+            assertEquals(i, store.getSessionId(handles[i]));
+        }
+
+        store.free(handles[5]);
+
+        assertEquals(handles[5], store.allocate(42, 7, 1, Side.ASK, 3));
+        assertEquals(42, store.getOrderId(handles[5]));
+    }
+
+    @Test
+    @DisplayName("Order records carry orderId, price, size and sessionId little-endian, the layout of the snapshot order block")
+    public void orderRecordsMatchSnapshotLayout()
+    {
+        final PriceLevelOrderbook offHeapOrderbook = new PriceLevelOrderbook(new OffHeapOrderStore());
+        offHeapOrderbook.placeOrder(5, 11, 3, Side.ASK);
+        offHeapOrderbook.placeOrder(6, 10, 4, Side.ASK);
+        final List<long[]> records = new ArrayList<>();
+
+        offHeapOrderbook.forEachOrderRecord(Side.ASK, (buffer, offset) -> records.add(new long[]{
+                buffer.getLong(offset, ByteOrder.LITTLE_ENDIAN),
+                buffer.getLong(offset + Long.BYTES, ByteOrder.LITTLE_ENDIAN),
+                buffer.getLong(offset + 2 * Long.BYTES, ByteOrder.LITTLE_ENDIAN),
+                buffer.getLong(offset + 3 * Long.BYTES, ByteOrder.LITTLE_ENDIAN),
+                buffer.getLong(offset + 4 * Long.BYTES, ByteOrder.LITTLE_ENDIAN),
+                buffer.getLong(offset + 5 * Long.BYTES, ByteOrder.LITTLE_ENDIAN)}));
+
+        assertEquals(2, records.size());
+        assertArrayEquals(new long[]{1, 10, 4, 6, 0, 0}, records.get(0));
+        assertArrayEquals(new long[]{0, 11, 3, 5, 0, 0}, records.get(1));
+    }
+
+    @Test
+    @DisplayName("Every order store variant matches the same way")
+    public void everyOrderStoreMatchesTheSameWay()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final IOrderbook book = orderbookType.create();
+            book.placeOrder(10, 5, Side.ASK);
+            book.placeOrder(11, 5, Side.ASK);
+            final long restingBid = book.placeOrder(9, 5, Side.BID).getOrderId();
+
+            assertEquals(Status.PARTIAL, book.placeOrder(10, 7, Side.BID).getStatus(), orderbookType.name());
+            assertEquals(Status.FILLED, book.placeOrder(11, 5, Side.BID).getStatus(), orderbookType.name());
+            assertEquals(Status.CANCELLED, book.cancelOrder(restingBid).getStatus(), orderbookType.name());
+            assertArrayEquals(new Object[]{10L}, book.getBids().stream().map(Order::getPrice).toArray(), orderbookType.name());
+            assertEquals(2L, book.getBids().iterator().next().getSize(), orderbookType.name());
+            assertEquals(0, book.getAsks().size(), orderbookType.name());
+            assertEquals(1, book.getOrderCount(Side.BID), orderbookType.name());
+            assertEquals(0, book.getOrderCount(Side.ASK), orderbookType.name());
+        }
+    }
+
+    @Test
+    @DisplayName("A bounded book matches across the band and the prices that fall outside it in one price order")
+    public void boundedBookMatchesInsideAndOutsideBand()
+    {
+        final PriceLevelOrderbook bounded = new PriceLevelOrderbook(new ArrayOrderStore(), new PriceBand(100, 200, 5));
+        bounded.placeOrder(210, 1, Side.ASK);
+        bounded.placeOrder(103, 1, Side.ASK);
+        bounded.placeOrder(105, 1, Side.ASK);
+        bounded.placeOrder(90, 1, Side.ASK);
+
+        assertEquals(90, bounded.getBestAsk().getPrice());
+        assertArrayEquals(new Object[]{210L, 105L, 103L, 90L}, bounded.getAsks().stream().map(Order::getPrice).toArray());
+
+        assertEquals(Status.FILLED, bounded.placeOrder(105, 3, Side.BID).getStatus());
+        assertEquals(210, bounded.getBestAsk().getPrice());
+    }
+
+    @Test
+    @DisplayName("A bounded book finds the next best level across bitmap words once the best level empties")
+    public void boundedBookScansForNextBestLevel()
+    {
+        final PriceLevelOrderbook bounded = new PriceLevelOrderbook(new ArrayOrderStore(), new PriceBand(0, 1000, 1));
+        final long bestBid = bounded.placeOrder(900, 1, Side.BID).getOrderId();
+        bounded.placeOrder(3, 1, Side.BID);
+        final long bestAsk = bounded.placeOrder(901, 1, Side.ASK).getOrderId();
+        bounded.placeOrder(999, 1, Side.ASK);
+
+        bounded.cancelOrder(bestBid);
+        bounded.cancelOrder(bestAsk);
+
+        assertEquals(3, bounded.getBestBid().getPrice());
+        assertEquals(999, bounded.getBestAsk().getPrice());
+    }
+
+    @Test
+    @DisplayName("Every orderbook keeps the best bid and offer with the size resting there through fills and cancels")
+    public void topOfBookFollowsFillsAndCancels()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final IOrderbook book = orderbookType.create();
+            book.placeOrder(10, 5, Side.BID);
+            final long secondBid = book.placeOrder(10, 7, Side.BID).getOrderId();
+            book.placeOrder(9, 1, Side.BID);
+            book.placeOrder(11, 4, Side.ASK);
+
+            book.placeOrder(10, 3, Side.ASK);
+            TopOfBook topOfBook = book.getTopOfBook();
+            assertEquals(10, topOfBook.getBidPrice(), orderbookType.name());
+            assertEquals(9, topOfBook.getBidSize(), orderbookType.name());
+            assertEquals(11, topOfBook.getAskPrice(), orderbookType.name());
+            assertEquals(4, topOfBook.getAskSize(), orderbookType.name());
+
+            book.cancelOrder(secondBid);
+            book.placeOrder(11, 4, Side.BID);
+            topOfBook = book.getTopOfBook();
+            assertEquals(10, topOfBook.getBidPrice(), orderbookType.name());
+            assertEquals(2, topOfBook.getBidSize(), orderbookType.name());
+            assertFalse(topOfBook.hasAsk(), orderbookType.name());
+        }
+    }
+
+    @Test
+    @DisplayName("Depth aggregates size and order count per level, best price first, and stops at the levels asked for")
+    public void depthAggregatesTopLevels()
+    {
+        final MarketDepth depth = new MarketDepth(3);
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final IOrderbook book = orderbookType.create();
+            book.placeOrder(10, 5, Side.BID);
+            book.placeOrder(10, 7, Side.BID);
+            book.placeOrder(9, 1, Side.BID);
+            book.placeOrder(8, 1, Side.BID);
+            book.placeOrder(12, 4, Side.ASK);
+            book.placeOrder(11, 4, Side.ASK);
+            book.placeOrder(9, 2, Side.ASK);
+
+            book.readDepth(2, depth);
+
+            assertEquals(2, depth.getLevelCount(Side.BID), orderbookType.name());
+            assertEquals(10, depth.getPrice(Side.BID, 0), orderbookType.name());
+            assertEquals(10, depth.getSize(Side.BID, 0), orderbookType.name());
+            assertEquals(2, depth.getOrderCount(Side.BID, 0), orderbookType.name());
+            assertEquals(9, depth.getPrice(Side.BID, 1), orderbookType.name());
+            assertEquals(2, depth.getLevelCount(Side.ASK), orderbookType.name());
+            assertEquals(11, depth.getPrice(Side.ASK, 0), orderbookType.name());
+            assertEquals(12, depth.getPrice(Side.ASK, 1), orderbookType.name());
+
+            book.readDepth(5, depth);
+
+            assertEquals(3, depth.getLevelCount(Side.BID), orderbookType.name());
+        }
+    }
+
+    @Test
+    @DisplayName("Reducing an order's size keeps its place in the queue, increasing it moves it to the back")
+    public void amendSizeKeepsPriorityOnlyWhenReducing()
+    {
+        final long first = orderbook.placeOrder(10, 5, Side.ASK).getOrderId();
+        final long second = orderbook.placeOrder(10, 5, Side.ASK).getOrderId();
+
+        assertEquals(Status.AMENDED, orderbook.amendOrder(first, 10, 2).getStatus());
+        assertEquals(7, orderbook.getBestAsk().getTotalSize());
+        assertEquals(first, orderbook.getAsks().iterator().next().getOrderId());
+
+        assertEquals(Status.AMENDED, orderbook.amendOrder(first, 10, 6).getStatus());
+        assertEquals(11, orderbook.getBestAsk().getTotalSize());
+        assertEquals(second, orderbook.getAsks().iterator().next().getOrderId());
+    }
+
+    @Test
+    @DisplayName("Amending to a new price moves the order between levels, and trades first when the price crosses")
+    public void amendPriceMovesOrderAndMatches()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final IOrderbook book = orderbookType.create();
+            final long bid = book.placeOrder(9, 10, Side.BID).getOrderId();
+            book.placeOrder(11, 4, Side.ASK);
+
+            assertEquals(Status.AMENDED, book.amendOrder(bid, 10, 10).getStatus(), orderbookType.name());
+            assertEquals(10, book.getTopOfBook().getBidPrice(), orderbookType.name());
+
+            assertEquals(Status.PARTIAL, book.amendOrder(bid, 11, 10).getStatus(), orderbookType.name());
+            assertArrayEquals(new Object[]{new Order(bid, 11, 6)}, book.getBids().toArray(), orderbookType.name());
+            assertEquals(0, book.getAsks().size(), orderbookType.name());
+
+            assertEquals(Status.CANCELLED, book.amendOrder(bid, 11, 0).getStatus(), orderbookType.name());
+            assertEquals(Status.NONE, book.amendOrder(bid, 11, 5).getStatus(), orderbookType.name());
+        }
+    }
+
+    @Test
+    @DisplayName("Mass cancel by session cancels only that session's orders inside the side and price filters")
+    public void massCancelBySessionFiltersSideAndPrice()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final IOrderbook book = orderbookType.create();
+            book.placeOrder(1, 8, 5, Side.BID);
+            book.placeOrder(1, 9, 5, Side.BID);
+            final long keptBid = book.placeOrder(1, 7, 5, Side.BID).getOrderId();
+            final long otherSessionBid = book.placeOrder(2, 9, 5, Side.BID).getOrderId();
+            final long keptAsk = book.placeOrder(1, 11, 5, Side.ASK).getOrderId();
+
+            assertEquals(2, book.massCancel(1, Side.BID, 8, 9), orderbookType.name());
+            assertArrayEquals(new Object[]{new Order(otherSessionBid, 9, 5), new Order(keptBid, 7, 5)},
+                    book.getBids().toArray(), orderbookType.name());
+            assertArrayEquals(new Object[]{new Order(keptAsk, 11, 5)}, book.getAsks().toArray(), orderbookType.name());
+
+            assertEquals(2, book.massCancel(1, null, Long.MIN_VALUE, Long.MAX_VALUE), orderbookType.name());
+            assertEquals(0, book.massCancel(1, null, Long.MIN_VALUE, Long.MAX_VALUE), orderbookType.name());
+            assertEquals(1, book.getBids().size(), orderbookType.name());
+        }
+    }
+
+    @Test
+    @DisplayName("Mass cancel across every session clears whole levels and leaves the rest of the book untouched")
+    public void massCancelAnySessionClearsLevels()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final IOrderbook book = orderbookType.create();
+            book.placeOrder(1, 11, 5, Side.ASK);
+            book.placeOrder(2, 11, 5, Side.ASK);
+            book.placeOrder(3, 12, 5, Side.ASK);
+            final long keptAsk = book.placeOrder(1, 13, 5, Side.ASK).getOrderId();
+            book.placeOrder(2, 9, 5, Side.BID);
+
+            assertEquals(3, book.massCancel(IOrderbook.ANY_SESSION, Side.ASK, Long.MIN_VALUE, 12), orderbookType.name());
+            assertArrayEquals(new Object[]{new Order(keptAsk, 13, 5)}, book.getAsks().toArray(), orderbookType.name());
+            assertEquals(1, book.getBids().size(), orderbookType.name());
+            assertEquals(13, book.getTopOfBook().getAskPrice(), orderbookType.name());
+
+            assertEquals(2, book.massCancel(IOrderbook.ANY_SESSION, null, Long.MIN_VALUE, Long.MAX_VALUE), orderbookType.name());
+            assertEquals(0, book.getAsks().size() + book.getBids().size(), orderbookType.name());
+        }
+    }
+
+    @Test
+    @DisplayName("Cancelling a session removes all of its orders on both sides and reports each orderId")
+    public void cancelSessionReportsEveryCancelledOrder()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final IOrderbook book = orderbookType.create();
+            final long bid = book.placeOrder(1, 9, 5, Side.BID).getOrderId();
+            final long ask = book.placeOrder(1, 11, 5, Side.ASK).getOrderId();
+            final long otherSessionAsk = book.placeOrder(2, 11, 5, Side.ASK).getOrderId();
+            final LongArrayList cancelledOrderIds = new LongArrayList();
+
+            assertEquals(2, book.cancelSession(1, cancelledOrderIds), orderbookType.name());
+            assertEquals(2, cancelledOrderIds.size(), orderbookType.name());
+            assertEquals(Set.of(bid, ask), Set.of(cancelledOrderIds.getLong(0), cancelledOrderIds.getLong(1)),
+                    orderbookType.name());
+            assertEquals(0, book.getBids().size(), orderbookType.name());
+            assertArrayEquals(new Object[]{new Order(otherSessionAsk, 11, 5)}, book.getAsks().toArray(), orderbookType.name());
+            assertEquals(0, book.cancelSession(1, cancelledOrderIds), orderbookType.name());
+        }
+    }
+
+    @Test
+    @DisplayName("The listener hears once of each order that leaves the book, and not of one amended or triggered")
+    public void orderRemovedListenerHearsOfEveryOrderThatLeaves()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final IOrderbook book = orderbookType.create();
+            final List<Long> removed = new ArrayList<>();
+            book.setOrderRemovedListener(removed::add);
+            final long filledAsk = book.placeOrder(1, 10, 5, Side.ASK).getOrderId();
+            final long cancelledAsk = book.placeOrder(1, 12, 5, Side.ASK).getOrderId();
+            final long amendedBid = book.placeOrder(1, 8, 5, Side.BID).getOrderId();
+            final long waitingStop = book.placeStopMarketOrder(1, 20, 5, Side.BID).getOrderId();
+            final long restingStop = book.placeStopOrder(1, 10, 11, 5, Side.BID, TimeInForce.GTC).getOrderId();
+            final long sellStop = book.placeStopMarketOrder(1, 8, 3, Side.ASK).getOrderId();
+
+            // fills the ask at 10, which triggers the stop limit bid to rest at 11
+            assertEquals(Status.FILLED, book.placeOrder(2, 10, 5, Side.BID).getStatus(), orderbookType.name());
+            assertEquals(Status.AMENDED, book.amendOrder(amendedBid, 7, 5).getStatus(), orderbookType.name());
+            assertEquals(Status.CANCELLED, book.cancelOrder(cancelledAsk).getStatus(), orderbookType.name());
+            assertEquals(Status.CANCELLED, book.cancelOrder(waitingStop).getStatus(), orderbookType.name());
+            assertEquals(List.of(filledAsk, cancelledAsk, waitingStop), removed, orderbookType.name());
+
+            // takes the stop limit bid and part of the amended bid, and the trade at 7 triggers the sell stop, which
+            // takes the rest of the amended bid and is cancelled with size left over
+            assertEquals(Status.FILLED, book.placeOrder(2, 7, 8, Side.ASK).getStatus(), orderbookType.name());
+            assertEquals(List.of(filledAsk, cancelledAsk, waitingStop, restingStop, amendedBid, sellStop), removed,
+                    orderbookType.name());
+            assertEquals(0, book.getAsks().size() + book.getBids().size(), orderbookType.name());
+        }
+    }
+
+    @Test
+    @DisplayName("IOC and market orders trade what they can and never rest, FOK trades in full or leaves the book alone")
+    public void immediateOrdersNeverRest()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final IOrderbook book = orderbookType.create();
+            final long ask = book.placeOrder(10, 5, Side.ASK).getOrderId();
+            book.placeOrder(12, 5, Side.ASK);
+
+            assertEquals(Status.CANCELLED, book.placeOrder(1, 11, 6, Side.BID, TimeInForce.FOK).getStatus(), orderbookType.name());
+            assertEquals(5, book.getTopOfBook().getAskSize(), orderbookType.name());
+            assertEquals(Status.CANCELLED, book.placeOrder(1, 9, 1, Side.BID, TimeInForce.IOC).getStatus(), orderbookType.name());
+
+            assertEquals(Status.PARTIAL, book.placeOrder(1, 11, 7, Side.BID, TimeInForce.IOC).getStatus(), orderbookType.name());
+            assertEquals(0, book.getBids().size(), orderbookType.name());
+            assertEquals(Status.NONE, book.cancelOrder(ask).getStatus(), orderbookType.name());
+
+            assertEquals(Status.FILLED, book.placeMarketOrder(1, 5, Side.BID, TimeInForce.FOK).getStatus(), orderbookType.name());
+            assertEquals(Status.CANCELLED, book.placeMarketOrder(1, 1, Side.BID, TimeInForce.GTC).getStatus(), orderbookType.name());
+            assertEquals(0, book.getAsks().size() + book.getBids().size(), orderbookType.name());
+            assertEquals(0, book.massCancel(1, null, Long.MIN_VALUE, Long.MAX_VALUE), orderbookType.name());
+        }
+    }
+
+    @Test
+    @DisplayName("An iceberg shows one slice at a time and goes to the back of its level each time it is replenished")
+    public void icebergReplenishesAtTheBackOfItsLevel()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final IOrderbook book = orderbookType.create();
+            final long iceberg = book.placeOrder(1, 10, 100, Side.ASK, TimeInForce.GTC, 30).getOrderId();
+            final long ask = book.placeOrder(10, 20, Side.ASK).getOrderId();
+            assertEquals(50, book.getTopOfBook().getAskSize(), orderbookType.name());
+
+            assertEquals(Status.CANCELLED, book.placeOrder(2, 10, 121, Side.BID, TimeInForce.FOK).getStatus(),
+                    orderbookType.name());
+            assertEquals(Status.FILLED, book.placeOrder(10, 40, Side.BID).getStatus(), orderbookType.name());
+            assertArrayEquals(new Object[]{new Order(ask, 10, 10), new Order(iceberg, 10, 30)},
+                    book.getAsks().toArray(), orderbookType.name());
+
+            assertEquals(Status.AMENDED, book.amendOrder(iceberg, 10, 20).getStatus(), orderbookType.name());
+            assertEquals(Status.PARTIAL, book.placeOrder(10, 40, Side.BID).getStatus(), orderbookType.name());
+            assertEquals(0, book.getAsks().size(), orderbookType.name());
+            assertEquals(10, book.getTopOfBook().getBidSize(), orderbookType.name());
+        }
+    }
+
+    @Test
+    @DisplayName("Stop orders wait off the book and are placed oldest first once a trade reaches their trigger price")
+    public void stopOrdersTriggerOnTheLastTradePrice()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final IOrderbook book = orderbookType.create();
+            book.placeOrder(10, 50, Side.ASK);
+            book.placeOrder(12, 50, Side.ASK);
+            final long stopLimit = book.placeStopOrder(1, 10, 11, 20, Side.BID, TimeInForce.GTC).getOrderId();
+            assertEquals(Status.PENDING, book.placeStopMarketOrder(1, 10, 40, Side.BID).getStatus(), orderbookType.name());
+            final long sellStop = book.placeStopOrder(2, 9, 9, 5, Side.ASK, TimeInForce.GTC).getOrderId();
+            assertEquals(50, book.getTopOfBook().getAskSize(), orderbookType.name());
+
+            assertEquals(Status.FILLED, book.placeOrder(10, 5, Side.BID).getStatus(), orderbookType.name());
+            assertEquals(12, book.getTopOfBook().getAskPrice(), orderbookType.name());
+            assertEquals(35, book.getTopOfBook().getAskSize(), orderbookType.name());
+            assertEquals(0, book.getBids().size(), orderbookType.name());
+            assertEquals(Status.NONE, book.cancelOrder(stopLimit).getStatus(), orderbookType.name());
+
+            assertEquals(Status.CANCELLED, book.placeStopOrder(1, 11, 13, 5, Side.BID, TimeInForce.GTC).getStatus(),
+                    orderbookType.name());
+            assertEquals(1, book.getStopOrders().getOrderCount(Side.ASK), orderbookType.name());
+            assertEquals(Status.CANCELLED, book.cancelOrder(sellStop).getStatus(), orderbookType.name());
+            assertEquals(0, book.getStopOrders().getOrderCount(Side.ASK), orderbookType.name());
+        }
+    }
+
+    @Test
+    @DisplayName("Self-trade prevention cancels or decrements the orders of the same session as the match reaches them")
+    public void selfTradePreventionPolicies()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final String name = orderbookType.name();
+            assertEquals(Status.FILLED, placeAgainstOwnAsk(orderbookType.create(), SelfTradePrevention.NONE), name);
+
+            IOrderbook book = orderbookType.create();
+            assertEquals(Status.PARTIAL, placeAgainstOwnAsk(book, SelfTradePrevention.CANCEL_RESTING), name);
+            assertEquals(0, book.getAsks().size(), name);
+            assertEquals(3, book.getTopOfBook().getBidSize(), name);
+
+            book = orderbookType.create();
+            assertEquals(Status.CANCELLED, placeAgainstOwnAsk(book, SelfTradePrevention.CANCEL_AGGRESSOR), name);
+            assertEquals(10, book.getTopOfBook().getAskSize(), name);
+            assertEquals(0, book.getBids().size(), name);
+
+            book = orderbookType.create();
+            assertEquals(Status.PARTIAL, placeAgainstOwnAsk(book, SelfTradePrevention.DECREMENT_BOTH), name);
+            assertEquals(List.of(new Order(1, 10, 2)), List.copyOf(book.getAsks()), name);
+            assertEquals(0, book.getBids().size(), name);
+
+            book = orderbookType.create();
+            book.setSelfTradePrevention(SelfTradePrevention.CANCEL_AGGRESSOR);
+            book.placeOrder(1, 10, 5, Side.ASK);
+            book.placeOrder(2, 10, 5, Side.ASK);
+            assertEquals(Status.CANCELLED, book.placeOrder(1, 10, 5, Side.BID, TimeInForce.FOK).getStatus(), name);
+            assertEquals(10, book.getTopOfBook().getAskSize(), name);
+        }
+    }
+
+    /**
+     * Rest an ask of session 1 ahead of an ask of session 2, both 5 at 10, and buy 8 at 10 from session 1
+     */
+    private static Status placeAgainstOwnAsk(IOrderbook book, SelfTradePrevention selfTradePrevention)
+    {
+        book.setSelfTradePrevention(selfTradePrevention);
+        book.placeOrder(1, 10, 5, Side.ASK);
+        book.placeOrder(2, 10, 5, Side.ASK);
+        return book.placeOrder(1, 10, 8, Side.BID).getStatus();
+    }
+
+    @Test
+    @DisplayName("Each fill records the aggressor and passive order, session and side, and match IDs run on")
+    public void fillsRecordBothSidesOfEachTrade()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final String name = orderbookType.name();
+            final IOrderbook book = orderbookType.create();
+            book.placeOrder(1, 10, 5, Side.ASK);
+            book.placeOrder(2, 11, 5, Side.ASK);
+            final long bidId = book.placeOrder(3, 11, 8, Side.BID).getOrderId();
+
+            final FillBuffer fills = book.getFills();
+            assertEquals(2, fills.getFillCount(), name);
+            assertEquals(0, fills.getMatchId(0), name);
+            assertEquals(bidId, fills.getAggressorOrderId(0), name);
+            assertEquals(3, fills.getAggressorSessionId(0), name);
+            assertEquals(Side.BID, fills.getAggressorSide(0), name);
+            assertEquals(0, fills.getPassiveOrderId(0), name);
+            assertEquals(1, fills.getPassiveSessionId(0), name);
+            assertEquals(10, fills.getPrice(0), name);
+            assertEquals(5, fills.getSize(0), name);
+            assertEquals(1, fills.getMatchId(1), name);
+            assertEquals(1, fills.getPassiveOrderId(1), name);
+            assertEquals(2, fills.getPassiveSessionId(1), name);
+            assertEquals(11, fills.getPrice(1), name);
+            assertEquals(3, fills.getSize(1), name);
+
+            book.placeOrder(3, 9, 1, Side.BID);
+            assertEquals(0, fills.getFillCount(), name);
+            assertEquals(2, fills.getNextMatchId(), name);
+        }
+    }
+
+    @Test
+    @DisplayName("FIFO, pro-rata and top-order pro-rata share a level between its orders as configured")
+    public void allocationPolicies()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final String name = orderbookType.name();
+            assertEquals(List.of(new Order(2, 10, 50)),
+                    List.copyOf(buyFromLevel(orderbookType.create(), AllocationPolicy.FIFO)), name);
+            assertEquals(List.of(new Order(0, 10, 5), new Order(1, 10, 15), new Order(2, 10, 30)),
+                    List.copyOf(buyFromLevel(orderbookType.create(), AllocationPolicy.PRO_RATA)), name);
+            assertEquals(List.of(new Order(1, 10, 17), new Order(2, 10, 33)),
+                    List.copyOf(buyFromLevel(orderbookType.create(), AllocationPolicy.TOP_ORDER_PRO_RATA)), name);
+        }
+    }
+
+    @Test
+    @DisplayName("Pro-rata shares of sizes whose products overflow a long still add up to the incoming size")
+    public void proRataAllocatesLargeSizesWithoutOverflow()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final String name = orderbookType.name();
+            final IOrderbook book = orderbookType.create();
+            book.setAllocationPolicy(AllocationPolicy.PRO_RATA);
+            book.placeOrder(10, 1_000_000_000_000_000_000L, Side.ASK);
+            book.placeOrder(10, 2_000_000_000_000_000_000L, Side.ASK);
+            book.placeOrder(10, 3_000_000_000_000_000_000L, Side.ASK);
+            assertEquals(Status.FILLED, book.placeOrder(10, 5_000_000_000_000_000_000L, Side.BID).getStatus(), name);
+            assertEquals(List.of(new Order(0, 10, 166_666_666_666_666_667L), new Order(1, 10, 333_333_333_333_333_333L),
+                    new Order(2, 10, 500_000_000_000_000_000L)), List.copyOf(book.getAsks()), name);
+        }
+    }
+
+    /**
+     * Rest asks of 10, 30 and 60 at 10, buy 50 of them and return the asks left
+     */
+    private static Collection<Order> buyFromLevel(IOrderbook book, AllocationPolicy allocationPolicy)
+    {
+        book.setAllocationPolicy(allocationPolicy);
+        book.placeOrder(10, 10, Side.ASK);
+        book.placeOrder(10, 30, Side.ASK);
+        book.placeOrder(10, 60, Side.ASK);
+        assertEquals(Status.FILLED, book.placeOrder(10, 50, Side.BID).getStatus());
+        return book.getAsks();
+    }
+
+    @Test
+    @DisplayName("An auction rests crossing orders and uncrosses them at the price that trades the most")
+    public void auctionUncrossesAtTheMaximumVolumePrice()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            final String name = orderbookType.name();
+            final IOrderbook book = orderbookType.create();
+            book.startAuction();
+            assertEquals(Status.RESTING, book.placeOrder(12, 10, Side.BID).getStatus(), name);
+            book.placeOrder(11, 5, Side.BID);
+            assertEquals(Status.RESTING, book.placeOrder(10, 8, Side.ASK).getStatus(), name);
+            book.placeOrder(11, 6, Side.ASK);
+            assertEquals(Status.CANCELLED, book.placeOrder(1, 10, 1, Side.ASK, TimeInForce.IOC).getStatus(), name);
+            assertEquals(12, book.getTopOfBook().getBidPrice(), name);
+            assertEquals(10, book.getTopOfBook().getAskPrice(), name);
+
+            final AuctionUncross uncross = book.uncross();
+            assertFalse(book.isInAuction(), name);
+            assertEquals(11, uncross.getPrice(), name);
+            assertEquals(14, uncross.getVolume(), name);
+            assertEquals(4, uncross.getFillCount(), name);
+            assertEquals(1, uncross.getFillOrderId(1), name);
+            assertEquals(4, uncross.getFillSize(1), name);
+            assertEquals(Side.ASK, uncross.getFillSide(2), name);
+            final FillBuffer fills = book.getFills();
+            assertEquals(3, fills.getFillCount(), name);
+            final long[][] trades = {{2, 0, 8}, {3, 0, 2}, {3, 1, 4}};
+            for (int i = 0; i < trades.length; i++)
+            {
+                assertEquals(i, fills.getMatchId(i), name);
+                assertEquals(trades[i][0], fills.getAggressorOrderId(i), name);
+                assertEquals(Side.ASK, fills.getAggressorSide(i), name);
+                assertEquals(trades[i][1], fills.getPassiveOrderId(i), name);
+                assertEquals(11, fills.getPrice(i), name);
+                assertEquals(trades[i][2], fills.getSize(i), name);
+            }
+            assertEquals(List.of(new Order(1, 11, 1)), List.copyOf(book.getBids()), name);
+            assertEquals(0, book.getAsks().size(), name);
+            assertEquals(Status.FILLED, book.placeOrder(11, 1, Side.ASK).getStatus(), name);
+        }
+    }
+
+    @Test
+    @DisplayName("A book restored from the records of any book type has the same orders and indexes")
+    public void restoreRebuildsLevelsAndIndexes()
+    {
+        for (OrderbookType sourceType : OrderbookType.values())
+        {
+            final IOrderbook source = sourceType.create();
+            source.placeOrder(1, 12, 5, Side.ASK);
+            source.placeOrder(2, 11, 3, Side.ASK);
+            source.placeOrder(1, 12, 4, Side.ASK);
+            source.placeOrder(2, 9, 6, Side.BID);
+            source.placeOrder(1, 8, 2, Side.BID);
+            source.placeOrder(1, 9, 1, Side.BID);
+            for (OrderbookType targetType : OrderbookType.values())
+            {
+                final String name = sourceType + " to " + targetType;
+                final IOrderbook target = targetType.create();
+                for (Side side : Side.values())
+                {
+                    source.forEachOrderRecord(side, (buffer, offset) -> target.restoreOrder(
+                            buffer.getLong(offset, ByteOrder.LITTLE_ENDIAN),
+                            buffer.getLong(offset + Long.BYTES, ByteOrder.LITTLE_ENDIAN),
+                            buffer.getLong(offset + 2 * Long.BYTES, ByteOrder.LITTLE_ENDIAN), side,
+                            buffer.getLong(offset + 3 * Long.BYTES, ByteOrder.LITTLE_ENDIAN),
+                            buffer.getLong(offset + 4 * Long.BYTES, ByteOrder.LITTLE_ENDIAN),
+                            buffer.getLong(offset + 5 * Long.BYTES, ByteOrder.LITTLE_ENDIAN)));
+                }
+                target.finishRestore();
+
+                assertEquals(List.copyOf(source.getAsks()), List.copyOf(target.getAsks()), name);
+                assertEquals(List.copyOf(source.getBids()), List.copyOf(target.getBids()), name);
+                assertEquals(3, target.getOrderCount(Side.ASK), name);
+                assertEquals(Status.CANCELLED, target.cancelOrder(0).getStatus(), name);
+                assertEquals(3, target.cancelSession(1, new LongArrayList()), name);
+                assertEquals(Status.FILLED, target.placeOrder(3, 11, 2, Side.BID).getStatus(), name);
+                assertEquals(List.of(new Order(1, 11, 1)), List.copyOf(target.getAsks()), name);
+                assertEquals(List.of(new Order(3, 9, 6)), List.copyOf(target.getBids()), name);
+            }
+        }
+    }
+}
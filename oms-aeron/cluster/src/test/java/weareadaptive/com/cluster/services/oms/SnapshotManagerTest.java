@@ -0,0 +1,223 @@
+package weareadaptive.com.cluster.services.oms;
+
+import com.weareadaptive.sbe.snapshotting.AskOrdersEncoder;
+import com.weareadaptive.sbe.snapshotting.MessageHeaderEncoder;
+import io.aeron.Publication;
+import io.aeron.cluster.client.ClusterException;
+import io.aeron.logbuffer.BufferClaim;
+import io.aeron.protocol.DataHeaderFlyweight;
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.LongArrayList;
+import org.agrona.concurrent.NoOpIdleStrategy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.Status;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SnapshotManagerTest
+{
+    private static final int INSTRUMENT_ID = 7;
+    private static final int ORDERS_PER_MESSAGE = 4;
+    private static final int MAX_PAYLOAD_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH + AskOrdersEncoder.BLOCK_LENGTH +
+            AskOrdersEncoder.OrdersEncoder.sbeHeaderSize() + ORDERS_PER_MESSAGE * OrderStore.RECORD_LENGTH;
+    // the orderbook, orderId, expiryWheel and endOfSnapshot messages written around the orders of one book
+    private static final int OTHER_MESSAGE_COUNT = 4;
+
+    private final SnapshotManager snapshotManager = new SnapshotManager();
+
+    @BeforeEach
+    void setUp()
+    {
+        snapshotManager.setIdleStrategy(NoOpIdleStrategy.INSTANCE);
+    }
+
+    @Test
+    @DisplayName("Orders filling exactly one message a side restore with the same priority and indexes")
+    public void roundTripsOneFullMessageOfOrdersASide()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            assertRoundTrip(orderbookType, ORDERS_PER_MESSAGE, 2);
+        }
+    }
+
+    @Test
+    @DisplayName("Orders split over several messages a side restore with the same priority and indexes")
+    public void roundTripsOrdersSplitOverMessages()
+    {
+        for (OrderbookType orderbookType : OrderbookType.values())
+        {
+            assertRoundTrip(orderbookType, 2 * ORDERS_PER_MESSAGE + 1, 6);
+        }
+    }
+
+    @Test
+    @DisplayName("Claims back pressured or behind an admin action are retried until they go through, and counted")
+    public void backPressuredClaimsAreRetriedAndCounted()
+    {
+        final OrderbookRegistry source = registry(OrderbookType.PRICE_LEVEL);
+        final IOrderbook book = placeOrders(source.getOrCreate(INSTRUMENT_ID), 2 * ORDERS_PER_MESSAGE + 1);
+        final StubPublication publication = new StubPublication();
+        // the orderbook message waits out three failed attempts, and the first asks message one more
+        publication.answer(Publication.BACK_PRESSURED, Publication.ADMIN_ACTION, Publication.BACK_PRESSURED,
+                StubPublication.CLAIM, Publication.BACK_PRESSURED);
+        snapshotManager.encodeOrderbookState(publication, source, new OrderExpiryWheel());
+
+        final SnapshotProgress progress = snapshotManager.getProgress();
+        assertEquals(OTHER_MESSAGE_COUNT + 6, progress.getMessageCount());
+        assertEquals(2, progress.getBackPressuredCount());
+        assertEquals(4, progress.getBackPressuredAttempts());
+        assertEquals(progress.getMessageCount() + 4, publication.claimCount);
+
+        final OrderbookRegistry target = registry(OrderbookType.PRICE_LEVEL);
+        assertTrue(publication.replay(snapshotManager, target, new OrderExpiryWheel()));
+        assertBooksEqual(book, target.get(INSTRUMENT_ID), OrderbookType.PRICE_LEVEL.name());
+    }
+
+    @Test
+    @DisplayName("A closed publication or one past its max position fails the snapshot rather than leaving it short")
+    public void closedPublicationFailsTheSnapshot()
+    {
+        final OrderbookRegistry source = registry(OrderbookType.PRICE_LEVEL);
+        placeOrders(source.getOrCreate(INSTRUMENT_ID), 2 * ORDERS_PER_MESSAGE + 1);
+        for (long failure : new long[]{Publication.CLOSED, Publication.MAX_POSITION_EXCEEDED})
+        {
+            final StubPublication publication = new StubPublication();
+            // the orderbook message goes through, and the first asks message is back pressured before the failure
+            publication.answer(StubPublication.CLAIM, Publication.BACK_PRESSURED, failure);
+            final ClusterException exception = assertThrows(ClusterException.class,
+                    () -> snapshotManager.encodeOrderbookState(publication, source, new OrderExpiryWheel()));
+            assertTrue(exception.getMessage().contains(Publication.errorString(failure)), exception.getMessage());
+            assertEquals(1, snapshotManager.getProgress().getMessageCount());
+            assertEquals(3, publication.claimCount);
+        }
+    }
+
+    private void assertRoundTrip(final OrderbookType orderbookType, final int ordersPerSide,
+                                 final int orderMessageCount)
+    {
+        final String name = orderbookType.name();
+        final OrderbookRegistry source = registry(orderbookType);
+        final IOrderbook book = placeOrders(source.getOrCreate(INSTRUMENT_ID), ordersPerSide);
+        final StubPublication publication = new StubPublication();
+        snapshotManager.encodeOrderbookState(publication, source, new OrderExpiryWheel());
+        assertEquals(OTHER_MESSAGE_COUNT + orderMessageCount, snapshotManager.getProgress().getMessageCount(), name);
+
+        final OrderbookRegistry target = registry(orderbookType);
+        assertTrue(publication.replay(snapshotManager, target, new OrderExpiryWheel()), name);
+        final IOrderbook restored = target.get(INSTRUMENT_ID);
+        assertBooksEqual(book, restored, name);
+        assertEquals(book.getCurrentOrderId(), restored.getCurrentOrderId(), name);
+
+        // the order and session indexes are rebuilt, and a sweep fills both books in the same priority
+        assertEquals(Status.CANCELLED, restored.cancelOrder(2).getStatus(), name);
+        book.cancelOrder(2);
+        assertEquals(book.cancelSession(1, new LongArrayList()), restored.cancelSession(1, new LongArrayList()), name);
+        assertEquals(book.placeOrder(102, 20, Side.BID).getStatus(), restored.placeOrder(102, 20, Side.BID).getStatus(),
+                name);
+        assertBooksEqual(book, restored, name);
+    }
+
+    /**
+     * A few levels, two sessions and an iceberg, so priority within a level and the reserve have to carry over
+     */
+    private static IOrderbook placeOrders(final IOrderbook book, final int ordersPerSide)
+    {
+        for (int i = 0; i < ordersPerSide; i++)
+        {
+            final long displaySize = i == 1 ? 2 : IOrderbook.FULLY_DISPLAYED;
+            book.placeOrder(i % 2, 100 + i % 3, 5 + i, Side.ASK, TimeInForce.GTC, displaySize);
+            book.placeOrder(i % 2, 90 - i % 3, 5 + i, Side.BID, TimeInForce.GTC, displaySize);
+        }
+        return book;
+    }
+
+    private static void assertBooksEqual(final IOrderbook expected, final IOrderbook actual, final String name)
+    {
+        assertEquals(List.copyOf(expected.getAsks()), List.copyOf(actual.getAsks()), name);
+        assertEquals(List.copyOf(expected.getBids()), List.copyOf(actual.getBids()), name);
+        assertEquals(expected.getOrderCount(Side.ASK), actual.getOrderCount(Side.ASK), name);
+        assertEquals(expected.getOrderCount(Side.BID), actual.getOrderCount(Side.BID), name);
+    }
+
+    private static OrderbookRegistry registry(final OrderbookType orderbookType)
+    {
+        return new OrderbookRegistry(orderbookType, SelfTradePrevention.NONE, AllocationPolicy.FIFO,
+                new int[]{INSTRUMENT_ID}, (instrumentId, orderId) -> {});
+    }
+
+    /**
+     * Lays the claimed messages out one after another in a buffer, the first claims answered from a queue of results to
+     * stand in for back pressure and failures
+     */
+    private static final class StubPublication implements SnapshotPublication
+    {
+        static final long CLAIM = 0;
+
+        private final UnsafeBuffer buffer = new UnsafeBuffer(ByteBuffer.allocate(1 << 16));
+        private final IntArrayList messageOffsets = new IntArrayList();
+        private final IntArrayList messageLengths = new IntArrayList();
+        private final ArrayDeque<Long> results = new ArrayDeque<>();
+        private int claimCount;
+        private int position;
+
+        /**
+         * Answer the next claims with the given Publication codes in turn, {@link #CLAIM} letting one go through
+         */
+        void answer(final long... results)
+        {
+            for (long result : results)
+            {
+                this.results.add(result);
+            }
+        }
+
+        @Override
+        public int maxPayloadLength()
+        {
+            return MAX_PAYLOAD_LENGTH;
+        }
+
+        @Override
+        public long tryClaim(final int length, final BufferClaim bufferClaim)
+        {
+            claimCount++;
+            final Long result = results.poll();
+            if (result != null && result != CLAIM)
+            {
+                return result;
+            }
+            final int frameLength = DataHeaderFlyweight.HEADER_LENGTH + length;
+            bufferClaim.wrap(buffer, position, frameLength);
+            messageOffsets.addInt(position + DataHeaderFlyweight.HEADER_LENGTH);
+            messageLengths.addInt(length);
+            position += frameLength;
+            return position;
+        }
+
+        /**
+         * Hand every message claimed to the snapshot manager, as a snapshot image would
+         */
+        boolean replay(final SnapshotManager snapshotManager, final OrderbookRegistry orderbooks,
+                       final OrderExpiryWheel orderExpiries)
+        {
+            snapshotManager.startLoad(orderbooks, orderExpiries);
+            for (int i = 0; i < messageOffsets.size(); i++)
+            {
+                snapshotManager.onFragment(buffer, messageOffsets.getInt(i), messageLengths.getInt(i), null);
+            }
+            return snapshotManager.finishLoad();
+        }
+    }
+}
@@ -11,12 +11,14 @@ import org.agrona.concurrent.SystemEpochClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import weareadaptive.com.gateway.client.ClientEgressListener;
+import weareadaptive.com.gateway.client.GatewayCredentials;
 import weareadaptive.com.gateway.client.ClientIngressSender;
 import weareadaptive.com.gateway.ws.WebSocketServer;
 
 import java.util.concurrent.TimeUnit;
 
 import static weareadaptive.com.gateway.util.ConfigUtils.egressChannel;
+import static weareadaptive.com.gateway.util.ConfigUtils.getGatewayId;
 import static weareadaptive.com.gateway.util.ConfigUtils.ingressEndpoints;
 
 public class GatewayAgent implements Agent
@@ -72,6 +74,7 @@ public class GatewayAgent implements Agent
         aeronCluster = AeronCluster.connect(
                 new AeronCluster.Context()
                         .egressListener(clientEgressListener)
+                        .credentialsSupplier(new GatewayCredentials(getGatewayId()))
                         .egressChannel(egressChannel())
                         .aeronDirectoryName(mediaDriver.aeronDirectoryName())
                         .ingressChannel("aeron:udp")
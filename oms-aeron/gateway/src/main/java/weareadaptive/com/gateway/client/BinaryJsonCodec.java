@@ -1,21 +1,32 @@
 package weareadaptive.com.gateway.client;
 
+import com.weareadaptive.sbe.AuctionFillsDecoder;
+import com.weareadaptive.sbe.BboDecoder;
+import com.weareadaptive.sbe.DepthDecoder;
 import com.weareadaptive.sbe.ExecutionResultDecoder;
+import com.weareadaptive.sbe.MassCancelResultDecoder;
 import com.weareadaptive.sbe.OrderDecoder;
 import com.weareadaptive.sbe.OrderIdDecoder;
+import com.weareadaptive.sbe.OrdersExpiredDecoder;
+import com.weareadaptive.sbe.SessionOrdersCancelledDecoder;
 import com.weareadaptive.sbe.SuccessMessageDecoder;
+import com.weareadaptive.sbe.TradesDecoder;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.agrona.DirectBuffer;
 import weareadaptive.com.cluster.services.oms.util.ExecutionResult;
 import weareadaptive.com.cluster.services.oms.util.Order;
+import weareadaptive.com.cluster.services.oms.util.Side;
 import weareadaptive.com.cluster.services.oms.util.Status;
+import weareadaptive.com.gateway.util.PriceScale;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import static weareadaptive.com.gateway.util.ConfigUtils.getPriceScale;
+
 public class BinaryJsonCodec
 {
     private final Map<Long, List<Order>> ordersRequests = new ConcurrentHashMap<>();
@@ -24,6 +35,14 @@ public class BinaryJsonCodec
     private final ExecutionResultDecoder executionResultDecoder = new ExecutionResultDecoder();
     private final SuccessMessageDecoder successMessageDecoder = new SuccessMessageDecoder();
     private final OrderDecoder orderDecoder = new OrderDecoder();
+    private final BboDecoder bboDecoder = new BboDecoder();
+    private final DepthDecoder depthDecoder = new DepthDecoder();
+    private final MassCancelResultDecoder massCancelResultDecoder = new MassCancelResultDecoder();
+    private final SessionOrdersCancelledDecoder sessionOrdersCancelledDecoder = new SessionOrdersCancelledDecoder();
+    private final OrdersExpiredDecoder ordersExpiredDecoder = new OrdersExpiredDecoder();
+    private final AuctionFillsDecoder auctionFillsDecoder = new AuctionFillsDecoder();
+    private final TradesDecoder tradesDecoder = new TradesDecoder();
+    private final PriceScale priceScale = getPriceScale();
     protected JsonObject getOrderIdResponse(final DirectBuffer buffer, final int offset, final int actingBlockLength, final int actingVersion)
     {
         orderIdDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
@@ -47,6 +66,115 @@ public class BinaryJsonCodec
         return JsonObject.of("status", status.name());
     }
 
+    /**
+     * Best bid and offer, leaving out the price of a side that has nothing resting
+     */
+    protected JsonObject getBboAsJson(final DirectBuffer buffer, final int offset, final int actingBlockLength, final int actingVersion)
+    {
+        bboDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final JsonObject jsonObject = JsonObject.of("bidSize", bboDecoder.bidSize(), "askSize", bboDecoder.askSize());
+        if (bboDecoder.bidSize() > 0)
+        {
+            jsonObject.put("bidPrice", priceScale.toPrice(bboDecoder.bidPrice()));
+        }
+        if (bboDecoder.askSize() > 0)
+        {
+            jsonObject.put("askPrice", priceScale.toPrice(bboDecoder.askPrice()));
+        }
+        return jsonObject;
+    }
+
+    protected JsonObject getMassCancelResultAsJson(final DirectBuffer buffer, final int offset, final int actingBlockLength,
+                                                   final int actingVersion)
+    {
+        massCancelResultDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        return JsonObject.of("cancelled", massCancelResultDecoder.cancelledCount());
+    }
+
+    protected JsonObject getSessionOrdersCancelledAsJson(final DirectBuffer buffer, final int offset,
+                                                         final int actingBlockLength, final int actingVersion)
+    {
+        sessionOrdersCancelledDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final long instrumentId = sessionOrdersCancelledDecoder.instrumentId();
+        final long sessionId = sessionOrdersCancelledDecoder.sessionId();
+        final long totalCount = sessionOrdersCancelledDecoder.totalCount();
+        final JsonArray orderIds = new JsonArray();
+        for (SessionOrdersCancelledDecoder.OrdersDecoder order : sessionOrdersCancelledDecoder.orders())
+        {
+            orderIds.add(order.orderId());
+        }
+        return JsonObject.of("instrumentId", instrumentId, "sessionId", sessionId, "totalCount", totalCount,
+                "orderIds", orderIds);
+    }
+
+    protected JsonObject getOrdersExpiredAsJson(final DirectBuffer buffer, final int offset,
+                                                final int actingBlockLength, final int actingVersion)
+    {
+        ordersExpiredDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final JsonArray orders = new JsonArray();
+        for (OrdersExpiredDecoder.OrdersDecoder order : ordersExpiredDecoder.orders())
+        {
+            orders.add(JsonObject.of("instrumentId", order.instrumentId(), "orderId", order.orderId()));
+        }
+        return JsonObject.of("orders", orders);
+    }
+
+    protected JsonObject getAuctionFillsAsJson(final DirectBuffer buffer, final int offset,
+                                               final int actingBlockLength, final int actingVersion)
+    {
+        auctionFillsDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final long instrumentId = auctionFillsDecoder.instrumentId();
+        final double price = priceScale.toPrice(auctionFillsDecoder.price());
+        final long volume = auctionFillsDecoder.volume();
+        final long totalCount = auctionFillsDecoder.totalCount();
+        final JsonArray fills = new JsonArray();
+        for (AuctionFillsDecoder.FillsDecoder fill : auctionFillsDecoder.fills())
+        {
+            fills.add(JsonObject.of("orderId", fill.orderId(), "side", Side.fromByteValue((byte) fill.side()).name(),
+                    "size", fill.size()));
+        }
+        return JsonObject.of("instrumentId", instrumentId, "price", price, "volume", volume, "totalCount", totalCount,
+                "fills", fills);
+    }
+
+    protected JsonObject getTradesAsJson(final DirectBuffer buffer, final int offset,
+                                         final int actingBlockLength, final int actingVersion)
+    {
+        tradesDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final long instrumentId = tradesDecoder.instrumentId();
+        final long totalCount = tradesDecoder.totalCount();
+        final JsonArray fills = new JsonArray();
+        for (TradesDecoder.FillsDecoder fill : tradesDecoder.fills())
+        {
+            fills.add(JsonObject.of("matchId", fill.matchId(), "aggressorOrderId", fill.aggressorOrderId(),
+                    "aggressorSide", Side.fromByteValue((byte) fill.aggressorSide()).name(),
+                    "passiveOrderId", fill.passiveOrderId(), "price", priceScale.toPrice(fill.price()),
+                    "size", fill.size()));
+        }
+        return JsonObject.of("instrumentId", instrumentId, "totalCount", totalCount, "fills", fills);
+    }
+
+    protected JsonObject getDepthAsJson(final DirectBuffer buffer, final int offset, final int actingBlockLength, final int actingVersion)
+    {
+        depthDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
+        final JsonArray bids = new JsonArray();
+        for (DepthDecoder.BidsDecoder level : depthDecoder.bids())
+        {
+            bids.add(getLevelAsJson(level.price(), level.size(), level.orderCount()));
+        }
+        final JsonArray asks = new JsonArray();
+        for (DepthDecoder.AsksDecoder level : depthDecoder.asks())
+        {
+            asks.add(getLevelAsJson(level.price(), level.size(), level.orderCount()));
+        }
+        return JsonObject.of("bids", bids, "asks", asks);
+    }
+
+    private JsonObject getLevelAsJson(final long price, final long size, final long orderCount)
+    {
+        return JsonObject.of("price", priceScale.toPrice(price), "size", size, "orderCount", orderCount);
+    }
+
     protected Order getOrder(final DirectBuffer buffer, final int offset, final int actingBlockLength, final int actingVersion) {
         orderDecoder.wrap(buffer, offset, actingBlockLength, actingVersion);
         return new Order(orderDecoder.orderId(), orderDecoder.price(), orderDecoder.size());
@@ -69,7 +197,9 @@ public class BinaryJsonCodec
         JsonArray jsonArray = new JsonArray();
         for (Order order : orders)
         {
-            JsonObject orderJson = JsonObject.mapFrom(order);
+            JsonObject orderJson = JsonObject.of("orderId", order.getOrderId(),
+                    "price", priceScale.toPrice(order.getPrice()),
+                    "size", order.getSize());
             jsonArray.add(orderJson);
         }
 
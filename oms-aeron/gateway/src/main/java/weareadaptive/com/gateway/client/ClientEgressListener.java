@@ -5,21 +5,43 @@ import io.aeron.cluster.client.EgressListener;
 import io.aeron.cluster.codecs.EventCode;
 import io.aeron.logbuffer.Header;
 import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.agrona.DirectBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import weareadaptive.com.cluster.services.oms.util.Status;
 import weareadaptive.com.gateway.exception.BadFieldException;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Routes the cluster's egress to the websockets of this gateway
+ * - Responses go to the websocket of the request with the same correlation ID
+ * - Fills, expiries and cancels on disconnect are unsolicited, and go to the websocket each order was placed from,
+ *   known from the execution result that gave the order its ID, with order IDs kept per instrument as each book
+ *   numbers its own orders
+ * - An order is forgotten when an execution result, an expiry, a cancel on disconnect or its websocket closing says it
+ *   has left the book. A fill does not say what is left of the order, so a filled order is forgotten with its
+ *   websocket
+ * - The cluster sends an order's own fills just before its execution result, so they are held by the aggressor's
+ *   order ID until that result gives the order's websocket. Fills are only held while this gateway has an order request
+ *   on the instrument waiting for its result, and once none is left what is still held was another gateway's order
+ */
 public class ClientEgressListener implements EgressListener
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(ClientEgressListener.class);
     private int currentLeader = -1;
     private final MessageHeaderDecoder messageHeaderDecoder = new MessageHeaderDecoder();
     private final Map<Long, ServerWebSocket> allWebsockets = new ConcurrentHashMap<>();
+    private final Map<Long, OrderRequest> orderRequests = new ConcurrentHashMap<>();
+    private final Map<Integer, Map<Long, ServerWebSocket>> websocketsByOrderIdByInstrument = new ConcurrentHashMap<>();
+    private final Map<ServerWebSocket, JsonArray> fillsByWebsocket = new IdentityHashMap<>();
+    private final Map<Integer, Map<Long, PendingFills>> pendingFillsByAggressorByInstrument = new ConcurrentHashMap<>();
     private final BinaryJsonCodec binaryJsonCodec = new BinaryJsonCodec();
 
     @Override
@@ -33,6 +55,42 @@ public class ClientEgressListener implements EgressListener
         final int typeOfMessage = messageHeaderDecoder.templateId();
         final long correlationId = messageHeaderDecoder.correlationId();
 
+        if (typeOfMessage == TradesDecoder.TEMPLATE_ID)
+        {
+            // unsolicited, sent to this gateway's session when one of its orders trades, on either side of the trade
+            onTrades(binaryJsonCodec.getTradesAsJson(buffer, bufferOffset + messageHeaderDecoder.encodedLength(),
+                    messageHeaderDecoder.blockLength(), messageHeaderDecoder.version()));
+            return;
+        }
+        if (typeOfMessage == OrdersExpiredDecoder.TEMPLATE_ID)
+        {
+            // unsolicited, sent by the cluster's expiry timer rather than in reply to a request
+            onOrdersExpired(binaryJsonCodec.getOrdersExpiredAsJson(buffer,
+                    bufferOffset + messageHeaderDecoder.encodedLength(), messageHeaderDecoder.blockLength(),
+                    messageHeaderDecoder.version()));
+            return;
+        }
+        if (typeOfMessage == SessionOrdersCancelledDecoder.TEMPLATE_ID)
+        {
+            // unsolicited, sent when this gateway's previous session closed with orders resting
+            onSessionOrdersCancelled(binaryJsonCodec.getSessionOrdersCancelledAsJson(buffer,
+                    bufferOffset + messageHeaderDecoder.encodedLength(), messageHeaderDecoder.blockLength(),
+                    messageHeaderDecoder.version()));
+            return;
+        }
+        if (typeOfMessage == AuctionFillsDecoder.TEMPLATE_ID)
+        {
+            // unsolicited, sent to the gateway that asked for the uncross, ahead of the reply to the uncross request,
+            // the owners of the orders hear of their fills as trades
+            if (LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("Auction fills: " + binaryJsonCodec.getAuctionFillsAsJson(buffer,
+                        bufferOffset + messageHeaderDecoder.encodedLength(), messageHeaderDecoder.blockLength(),
+                        messageHeaderDecoder.version()).encode());
+            }
+            return;
+        }
+
         // todo: i think the re's a stupid race condition here
         if (allWebsockets.containsKey(correlationId))
         {
@@ -53,6 +111,144 @@ public class ClientEgressListener implements EgressListener
         }
     }
 
+    /**
+     * Send each websocket the fills of its own orders, on either side, and hold the fills of an aggressor this gateway
+     * does not know yet, which is either an order whose result is on its way or another gateway's
+     */
+    private void onTrades(final JsonObject trades)
+    {
+        final int instrumentId = trades.getInteger("instrumentId");
+        final Map<Long, ServerWebSocket> websocketsByOrderId = websocketsByOrderIdByInstrument.get(instrumentId);
+        final boolean awaitingResult = hasOrderRequest(instrumentId);
+        for (Object fill : trades.getJsonArray("fills"))
+        {
+            final JsonObject jsonFill = (JsonObject) fill;
+            final long aggressorOrderId = jsonFill.getLong("aggressorOrderId");
+            final ServerWebSocket aggressor = websocketsByOrderId == null ? null :
+                    websocketsByOrderId.get(aggressorOrderId);
+            final ServerWebSocket passive = websocketsByOrderId == null ? null :
+                    websocketsByOrderId.get(jsonFill.getLong("passiveOrderId"));
+            if (aggressor != null)
+            {
+                fillsByWebsocket.computeIfAbsent(aggressor, ws -> new JsonArray()).add(jsonFill);
+            }
+            else if (awaitingResult)
+            {
+                pendingFillsByAggressorByInstrument.computeIfAbsent(instrumentId, id -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(aggressorOrderId, id -> new PendingFills()).add(jsonFill, passive);
+            }
+            if (passive != null && passive != aggressor)
+            {
+                fillsByWebsocket.computeIfAbsent(passive, ws -> new JsonArray()).add(jsonFill);
+            }
+        }
+        fillsByWebsocket.forEach((ws, fills) -> writeTrades(ws, instrumentId, fills));
+        fillsByWebsocket.clear();
+    }
+
+    private void onOrdersExpired(final JsonObject ordersExpired)
+    {
+        for (Object order : ordersExpired.getJsonArray("orders"))
+        {
+            final JsonObject jsonOrder = (JsonObject) order;
+            final ServerWebSocket ws = forgetOrder(jsonOrder.getInteger("instrumentId"), jsonOrder.getLong("orderId"));
+            if (ws != null)
+            {
+                ws.write(JsonObject.of("event", "orderExpired", "instrumentId", jsonOrder.getInteger("instrumentId"),
+                        "orderId", jsonOrder.getLong("orderId")).toBuffer());
+            }
+        }
+    }
+
+    /**
+     * The websockets of a previous session are usually gone with it, so the cancels are logged, and only go to a
+     * websocket still open from before
+     */
+    private void onSessionOrdersCancelled(final JsonObject sessionOrdersCancelled)
+    {
+        LOGGER.info("Orders cancelled on disconnect: " + sessionOrdersCancelled.encode());
+        final int instrumentId = sessionOrdersCancelled.getInteger("instrumentId");
+        for (Object orderId : sessionOrdersCancelled.getJsonArray("orderIds"))
+        {
+            final ServerWebSocket ws = forgetOrder(instrumentId, ((Number) orderId).longValue());
+            if (ws != null)
+            {
+                ws.write(JsonObject.of("event", "orderCancelled", "instrumentId", instrumentId,
+                        "orderId", orderId).toBuffer());
+            }
+        }
+    }
+
+    /**
+     * Note the websocket of an order the result left in the book, or forget one it took out, then send its fills if
+     * they were held for it
+     * - A partly filled IOC or market order is not left in the book, so only an order that can rest is noted
+     */
+    private void onExecutionResult(final long correlationId, final ServerWebSocket ws, final JsonObject executionResult)
+    {
+        final OrderRequest orderRequest = orderRequests.remove(correlationId);
+        if (orderRequest == null)
+        {
+            return;
+        }
+        final int instrumentId = orderRequest.instrumentId();
+        final long orderId = executionResult.getLong("orderId");
+        final Status status = Status.valueOf(executionResult.getString("status"));
+        if (status == Status.RESTING || status == Status.PENDING || status == Status.AMENDED
+                || (status == Status.PARTIAL && orderRequest.canRest()))
+        {
+            websocketsByOrderIdByInstrument.computeIfAbsent(instrumentId, id -> new ConcurrentHashMap<>())
+                    .put(orderId, ws);
+        }
+        else
+        {
+            forgetOrder(instrumentId, orderId);
+        }
+        final Map<Long, PendingFills> pendingFillsByAggressor = pendingFillsByAggressorByInstrument.get(instrumentId);
+        if (pendingFillsByAggressor == null)
+        {
+            return;
+        }
+        final PendingFills pendingFills = pendingFillsByAggressor.remove(orderId);
+        if (pendingFills != null)
+        {
+            // a fill against an order of the same websocket has already gone to it as the passive side
+            final JsonArray fills = pendingFills.withoutPassive(ws);
+            if (!fills.isEmpty())
+            {
+                writeTrades(ws, instrumentId, fills);
+            }
+        }
+        if (!hasOrderRequest(instrumentId))
+        {
+            // every result this gateway waits for on the instrument is in, so the rest were other gateways' orders
+            pendingFillsByAggressorByInstrument.remove(instrumentId);
+        }
+    }
+
+    private boolean hasOrderRequest(final int instrumentId)
+    {
+        for (OrderRequest orderRequest : orderRequests.values())
+        {
+            if (orderRequest.instrumentId() == instrumentId)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ServerWebSocket forgetOrder(final int instrumentId, final long orderId)
+    {
+        final Map<Long, ServerWebSocket> websocketsByOrderId = websocketsByOrderIdByInstrument.get(instrumentId);
+        return websocketsByOrderId == null ? null : websocketsByOrderId.remove(orderId);
+    }
+
+    private static void writeTrades(final ServerWebSocket ws, final int instrumentId, final JsonArray fills)
+    {
+        ws.write(JsonObject.of("event", "trades", "instrumentId", instrumentId, "fills", fills).toBuffer());
+    }
+
     private void sendMessage(final DirectBuffer buffer, final int bufferOffset, final int typeOfMessage, final long correlationId,
                              final int actingBlockLength, final int actingVersion)
     {
@@ -65,12 +261,22 @@ public class ClientEgressListener implements EgressListener
                     case OrderIdDecoder.TEMPLATE_ID ->
                             binaryJsonCodec.getOrderIdResponse(buffer, bufferOffset, actingBlockLength, actingVersion);
                     case EndOfOrdersDecoder.TEMPLATE_ID -> binaryJsonCodec.getOrdersResponse(correlationId);
+                    case BboDecoder.TEMPLATE_ID ->
+                            binaryJsonCodec.getBboAsJson(buffer, bufferOffset, actingBlockLength, actingVersion);
+                    case MassCancelResultDecoder.TEMPLATE_ID ->
+                            binaryJsonCodec.getMassCancelResultAsJson(buffer, bufferOffset, actingBlockLength, actingVersion);
+                    case DepthDecoder.TEMPLATE_ID ->
+                            binaryJsonCodec.getDepthAsJson(buffer, bufferOffset, actingBlockLength, actingVersion);
                     default -> throw new BadFieldException("method not supported");
                 };
 
         LOGGER.info("Sending message with correlation ID ".concat(String.valueOf(correlationId)));
-        allWebsockets.get(correlationId).write(jsonObject.toBuffer());
-        allWebsockets.remove(correlationId);
+        final ServerWebSocket ws = allWebsockets.remove(correlationId);
+        ws.write(jsonObject.toBuffer());
+        if (typeOfMessage == ExecutionResultDecoder.TEMPLATE_ID)
+        {
+            onExecutionResult(correlationId, ws, jsonObject);
+        }
     }
 
     @Override
@@ -98,4 +304,66 @@ public class ClientEgressListener implements EgressListener
     public void addWebsocket(final long id, final ServerWebSocket ws) {
         allWebsockets.put(id, ws);
     }
+
+    /**
+     * A request whose execution result places, amends or cancels an order on the instrument, so its fills and
+     * expiry can be sent to the websocket
+     * - canRest says whether the order can be left in the book, which an IOC, FOK or market order never is
+     */
+    public void addOrderWebsocket(final long id, final int instrumentId, final boolean canRest, final ServerWebSocket ws)
+    {
+        orderRequests.put(id, new OrderRequest(instrumentId, canRest));
+        addWebsocket(id, ws);
+    }
+
+    /**
+     * Forget the orders of an instrument whose book is being cleared or reset, as a reset book numbers its orders
+     * from 0 again
+     */
+    public void removeInstrument(final int instrumentId)
+    {
+        websocketsByOrderIdByInstrument.remove(instrumentId);
+        pendingFillsByAggressorByInstrument.remove(instrumentId);
+    }
+
+    /**
+     * Forget the orders of a closed websocket, nothing more can be sent to it
+     */
+    public void removeWebsocket(final ServerWebSocket ws)
+    {
+        websocketsByOrderIdByInstrument.values().forEach(websocketsByOrderId ->
+                websocketsByOrderId.values().removeIf(orderWebsocket -> orderWebsocket == ws));
+    }
+
+    private record OrderRequest(int instrumentId, boolean canRest)
+    {
+    }
+
+    /**
+     * Fills of one aggressor held until its execution result, with the websocket of each fill's passive order
+     */
+    private static final class PendingFills
+    {
+        private final JsonArray fills = new JsonArray();
+        private final List<ServerWebSocket> passives = new ArrayList<>();
+
+        private void add(final JsonObject fill, final ServerWebSocket passive)
+        {
+            fills.add(fill);
+            passives.add(passive);
+        }
+
+        private JsonArray withoutPassive(final ServerWebSocket ws)
+        {
+            final JsonArray result = new JsonArray();
+            for (int i = 0; i < fills.size(); i++)
+            {
+                if (passives.get(i) != ws)
+                {
+                    result.add(fills.getJsonObject(i));
+                }
+            }
+            return result;
+        }
+    }
 }
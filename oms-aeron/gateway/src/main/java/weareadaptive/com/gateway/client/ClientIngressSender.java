@@ -6,7 +6,9 @@ import org.agrona.DirectBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import weareadaptive.com.cluster.services.oms.util.Method;
+import weareadaptive.com.cluster.services.oms.util.OrderType;
 import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
 
 import java.util.LinkedList;
 import java.util.Queue;
@@ -48,21 +50,76 @@ public class ClientIngressSender
             }
     }
 
-    public void sendOrderRequestToCluster(final long correlationId, final double price, final long size, final Side side)
+    public void sendOrderRequestToCluster(final long correlationId, final int instrumentId, final long price,
+                                          final long size, final Side side)
+    {
+        sendOrderRequestToCluster(correlationId, instrumentId, price, size, side, OrderType.LIMIT, TimeInForce.GTC, 0);
+    }
+
+    public void sendOrderRequestToCluster(final long correlationId, final int instrumentId, final long price,
+                                          final long size, final Side side, final OrderType orderType,
+                                          final TimeInForce timeInForce, final long displaySize)
+    {
+        sendOrderRequestToCluster(correlationId, instrumentId, price, size, side, orderType, timeInForce, displaySize, 0);
+    }
+
+    /**
+     * @param triggerPrice last trade price that triggers a STOP or STOP_LIMIT order, ignored for other order types
+     */
+    public void sendOrderRequestToCluster(final long correlationId, final int instrumentId, final long price,
+                                          final long size, final Side side, final OrderType orderType,
+                                          final TimeInForce timeInForce, final long displaySize,
+                                          final long triggerPrice)
+    {
+        sendOrderRequestToCluster(correlationId, instrumentId, price, size, side, orderType, timeInForce, displaySize,
+                triggerPrice, 0);
+    }
+
+    /**
+     * @param expireTime cluster time in milliseconds that a GTT order is cancelled at, ignored for other times in force
+     */
+    public void sendOrderRequestToCluster(final long correlationId, final int instrumentId, final long price,
+                                          final long size, final Side side, final OrderType orderType,
+                                          final TimeInForce timeInForce, final long displaySize,
+                                          final long triggerPrice, final long expireTime)
     {
         LOGGER.info("OrderRequest is being sent to cluster");
-        sendMessageToCluster(encoder.encodeOrderRequest(correlationId, price, size, side), encoder.ORDER_REQUEST_LENGTH);
+        sendMessageToCluster(encoder.encodeOrderRequest(correlationId, instrumentId, price, size, side, orderType,
+                timeInForce, displaySize, triggerPrice, expireTime), encoder.ORDER_REQUEST_LENGTH);
     }
 
-    public void sendCancelOrderToCluster(final long correlationId, final long orderId)
+    public void sendCancelOrderToCluster(final long correlationId, final int instrumentId, final long orderId)
     {
         LOGGER.info("CancelOrder is being sent to cluster");
-        sendMessageToCluster(encoder.encodeCancelOrder(correlationId, orderId), encoder.CANCEL_ORDER_LENGTH);
+        sendMessageToCluster(encoder.encodeCancelOrder(correlationId, instrumentId, orderId), encoder.CANCEL_ORDER_LENGTH);
+    }
+
+    public void sendAmendOrderToCluster(final long correlationId, final int instrumentId, final long orderId,
+                                        final long price, final long size)
+    {
+        LOGGER.info("AmendOrder is being sent to cluster");
+        sendMessageToCluster(encoder.encodeAmendOrder(correlationId, instrumentId, orderId, price, size),
+                encoder.AMEND_ORDER_LENGTH);
+    }
+
+    public void sendMassCancelToCluster(final long correlationId, final int instrumentId, final Side side,
+                                        final long minPrice, final long maxPrice, final boolean allSessions)
+    {
+        LOGGER.info("MassCancel is being sent to cluster");
+        sendMessageToCluster(encoder.encodeMassCancel(correlationId, instrumentId, side, minPrice, maxPrice, allSessions),
+                encoder.MASS_CANCEL_LENGTH);
+    }
+
+    public void sendDepthRequestToCluster(final long correlationId, final int instrumentId, final int levels)
+    {
+        LOGGER.info("DepthRequest is being sent to cluster");
+        sendMessageToCluster(encoder.encodeDepthRequest(correlationId, instrumentId, levels), encoder.DEPTH_REQUEST_LENGTH);
     }
 
-    public void sendHeaderMessageToCluster(long correlationId, Method method)
+    public void sendHeaderMessageToCluster(long correlationId, Method method, int instrumentId)
     {
         LOGGER.info("HeaderMessage is being sent to cluster");
-        sendMessageToCluster(encoder.encodeHeaderMessage(correlationId, method), encoder.HEADER_LENGTH);
+        sendMessageToCluster(encoder.encodeHeaderMessage(correlationId, method, instrumentId),
+                encoder.INSTRUMENT_REQUEST_LENGTH);
     }
 }
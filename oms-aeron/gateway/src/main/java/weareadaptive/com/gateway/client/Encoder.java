@@ -4,7 +4,9 @@ import com.weareadaptive.sbe.*;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import weareadaptive.com.cluster.services.oms.util.Method;
+import weareadaptive.com.cluster.services.oms.util.OrderType;
 import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
 
 import java.nio.ByteBuffer;
 
@@ -13,21 +15,34 @@ public class Encoder
     final private MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
     protected final int CANCEL_ORDER_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH + CancelRequestEncoder.BLOCK_LENGTH;
     final private CancelRequestEncoder cancelOrderEncoder = new CancelRequestEncoder();
+    protected final int AMEND_ORDER_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH + AmendRequestEncoder.BLOCK_LENGTH;
+    final private AmendRequestEncoder amendRequestEncoder = new AmendRequestEncoder();
     protected final int ORDER_REQUEST_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH + OrderRequestEncoder.BLOCK_LENGTH;
     final private OrderRequestEncoder orderRequestEncoder = new OrderRequestEncoder();
-    protected final int HEADER_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH;
+    protected final int MASS_CANCEL_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH + MassCancelRequestEncoder.BLOCK_LENGTH;
+    final private MassCancelRequestEncoder massCancelRequestEncoder = new MassCancelRequestEncoder();
+    // side filter value that cancels on both sides
+    private static final short BOTH_SIDES = 2;
+    protected final int DEPTH_REQUEST_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH + DepthRequestEncoder.BLOCK_LENGTH;
+    final private DepthRequestEncoder depthRequestEncoder = new DepthRequestEncoder();
+    // clear, reset, bids, asks, currentId, bbo, startAuction and uncross requests only carry the instrumentId, so they
+    // share one length
+    protected final int INSTRUMENT_REQUEST_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH + ClearRequestEncoder.BLOCK_LENGTH;
     final private AsksRequestEncoder asksRequestEncoder = new AsksRequestEncoder();
     final private BidsRequestEncoder bidsRequestEncoder = new BidsRequestEncoder();
     final private ResetRequestEncoder resetRequestEncoder = new ResetRequestEncoder();
     final private ClearRequestEncoder clearRequestEncoder = new ClearRequestEncoder();
     final private CurrentIdRequestEncoder currentIdRequestEncoder = new CurrentIdRequestEncoder();
+    final private BboRequestEncoder bboRequestEncoder = new BboRequestEncoder();
+    final private StartAuctionRequestEncoder startAuctionRequestEncoder = new StartAuctionRequestEncoder();
+    final private UncrossRequestEncoder uncrossRequestEncoder = new UncrossRequestEncoder();
 
     private void setHeaderEncoder(final MutableDirectBuffer buffer, final long correlationId) {
         headerEncoder.wrap(buffer, 0);
         headerEncoder.correlationId(correlationId);
     }
 
-    protected MutableDirectBuffer encodeCancelOrder(long correlationId, long orderId)
+    protected MutableDirectBuffer encodeCancelOrder(long correlationId, int instrumentId, long orderId)
     {
         final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(CANCEL_ORDER_LENGTH);
         final UnsafeBuffer directBuffer = new UnsafeBuffer(byteBuffer);
@@ -35,11 +50,29 @@ public class Encoder
         setHeaderEncoder(directBuffer, correlationId);
         cancelOrderEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder);
         cancelOrderEncoder.orderId(orderId);
+        cancelOrderEncoder.instrumentId(instrumentId);
 
         return directBuffer;
     }
 
-    protected MutableDirectBuffer encodeOrderRequest(long correlationId, double price, long size, Side side) {
+    protected MutableDirectBuffer encodeAmendOrder(long correlationId, int instrumentId, long orderId, long price, long size)
+    {
+        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(AMEND_ORDER_LENGTH);
+        final UnsafeBuffer directBuffer = new UnsafeBuffer(byteBuffer);
+
+        setHeaderEncoder(directBuffer, correlationId);
+        amendRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder);
+        amendRequestEncoder.orderId(orderId);
+        amendRequestEncoder.price(price);
+        amendRequestEncoder.size(size);
+        amendRequestEncoder.instrumentId(instrumentId);
+
+        return directBuffer;
+    }
+
+    protected MutableDirectBuffer encodeOrderRequest(long correlationId, int instrumentId, long price, long size, Side side,
+                                                     OrderType orderType, TimeInForce timeInForce, long displaySize,
+                                                     long triggerPrice, long expireTime) {
         final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(ORDER_REQUEST_LENGTH);
         final UnsafeBuffer directBuffer = new UnsafeBuffer(byteBuffer);
 
@@ -49,23 +82,74 @@ public class Encoder
         orderRequestEncoder.price(price);
         orderRequestEncoder.size(size);
         orderRequestEncoder.side(side.getByte());
+        orderRequestEncoder.instrumentId(instrumentId);
+        orderRequestEncoder.orderType(orderType.getByte());
+        orderRequestEncoder.timeInForce(timeInForce.getByte());
+        orderRequestEncoder.displaySize(displaySize);
+        orderRequestEncoder.triggerPrice(triggerPrice);
+        orderRequestEncoder.expireTime(expireTime);
+
+        return directBuffer;
+    }
+
+    /**
+     * @param side side to cancel, or null for both sides
+     * @param allSessions whether to cancel every session's orders instead of only this gateway's
+     */
+    protected MutableDirectBuffer encodeMassCancel(long correlationId, int instrumentId, Side side, long minPrice,
+                                                   long maxPrice, boolean allSessions)
+    {
+        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(MASS_CANCEL_LENGTH);
+        final UnsafeBuffer directBuffer = new UnsafeBuffer(byteBuffer);
+
+        setHeaderEncoder(directBuffer, correlationId);
+        massCancelRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder);
+        massCancelRequestEncoder.instrumentId(instrumentId);
+        massCancelRequestEncoder.side(side == null ? BOTH_SIDES : side.getByte());
+        massCancelRequestEncoder.minPrice(minPrice);
+        massCancelRequestEncoder.maxPrice(maxPrice);
+        massCancelRequestEncoder.scope((short) (allSessions ? 1 : 0));
+
+        return directBuffer;
+    }
+
+    protected MutableDirectBuffer encodeDepthRequest(long correlationId, int instrumentId, int levels)
+    {
+        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(DEPTH_REQUEST_LENGTH);
+        final UnsafeBuffer directBuffer = new UnsafeBuffer(byteBuffer);
+
+        setHeaderEncoder(directBuffer, correlationId);
+        depthRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder);
+        depthRequestEncoder.instrumentId(instrumentId);
+        depthRequestEncoder.levels(levels);
 
         return directBuffer;
     }
 
-    public MutableDirectBuffer encodeHeaderMessage(long correlationId, Method method)
+    public MutableDirectBuffer encodeHeaderMessage(long correlationId, Method method, int instrumentId)
     {
-        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(HEADER_LENGTH);
+        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(INSTRUMENT_REQUEST_LENGTH);
         final UnsafeBuffer directBuffer = new UnsafeBuffer(byteBuffer);
 
         setHeaderEncoder(directBuffer, correlationId);
 
         switch (method) {
-            case CLEAR -> clearRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder);
-            case RESET -> resetRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder);
-            case BIDS -> bidsRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder);
-            case ASKS -> asksRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder);
-            case CURRENT_ORDER_ID -> currentIdRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder);
+            case CLEAR -> clearRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder)
+                    .instrumentId(instrumentId);
+            case RESET -> resetRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder)
+                    .instrumentId(instrumentId);
+            case BIDS -> bidsRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder)
+                    .instrumentId(instrumentId);
+            case ASKS -> asksRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder)
+                    .instrumentId(instrumentId);
+            case CURRENT_ORDER_ID -> currentIdRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder)
+                    .instrumentId(instrumentId);
+            case BBO -> bboRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder)
+                    .instrumentId(instrumentId);
+            case START_AUCTION -> startAuctionRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder)
+                    .instrumentId(instrumentId);
+            case UNCROSS -> uncrossRequestEncoder.wrapAndApplyHeader(directBuffer, 0, headerEncoder)
+                    .instrumentId(instrumentId);
         }
 
         return directBuffer;
@@ -0,0 +1,32 @@
+package weareadaptive.com.gateway.client;
+
+import io.aeron.security.CredentialsSupplier;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Connects to the cluster with the gateway's ID as its credentials
+ * - The cluster keeps them as the principal of the session, so a gateway that restarts with the same ID is told of the
+ *   orders cancelled when its previous session closed
+ */
+public class GatewayCredentials implements CredentialsSupplier
+{
+    private final byte[] encodedCredentials;
+
+    public GatewayCredentials(final String gatewayId)
+    {
+        this.encodedCredentials = gatewayId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] encodedCredentials()
+    {
+        return encodedCredentials;
+    }
+
+    @Override
+    public byte[] onChallenge(final byte[] encodedChallenge)
+    {
+        return new byte[0];
+    }
+}
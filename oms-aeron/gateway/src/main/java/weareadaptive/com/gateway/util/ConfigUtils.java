@@ -169,6 +169,39 @@ public class ConfigUtils
         );
     }
 
+    /**
+     * Read the number of decimal places in a tick from the environment variable PRICE_SCALE or the
+     * system property price.scale
+     *
+     * @return price scale, default 4
+     */
+    public static PriceScale getPriceScale()
+    {
+        String priceScale = System.getenv("PRICE_SCALE");
+        if (null == priceScale || priceScale.isEmpty())
+        {
+            priceScale = System.getProperty("price.scale", "4");
+        }
+        return new PriceScale(parseInt(priceScale));
+    }
+
+    /**
+     * Read the ID the gateway connects to the cluster with from the environment variable GATEWAY_ID or the system
+     * property gateway.id, which must stay the same across restarts for the gateway to be told of the orders cancelled
+     * when it went away
+     *
+     * @return gateway ID, default gateway
+     */
+    public static String getGatewayId()
+    {
+        String gatewayId = System.getenv("GATEWAY_ID");
+        if (null == gatewayId || gatewayId.isEmpty())
+        {
+            gatewayId = System.getProperty("gateway.id", "gateway");
+        }
+        return gatewayId;
+    }
+
     public static String egressChannel()
     {
         String clusterAddresses = System.getenv("EGRESS_CHANNEL");
@@ -0,0 +1,41 @@
+package weareadaptive.com.gateway.util;
+
+import weareadaptive.com.gateway.exception.BadFieldException;
+
+import java.math.BigDecimal;
+
+/**
+ * Converts between decimal JSON prices and the fixed-point tick prices used by the cluster.
+ * A price scale of 4 means one tick is 0.0001, so 10.25 travels as 102500.
+ */
+public class PriceScale
+{
+    private final int decimalPlaces;
+    private final long ticksPerUnit;
+
+    public PriceScale(final int decimalPlaces)
+    {
+        this.decimalPlaces = decimalPlaces;
+        this.ticksPerUnit = BigDecimal.ONE.movePointRight(decimalPlaces).longValueExact();
+    }
+
+    /**
+     * Convert a decimal price into ticks, rejecting prices that do not fall exactly on a tick
+     */
+    public long toTicks(final double price)
+    {
+        try
+        {
+            return BigDecimal.valueOf(price).movePointRight(decimalPlaces).longValueExact();
+        }
+        catch (ArithmeticException exception)
+        {
+            throw new BadFieldException("price");
+        }
+    }
+
+    public double toPrice(final long ticks)
+    {
+        return (double) ticks / ticksPerUnit;
+    }
+}
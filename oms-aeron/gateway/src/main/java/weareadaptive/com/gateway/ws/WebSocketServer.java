@@ -4,11 +4,17 @@ import com.weareadaptive.sbe.MessageHeaderEncoder;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.json.JsonObject;
+import weareadaptive.com.cluster.services.oms.OrderbookRegistry;
 import weareadaptive.com.cluster.services.oms.util.Method;
+import weareadaptive.com.cluster.services.oms.util.OrderType;
 import weareadaptive.com.cluster.services.oms.util.Side;
+import weareadaptive.com.cluster.services.oms.util.TimeInForce;
 import weareadaptive.com.gateway.client.ClientEgressListener;
 import weareadaptive.com.gateway.client.ClientIngressSender;
 import weareadaptive.com.gateway.exception.BadFieldException;
+import weareadaptive.com.gateway.util.PriceScale;
+
+import static weareadaptive.com.gateway.util.ConfigUtils.getPriceScale;
 
 public class WebSocketServer extends AbstractVerticle
 {
@@ -16,6 +22,8 @@ public class WebSocketServer extends AbstractVerticle
     ClientEgressListener clientEgressListener;
     private long id = 0L;
     final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+    private final PriceScale priceScale = getPriceScale();
+    private static final int DEFAULT_DEPTH_LEVELS = 10;
     public WebSocketServer(final ClientIngressSender clientIngressSender,
                            final ClientEgressListener clientEgressListener)
     {
@@ -34,9 +42,17 @@ public class WebSocketServer extends AbstractVerticle
     /**
      * * Handle incoming websocket requests and implement routing logic
      * - Routing to appropriate logic should be handled via JSON payload:
+     * - Every request may name the instrument whose orderbook it is for, the default instrument is used otherwise
+     * - startAuction and uncross take only the instrument
+     * - Fills and expiries of the orders placed over a websocket are pushed to it unsolicited, as
+     *   { "event": "trades", "instrumentId": 1, "fills": [...] }
+     *   and { "event": "orderExpired", "instrumentId": 1, "orderId": 3 }, and an order the cluster cancelled when this
+     *   gateway's session closed, if its websocket outlived the session, as
+     *   { "event": "orderCancelled", "instrumentId": 1, "orderId": 3 }
      * - e.g: JSON payload to route to place order
      * {
      * "method": "place"
+     * "instrumentId": 1
      * "order":
      * {
      * "price": 10.00
@@ -47,20 +63,28 @@ public class WebSocketServer extends AbstractVerticle
      */
     private void WSHandler(final ServerWebSocket ws)
     {
+        ws.closeHandler(ignored -> clientEgressListener.removeWebsocket(ws));
         ws.handler(event -> {
             var jsonEvent = event.toJsonObject();
             try
             {
                 final var eventMethod = jsonEvent.getString("method");
+                final int instrumentId = jsonEvent.getInteger("instrumentId", OrderbookRegistry.DEFAULT_INSTRUMENT_ID);
                 switch (eventMethod)
                 {
-                    case "place" -> WSPlaceOrder(ws, ++id, jsonEvent.getJsonObject("order"));
-                    case "cancel" -> WSCancelOrder(ws, ++id, jsonEvent.getLong("orderId"));
-                    case "clear" -> WSHeaderMessage(ws, ++id, Method.CLEAR);
-                    case "reset" -> WSHeaderMessage(ws, ++id, Method.RESET);
-                    case "bids" -> WSHeaderMessage(ws, ++id, Method.BIDS);
-                    case "asks" -> WSHeaderMessage(ws, ++id, Method.ASKS);
-                    case "orderId" -> WSHeaderMessage(ws, ++id, Method.CURRENT_ORDER_ID);
+                    case "place" -> WSPlaceOrder(ws, ++id, instrumentId, jsonEvent.getJsonObject("order"));
+                    case "cancel" -> WSCancelOrder(ws, ++id, instrumentId, jsonEvent.getLong("orderId"));
+                    case "amend" -> WSAmendOrder(ws, ++id, instrumentId, jsonEvent);
+                    case "massCancel" -> WSMassCancel(ws, ++id, instrumentId, jsonEvent);
+                    case "clear" -> WSHeaderMessage(ws, ++id, Method.CLEAR, instrumentId);
+                    case "reset" -> WSHeaderMessage(ws, ++id, Method.RESET, instrumentId);
+                    case "bids" -> WSHeaderMessage(ws, ++id, Method.BIDS, instrumentId);
+                    case "asks" -> WSHeaderMessage(ws, ++id, Method.ASKS, instrumentId);
+                    case "orderId" -> WSHeaderMessage(ws, ++id, Method.CURRENT_ORDER_ID, instrumentId);
+                    case "bbo" -> WSHeaderMessage(ws, ++id, Method.BBO, instrumentId);
+                    case "startAuction" -> WSHeaderMessage(ws, ++id, Method.START_AUCTION, instrumentId);
+                    case "uncross" -> WSHeaderMessage(ws, ++id, Method.UNCROSS, instrumentId);
+                    case "depth" -> WSDepth(ws, ++id, instrumentId, jsonEvent.getInteger("levels", DEFAULT_DEPTH_LEVELS));
                     default -> throw new BadFieldException("method");
                 }
             }
@@ -82,8 +106,18 @@ public class WebSocketServer extends AbstractVerticle
      * "price": 10.00
      * "size": 15
      * "side": "BID"
+     * "type": "LIMIT"
+     * "timeInForce": "GTC"
+     * "displaySize": 5
+     * "triggerPrice": 9.50
+     * "expireTime": 1700000000000
      * }
      * }
+     * - type (LIMIT, MARKET, STOP or STOP_LIMIT) and timeInForce (GTC, IOC, FOK or GTT) are optional and default to a GTC limit order, and a
+     *   market order needs no price
+     * - displaySize is optional and makes a resting order an iceberg showing that much of its size at a time
+     * - STOP and STOP_LIMIT orders need a triggerPrice, and a STOP order needs no price
+     * - GTT orders need an expireTime, in milliseconds since the epoch
      * <p>
      * - e.g: JSON response
      * {
@@ -91,17 +125,36 @@ public class WebSocketServer extends AbstractVerticle
      * "status": "FILLED"
      * }
      */
-    private void WSPlaceOrder(final ServerWebSocket ws, long correlationId, JsonObject jsonEvent)
+    private void WSPlaceOrder(final ServerWebSocket ws, long correlationId, int instrumentId, JsonObject jsonEvent)
     {
         if (jsonEvent == null) { throw new BadFieldException("order"); }
-        if (jsonEvent.getDouble("price") == null) { throw new BadFieldException("price"); }
+        final OrderType orderType = toEnum(OrderType.class, jsonEvent.getString("type", OrderType.LIMIT.name()), "type");
+        final TimeInForce timeInForce = toEnum(TimeInForce.class,
+                jsonEvent.getString("timeInForce", TimeInForce.GTC.name()), "timeInForce");
+        final boolean isStop = orderType == OrderType.STOP || orderType == OrderType.STOP_LIMIT;
+        final boolean hasPrice = orderType == OrderType.LIMIT || orderType == OrderType.STOP_LIMIT;
+        if (hasPrice && jsonEvent.getDouble("price") == null) { throw new BadFieldException("price"); }
+        if (isStop && jsonEvent.getDouble("triggerPrice") == null) { throw new BadFieldException("triggerPrice"); }
+        if (timeInForce == TimeInForce.GTT && jsonEvent.getLong("expireTime") == null) { throw new BadFieldException("expireTime"); }
         if (jsonEvent.getLong("size") == null) { throw new BadFieldException("size"); }
         if (jsonEvent.getString("side") == null) { throw new BadFieldException("side"); }
+        final Side side = toEnum(Side.class, jsonEvent.getString("side"), "side");
 
-        clientEgressListener.addWebsocket(correlationId, ws);
-        clientIngressSender.sendOrderRequestToCluster(correlationId, jsonEvent.getDouble("price"),
+        final long price = hasPrice ? priceScale.toTicks(jsonEvent.getDouble("price")) : 0;
+        final long triggerPrice = isStop ? priceScale.toTicks(jsonEvent.getDouble("triggerPrice")) : 0;
+
+        // a stop waits in the book until it triggers, whatever its time in force
+        final boolean canRest = orderType != OrderType.MARKET
+                && (isStop || timeInForce == TimeInForce.GTC || timeInForce == TimeInForce.GTT);
+        clientEgressListener.addOrderWebsocket(correlationId, instrumentId, canRest, ws);
+        clientIngressSender.sendOrderRequestToCluster(correlationId, instrumentId, price,
                 jsonEvent.getLong("size"),
-                Side.valueOf(jsonEvent.getString("side")));
+                side,
+                orderType,
+                timeInForce,
+                jsonEvent.getLong("displaySize", 0L),
+                triggerPrice,
+                jsonEvent.getLong("expireTime", 0L));
     }
 
     /**
@@ -119,15 +172,121 @@ public class WebSocketServer extends AbstractVerticle
      * "status": "CANCELLED"
      * }
      */
-    private void WSCancelOrder(final ServerWebSocket ws, long correlationId, long orderId)
+    private void WSCancelOrder(final ServerWebSocket ws, long correlationId, int instrumentId, long orderId)
+    {
+        clientEgressListener.addOrderWebsocket(correlationId, instrumentId, false, ws);
+        clientIngressSender.sendCancelOrderToCluster(correlationId, instrumentId, orderId);
+    }
+
+    /**
+     * * Amend the price and size of a resting order, return ExecutionResult response to client
+     * <p>
+     * - e.g: JSON payload request
+     * {
+     * "method": "amend"
+     * "orderId": 1
+     * "price": 10.50
+     * "size": 10
+     * }
+     * <p>
+     * - e.g: JSON response
+     * {
+     * "orderId": 1
+     * "status": "AMENDED"
+     * }
+     */
+    private void WSAmendOrder(final ServerWebSocket ws, long correlationId, int instrumentId, JsonObject jsonEvent)
+    {
+        if (jsonEvent.getLong("orderId") == null) { throw new BadFieldException("orderId"); }
+        if (jsonEvent.getDouble("price") == null) { throw new BadFieldException("price"); }
+        if (jsonEvent.getLong("size") == null) { throw new BadFieldException("size"); }
+
+        final long price = priceScale.toTicks(jsonEvent.getDouble("price"));
+
+        clientEgressListener.addOrderWebsocket(correlationId, instrumentId, true, ws);
+        clientIngressSender.sendAmendOrderToCluster(correlationId, instrumentId, jsonEvent.getLong("orderId"), price,
+                jsonEvent.getLong("size"));
+    }
+
+    /**
+     * * Cancel every resting order matching the filters in one request, return how many were cancelled
+     * - side, minPrice and maxPrice are optional, and only this gateway's orders are cancelled unless allSessions is set
+     * <p>
+     * - e.g: JSON payload request
+     * {
+     * "method": "massCancel"
+     * "side": "BID"
+     * "minPrice": 9.00
+     * "maxPrice": 10.00
+     * "allSessions": false
+     * }
+     * <p>
+     * - e.g: JSON response
+     * {
+     * "cancelled": 12
+     * }
+     */
+    private void WSMassCancel(final ServerWebSocket ws, long correlationId, int instrumentId, JsonObject jsonEvent)
     {
+        final String sideName = jsonEvent.getString("side");
+        final Side side = sideName == null ? null : toEnum(Side.class, sideName, "side");
+        final Double minPrice = jsonEvent.getDouble("minPrice");
+        final Double maxPrice = jsonEvent.getDouble("maxPrice");
+
         clientEgressListener.addWebsocket(correlationId, ws);
-        clientIngressSender.sendCancelOrderToCluster(correlationId, orderId);
+        clientIngressSender.sendMassCancelToCluster(correlationId, instrumentId,
+                side,
+                minPrice == null ? Long.MIN_VALUE : priceScale.toTicks(minPrice),
+                maxPrice == null ? Long.MAX_VALUE : priceScale.toTicks(maxPrice),
+                jsonEvent.getBoolean("allSessions", false));
     }
 
-    private void WSHeaderMessage(final ServerWebSocket ws, final long correlationId, final Method method)
+    /**
+     * * Request the top levels of the orderbook, aggregated per price
+     * <p>
+     * - e.g: JSON payload request
+     * {
+     * "method": "depth"
+     * "levels": 5
+     * }
+     * <p>
+     * - e.g: JSON response
+     * {
+     * "bids": [{"price": 10.00, "size": 150, "orderCount": 2}]
+     * "asks": [{"price": 10.50, "size": 20, "orderCount": 1}]
+     * }
+     */
+    private void WSDepth(final ServerWebSocket ws, final long correlationId, final int instrumentId, final int levels)
+    {
+        if (levels <= 0) { throw new BadFieldException("levels"); }
+
+        clientEgressListener.addWebsocket(correlationId, ws);
+        clientIngressSender.sendDepthRequestToCluster(correlationId, instrumentId, levels);
+    }
+
+    private void WSHeaderMessage(final ServerWebSocket ws, final long correlationId, final Method method,
+                                 final int instrumentId)
     {
+        if (method == Method.CLEAR || method == Method.RESET)
+        {
+            clientEgressListener.removeInstrument(instrumentId);
+        }
         clientEgressListener.addWebsocket(correlationId, ws);
-        clientIngressSender.sendHeaderMessageToCluster(correlationId, method);
+        clientIngressSender.sendHeaderMessageToCluster(correlationId, method, instrumentId);
+    }
+
+    /**
+     * * The constant of an enum named by a request field, a 400 to the client when it names none of them
+     */
+    private static <E extends Enum<E>> E toEnum(final Class<E> enumType, final String name, final String field)
+    {
+        try
+        {
+            return Enum.valueOf(enumType, name);
+        }
+        catch (IllegalArgumentException exception)
+        {
+            throw new BadFieldException(field);
+        }
     }
 }
\ No newline at end of file